@@ -9,6 +9,7 @@ class TurmsCloseStatus {
   static const serverUnavailable = 202;
 
   static const connectionClosed = 300;
+  static const slowConsumer = 301;
 
   static const unknownError = 400;
 
@@ -54,6 +54,7 @@ class TurmsStatusCode {
   static const recordContainsDuplicateKey = 1103;
   static const requestedRecordsTooMany = 1104;
   static const sendRequestFromNonExistingSession = 1105;
+  static const notificationsDropped = 1106;
 
   // Server
   static const serverInternalError = 1200;
@@ -9,6 +9,7 @@ enum TurmsCloseStatus {
     SERVER_UNAVAILABLE,
 
     CONNECTION_CLOSED = 300,
+    SLOW_CONSUMER,
 
     UNKNOWN_ERROR = 400,
 
@@ -55,6 +55,7 @@ enum Code {
     RECORD_CONTAINS_DUPLICATE_KEY,
     REQUESTED_RECORDS_TOO_MANY,
     SEND_REQUEST_FROM_NON_EXISTING_SESSION,
+    NOTIFICATIONS_DROPPED,
 
     // Server
     SERVER_INTERNAL_ERROR = 1200,
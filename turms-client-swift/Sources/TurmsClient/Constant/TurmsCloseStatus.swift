@@ -11,6 +11,7 @@ public enum TurmsCloseStatus: Int {
     case serverUnavailable
 
     case connectionClosed = 300
+    case slowConsumer
 
     case unknownError = 400
 
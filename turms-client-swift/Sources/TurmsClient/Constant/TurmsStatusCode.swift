@@ -50,6 +50,7 @@ public enum TurmsStatusCode: Int {
     case recordContainsDuplicateKey
     case requestedRecordsTooMany
     case sendRequestFromNonExistingSession
+    case notificationsDropped
 
     // Server
     case serverInternalError = 1200
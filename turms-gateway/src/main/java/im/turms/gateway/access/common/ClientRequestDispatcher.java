@@ -22,8 +22,6 @@ import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.common.model.dto.request.TurmsRequest;
 import im.turms.gateway.access.common.controller.SessionController;
 import im.turms.gateway.access.common.model.UserSessionWrapper;
-import im.turms.gateway.access.tcp.dto.RequestHandlerResult;
-import im.turms.gateway.access.tcp.util.TurmsNotificationUtil;
 import im.turms.gateway.logging.ApiLoggingContext;
 import im.turms.gateway.logging.ClientApiLogging;
 import im.turms.gateway.pojo.bo.session.UserSession;
@@ -32,21 +30,28 @@ import im.turms.gateway.pojo.parser.TurmsRequestParser;
 import im.turms.gateway.service.mediator.ServiceMediator;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.dto.ServiceRequest;
+import im.turms.server.common.dto.ServiceResponse;
 import im.turms.server.common.exception.ThrowableInfo;
 import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.server.common.healthcheck.ServerStatusManager;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.metrics.RequestMetrics;
 import im.turms.server.common.proto.NotificationFactory;
 import im.turms.server.common.service.blocklist.BlocklistService;
 import im.turms.server.common.tracing.TracingCloseableContext;
 import im.turms.server.common.tracing.TracingContext;
+import im.turms.server.common.util.CodecUtil;
 import im.turms.server.common.util.ProtoUtil;
+import io.micrometer.core.instrument.Metrics;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.Nullable;
+import java.util.EnumMap;
+
 import static im.turms.common.model.dto.request.TurmsRequest.KindCase.CREATE_SESSION_REQUEST;
 import static im.turms.common.model.dto.request.TurmsRequest.KindCase.DELETE_SESSION_REQUEST;
 import static im.turms.common.model.dto.request.TurmsRequest.KindCase.KIND_NOT_SET;
@@ -65,6 +70,9 @@ public class ClientRequestDispatcher {
     private static final ByteBuf HEARTBEAT_RESPONSE_UPDATE_NON_EXISTING_SESSION_HEARTBEAT;
     private static final ByteBuf HEARTBEAT_RESPONSE_SERVER_UNAVAILABLE;
 
+    private static final ServiceResponse RESPONSE_SESSION_CLOSED =
+            new ServiceResponse(null, TurmsStatusCode.SERVER_INTERNAL_ERROR, null);
+
     private static final SimpleTurmsRequest UNRECOGNIZED_REQUEST = new SimpleTurmsRequest(-1, KIND_NOT_SET, null);
 
     private static final long HEARTBEAT_FAILURE_REQUEST_ID = -100;
@@ -87,6 +95,12 @@ public class ClientRequestDispatcher {
     private final ServiceMediator serviceMediator;
     private final ServerStatusManager serverStatusManager;
 
+    private final EnumMap<TurmsRequest.KindCase, RequestMetrics> requestTypeToMetrics =
+            RequestMetrics.createEnumMap(Metrics.globalRegistry,
+                    CLIENT_REQUEST_NAME,
+                    TurmsRequest.KindCase.class,
+                    CLIENT_REQUEST_TAG_TYPE);
+
     public ClientRequestDispatcher(ApiLoggingContext apiLoggingContext,
                                    BlocklistService blocklistService,
                                    IpRequestThrottler ipRequestThrottler,
@@ -121,7 +135,7 @@ public class ClientRequestDispatcher {
         int requestSize = serviceRequestBuffer.readableBytes();
         SimpleTurmsRequest request;
         SimpleTurmsRequest tempRequest;
-        Mono<TurmsNotification> notificationMono = null;
+        Mono<ServiceResponse> responseMono = null;
         try {
             tempRequest = TurmsRequestParser.parseSimpleRequest(serviceRequestBuffer.nioBuffer());
         } catch (Exception e) {
@@ -132,7 +146,7 @@ public class ClientRequestDispatcher {
                 blocklistService.tryBlockUserIdForCorruptedRequest(session.getUserId());
             }
             blocklistService.tryBlockIpForCorruptedRequest(sessionWrapper.getIp());
-            notificationMono = Mono.error(TurmsBusinessException.get(TurmsStatusCode.INVALID_REQUEST, e.getMessage()));
+            responseMono = Mono.error(TurmsBusinessException.get(TurmsStatusCode.INVALID_REQUEST, e.getMessage()));
         }
         request = tempRequest;
         TurmsRequest.KindCase requestType = request.type();
@@ -146,26 +160,30 @@ public class ClientRequestDispatcher {
             }
         }
         boolean finalCanLogRequest = canLogRequest;
-        if (notificationMono == null) {
-            notificationMono = handleServiceRequest(sessionWrapper, request, serviceRequestBuffer, tracingContext);
+        if (responseMono == null) {
+            responseMono = handleServiceRequest(sessionWrapper, request, serviceRequestBuffer, tracingContext);
         }
-        return notificationMono
-                // Metrics and logging
-                .name(CLIENT_REQUEST_NAME)
-                .tag(CLIENT_REQUEST_TAG_TYPE, requestType.name())
-                .metrics()
+        // Metrics and logging
+        return requestTypeToMetrics.get(requestType)
+                .measure(responseMono)
                 .onErrorResume(throwable -> {
                     ThrowableInfo info = ThrowableInfo.get(throwable);
                     if (info.code().isServerError()) {
                         tracingContext.updateThreadContext();
                         LOGGER.error("Failed to handle the service request: {}", request, throwable);
                     }
-                    return Mono.just(NotificationFactory.create(info, request.requestId()));
+                    return Mono.just(newResponse(info));
                 })
-                .map(notification -> {
+                .map(response -> {
                     TurmsRequest.KindCase type = request.type();
+                    // Get the data type before the response is encoded
+                    // because the data buffer is owned by the notification buffer after being encoded
+                    String responseDataType = getResponseDataType(response);
+                    // Relay the data from turms-service as it is instead of parsing and serializing it again
+                    ByteBuf notificationBuffer = NotificationFactory.createBuffer(response, request.requestId());
+                    int responseCode = response.code().getBusinessCode();
                     // TODO: exclude the error caused by the inactive of turms-service
-                    if (TurmsStatusCode.isServerError(notification.getCode())
+                    if (TurmsStatusCode.isServerError(responseCode)
                             || apiLoggingContext.shouldLogRequest(type) && finalCanLogRequest) {
                         try (TracingCloseableContext ignored = tracingContext.asCloseable()) {
                             UserSession userSession = sessionWrapper.getUserSession();
@@ -186,14 +204,16 @@ public class ClientRequestDispatcher {
                                     version,
                                     sessionWrapper.getIpStr(),
                                     request.requestId(),
-                                    type,
+                                    type.name(),
                                     requestSize,
                                     requestTime,
-                                    notification,
+                                    responseCode,
+                                    responseDataType,
+                                    notificationBuffer.readableBytes(),
                                     System.currentTimeMillis() - requestTime);
                         }
                     }
-                    return ProtoUtil.getDirectByteBuffer(notification);
+                    return notificationBuffer;
                 })
                 .contextWrite(context -> {
                     TracingContext ctx = context.get(TracingContext.CTX_KEY_NAME);
@@ -205,23 +225,19 @@ public class ClientRequestDispatcher {
     /**
      * The method ensures serviceRequestBuffer will be released by 1
      */
-    public Mono<TurmsNotification> handleServiceRequest(UserSessionWrapper sessionWrapper,
-                                                        SimpleTurmsRequest request,
-                                                        ByteBuf serviceRequestBuffer,
-                                                        TracingContext tracingContext) {
+    public Mono<ServiceResponse> handleServiceRequest(UserSessionWrapper sessionWrapper,
+                                                      SimpleTurmsRequest request,
+                                                      ByteBuf serviceRequestBuffer,
+                                                      TracingContext tracingContext) {
         try {
             // Validate
             long requestId = request.requestId();
             if (requestId <= 0) {
-                TurmsNotification notification = NotificationFactory.create(TurmsStatusCode.INVALID_REQUEST,
-                        "The request ID must be greater than 0",
-                        requestId);
-                return Mono.just(notification);
+                return Mono.just(newResponse(TurmsStatusCode.INVALID_REQUEST, "The request ID must be greater than 0"));
             }
             // Check server status
             if (!serverStatusManager.isActive()) {
-                TurmsNotification notification = NotificationFactory.create(TurmsStatusCode.SERVER_UNAVAILABLE, requestId);
-                return Mono.just(notification);
+                return Mono.just(newResponse(TurmsStatusCode.SERVER_UNAVAILABLE, null));
             }
 
             // Rate limiting
@@ -232,8 +248,7 @@ public class ClientRequestDispatcher {
                 if (userSession != null) {
                     blocklistService.tryBlockUserIdForFrequentRequest(userSession.getUserId());
                 }
-                TurmsNotification notification = NotificationFactory.create(TurmsStatusCode.CLIENT_REQUESTS_TOO_FREQUENT, requestId);
-                return Mono.just(notification);
+                return Mono.just(newResponse(TurmsStatusCode.CLIENT_REQUESTS_TOO_FREQUENT, null));
             }
 
             // Handle the request to get a response
@@ -242,17 +257,16 @@ public class ClientRequestDispatcher {
             return switch (requestType) {
                 case CREATE_SESSION_REQUEST -> sessionController
                         .handleCreateSessionRequest(sessionWrapper, request.createSessionRequest())
-                        .map(result -> getNotificationFromHandlerResult(result, request.requestId()));
-                case DELETE_SESSION_REQUEST -> sessionController.handleDeleteSessionRequest(sessionWrapper);
+                        .map(result -> new ServiceResponse(null, result.code(), result.reason()));
+                case DELETE_SESSION_REQUEST -> sessionController.handleDeleteSessionRequest(sessionWrapper)
+                        .then(Mono.empty());
                 default -> {
                     serviceRequestBuffer.retain();
                     yield handleServiceRequestForTurms(sessionWrapper, request, serviceRequestBuffer);
                 }
             };
         } catch (Exception e) {
-            TurmsNotification notification = NotificationFactory
-                    .create(ThrowableInfo.get(e), request.requestId());
-            return Mono.just(notification);
+            return Mono.just(newResponse(ThrowableInfo.get(e)));
         } finally {
             serviceRequestBuffer.release();
             tracingContext.clearThreadContext();
@@ -287,13 +301,13 @@ public class ClientRequestDispatcher {
         return Mono.just(data);
     }
 
-    private Mono<TurmsNotification> handleServiceRequestForTurms(UserSessionWrapper sessionWrapper,
+    private Mono<ServiceResponse> handleServiceRequestForTurms(UserSessionWrapper sessionWrapper,
                                                                  SimpleTurmsRequest request,
                                                                  ByteBuf serviceRequestBuffer) {
         UserSession session = sessionWrapper.getUserSession();
         if (session == null || !session.isOpen()) {
             serviceRequestBuffer.release();
-            return Mono.just(TurmsNotificationUtil.sessionClosed(request.requestId()));
+            return Mono.just(RESPONSE_SESSION_CLOSED);
         }
         ServiceRequest serviceRequest = new ServiceRequest(
                 sessionWrapper.getAddress().getAddress().getAddress(),
@@ -305,15 +319,29 @@ public class ClientRequestDispatcher {
         return serviceMediator.processServiceRequest(serviceRequest);
     }
 
-    private TurmsNotification getNotificationFromHandlerResult(RequestHandlerResult result, long requestId) {
-        TurmsNotification.Builder builder = TurmsNotification.newBuilder()
-                .setRequestId(requestId)
-                .setCode(result.code().getBusinessCode());
-        String reason = result.reason();
-        if (reason != null) {
-            builder.setReason(reason);
+    private ServiceResponse newResponse(TurmsStatusCode code, @Nullable String reason) {
+        if (reason == null) {
+            reason = code.getReason();
+        }
+        return new ServiceResponse(null, code, NotificationFactory.getReasonForClient(code, reason));
+    }
+
+    private ServiceResponse newResponse(ThrowableInfo info) {
+        TurmsStatusCode code = info.code();
+        return new ServiceResponse(null, code, NotificationFactory.getReasonForClient(code, info.reason()));
+    }
+
+    @Nullable
+    private String getResponseDataType(ServiceResponse response) {
+        ByteBuf dataBuffer = response.dataForRequesterBuffer();
+        if (dataBuffer != null) {
+            // The data is a message with only one field in "oneof kind"
+            int fieldNumber = CodecUtil.readVarint32(dataBuffer.duplicate()) >>> 3;
+            TurmsNotification.Data.KindCase kindCase = TurmsNotification.Data.KindCase.forNumber(fieldNumber);
+            return kindCase == null ? null : kindCase.name();
         }
-        return builder.build();
+        TurmsNotification.Data data = response.dataForRequester();
+        return data == null ? null : data.getKindCase().name();
     }
 
     /**
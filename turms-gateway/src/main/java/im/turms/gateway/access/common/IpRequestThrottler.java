@@ -24,11 +24,14 @@ import im.turms.server.common.lang.ByteArrayWrapper;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.property.env.gateway.clientapi.ClientApiProperties;
+import im.turms.server.common.property.env.gateway.clientapi.ClientApiRateLimitingProperties;
+import im.turms.server.common.throttle.IpTokenBucketTable;
 import im.turms.server.common.throttle.TokenBucket;
 import im.turms.server.common.throttle.TokenBucketContext;
 import im.turms.server.common.util.NamedThreadFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -56,9 +59,36 @@ public class IpRequestThrottler {
      * for each client request and needs to store a lot of items.
      * So just using and iterating ConcurrentHashMap is enough
      */
-    private final Map<ByteArrayWrapper, TokenBucket> ipRequestTokenBucketMap = new ConcurrentHashMap<>(256);
+    @Nullable
+    private final Map<ByteArrayWrapper, TokenBucket> ipRequestTokenBucketMap;
+    /**
+     * Used instead of {@link #ipRequestTokenBucketMap} if enabled,
+     * and it doesn't need a cleaner thread because it reclaims idle slots by itself
+     */
+    @Nullable
+    private final IpTokenBucketTable ipRequestTokenBucketTable;
 
     public IpRequestThrottler(Node node, SessionService sessionService) {
+        ClientApiProperties clientApiProperties = node.getSharedProperties().getGateway().getClientApi();
+        ClientApiRateLimitingProperties rateLimitingProperties = clientApiProperties.getRateLimiting();
+        requestTokenBucketContext = new TokenBucketContext(rateLimitingProperties);
+
+        node.addPropertiesChangeListener(newProperties -> requestTokenBucketContext.updateRequestTokenBucket(clientApiProperties.getRateLimiting()));
+
+        if (rateLimitingProperties.isUseOffHeapIpTokenBucketTable()) {
+            ipRequestTokenBucketMap = null;
+            ipRequestTokenBucketTable = new IpTokenBucketTable(requestTokenBucketContext,
+                    rateLimitingProperties.getOffHeapIpTokenBucketTableSlots());
+            sessionService.addOnSessionClosedListeners(session -> {
+                ByteArrayWrapper ip = session.getIp();
+                if (ip != null) {
+                    ipRequestTokenBucketTable.tryReclaim(ip.getBytes(), System.currentTimeMillis());
+                }
+            });
+            return;
+        }
+        ipRequestTokenBucketTable = null;
+        ipRequestTokenBucketMap = new ConcurrentHashMap<>(256);
         sessionService.addOnSessionClosedListeners(session ->
                 // Try to remove the buckets with enough tokens
                 // because most clients won't log in again once they have gone offline,
@@ -66,11 +96,6 @@ public class IpRequestThrottler {
                 ipRequestTokenBucketMap.computeIfPresent(session.getIp(), (key, bucket) ->
                         bucket.isTokensMoreThanOrEqualsToInitialTokens() ? null : bucket));
 
-        ClientApiProperties clientApiProperties = node.getSharedProperties().getGateway().getClientApi();
-        requestTokenBucketContext = new TokenBucketContext(clientApiProperties.getRateLimiting());
-
-        node.addPropertiesChangeListener(newProperties -> requestTokenBucketContext.updateRequestTokenBucket(clientApiProperties.getRateLimiting()));
-
         new NamedThreadFactory(ThreadNameConstant.IP_REQUEST_TOKEN_BUCKET_CLEANER, true)
                 .newThread(() -> {
                     Thread thread = Thread.currentThread();
@@ -115,6 +140,9 @@ public class IpRequestThrottler {
     }
 
     public boolean tryAcquireToken(ByteArrayWrapper ip, long timestamp) {
+        if (ipRequestTokenBucketTable != null) {
+            return ipRequestTokenBucketTable.tryAcquire(ip.getBytes(), timestamp);
+        }
         TokenBucket bucket = ipRequestTokenBucketMap.computeIfAbsent(ip, key -> new TokenBucket(requestTokenBucketContext));
         return bucket.tryAcquire(timestamp);
     }
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.gateway.access.common;
+
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.server.common.constant.TurmsStatusCode;
+import im.turms.server.common.property.constant.SlowConsumerPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Batch the outbound messages of a connection so that multiple messages
+ * can be sent with one flush (i.e. one system call) instead of flushing every message.
+ * <p>
+ * Messages can be sent from any thread, and they are queued in a lock-free queue,
+ * which is drained by the event loop of the channel.
+ * The written messages are flushed when:
+ * 1. the number of them reaches maxMessagesPerFlush;
+ * 2. the total size of them reaches maxBytesPerFlush;
+ * 3. no more message is queued (if flushDelayNanos is 0), or flushDelayNanos has passed.
+ * <p>
+ * If the channel becomes unwritable (i.e. the outbound buffer of Netty exceeds the high water mark
+ * because the client receives data slowly), the messages are held in the pending queue
+ * until the channel becomes writable again, and slowConsumerPolicy is applied
+ * once the pending bytes exceed maxPendingBytes.
+ *
+ * @author James Chen
+ */
+public final class OutboundMessageBatcher implements Runnable {
+
+    public static final String HANDLER_NAME = "outboundMessageBatcher";
+
+    private static final AtomicIntegerFieldUpdater<OutboundMessageBatcher> PENDING_DRAIN_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(OutboundMessageBatcher.class, "pendingDrainCount");
+
+    private static final byte[] RESYNC_NOTIFICATION = TurmsNotification.newBuilder()
+            .setCode(TurmsStatusCode.NOTIFICATIONS_DROPPED.getBusinessCode())
+            .build()
+            .toByteArray();
+
+    private final Channel channel;
+    private final EventLoop eventLoop;
+    private final boolean isWebSocketConnection;
+    private final int maxMessagesPerFlush;
+    private final int maxBytesPerFlush;
+    private final long flushDelayNanos;
+    private final int maxPendingBytes;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final DistributionSummary messagesPerFlushSummary;
+    private final Counter droppedNotificationsCounter;
+    private final Runnable slowConsumerHandler;
+    private final ChannelFutureListener writeListener;
+    private final Runnable flushTask = this::flush;
+
+    private final Queue<OutboundMessage> queue = new MpscUnboundedArrayQueue<>(16);
+    private volatile int pendingDrainCount;
+
+    // Only accessed by the event loop
+
+    private int unflushedMessageCount;
+    private int unflushedBytes;
+    private ScheduledFuture<?> flushFuture;
+    /**
+     * The messages held while the channel is unwritable
+     */
+    private final ArrayDeque<OutboundMessage> pendingMessages = new ArrayDeque<>(0);
+    /**
+     * Volatile so that it can be read by metrics
+     */
+    private volatile int pendingBytes;
+    private boolean isResyncNotificationPending;
+    private boolean isSlowConsumerHandled;
+
+    public OutboundMessageBatcher(Channel channel,
+                                  boolean isWebSocketConnection,
+                                  int maxMessagesPerFlush,
+                                  int maxBytesPerFlush,
+                                  long flushDelayNanos,
+                                  int maxPendingBytes,
+                                  SlowConsumerPolicy slowConsumerPolicy,
+                                  DistributionSummary messagesPerFlushSummary,
+                                  Counter droppedNotificationsCounter,
+                                  Runnable slowConsumerHandler,
+                                  Consumer<Throwable> writeErrorHandler) {
+        this.channel = channel;
+        eventLoop = channel.eventLoop();
+        this.isWebSocketConnection = isWebSocketConnection;
+        this.maxMessagesPerFlush = maxMessagesPerFlush;
+        this.maxBytesPerFlush = maxBytesPerFlush;
+        this.flushDelayNanos = flushDelayNanos;
+        this.maxPendingBytes = maxPendingBytes;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.messagesPerFlushSummary = messagesPerFlushSummary;
+        this.droppedNotificationsCounter = droppedNotificationsCounter;
+        this.slowConsumerHandler = slowConsumerHandler;
+        writeListener = future -> {
+            if (!future.isSuccess()) {
+                writeErrorHandler.accept(future.cause());
+            }
+        };
+        channel.pipeline().addFirst(HANDLER_NAME, new ChannelStateHandler());
+    }
+
+    /**
+     * @return the bytes of the outbound messages that haven't been written to the socket,
+     * including the messages held by the batcher and the messages in the outbound buffer of Netty
+     */
+    public long getPendingBytes() {
+        ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+        return outboundBuffer == null
+                ? pendingBytes
+                : pendingBytes + outboundBuffer.totalPendingWriteBytes();
+    }
+
+    /**
+     * @param isCritical true if the message should never be dropped (e.g. responses)
+     * @implNote The method ensures buffer will be released by 1
+     */
+    public void send(ByteBuf buffer, boolean isCritical) {
+        queue.offer(new OutboundMessage(buffer, isCritical));
+        // Only schedule a drain task if no drain task is pending or running
+        if (PENDING_DRAIN_COUNT_UPDATER.getAndIncrement(this) == 0) {
+            try {
+                eventLoop.execute(this);
+            } catch (RejectedExecutionException e) {
+                // The event loop has been shut down
+                OutboundMessage message;
+                while ((message = queue.poll()) != null) {
+                    message.buffer.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drain the queue in the event loop
+     */
+    @Override
+    public void run() {
+        int missed = 1;
+        do {
+            OutboundMessage message;
+            while ((message = queue.poll()) != null) {
+                if (!channel.isActive()) {
+                    message.buffer.release();
+                } else if (pendingMessages.isEmpty() && channel.isWritable()) {
+                    write(message);
+                } else {
+                    addPendingMessage(message);
+                }
+            }
+            missed = PENDING_DRAIN_COUNT_UPDATER.addAndGet(this, -missed);
+        } while (missed != 0);
+        if (pendingBytes > maxPendingBytes) {
+            applySlowConsumerPolicy();
+        }
+        tryFlush();
+    }
+
+    private void write(OutboundMessage message) {
+        ByteBuf buffer = message.buffer;
+        if (!channel.isActive()) {
+            buffer.release();
+            return;
+        }
+        int bytes = buffer.readableBytes();
+        Object msg = isWebSocketConnection
+                ? new BinaryWebSocketFrame(buffer)
+                : buffer;
+        // write() will release the buffer no matter it succeeds or fails
+        channel.write(msg, channel.newPromise().addListener(writeListener));
+        unflushedMessageCount++;
+        unflushedBytes += bytes;
+        if (unflushedMessageCount >= maxMessagesPerFlush || unflushedBytes >= maxBytesPerFlush) {
+            flush();
+        }
+    }
+
+    private void tryFlush() {
+        if (unflushedMessageCount == 0) {
+            return;
+        }
+        if (flushDelayNanos == 0) {
+            flush();
+        } else if (flushFuture == null) {
+            flushFuture = eventLoop.schedule(flushTask, flushDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        int messageCount = unflushedMessageCount;
+        if (messageCount == 0) {
+            return;
+        }
+        // Reset before flushing because flushing may make the channel writable,
+        // and then the pending messages will be written
+        unflushedMessageCount = 0;
+        unflushedBytes = 0;
+        channel.flush();
+        messagesPerFlushSummary.record(messageCount);
+    }
+
+    // Slow consumer
+
+    private void addPendingMessage(OutboundMessage message) {
+        pendingMessages.add(message);
+        pendingBytes += message.buffer.readableBytes();
+    }
+
+    private void writePendingMessages() {
+        OutboundMessage message;
+        while (channel.isWritable() && (message = pendingMessages.poll()) != null) {
+            pendingBytes -= message.buffer.readableBytes();
+            if (message.isResyncNotification) {
+                isResyncNotificationPending = false;
+            }
+            write(message);
+        }
+        tryFlush();
+    }
+
+    private void applySlowConsumerPolicy() {
+        switch (slowConsumerPolicy) {
+            case DROP_OLDEST_NOTIFICATIONS -> {
+                Iterator<OutboundMessage> iterator = pendingMessages.iterator();
+                while (pendingBytes > maxPendingBytes && iterator.hasNext()) {
+                    OutboundMessage message = iterator.next();
+                    if (!message.isCritical) {
+                        iterator.remove();
+                        dropMessage(message);
+                    }
+                }
+            }
+            case RESYNC -> {
+                int droppedCount = 0;
+                Iterator<OutboundMessage> iterator = pendingMessages.iterator();
+                while (iterator.hasNext()) {
+                    OutboundMessage message = iterator.next();
+                    if (!message.isCritical) {
+                        iterator.remove();
+                        dropMessage(message);
+                        droppedCount++;
+                    }
+                }
+                if (droppedCount > 0 && !isResyncNotificationPending) {
+                    isResyncNotificationPending = true;
+                    addPendingMessage(OutboundMessage.newResyncNotification());
+                }
+            }
+            case DISCONNECT -> {
+                releasePendingMessages();
+                if (!isSlowConsumerHandled) {
+                    isSlowConsumerHandled = true;
+                    slowConsumerHandler.run();
+                }
+            }
+        }
+    }
+
+    private void dropMessage(OutboundMessage message) {
+        pendingBytes -= message.buffer.readableBytes();
+        message.buffer.release();
+        droppedNotificationsCounter.increment();
+    }
+
+    private void releasePendingMessages() {
+        OutboundMessage message;
+        while ((message = pendingMessages.poll()) != null) {
+            message.buffer.release();
+        }
+        pendingBytes = 0;
+        isResyncNotificationPending = false;
+    }
+
+    private class ChannelStateHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable() && !pendingMessages.isEmpty()) {
+                writePendingMessages();
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            releasePendingMessages();
+            super.channelInactive(ctx);
+        }
+    }
+
+    private record OutboundMessage(ByteBuf buffer, boolean isCritical, boolean isResyncNotification) {
+        OutboundMessage(ByteBuf buffer, boolean isCritical) {
+            this(buffer, isCritical, false);
+        }
+
+        static OutboundMessage newResyncNotification() {
+            return new OutboundMessage(Unpooled.wrappedBuffer(RESYNC_NOTIFICATION), true, true);
+        }
+    }
+
+}
@@ -25,25 +25,40 @@ import im.turms.gateway.logging.ApiLoggingContext;
 import im.turms.gateway.logging.ClientApiLogging;
 import im.turms.gateway.pojo.bo.session.UserSession;
 import im.turms.gateway.pojo.bo.session.connection.NetConnection;
+import im.turms.gateway.service.impl.observability.MetricsService;
 import im.turms.gateway.service.mediator.ServiceMediator;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.dto.CloseReason;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.property.constant.SlowConsumerPolicy;
+import im.turms.server.common.property.env.gateway.OutboundBatchingProperties;
+import im.turms.server.common.property.env.gateway.OutboundBufferProperties;
 import im.turms.server.common.tracing.TracingCloseableContext;
 import im.turms.server.common.tracing.TracingContext;
 import im.turms.server.common.util.ThrowableUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.netty.buffer.ByteBuf;
-import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.channel.Channel;
+import io.netty.channel.WriteBufferWaterMark;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.Connection;
-import reactor.netty.NettyOutbound;
 
 import javax.annotation.Nullable;
 import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static im.turms.common.model.dto.request.TurmsRequest.KindCase.DELETE_SESSION_REQUEST;
+import static im.turms.gateway.constant.MetricsConstant.METRICS_TAG_TRANSPORT;
+import static im.turms.gateway.constant.MetricsConstant.OUTBOUND_DROPPED_NOTIFICATIONS_NAME;
+import static im.turms.gateway.constant.MetricsConstant.OUTBOUND_MESSAGES_PER_FLUSH_NAME;
+import static im.turms.gateway.constant.MetricsConstant.OUTBOUND_PENDING_BYTES_NAME;
 
 /**
  * @author James Chen
@@ -57,39 +72,101 @@ public abstract class UserSessionDispatcher {
     protected final ClientRequestDispatcher clientRequestDispatcher;
     protected final int closeIdleConnectionAfterSeconds;
 
+    private final int maxMessagesPerFlush;
+    private final int maxBytesPerFlush;
+    private final long flushDelayNanos;
+    private final WriteBufferWaterMark writeBufferWaterMark;
+    private final int maxPendingBytes;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final DistributionSummary messagesPerFlushSummary;
+    private final Counter droppedNotificationsCounter;
+    private final Set<OutboundMessageBatcher> batchers = ConcurrentHashMap.newKeySet();
+
     protected UserSessionDispatcher(ApiLoggingContext apiLoggingContext,
+                                    MetricsService metricsService,
                                     ServiceMediator serviceMediator,
                                     ClientRequestDispatcher clientRequestDispatcher,
+                                    OutboundBatchingProperties outboundBatchingProperties,
+                                    OutboundBufferProperties outboundBufferProperties,
+                                    String transport,
                                     int closeIdleConnectionAfterSeconds) {
         this.apiLoggingContext = apiLoggingContext;
         this.serviceMediator = serviceMediator;
         this.clientRequestDispatcher = clientRequestDispatcher;
         this.closeIdleConnectionAfterSeconds = closeIdleConnectionAfterSeconds;
+        // Flush every message if batching is disabled
+        if (outboundBatchingProperties.isEnabled()) {
+            maxMessagesPerFlush = outboundBatchingProperties.getMaxMessagesPerFlush();
+            maxBytesPerFlush = outboundBatchingProperties.getMaxBytesPerFlush();
+            flushDelayNanos = TimeUnit.MICROSECONDS.toNanos(outboundBatchingProperties.getFlushDelayMicros());
+        } else {
+            maxMessagesPerFlush = 1;
+            maxBytesPerFlush = 1;
+            flushDelayNanos = 0;
+        }
+        int highWaterMark = outboundBufferProperties.getWriteBufferHighWaterMarkBytes();
+        writeBufferWaterMark = new WriteBufferWaterMark(
+                Math.min(outboundBufferProperties.getWriteBufferLowWaterMarkBytes(), highWaterMark),
+                highWaterMark);
+        maxPendingBytes = outboundBufferProperties.getMaxPendingBytes();
+        slowConsumerPolicy = outboundBufferProperties.getSlowConsumerPolicy();
+        MeterRegistry registry = metricsService.getRegistry();
+        messagesPerFlushSummary = DistributionSummary.builder(OUTBOUND_MESSAGES_PER_FLUSH_NAME)
+                .description("The number of outbound messages sent with one flush")
+                .tag(METRICS_TAG_TRANSPORT, transport)
+                .register(registry);
+        droppedNotificationsCounter = Counter.builder(OUTBOUND_DROPPED_NOTIFICATIONS_NAME)
+                .description("The number of notifications dropped because the clients receive them too slowly")
+                .tag(METRICS_TAG_TRANSPORT, transport)
+                .register(registry);
+        Gauge.builder(OUTBOUND_PENDING_BYTES_NAME, batchers, UserSessionDispatcher::getPendingBytes)
+                .description("The bytes of the outbound messages that haven't been written to the sockets")
+                .tag(METRICS_TAG_TRANSPORT, transport)
+                .register(registry);
+    }
+
+    private static double getPendingBytes(Set<OutboundMessageBatcher> batchers) {
+        long bytes = 0;
+        for (OutboundMessageBatcher batcher : batchers) {
+            bytes += batcher.getPendingBytes();
+        }
+        return bytes;
     }
 
     protected ConnectionHandler bindConnectionWithSessionWrapper() {
         return (connection, isWebSocketConnection, in, out, onClose) -> {
             InetSocketAddress address = (InetSocketAddress) connection.address();
             NetConnection netConnection = NetConnection.create(connection);
+            Channel channel = connection.channel();
+            channel.config().setWriteBufferWaterMark(writeBufferWaterMark);
+            UserSessionWrapper[] sessionWrapperHolder = new UserSessionWrapper[1];
+            OutboundMessageBatcher batcher = new OutboundMessageBatcher(channel,
+                    isWebSocketConnection,
+                    maxMessagesPerFlush,
+                    maxBytesPerFlush,
+                    flushDelayNanos,
+                    maxPendingBytes,
+                    slowConsumerPolicy,
+                    messagesPerFlushSummary,
+                    droppedNotificationsCounter,
+                    () -> closeSlowConsumer(netConnection, sessionWrapperHolder[0].getUserSession()),
+                    t -> handleConnectionError(t, netConnection, sessionWrapperHolder[0].getUserSession(), TracingContext.NOOP));
+            batchers.add(batcher);
+            channel.closeFuture().addListener(future -> batchers.remove(batcher));
             UserSessionWrapper sessionWrapper = new UserSessionWrapper(netConnection, address, closeIdleConnectionAfterSeconds,
                     userSession -> userSession.setNotificationConsumer((turmsNotificationBuffer, tracingContext) -> {
                         turmsNotificationBuffer.touch(turmsNotificationBuffer);
-                        // sendObject() will release the buffer no matter it succeeds or fails
-                        NettyOutbound outbound = isWebSocketConnection
-                                ? out.sendObject(new BinaryWebSocketFrame(turmsNotificationBuffer))
-                                : out.sendObject(turmsNotificationBuffer);
-                        Mono.from(outbound)
-                                .subscribe(null, t -> handleConnectionError(t, netConnection, userSession, tracingContext));
+                        batcher.send(turmsNotificationBuffer, false);
                     }));
-            respondToRequests(connection, isWebSocketConnection, in, out, sessionWrapper);
+            sessionWrapperHolder[0] = sessionWrapper;
+            respondToRequests(connection, in, batcher, sessionWrapper);
             return tryRemoveSessionInfoOnConnectionClosed(onClose, sessionWrapper);
         };
     }
 
     private void respondToRequests(Connection connection,
-                                   boolean isWebSocketConnection,
                                    Flux<ByteBuf> in,
-                                   NettyOutbound out,
+                                   OutboundMessageBatcher batcher,
                                    UserSessionWrapper sessionWrapper) {
         in
                 .doOnNext(requestData -> {
@@ -109,12 +186,8 @@ public abstract class UserSessionDispatcher {
                                 handleNotificationError(throwable, sessionWrapper.getUserSession());
                                 return Mono.empty();
                             })
-                            .flatMap(turmsNotificationBuffer -> {
-                                NettyOutbound outbound = isWebSocketConnection
-                                        ? out.sendObject(new BinaryWebSocketFrame(turmsNotificationBuffer))
-                                        : out.sendObject(turmsNotificationBuffer);
-                                return Mono.from(outbound);
-                            })
+                            // The responses are critical because clients are waiting for them
+                            .doOnNext(turmsNotificationBuffer -> batcher.send(turmsNotificationBuffer, true))
                             .contextWrite(context -> context.put(TracingContext.CTX_KEY_NAME, ctx))
                             .doFinally(signal -> ctx.clearThreadContext())
                             .subscribe(null, t -> handleConnectionError(t, sessionWrapper.getConnection(),
@@ -167,6 +240,19 @@ public abstract class UserSessionDispatcher {
 
     // Error handling
 
+    private void closeSlowConsumer(NetConnection connection, @Nullable UserSession userSession) {
+        if (userSession == null) {
+            connection.close();
+            return;
+        }
+        Long userId = userSession.getUserId();
+        DeviceType deviceType = userSession.getDeviceType();
+        LOGGER.warn("Closing the session [{}:{}] because the client receives data too slowly", userId, deviceType);
+        serviceMediator.setLocalUserDeviceOffline(userId, deviceType, CloseReason.get(SessionCloseStatus.SLOW_CONSUMER))
+                .subscribe(null, t -> LOGGER.error("Caught an error while setting the local session [{}:{}] offline due to slow consumer",
+                        userId, deviceType, t));
+    }
+
     private void handleConnectionError(Throwable throwable,
                                        NetConnection connection,
                                        @Nullable UserSession userSession,
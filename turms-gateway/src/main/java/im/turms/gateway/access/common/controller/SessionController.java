@@ -27,7 +27,10 @@ import im.turms.gateway.access.common.model.UserSessionWrapper;
 import im.turms.gateway.access.tcp.dto.RequestHandlerResult;
 import im.turms.gateway.manager.UserSessionsManager;
 import im.turms.gateway.pojo.bo.session.UserSession;
+import im.turms.gateway.pojo.bo.session.connection.NetConnection;
+import im.turms.gateway.pojo.bo.session.connection.TcpConnection;
 import im.turms.gateway.service.mediator.ServiceMediator;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
 import im.turms.server.common.bo.location.Coordinates;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.logging.core.logger.Logger;
@@ -102,12 +105,28 @@ public class SessionController {
         DeviceType finalDeviceType = deviceType;
         return processLoginRequestMono.flatMap(session -> {
             if (idleConnectionTimeout == null || idleConnectionTimeout.cancel()) {
-                if (sessionWrapper.getConnection().isConnected()) {
+                NetConnection connection = sessionWrapper.getConnection();
+                if (connection.isConnected()) {
+                    // Only the sessions resumed with resumption tokens have been attached to connections
+                    // because new sessions are attached to connections by setUserSession()
+                    boolean isResumed = session.getConnection() != null;
+                    // Enable compression before replying so that the clients that opted in
+                    // can receive compressed frames as soon as the session is created
+                    if (connection instanceof TcpConnection tcpConnection
+                            && DeflateFrameCompressor.DEVICE_DETAILS_VALUE
+                            .equals(deviceDetails.get(DeflateFrameCompressor.DEVICE_DETAILS_KEY))) {
+                        tcpConnection.enableCompression();
+                    }
                     sessionWrapper.setUserSession(session);
                     UserSessionsManager userSessionsManager = serviceMediator.getUserSessionsManager(userId);
-                    serviceMediator.onSessionEstablished(userSessionsManager, session.getDeviceType());
-                    serviceMediator.triggerGoOnlinePlugins(userSessionsManager, session)
-                            .subscribe(null, t -> LOGGER.error("Caught an error while triggering the plugins of goOnline()", t));
+                    if (isResumed) {
+                        // The user didn't go offline, so don't count it as a new login or trigger goOnline()
+                        serviceMediator.onSessionResumed(userSessionsManager, session.getDeviceType());
+                    } else {
+                        serviceMediator.onSessionEstablished(userSessionsManager, session.getDeviceType());
+                        serviceMediator.triggerGoOnlinePlugins(userSessionsManager, session)
+                                .subscribe(null, t -> LOGGER.error("Caught an error while triggering the plugins of goOnline()", t));
+                    }
                     return Mono.just(new RequestHandlerResult(TurmsStatusCode.OK));
                 } else {
                     return serviceMediator.setLocalUserDeviceOffline(userId, finalDeviceType, SessionCloseStatus.LOGIN_TIMEOUT)
@@ -21,6 +21,7 @@ import im.turms.gateway.access.common.ClientRequestDispatcher;
 import im.turms.gateway.access.common.UserSessionDispatcher;
 import im.turms.gateway.access.tcp.factory.TcpServerFactory;
 import im.turms.gateway.logging.ApiLoggingContext;
+import im.turms.gateway.service.impl.observability.MetricsService;
 import im.turms.gateway.service.impl.session.SessionService;
 import im.turms.gateway.service.mediator.ServiceMediator;
 import im.turms.server.common.healthcheck.ServerStatusManager;
@@ -51,13 +52,20 @@ public class TcpDispatcher extends UserSessionDispatcher {
     private final int port;
 
     public TcpDispatcher(ApiLoggingContext apiLoggingContext,
+                         MetricsService metricsService,
                          TurmsPropertiesManager propertiesManager,
                          BlocklistService blocklistService,
                          ServiceMediator serviceMediator,
                          ServerStatusManager serverStatusManager,
                          SessionService sessionService,
                          ClientRequestDispatcher clientRequestDispatcher) {
-        super(apiLoggingContext, serviceMediator, clientRequestDispatcher,
+        super(apiLoggingContext,
+                metricsService,
+                serviceMediator,
+                clientRequestDispatcher,
+                propertiesManager.getLocalProperties().getGateway().getOutboundBatching(),
+                propertiesManager.getLocalProperties().getGateway().getOutboundBuffer(),
+                "tcp",
                 propertiesManager.getLocalProperties().getGateway().getTcp().getCloseIdleConnectionAfterSeconds());
         GatewayProperties gatewayProperties = propertiesManager.getLocalProperties().getGateway();
         TcpProperties tcpProperties = gatewayProperties.getTcp();
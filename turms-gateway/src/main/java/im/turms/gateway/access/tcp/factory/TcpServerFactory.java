@@ -23,8 +23,10 @@ import im.turms.gateway.constant.MetricsConstant;
 import im.turms.gateway.constant.ThreadNameConstant;
 import im.turms.gateway.service.impl.session.SessionService;
 import im.turms.server.common.access.common.resource.LoopResourcesFactory;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
 import im.turms.server.common.healthcheck.ServerStatusManager;
 import im.turms.server.common.metrics.TurmsMicrometerChannelMetricsRecorder;
+import im.turms.server.common.property.env.gateway.TcpCompressionProperties;
 import im.turms.server.common.property.env.gateway.TcpProperties;
 import im.turms.server.common.service.blocklist.BlocklistService;
 import im.turms.server.common.util.SslUtil;
@@ -56,7 +58,16 @@ public final class TcpServerFactory {
                                           SessionService sessionService,
                                           ConnectionHandler handler,
                                           int maxFrameLength) {
-        TcpHandlerConfig handlerConfig = new TcpHandlerConfig(blocklistService, serverStatusManager, sessionService, maxFrameLength);
+        TcpCompressionProperties compressionProperties = tcpProperties.getCompression();
+        DeflateFrameCompressor compressor = compressionProperties.isEnabled()
+                ? new DeflateFrameCompressor(compressionProperties.getCompressionLevel())
+                : null;
+        TcpHandlerConfig handlerConfig = new TcpHandlerConfig(blocklistService,
+                serverStatusManager,
+                sessionService,
+                compressor,
+                compressionProperties,
+                maxFrameLength);
         TcpServer server = TcpServer.create()
                 .host(tcpProperties.getHost())
                 .port(tcpProperties.getPort())
@@ -20,25 +20,56 @@ package im.turms.gateway.access.tcp.handler;
 import im.turms.gateway.access.common.handler.ServiceAvailabilityHandler;
 import im.turms.gateway.service.impl.session.SessionService;
 import im.turms.server.common.access.tcp.codec.CodecFactory;
+import im.turms.server.common.access.tcp.codec.CompressingFrameEncoder;
+import im.turms.server.common.access.tcp.codec.DecompressingFrameDecoder;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
 import im.turms.server.common.healthcheck.ServerStatusManager;
+import im.turms.server.common.property.env.gateway.TcpCompressionProperties;
 import im.turms.server.common.service.blocklist.BlocklistService;
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 import reactor.netty.Connection;
 
+import javax.annotation.Nullable;
+
 /**
  * @author James Chen
  */
 public class TcpHandlerConfig {
 
+    public static final String VARINT_LENGTH_FIELD_PREPENDER_NAME = "varintLengthFieldPrepender";
+    public static final String COMPRESSING_FRAME_ENCODER_NAME = "compressingFrameEncoder";
+
+    /**
+     * The encoder is installed only when the client opts in to compression
+     * because the clients that don't support compression cannot recognize compressed frames
+     */
+    public static final AttributeKey<CompressingFrameEncoder> COMPRESSING_FRAME_ENCODER =
+            AttributeKey.valueOf(COMPRESSING_FRAME_ENCODER_NAME);
+
     private final ServiceAvailabilityHandler serviceAvailabilityHandler;
     private final int maxFrameLength;
+    @Nullable
+    private final CompressingFrameEncoder compressingFrameEncoder;
+    @Nullable
+    private final DecompressingFrameDecoder decompressingFrameDecoder;
 
     public TcpHandlerConfig(BlocklistService blocklistService,
                             ServerStatusManager serverStatusManager,
                             SessionService sessionService,
+                            @Nullable DeflateFrameCompressor compressor,
+                            TcpCompressionProperties compressionProperties,
                             int maxFrameLength) {
         this.maxFrameLength = maxFrameLength;
         serviceAvailabilityHandler = new ServiceAvailabilityHandler(blocklistService, serverStatusManager, sessionService);
+        if (compressor == null) {
+            compressingFrameEncoder = null;
+            decompressingFrameDecoder = null;
+        } else {
+            compressingFrameEncoder = CodecFactory
+                    .getCompressingFrameEncoder(compressor, compressionProperties.getMinBytesToCompress());
+            decompressingFrameDecoder = CodecFactory.getDecompressingFrameDecoder(maxFrameLength);
+        }
     }
 
     public void configureChannel(Channel channel) {
@@ -48,9 +79,16 @@ public class TcpHandlerConfig {
     public void configureConnection(Connection connection) {
         // Inbound
         connection.addHandlerLast("varintLengthBasedFrameDecoder", CodecFactory.getExtendedVarintLengthBasedFrameDecoder(maxFrameLength));
+        // Uncompressed frames are passed through, so it's safe to install the decoder for all clients
+        if (decompressingFrameDecoder != null) {
+            connection.addHandlerLast("decompressingFrameDecoder", decompressingFrameDecoder);
+        }
 
         // Outbound
-        connection.addHandlerLast("varintLengthFieldPrepender", CodecFactory.getVarintLengthFieldPrepender());
+        connection.addHandlerLast(VARINT_LENGTH_FIELD_PREPENDER_NAME, CodecFactory.getVarintLengthFieldPrepender());
+        if (compressingFrameEncoder != null) {
+            connection.channel().attr(COMPRESSING_FRAME_ENCODER).set(compressingFrameEncoder);
+        }
         // For advanced operations, they encode objects to buffers themselves,
         // "protobufFrameEncoder" will just ignore them. But some simple
         // operations will pass TurmsNotification instances down, so we still need to encode them.
@@ -21,6 +21,7 @@ import im.turms.gateway.access.common.ClientRequestDispatcher;
 import im.turms.gateway.access.common.UserSessionDispatcher;
 import im.turms.gateway.access.websocket.factory.WebSocketFactory;
 import im.turms.gateway.logging.ApiLoggingContext;
+import im.turms.gateway.service.impl.observability.MetricsService;
 import im.turms.gateway.service.impl.session.SessionService;
 import im.turms.gateway.service.mediator.ServiceMediator;
 import im.turms.server.common.cluster.node.Node;
@@ -49,13 +50,20 @@ public class WebSocketDispatcher extends UserSessionDispatcher {
     public WebSocketDispatcher(
             Node node,
             ApiLoggingContext apiLoggingContext,
+            MetricsService metricsService,
             BlocklistService blocklistService,
             TurmsPropertiesManager propertiesManager,
             ServerStatusManager serverStatusManager,
             ServiceMediator serviceMediator,
             SessionService sessionService,
             ClientRequestDispatcher clientRequestDispatcher) {
-        super(apiLoggingContext, serviceMediator, clientRequestDispatcher,
+        super(apiLoggingContext,
+                metricsService,
+                serviceMediator,
+                clientRequestDispatcher,
+                propertiesManager.getLocalProperties().getGateway().getOutboundBatching(),
+                propertiesManager.getLocalProperties().getGateway().getOutboundBuffer(),
+                "websocket",
                 node.getSharedProperties().getGateway().getWebsocket().getCloseIdleConnectionAfterSeconds());
         GatewayProperties gatewayProperties = propertiesManager.getLocalProperties().getGateway();
         WebSocketProperties webSocketProperties = gatewayProperties.getWebsocket();
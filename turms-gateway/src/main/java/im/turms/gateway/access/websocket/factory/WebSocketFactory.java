@@ -25,25 +25,34 @@ import im.turms.gateway.service.impl.session.SessionService;
 import im.turms.server.common.access.common.resource.LoopResourcesFactory;
 import im.turms.server.common.healthcheck.ServerStatusManager;
 import im.turms.server.common.metrics.TurmsMicrometerChannelMetricsRecorder;
+import im.turms.server.common.property.env.gateway.WebSocketCompressionProperties;
 import im.turms.server.common.property.env.gateway.WebSocketProperties;
 import im.turms.server.common.service.blocklist.BlocklistService;
 import im.turms.server.common.util.SslUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
 import org.reactivestreams.Publisher;
 import org.springframework.boot.web.server.Ssl;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.Connection;
 import reactor.netty.DisposableServer;
+import reactor.netty.NettyPipeline;
 import reactor.netty.http.server.HttpServer;
 import reactor.netty.http.server.HttpServerRequest;
 import reactor.netty.http.server.HttpServerResponse;
 import reactor.netty.http.server.WebsocketServerSpec;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.function.BiFunction;
 
@@ -102,7 +111,7 @@ public final class WebSocketFactory {
                 .childOption(TCP_NODELAY, true)
                 .runOn(LoopResourcesFactory.createForServer(ThreadNameConstant.GATEWAY_WS_PREFIX))
                 .metrics(true, () -> new TurmsMicrometerChannelMetricsRecorder(MetricsConstant.CLIENT_NETWORK, "websocket"))
-                .handle(getHttpRequestHandler(handler, serverSpec))
+                .handle(getHttpRequestHandler(handler, serverSpec, getCompressionHandshaker(webSocketProperties.getCompression())))
                 .doOnChannelInit((connectionObserver, channel, remoteAddress) ->
                         channel.pipeline().addFirst("serviceAvailabilityHandler", serviceAvailabilityHandler));
         Ssl ssl = webSocketProperties.getSsl();
@@ -123,7 +132,8 @@ public final class WebSocketFactory {
      */
     private static BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> getHttpRequestHandler(
             ConnectionHandler handler,
-            WebsocketServerSpec serverSpec) {
+            WebsocketServerSpec serverSpec,
+            @Nullable PerMessageDeflateServerExtensionHandshaker compressionHandshaker) {
         // Return MonoNever to keep the connection alive
         // Return MonoEmpty to close the connection
         return (request, response) -> {
@@ -146,7 +156,11 @@ public final class WebSocketFactory {
                         // Close the TCP connection
                         .then();
             }
-            // 3. Upgrade to WebSocket
+            // 3. Negotiate permessage-deflate
+            if (compressionHandshaker != null) {
+                addCompressionHandler(request, compressionHandshaker);
+            }
+            // 4. Upgrade to WebSocket
             // reactor.netty.http.server.HttpServer.HttpServerHandle.onStateChange
             int maxFramePayloadLength = serverSpec.maxFramePayloadLength();
             return response.sendWebsocket((in, out) -> {
@@ -165,6 +179,62 @@ public final class WebSocketFactory {
         };
     }
 
+    @Nullable
+    private static PerMessageDeflateServerExtensionHandshaker getCompressionHandshaker(
+            WebSocketCompressionProperties compressionProperties) {
+        if (!compressionProperties.isEnabled()) {
+            return null;
+        }
+        int minBytesToCompress = compressionProperties.getMinBytesToCompress();
+        WebSocketExtensionFilter encoderFilter = frame -> frame.content().readableBytes() < minBytesToCompress;
+        WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return encoderFilter;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+        return new PerMessageDeflateServerExtensionHandshaker(compressionProperties.getCompressionLevel(),
+                false,
+                PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE,
+                compressionProperties.isAllowServerNoContextTakeover(),
+                compressionProperties.isPreferClientNoContextTakeover(),
+                filterProvider);
+    }
+
+    /**
+     * WebsocketServerSpec#compress only supports the default options of Netty,
+     * so we negotiate the extension with our own handshaker before upgrading
+     * in the same way as WebsocketServerOperations does.
+     *
+     * @see reactor.netty.http.server.WebsocketServerOperations
+     */
+    private static void addCompressionHandler(HttpServerRequest request,
+                                              PerMessageDeflateServerExtensionHandshaker handshaker) {
+        Connection connection = (Connection) request;
+        ChannelHandlerContext context = connection.channel().pipeline().context(NettyPipeline.ReactiveBridge);
+        if (context == null) {
+            return;
+        }
+        WebSocketServerExtensionHandler extensionHandler = new WebSocketServerExtensionHandler(handshaker);
+        // The handler reads the extensions requested by the client,
+        // and adds the extension to the handshake response when upgrading
+        DefaultHttpRequest handshakeRequest = new DefaultHttpRequest(request.version(),
+                request.method(),
+                request.uri(),
+                request.requestHeaders());
+        try {
+            extensionHandler.channelRead(context, handshakeRequest);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to negotiate the permessage-deflate extension", e);
+        }
+        connection.addHandlerFirst(NettyPipeline.WsCompressionHandler, extensionHandler);
+    }
+
     private static boolean isPreFlightRequest(HttpServerRequest request) {
         if (!OPTIONS.equals(request.method())) {
             return false;
@@ -29,4 +29,12 @@ public final class MetricsConstant {
 
     public static final String LOGGED_IN_USERS_COUNTER_NAME = "user.logged_in";
     public static final String ONLINE_USERS_GAUGE_NAME = "user.online";
+    public static final String RESUMED_SESSIONS_COUNTER_NAME = "user.session.resumed";
+    public static final String PENDING_PASSWORD_VERIFICATIONS_GAUGE_NAME = "user.password_verification.pending";
+    public static final String REJECTED_PASSWORD_VERIFICATIONS_COUNTER_NAME = "user.password_verification.rejected";
+
+    public static final String OUTBOUND_MESSAGES_PER_FLUSH_NAME = CLIENT_NETWORK + ".outbound.messages_per_flush";
+    public static final String OUTBOUND_PENDING_BYTES_NAME = CLIENT_NETWORK + ".outbound.pending_bytes";
+    public static final String OUTBOUND_DROPPED_NOTIFICATIONS_NAME = CLIENT_NETWORK + ".outbound.dropped_notifications";
+    public static final String METRICS_TAG_TRANSPORT = "transport";
 }
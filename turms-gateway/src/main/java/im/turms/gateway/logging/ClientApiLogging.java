@@ -18,7 +18,6 @@
 package im.turms.gateway.logging;
 
 import im.turms.common.constant.DeviceType;
-import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.common.model.dto.request.TurmsRequest;
 import im.turms.server.common.util.ByteBufUtil;
 import im.turms.server.common.util.DateUtil;
@@ -45,37 +44,6 @@ public final class ClientApiLogging {
      * 2. We use the common log pattern (including the trace ID) so that our
      * users don't need to write different parsers for them.
      */
-    public static void log(@Nullable Integer sessionId,
-                           @Nullable Long userId,
-                           @Nullable DeviceType deviceType,
-                           @Nullable Integer version,
-                           String ip,
-                           long requestId,
-                           TurmsRequest.KindCase requestType,
-                           int requestSize,
-                           long requestTime,
-                           TurmsNotification response,
-                           long processingTime) {
-        ByteBuf buffer = ByteBufUtil.join(64, LOG_FIELD_DELIMITER,
-                // session information
-                sessionId,
-                userId,
-                StringUtil.toString(deviceType),
-                version,
-                ip,
-                // request information
-                Formatter.toCharBytes(requestId),
-                requestType.name(),
-                Formatter.toCharBytes(requestSize),
-                DateUtil.toBytes(requestTime),
-                // response information
-                Formatter.toCharBytes(response.getCode()),
-                response.hasData() ? response.getData().getKindCase().name() : null,
-                Formatter.toCharBytes(response.getSerializedSize()),
-                Formatter.toCharBytes(processingTime));
-        CLIENT_API_LOGGER.info(buffer);
-    }
-
     public static void log(@Nullable Integer sessionId,
                            @Nullable Long userId,
                            @Nullable DeviceType deviceType,
@@ -17,7 +17,6 @@
 
 package im.turms.gateway.manager;
 
-import im.turms.common.constant.DeviceType;
 import im.turms.common.constant.statuscode.SessionCloseStatus;
 import im.turms.gateway.access.udp.UdpDispatcher;
 import im.turms.gateway.constant.ThreadNameConstant;
@@ -28,13 +27,15 @@ import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.service.session.UserStatusService;
 import io.lettuce.core.protocol.LongKeyGenerator;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.Setter;
 
 import javax.annotation.Nullable;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author James Chen
@@ -46,9 +47,17 @@ import java.util.Set;
  * and send them to Redis periodically:
  * Waste memory and loss performance due to the operations on the MPSC queue
  * <p>
- * 3. (Adopted) Do not store the requests, and just iterate over the original
+ * 3. Do not store the requests, and just iterate over the original
  * online user map to get a snapshot of the online users that need to update
- * online status (go offline or refresh heartbeat)
+ * online status (go offline or refresh heartbeat):
+ * The cost of every scan is proportional to the number of online sessions
+ * even if only a few of them need to be updated
+ * <p>
+ * 4. (Adopted) Schedule a heartbeat check for every session on a timing wheel
+ * at its next deadline (refresh the heartbeat, switch to UDP, or close because idle),
+ * collect the users to refresh on the timer thread, and flush them to Redis periodically.
+ * Every tick only touches the sessions that are due, and the heartbeat
+ * requests themselves don't need to enqueue anything
  */
 public class HeartbeatManager {
 
@@ -57,50 +66,43 @@ public class HeartbeatManager {
     private static final CloseReason HEARTBEAT_TIMEOUT = CloseReason.get(SessionCloseStatus.HEARTBEAT_TIMEOUT);
 
     private static final int UPDATE_HEARTBEAT_INTERVAL_MILLIS = 1000;
-    private static final float UPDATE_HEARTBEAT_INTERVAL_FACTOR = UPDATE_HEARTBEAT_INTERVAL_MILLIS / 1000f;
+    /**
+     * With the tick duration of 1s, 1024 ticks per wheel can cover the deadlines within about 17 minutes
+     * without extra rounds, which is enough for the default properties
+     */
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final int INITIAL_USER_ID_BUFFER_SIZE = 1024;
 
     private final SessionService sessionService;
     private final UserStatusService userStatusService;
-    private final Map<Long, UserSessionsManager> sessionsManagerByUserId;
-    private final Thread workerThread;
+    private final HashedWheelTimer timer;
+    private volatile boolean isStopped;
     private int closeIdleSessionAfterSeconds;
     private int closeIdleSessionAfterMillis;
-    private int expectedFractionPerSecond;
     @Setter
     private int minHeartbeatIntervalMillis;
     @Setter
     private int switchProtocolAfterMillis;
 
+    /**
+     * Only accessed by the timer thread
+     */
+    private long[] userIdsToRefresh = new long[INITIAL_USER_ID_BUFFER_SIZE];
+    private int userIdsToRefreshSize;
+
     public HeartbeatManager(SessionService sessionService,
                             UserStatusService userStatusService,
-                            Map<Long, UserSessionsManager> sessionsManagerByUserId,
-                            int clientHeartbeatIntervalSeconds,
                             int closeIdleSessionAfterSeconds,
                             int minHeartbeatIntervalSeconds,
                             int switchProtocolAfterSeconds) {
         this.sessionService = sessionService;
         this.userStatusService = userStatusService;
-        this.sessionsManagerByUserId = sessionsManagerByUserId;
-        setClientHeartbeatIntervalSeconds(clientHeartbeatIntervalSeconds);
         setCloseIdleSessionAfterSeconds(closeIdleSessionAfterSeconds);
         this.minHeartbeatIntervalMillis = minHeartbeatIntervalSeconds * 1000;
         this.switchProtocolAfterMillis = switchProtocolAfterSeconds * 1000;
         DefaultThreadFactory factory = new DefaultThreadFactory(ThreadNameConstant.CLIENT_HEARTBEAT_REFRESHER, true);
-        workerThread = factory.newThread(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    updateOnlineUsersTtl();
-                } catch (Exception e) {
-                    LOGGER.error("Failed to update the TTL of users on Redis", e);
-                }
-                try {
-                    Thread.sleep(UPDATE_HEARTBEAT_INTERVAL_MILLIS);
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        });
-        workerThread.start();
+        timer = new HashedWheelTimer(factory, UPDATE_HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+        newTimeout(this::updateOnlineUsersTtl, UPDATE_HEARTBEAT_INTERVAL_MILLIS);
     }
 
     public void setCloseIdleSessionAfterSeconds(int closeIdleSessionAfterSeconds) {
@@ -108,84 +110,138 @@ public class HeartbeatManager {
         closeIdleSessionAfterMillis = closeIdleSessionAfterSeconds * 1000;
     }
 
-    public void setClientHeartbeatIntervalSeconds(int clientHeartbeatIntervalSeconds) {
-        expectedFractionPerSecond = clientHeartbeatIntervalSeconds > 0
-                ? clientHeartbeatIntervalSeconds
-                : 30;
-    }
-
     public void destroy() {
-        workerThread.interrupt();
+        isStopped = true;
+        timer.stop();
     }
 
-    private void updateOnlineUsersTtl() {
-        Set<Map.Entry<Long, UserSessionsManager>> entries = sessionsManagerByUserId.entrySet();
-        LongKeyGenerator userIds = collectOnlineUsersAndUpdateStatus(entries);
-        userStatusService.updateOnlineUsersTtl(userIds, closeIdleSessionAfterSeconds)
-                .subscribe(null, t -> LOGGER.error("Failed to update online users", t));
+    /**
+     * Start checking the heartbeat of the new session until the session is closed
+     */
+    public void scheduleHeartbeatCheck(UserSession session) {
+        session.setHeartbeatTimeout(newTimeout(timeout -> checkHeartbeat(session), UPDATE_HEARTBEAT_INTERVAL_MILLIS));
     }
 
-    private LongKeyGenerator collectOnlineUsersAndUpdateStatus(Set<Map.Entry<Long, UserSessionsManager>> entries) {
-        int onlineUserCount = entries.size();
-        int expectedUserCountToRefreshPerInterval = (int) (UPDATE_HEARTBEAT_INTERVAL_FACTOR * onlineUserCount / expectedFractionPerSecond);
-        Iterator<Map.Entry<Long, UserSessionsManager>> iterator = entries.iterator();
-        return new LongKeyGenerator() {
-            final long now = System.currentTimeMillis();
+    private void checkHeartbeat(UserSession session) {
+        if (!session.isOpen()) {
+            return;
+        }
+        long delay;
+        try {
+            delay = closeOrUpdateSession(session, System.currentTimeMillis());
+        } catch (Exception e) {
+            LOGGER.error("Failed to check the heartbeat of the session: {}", session, e);
+            delay = UPDATE_HEARTBEAT_INTERVAL_MILLIS;
+        }
+        if (delay >= 0 && session.isOpen()) {
+            session.setHeartbeatTimeout(newTimeout(timeout -> checkHeartbeat(session),
+                    Math.max(delay, UPDATE_HEARTBEAT_INTERVAL_MILLIS)));
+        }
+    }
 
-            @Override
-            public int expectedSize() {
-                return expectedUserCountToRefreshPerInterval;
+    /**
+     * @return the delay in millis until the next check, or -1 if the session doesn't need to be checked anymore
+     */
+    private long closeOrUpdateSession(UserSession session, long now) {
+        long lastRequestTimestamp = session.getLastRequestTimestampMillis();
+        if (session.isConnected()
+                && UdpDispatcher.isEnabled()
+                && session.supportsSwitchingToUdp()) {
+            long switchProtocolDelay = lastRequestTimestamp + switchProtocolAfterMillis - now;
+            if (switchProtocolDelay < 0) {
+                session.getConnection().switchToUdp();
+                return UPDATE_HEARTBEAT_INTERVAL_MILLIS;
             }
-
-            @Override
-            public long next() {
-                while (iterator.hasNext()) {
-                    Map.Entry<Long, UserSessionsManager> entry = iterator.next();
-                    Map<DeviceType, UserSession> sessionMap = entry.getValue().getSessionMap();
-                    for (Map.Entry<DeviceType, UserSession> sessionEntry : sessionMap.entrySet()) {
-                        Long userId = closeOrUpdateSession(sessionEntry.getValue(), now);
-                        if (userId != null) {
-                            return userId;
-                        }
-                    }
-                }
-                return -1;
+        }
+        long lastHeartbeatRequestTimestamp = session.getLastHeartbeatRequestTimestampMillis();
+        if (closeIdleSessionAfterMillis > 0 && now - lastHeartbeatRequestTimestamp > closeIdleSessionAfterMillis) {
+            sessionService.setLocalSessionOfflineByUserIdAndDeviceType(
+                            session.getUserId(),
+                            session.getDeviceType(),
+                            HEARTBEAT_TIMEOUT)
+                    .subscribe(null, t -> LOGGER.error("Caught an error while disconnecting the local session: {} with the close reason: {}",
+                            session, HEARTBEAT_TIMEOUT, t));
+            return -1;
+        }
+        long lastHeartbeatUpdateTimestamp = session.getLastHeartbeatUpdateTimestampMillis();
+        long refreshDelay = lastHeartbeatUpdateTimestamp + minHeartbeatIntervalMillis - now;
+        if (refreshDelay <= 0) {
+            if (lastHeartbeatRequestTimestamp > lastHeartbeatUpdateTimestamp) {
+                session.setLastHeartbeatUpdateTimestampMillis(now);
+                addUserIdToRefresh(session.getUserId());
             }
-        };
+            // If no heartbeat has been received since the last update,
+            // check again after the min interval instead of polling every tick
+            // because we cannot know when the next heartbeat request will come
+            refreshDelay = minHeartbeatIntervalMillis;
+        }
+        return getNextDelay(session, now, lastRequestTimestamp, lastHeartbeatRequestTimestamp, refreshDelay);
     }
 
-    @Nullable
-    private Long closeOrUpdateSession(UserSession session, long now) {
-        if (!session.isOpen()) {
-            return null;
+    private long getNextDelay(UserSession session,
+                              long now,
+                              long lastRequestTimestamp,
+                              long lastHeartbeatRequestTimestamp,
+                              long refreshDelay) {
+        long delay = refreshDelay;
+        if (closeIdleSessionAfterMillis > 0) {
+            // Add 1 because the session is closed only if the elapsed time is greater than the threshold
+            delay = Math.min(delay, lastHeartbeatRequestTimestamp + closeIdleSessionAfterMillis + 1 - now);
         }
-        int requestElapsedTime = (int) (now - session.getLastRequestTimestampMillis());
-        if (requestElapsedTime > switchProtocolAfterMillis
-                && session.isConnected()
+        if (session.isConnected()
                 && UdpDispatcher.isEnabled()
                 && session.supportsSwitchingToUdp()) {
-            session.getConnection().switchToUdp();
-            return null;
+            delay = Math.min(delay, lastRequestTimestamp + switchProtocolAfterMillis - now);
         }
-        long lastHeartbeatUpdateTimestamp = session.getLastHeartbeatUpdateTimestampMillis();
-        if (minHeartbeatIntervalMillis > 0
-                && now - lastHeartbeatUpdateTimestamp < minHeartbeatIntervalMillis) {
-            return null;
+        return delay;
+    }
+
+    private void addUserIdToRefresh(long userId) {
+        if (userIdsToRefreshSize == userIdsToRefresh.length) {
+            userIdsToRefresh = Arrays.copyOf(userIdsToRefresh, userIdsToRefreshSize << 1);
         }
-        long lastHeartbeatRequestTimestamp = session.getLastHeartbeatRequestTimestampMillis();
-        if (lastHeartbeatRequestTimestamp <= lastHeartbeatUpdateTimestamp) {
+        userIdsToRefresh[userIdsToRefreshSize++] = userId;
+    }
+
+    private void updateOnlineUsersTtl(Timeout timeout) {
+        try {
+            if (userIdsToRefreshSize > 0) {
+                // The generator is consumed synchronously, so we can reuse the buffer after the method returns
+                userStatusService.updateOnlineUsersTtl(new LongKeyGenerator() {
+                            private int index;
+
+                            @Override
+                            public int expectedSize() {
+                                return userIdsToRefreshSize;
+                            }
+
+                            @Override
+                            public long next() {
+                                return index < userIdsToRefreshSize
+                                        ? userIdsToRefresh[index++]
+                                        : -1;
+                            }
+                        }, closeIdleSessionAfterSeconds)
+                        .subscribe(null, t -> LOGGER.error("Failed to update online users", t));
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to update the TTL of users on Redis", e);
+        } finally {
+            userIdsToRefreshSize = 0;
+            newTimeout(this::updateOnlineUsersTtl, UPDATE_HEARTBEAT_INTERVAL_MILLIS);
+        }
+    }
+
+    @Nullable
+    private Timeout newTimeout(TimerTask task, long delayMillis) {
+        if (isStopped) {
             return null;
         }
-        int heartbeatElapsedTime = (int) (now - lastHeartbeatRequestTimestamp);
-        if (closeIdleSessionAfterMillis > 0 && heartbeatElapsedTime > closeIdleSessionAfterMillis) {
-            sessionService.setLocalSessionOfflineByUserIdAndDeviceType(
-                            session.getUserId(),
-                            session.getDeviceType(),
-                            HEARTBEAT_TIMEOUT)
-                    .subscribe(null, t -> LOGGER.error("Caught an error while disconnecting the local session: {} with the close reason: {}",
-                            session, HEARTBEAT_TIMEOUT));
+        try {
+            return timer.newTimeout(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // The timer has been stopped
+            return null;
         }
-        session.setLastHeartbeatUpdateTimestampMillis(now);
-        return session.getUserId();
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.gateway.manager;
+
+import im.turms.common.constant.DeviceType;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Issues and verifies the tokens used by clients to reattach to their disconnected sessions
+ * on the local node without logging in again.
+ * <p>
+ * A token consists of the session ID, the resumption sequence of the session, the expiration time,
+ * and a truncated HMAC-SHA256 signature of them together with the user ID and the device type.
+ * The sequence makes a token single-use because it is increased once the session is resumed with it
+ * or the tokens of the session are revoked (e.g. the password of the user is changed).
+ * The key is generated randomly when the node starts because a session can only be resumed
+ * on the node that holds it, so the tokens issued by other nodes or before restarting are always rejected.
+ * <p>
+ * The token is sent to the client as the reason of the session notification,
+ * and the client presents it in the device details of CreateSessionRequest with the key
+ * {@link #DEVICE_DETAILS_KEY} when reconnecting.
+ *
+ * @author James Chen
+ */
+public final class SessionResumptionTokenManager {
+
+    public static final String DEVICE_DETAILS_KEY = "resumptionToken";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+    private static final int SIGNATURE_LENGTH = 16;
+    private static final int SIGNED_FIELDS_LENGTH = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int TOKEN_LENGTH = SIGNED_FIELDS_LENGTH + SIGNATURE_LENGTH;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final FastThreadLocal<Mac> macs;
+
+    public SessionResumptionTokenManager() {
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+        macs = new FastThreadLocal<>() {
+            @Override
+            protected Mac initialValue() throws Exception {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(keySpec);
+                return mac;
+            }
+        };
+    }
+
+    public String issue(long userId, DeviceType deviceType, int sessionId, int sequence, long expireAt) {
+        byte[] token = new byte[TOKEN_LENGTH];
+        writeInt(token, 0, sessionId);
+        writeInt(token, Integer.BYTES, sequence);
+        writeLong(token, Integer.BYTES * 2, expireAt);
+        byte[] signature = sign(userId, deviceType, token);
+        System.arraycopy(signature, 0, token, SIGNED_FIELDS_LENGTH, SIGNATURE_LENGTH);
+        return ENCODER.encodeToString(token);
+    }
+
+    /**
+     * @return the session ID and the resumption sequence if the token is issued by the local node
+     * for the user and the device type and hasn't expired, or null otherwise
+     */
+    @Nullable
+    public VerifiedToken verify(long userId, DeviceType deviceType, @Nullable String token, long now) {
+        if (token == null) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = DECODER.decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != TOKEN_LENGTH) {
+            return null;
+        }
+        long expireAt = readLong(bytes, Integer.BYTES * 2);
+        if (expireAt <= now) {
+            return null;
+        }
+        byte[] expectedSignature = sign(userId, deviceType, bytes);
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        System.arraycopy(bytes, SIGNED_FIELDS_LENGTH, signature, 0, SIGNATURE_LENGTH);
+        byte[] truncatedExpectedSignature = new byte[SIGNATURE_LENGTH];
+        System.arraycopy(expectedSignature, 0, truncatedExpectedSignature, 0, SIGNATURE_LENGTH);
+        // Compare in constant time
+        if (!MessageDigest.isEqual(signature, truncatedExpectedSignature)) {
+            return null;
+        }
+        return new VerifiedToken(readInt(bytes, 0), readInt(bytes, Integer.BYTES));
+    }
+
+    private byte[] sign(long userId, DeviceType deviceType, byte[] token) {
+        Mac mac = macs.get();
+        byte[] prefix = new byte[Long.BYTES + Integer.BYTES];
+        writeLong(prefix, 0, userId);
+        writeInt(prefix, Long.BYTES, deviceType.getNumber());
+        mac.update(prefix);
+        mac.update(token, 0, SIGNED_FIELDS_LENGTH);
+        return mac.doFinal();
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    public record VerifiedToken(
+            int sessionId,
+            int sequence
+    ) {
+    }
+
+}
@@ -28,7 +28,6 @@ import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.util.ProtoUtil;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.HashedWheelTimer;
 import lombok.Data;
 import org.springframework.util.Assert;
 
@@ -46,10 +45,6 @@ public final class UserSessionsManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UserSessionsManager.class);
 
-    /**
-     * The count of pending timeouts should be roughly the same as the count of online sessions
-     */
-    private static final HashedWheelTimer HEARTBEAT_TIMER = new HashedWheelTimer();
     private static final EnumMap<DeviceType, UserSession> SESSION_MAP_TEMPLATE = new EnumMap<>(DeviceType.class);
 
     private final Long userId;
@@ -98,6 +93,14 @@ public final class UserSessionsManager {
      * @return true if the notification is sent
      */
     public boolean pushSessionNotification(DeviceType deviceType, String serverId) {
+        return pushSessionNotification(deviceType, serverId, null);
+    }
+
+    /**
+     * @param resumptionToken sent as the reason of the notification if not null
+     * @return true if the notification is sent
+     */
+    public boolean pushSessionNotification(DeviceType deviceType, String serverId, @Nullable String resumptionToken) {
         UserSession userSession = sessionMap.get(deviceType);
         if (userSession == null) {
             return false;
@@ -106,9 +109,12 @@ public final class UserSessionsManager {
                 .setSessionId(Integer.toString(userSession.getId()))
                 .setServerId(serverId)
                 .build();
-        TurmsNotification notification = TurmsNotification.newBuilder()
-                .setData(TurmsNotification.Data.newBuilder().setUserSession(session))
-                .build();
+        TurmsNotification.Builder builder = TurmsNotification.newBuilder()
+                .setData(TurmsNotification.Data.newBuilder().setUserSession(session));
+        if (resumptionToken != null) {
+            builder.setReason(resumptionToken);
+        }
+        TurmsNotification notification = builder.build();
         ByteBuf byteBuffer = ProtoUtil.getDirectByteBuffer(notification);
         try {
             userSession.sendNotification(byteBuffer);
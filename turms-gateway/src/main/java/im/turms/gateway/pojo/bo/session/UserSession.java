@@ -28,6 +28,7 @@ import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.tracing.TracingContext;
 import io.netty.buffer.ByteBuf;
+import io.netty.util.Timeout;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
@@ -49,6 +50,9 @@ public final class UserSession {
     private static final AtomicIntegerFieldUpdater<UserSession>
             IS_DELETE_SESSION_LOCK_ACQUIRED_UPDATER = AtomicIntegerFieldUpdater
             .newUpdater(UserSession.class, "isDeleteSessionLockAcquired");
+    private static final AtomicIntegerFieldUpdater<UserSession>
+            RESUMPTION_SEQUENCE_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(UserSession.class, "resumptionSequence");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UserSession.class);
 
@@ -80,8 +84,13 @@ public final class UserSession {
     private volatile long lastHeartbeatRequestTimestampMillis;
     private volatile long lastRequestTimestampMillis;
     // No need to add volatile because it can only be accessed by one thread
-    // (the thread "heartbeat-update" in HeartbeatManager)
+    // (the timer thread in HeartbeatManager)
     private long lastHeartbeatUpdateTimestampMillis;
+    /**
+     * The next heartbeat check scheduled by HeartbeatManager
+     */
+    @Nullable
+    private volatile Timeout heartbeatTimeout;
 
     /**
      * Note that it's acceptable that the session is still open even if the connection is closed
@@ -94,6 +103,11 @@ public final class UserSession {
      * Used to avoid logging DeleteSessionRequest twice in a session
      */
     private volatile int isDeleteSessionLockAcquired = 0;
+    /**
+     * Signed into the resumption tokens of the session and increased once a token is used or revoked,
+     * so that a token can be used to resume the session only once
+     */
+    private volatile int resumptionSequence;
     @Nullable
     private NetConnection connection;
     @Nullable
@@ -125,6 +139,10 @@ public final class UserSession {
     public void close(@NotNull CloseReason closeReason) {
         if (isSessionOpen) {
             isSessionOpen = false;
+            Timeout timeout = heartbeatTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
             // Note that it is acceptable to complete/close the connection multiple times
             // so that it's unnecessary to update isSessionOpen atomically
             if (connection == null) {
@@ -161,6 +179,18 @@ public final class UserSession {
         return IS_DELETE_SESSION_LOCK_ACQUIRED_UPDATER.compareAndSet(this, 0, 1);
     }
 
+    /**
+     * @return true if the caller is the only one that claims the session
+     * with the resumption token of the sequence
+     */
+    public boolean claimResumption(int sequence) {
+        return RESUMPTION_SEQUENCE_UPDATER.compareAndSet(this, sequence, sequence + 1);
+    }
+
+    public void revokeResumptionTokens() {
+        RESUMPTION_SEQUENCE_UPDATER.incrementAndGet(this);
+    }
+
     @Override
     public String toString() {
         return "UserSession{" +
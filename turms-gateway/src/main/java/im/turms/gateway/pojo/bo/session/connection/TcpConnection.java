@@ -18,11 +18,14 @@
 package im.turms.gateway.pojo.bo.session.connection;
 
 import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.gateway.access.tcp.handler.TcpHandlerConfig;
+import im.turms.server.common.access.tcp.codec.CompressingFrameEncoder;
 import im.turms.server.common.dto.CloseReason;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.proto.NotificationFactory;
 import im.turms.server.common.util.ThrowableUtil;
+import io.netty.channel.Channel;
 import reactor.netty.channel.ChannelOperations;
 
 import java.net.InetSocketAddress;
@@ -36,6 +39,8 @@ public class TcpConnection extends NetConnection {
 
     private final ChannelOperations<?, ?> connection;
 
+    private volatile boolean isCompressionEnabled;
+
     protected TcpConnection(ChannelOperations<?, ?> connection, boolean isConnected) {
         super(isConnected);
         this.connection = connection;
@@ -46,6 +51,34 @@ public class TcpConnection extends NetConnection {
         return (InetSocketAddress) connection.address();
     }
 
+    public boolean isCompressionEnabled() {
+        return isCompressionEnabled;
+    }
+
+    /**
+     * Install the compressing frame encoder for the connection
+     * after the client opts in to compression when creating a session.
+     *
+     * @return true if the frames sent to the connection will be compressed,
+     * false if compression is disabled by the server
+     */
+    public synchronized boolean enableCompression() {
+        if (isCompressionEnabled) {
+            return true;
+        }
+        Channel channel = connection.channel();
+        CompressingFrameEncoder encoder = channel.attr(TcpHandlerConfig.COMPRESSING_FRAME_ENCODER).get();
+        if (encoder == null) {
+            return false;
+        }
+        // Frames are compressed before their lengths are prepended
+        channel.pipeline().addAfter(TcpHandlerConfig.VARINT_LENGTH_FIELD_PREPENDER_NAME,
+                TcpHandlerConfig.COMPRESSING_FRAME_ENCODER_NAME,
+                encoder);
+        isCompressionEnabled = true;
+        return true;
+    }
+
     /**
      * It's acceptable that the method isn't thread-safe
      */
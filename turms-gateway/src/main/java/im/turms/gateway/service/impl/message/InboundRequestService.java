@@ -18,7 +18,6 @@
 package im.turms.gateway.service.impl.message;
 
 import im.turms.common.constant.DeviceType;
-import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.gateway.pojo.bo.session.UserSession;
 import im.turms.gateway.service.impl.session.SessionService;
 import im.turms.server.common.cluster.node.Node;
@@ -54,10 +53,11 @@ public class InboundRequestService {
     }
 
     /**
-     * @return a response to the request.
+     * @return a response to the request. Note that the data of the response is kept as the serialized
+     * buffer from turms-service, so the caller should release the response if it isn't sent to the client.
      * @implNote The method ensures turmsRequestBuffer in serviceRequest will be released by 1
      */
-    public Mono<TurmsNotification> processServiceRequest(ServiceRequest serviceRequest) {
+    public Mono<ServiceResponse> processServiceRequest(ServiceRequest serviceRequest) {
         try {
             return processServiceRequest0(serviceRequest);
         } catch (Exception e) {
@@ -67,7 +67,7 @@ public class InboundRequestService {
         }
     }
 
-    private Mono<TurmsNotification> processServiceRequest0(ServiceRequest serviceRequest) {
+    private Mono<ServiceResponse> processServiceRequest0(ServiceRequest serviceRequest) {
         // Validate
         Long userId = serviceRequest.getUserId();
         DeviceType deviceType = serviceRequest.getDeviceType();
@@ -88,7 +88,7 @@ public class InboundRequestService {
         serviceRequest.getTurmsRequestBuffer().retain();
         return sendServiceRequest(serviceRequest)
                 .defaultIfEmpty(REQUEST_RESPONSE_NO_CONTENT)
-                .map(response -> getNotificationFromResponse(response, serviceRequest.getRequestId()));
+                .doOnNext(this::validateResponse);
     }
 
     private Mono<ServiceResponse> sendServiceRequest(ServiceRequest serviceRequest) {
@@ -96,24 +96,11 @@ public class InboundRequestService {
         return node.getRpcService().requestResponse(request);
     }
 
-    private TurmsNotification getNotificationFromResponse(@NotNull ServiceResponse response, long requestId) {
-        TurmsStatusCode code = response.code();
-        if (code == null) {
+    private void validateResponse(@NotNull ServiceResponse response) {
+        if (response.code() == null) {
+            response.release();
             throw new IllegalArgumentException("The business code should not be null in the service response: " + response);
         }
-        TurmsNotification.Builder builder = TurmsNotification.newBuilder();
-        String reason = response.reason();
-        if (reason != null) {
-            builder.setReason(reason);
-        }
-        TurmsNotification.Data dataForRequester = response.dataForRequester();
-        if (dataForRequester != null) {
-            builder.setData(dataForRequester);
-        }
-        return builder
-                .setCode(code.getBusinessCode())
-                .setRequestId(requestId)
-                .build();
     }
 
-}
\ No newline at end of file
+}
@@ -23,21 +23,28 @@ import im.turms.gateway.logging.NotificationLogging;
 import im.turms.gateway.manager.UserSessionsManager;
 import im.turms.gateway.plugin.extension.NotificationHandler;
 import im.turms.gateway.pojo.bo.session.UserSession;
+import im.turms.gateway.pojo.bo.session.connection.TcpConnection;
 import im.turms.gateway.pojo.dto.SimpleTurmsNotification;
 import im.turms.gateway.pojo.parser.TurmsNotificationParser;
 import im.turms.gateway.service.impl.session.SessionService;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.plugin.PluginManager;
 import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.env.gateway.GatewayProperties;
+import im.turms.server.common.property.env.gateway.TcpCompressionProperties;
+import im.turms.server.common.property.env.gateway.TcpProperties;
 import im.turms.server.common.rpc.service.IOutboundMessageService;
 import im.turms.server.common.tracing.TracingContext;
 import im.turms.server.common.util.AssertUtil;
 import im.turms.server.common.util.CollectionUtil;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.RefCntAwareByteBuf;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 import java.util.Collections;
 import java.util.Set;
@@ -56,6 +63,15 @@ public class OutboundMessageService implements IOutboundMessageService {
 
     private final boolean isNotificationLoggingEnabled;
 
+    /**
+     * Used to compress a notification once for all recipients connected over TCP.
+     * Note that we cannot do the same for WebSocket connections because
+     * the permessage-deflate extension compresses messages with the context of each connection
+     */
+    @Nullable
+    private final DeflateFrameCompressor notificationCompressor;
+    private final int minBytesToCompress;
+
     public OutboundMessageService(
             ApiLoggingContext apiLoggingContext,
             SessionService sessionService,
@@ -64,8 +80,16 @@ public class OutboundMessageService implements IOutboundMessageService {
         this.apiLoggingContext = apiLoggingContext;
         this.sessionService = sessionService;
         this.pluginManager = pluginManager;
-        isNotificationLoggingEnabled = turmsPropertiesManager
-                .getLocalProperties().getGateway().getNotificationLogging().isEnabled();
+        GatewayProperties gatewayProperties = turmsPropertiesManager.getLocalProperties().getGateway();
+        isNotificationLoggingEnabled = gatewayProperties.getNotificationLogging().isEnabled();
+        TcpProperties tcpProperties = gatewayProperties.getTcp();
+        TcpCompressionProperties compressionProperties = tcpProperties.getCompression();
+        notificationCompressor = tcpProperties.isEnabled()
+                && compressionProperties.isEnabled()
+                && compressionProperties.isCompressNotificationOnceForRecipients()
+                ? new DeflateFrameCompressor(compressionProperties.getCompressionLevel())
+                : null;
+        minBytesToCompress = compressionProperties.getMinBytesToCompress();
     }
 
     /**
@@ -101,6 +125,12 @@ public class OutboundMessageService implements IOutboundMessageService {
 
         wrappedNotificationData.startRetainCounter();
 
+        // Compress the notification lazily when it is sent to the first recipient
+        // that is connected over TCP and has opted in to compression
+        boolean shouldCompressNotification = notificationCompressor != null
+                && notificationSize >= minBytesToCompress;
+        RefCntAwareByteBuf wrappedCompressedNotificationData = null;
+
         // Send notification
         for (Long recipientId : recipientIds) {
             UserSessionsManager userSessionsManager = sessionService.getUserSessionsManager(recipientId);
@@ -110,12 +140,25 @@ public class OutboundMessageService implements IOutboundMessageService {
                 }
             } else {
                 for (UserSession userSession : userSessionsManager.getSessionMap().values()) {
-                    wrappedNotificationData.retain();
+                    ByteBuf data = wrappedNotificationData;
+                    if (shouldCompressNotification
+                            && userSession.getConnection() instanceof TcpConnection tcpConnection
+                            && tcpConnection.isCompressionEnabled()) {
+                        if (wrappedCompressedNotificationData == null) {
+                            wrappedCompressedNotificationData = compressNotification(notificationData);
+                            // Send uncompressed data to all recipients if the notification cannot be compressed
+                            shouldCompressNotification = wrappedCompressedNotificationData != null;
+                        }
+                        if (wrappedCompressedNotificationData != null) {
+                            data = wrappedCompressedNotificationData;
+                        }
+                    }
+                    data.retain();
                     // It's the responsibility of the downstream to decrease the reference count of the notification by 1
                     // when the notification is queued successfully and released by Netty, or fails to be queued.
                     // Otherwise, there is a memory leak
                     try {
-                        userSession.sendNotification(wrappedNotificationData, tracingContext);
+                        userSession.sendNotification(data, tracingContext);
                     } catch (Exception e) {
                         if (userSession.isSessionOpen()) {
                             LOGGER.warn("Failed to send a notification to the session: {}", userSession);
@@ -129,6 +172,9 @@ public class OutboundMessageService implements IOutboundMessageService {
         }
 
         wrappedNotificationData.stopRetainCounter();
+        if (wrappedCompressedNotificationData != null) {
+            wrappedCompressedNotificationData.stopRetainCounter();
+        }
 
         // Trigger plugins
         if (triggerHandlers) {
@@ -146,6 +192,23 @@ public class OutboundMessageService implements IOutboundMessageService {
         return hasForwardedMessageToOneRecipient;
     }
 
+    @Nullable
+    private RefCntAwareByteBuf compressNotification(ByteBuf notificationData) {
+        ByteBuf compressedData;
+        try {
+            compressedData = notificationCompressor.compress(PooledByteBufAllocator.DEFAULT, notificationData);
+        } catch (Exception e) {
+            LOGGER.error("Failed to compress the notification", e);
+            return null;
+        }
+        if (compressedData == null) {
+            return null;
+        }
+        RefCntAwareByteBuf wrappedCompressedData = new RefCntAwareByteBuf(compressedData, compressedData::release);
+        wrappedCompressedData.startRetainCounter();
+        return wrappedCompressedData;
+    }
+
     private void triggerPlugins(@NotNull ByteBuf notificationData,
                                 @NotNull Set<Long> recipientIds,
                                 @NotNull Set<Long> offlineRecipientIds) {
@@ -23,9 +23,11 @@ import im.turms.common.constant.DeviceType;
 import im.turms.common.constant.UserStatus;
 import im.turms.common.constant.statuscode.SessionCloseStatus;
 import im.turms.gateway.manager.HeartbeatManager;
+import im.turms.gateway.manager.SessionResumptionTokenManager;
 import im.turms.gateway.manager.UserSessionsManager;
 import im.turms.gateway.plugin.extension.UserOnlineStatusChangeHandler;
 import im.turms.gateway.pojo.bo.session.UserSession;
+import im.turms.gateway.pojo.bo.session.connection.NetConnection;
 import im.turms.gateway.service.impl.observability.MetricsService;
 import im.turms.server.common.bo.location.Coordinates;
 import im.turms.server.common.bo.session.UserSessionsStatus;
@@ -43,12 +45,14 @@ import im.turms.server.common.property.TurmsProperties;
 import im.turms.server.common.property.TurmsPropertiesManager;
 import im.turms.server.common.property.env.gateway.GatewayProperties;
 import im.turms.server.common.property.env.gateway.SessionProperties;
+import im.turms.server.common.property.env.gateway.SessionResumptionProperties;
 import im.turms.server.common.rpc.request.SetUserOfflineRequest;
 import im.turms.server.common.rpc.service.ISessionService;
 import im.turms.server.common.service.session.SessionLocationService;
 import im.turms.server.common.service.session.UserStatusService;
 import im.turms.server.common.util.AssertUtil;
 import im.turms.server.common.util.DeviceTypeUtil;
+import im.turms.server.common.util.InetAddressUtil;
 import im.turms.server.common.util.MapUtil;
 import im.turms.server.common.util.ReactorUtil;
 import io.micrometer.core.instrument.Counter;
@@ -77,6 +81,7 @@ import java.util.function.Consumer;
 
 import static im.turms.gateway.constant.MetricsConstant.LOGGED_IN_USERS_COUNTER_NAME;
 import static im.turms.gateway.constant.MetricsConstant.ONLINE_USERS_GAUGE_NAME;
+import static im.turms.gateway.constant.MetricsConstant.RESUMED_SESSIONS_COUNTER_NAME;
 
 /**
  * @author James Chen
@@ -97,12 +102,20 @@ public class SessionService implements ISessionService {
 
     private int closeIdleSessionAfterSeconds;
 
+    /**
+     * Null if session resumption is disabled
+     */
+    @Nullable
+    private final SessionResumptionTokenManager sessionResumptionTokenManager;
+    private final long sessionResumptionTokenTtlMillis;
+
     private final ConcurrentHashMap<Long, UserSessionsManager> sessionsManagerByUserId;
     private final ConcurrentHashMap<ByteArrayWrapper, ConcurrentLinkedQueue<UserSession>> sessionsByIp;
 
     private final List<Consumer<UserSession>> onSessionClosedListeners = new LinkedList<>();
 
     private final Counter loggedInUsersCounter;
+    private final Counter resumedSessionsCounter;
 
     public SessionService(
             Node node,
@@ -127,17 +140,23 @@ public class SessionService implements ISessionService {
 
         heartbeatManager = new HeartbeatManager(this,
                 userStatusService,
-                sessionsManagerByUserId,
-                sessionProperties.getClientHeartbeatIntervalSeconds(),
                 closeIdleSessionAfterSeconds,
                 sessionProperties.getMinHeartbeatIntervalSeconds(),
                 sessionProperties.getSwitchProtocolAfterSeconds());
 
+        SessionResumptionProperties resumptionProperties = turmsPropertiesManager.getLocalProperties()
+                .getGateway()
+                .getSession()
+                .getResumption();
+        sessionResumptionTokenManager = resumptionProperties.isEnabled()
+                ? new SessionResumptionTokenManager()
+                : null;
+        sessionResumptionTokenTtlMillis = resumptionProperties.getTokenTtlSeconds() * 1000L;
+
         node.addPropertiesChangeListener(newProperties -> {
             GatewayProperties newGatewayProperties = newProperties.getGateway();
             SessionProperties newSessionProperties = newGatewayProperties.getSession();
             closeIdleSessionAfterSeconds = newSessionProperties.getCloseIdleSessionAfterSeconds();
-            heartbeatManager.setClientHeartbeatIntervalSeconds(newSessionProperties.getClientHeartbeatIntervalSeconds());
             heartbeatManager.setCloseIdleSessionAfterSeconds(newSessionProperties.getCloseIdleSessionAfterSeconds());
             heartbeatManager.setMinHeartbeatIntervalMillis(newSessionProperties.getMinHeartbeatIntervalSeconds() * 1000);
             heartbeatManager.setSwitchProtocolAfterMillis(newSessionProperties.getSwitchProtocolAfterSeconds() * 1000);
@@ -145,6 +164,7 @@ public class SessionService implements ISessionService {
 
         MeterRegistry registry = metricsService.getRegistry();
         loggedInUsersCounter = registry.counter(LOGGED_IN_USERS_COUNTER_NAME);
+        resumedSessionsCounter = registry.counter(RESUMED_SESSIONS_COUNTER_NAME);
         registry.gaugeMapSize(ONLINE_USERS_GAUGE_NAME, Tags.empty(), sessionsManagerByUserId);
     }
 
@@ -172,7 +192,21 @@ public class SessionService implements ISessionService {
         } catch (TurmsBusinessException e) {
             return Mono.error(e);
         }
-        Queue<UserSession> sessions = sessionsByIp.get(new ByteArrayWrapper(ip));
+        Queue<UserSession> sessions;
+        if (InetAddressUtil.isCidr(ip)) {
+            // Scan the IPs because the sessions are indexed by IP instead of prefix
+            sessions = new LinkedList<>();
+            for (Map.Entry<ByteArrayWrapper, ConcurrentLinkedQueue<UserSession>> entry : sessionsByIp.entrySet()) {
+                if (InetAddressUtil.isInCidr(entry.getKey().getBytes(), ip)) {
+                    sessions.addAll(entry.getValue());
+                }
+            }
+        } else {
+            sessions = sessionsByIp.get(new ByteArrayWrapper(ip));
+            if (sessions == null) {
+                return Mono.just(false);
+            }
+        }
         Iterator<UserSession> iterator = sessions.iterator();
         if (!iterator.hasNext()) {
             return Mono.just(false);
@@ -421,6 +455,78 @@ public class SessionService implements ISessionService {
                 });
     }
 
+    /**
+     * Reattach the client to its disconnected session held by the local node by checking the local state only,
+     * so that neither the credentials nor the session status in Redis need to be checked again,
+     * and no request needs to be sent to other nodes.
+     * <p>
+     * The session is resumed only if the user status and the location don't change
+     * because they need to be updated in Redis.
+     *
+     * @return the session if resumed, or null if the client needs to log in with its credentials
+     */
+    @Nullable
+    public UserSession tryResumeLocalSession(
+            @NotNull ByteArrayWrapper ip,
+            @NotNull Long userId,
+            @NotNull DeviceType deviceType,
+            @Nullable String resumptionToken,
+            @Nullable UserStatus userStatus,
+            @Nullable Coordinates coordinates) {
+        SessionResumptionTokenManager tokenManager = sessionResumptionTokenManager;
+        if (tokenManager == null || resumptionToken == null) {
+            return null;
+        }
+        if (coordinates != null && sessionLocationService.isLocationEnabled()) {
+            return null;
+        }
+        UserSessionsManager manager = sessionsManagerByUserId.get(userId);
+        if (manager == null || (userStatus != null && userStatus != manager.getUserStatus())) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        SessionResumptionTokenManager.VerifiedToken token = tokenManager.verify(userId, deviceType, resumptionToken, now);
+        if (token == null) {
+            return null;
+        }
+        UserSession session = manager.getSession(deviceType);
+        if (session == null || session.getId() != token.sessionId() || !session.isOpen()) {
+            return null;
+        }
+        NetConnection connection = session.getConnection();
+        if (connection == null || connection.isConnected()) {
+            return null;
+        }
+        // Claim the session atomically so that only one of the clients
+        // presenting the same token concurrently can resume the session,
+        // and the token cannot be used again
+        if (!session.claimResumption(token.sequence())) {
+            return null;
+        }
+        // Refresh the heartbeat timestamp so that the session won't be closed
+        // as an idle session before the client sends the next heartbeat
+        session.setLastHeartbeatRequestTimestampMillis(now);
+        // Note that the downstream should replace the disconnected connection
+        // with the connected TCP/WebSocket connection
+        ByteArrayWrapper previousIp = session.getIp();
+        if (!ip.equals(previousIp)) {
+            if (previousIp != null) {
+                sessionsByIp.computeIfPresent(previousIp, (key, sessions) -> sessions.remove(session)
+                        ? (sessions.isEmpty() ? null : sessions)
+                        : sessions);
+            }
+            sessionsByIp.compute(ip, (key, sessions) -> {
+                if (sessions == null) {
+                    sessions = new ConcurrentLinkedQueue<>();
+                }
+                sessions.add(session);
+                return sessions;
+            });
+        }
+        resumedSessionsCounter.increment();
+        return session;
+    }
+
     @Nullable
     public UserSessionsManager getUserSessionsManager(@NotNull Long userId) {
         AssertUtil.notNull(userId, "userId");
@@ -493,12 +599,50 @@ public class SessionService implements ISessionService {
         return ReactorUtil.areAllTrue(disconnectionRequests);
     }
 
+    @Override
+    public void revokeLocalSessionResumptionTokens(@NotNull Set<Long> userIds) {
+        AssertUtil.notNull(userIds, "userIds");
+        for (Long userId : userIds) {
+            UserSessionsManager manager = sessionsManagerByUserId.get(userId);
+            if (manager != null) {
+                for (UserSession session : manager.getSessionMap().values()) {
+                    session.revokeResumptionTokens();
+                }
+            }
+        }
+    }
+
     public void onSessionEstablished(@NotNull UserSessionsManager userSessionsManager,
                                      @NotNull @ValidDeviceType DeviceType deviceType) {
         loggedInUsersCounter.increment();
+        pushSessionNotification(userSessionsManager, deviceType);
+    }
+
+    /**
+     * Unlike {@link #onSessionEstablished}, the resumed session isn't counted as a new login,
+     * and only a new resumption token needs to be sent to the client
+     */
+    public void onSessionResumed(@NotNull UserSessionsManager userSessionsManager,
+                                 @NotNull @ValidDeviceType DeviceType deviceType) {
+        pushSessionNotification(userSessionsManager, deviceType);
+    }
+
+    private void pushSessionNotification(UserSessionsManager userSessionsManager, DeviceType deviceType) {
         if (node.getSharedProperties().getGateway().getSession().isNotifyClientsOfSessionInfoAfterConnected()) {
             String serverId = turmsPropertiesManager.getLocalProperties().getGateway().getServiceDiscovery().getIdentity();
-            userSessionsManager.pushSessionNotification(deviceType, serverId);
+            String resumptionToken = null;
+            SessionResumptionTokenManager tokenManager = sessionResumptionTokenManager;
+            if (tokenManager != null) {
+                UserSession session = userSessionsManager.getSession(deviceType);
+                if (session != null) {
+                    resumptionToken = tokenManager.issue(session.getUserId(),
+                            deviceType,
+                            session.getId(),
+                            session.getResumptionSequence(),
+                            System.currentTimeMillis() + sessionResumptionTokenTtlMillis);
+                }
+            }
+            userSessionsManager.pushSessionNotification(deviceType, serverId, resumptionToken);
         }
     }
 
@@ -536,6 +680,7 @@ public class SessionService implements ISessionService {
                             return Mono.error(TurmsBusinessException.get(TurmsStatusCode.SERVER_INTERNAL_ERROR));
                         }
                     }
+                    heartbeatManager.scheduleHeartbeatCheck(session);
                     UserSession finalSession = session;
                     sessionsByIp.compute(ip, (key, sessions) -> {
                         if (sessions == null) {
@@ -17,39 +17,137 @@
 
 package im.turms.gateway.service.impl.session;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import im.turms.gateway.service.impl.observability.MetricsService;
+import im.turms.server.common.constant.ThreadNameConstant;
+import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.dao.domain.User;
 import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.server.common.mongo.DomainFieldName;
 import im.turms.server.common.mongo.TurmsMongoClient;
 import im.turms.server.common.mongo.operation.option.Filter;
 import im.turms.server.common.mongo.operation.option.QueryOptions;
+import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.constant.PasswordEncodingAlgorithm;
+import im.turms.server.common.property.env.gateway.PasswordVerificationProperties;
+import im.turms.server.common.rpc.service.IUserService;
+import im.turms.server.common.security.MessageDigestPool;
 import im.turms.server.common.security.PasswordManager;
 import im.turms.server.common.util.AssertUtil;
+import im.turms.server.common.util.NamedThreadFactory;
+import im.turms.server.common.util.StringUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.NotNull;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static im.turms.gateway.constant.MetricsConstant.PENDING_PASSWORD_VERIFICATIONS_GAUGE_NAME;
+import static im.turms.gateway.constant.MetricsConstant.REJECTED_PASSWORD_VERIFICATIONS_COUNTER_NAME;
 
 /**
  * @author James Chen
+ * @implNote When a lot of clients reconnect at the same time (e.g. after restarting the server),
+ * verifying BCrypt passwords on the threads that complete MongoDB queries will block them and
+ * delay the heartbeats of online users, so we verify BCrypt passwords on a bounded thread pool,
+ * and reject logins fast if the pool is overloaded.
+ * In addition, we cache the digests of the verified credentials for a short time so that
+ * reconnecting users don't need to query and verify their passwords again.
  */
 @Service
-public class UserService {
+public class UserService implements IUserService {
+
+    private static final int CREDENTIAL_DIGEST_SALT_LENGTH = 16;
 
     private final TurmsMongoClient mongoClient;
     private final PasswordManager passwordManager;
 
+    /**
+     * Null if the password encoding algorithm is cheap enough to verify passwords inline
+     */
+    @Nullable
+    private final ThreadPoolExecutor passwordVerifier;
+    private final Counter rejectedPasswordVerificationsCounter;
+
+    /**
+     * User ID -> the salted digest of the verified raw password, or a tombstone of the invalidated credential.
+     * Null if the cache is disabled
+     */
+    @Nullable
+    private final Cache<Long, VerifiedCredential> verifiedCredentialCache;
+    private final byte[] credentialDigestSalt;
+    /**
+     * Increased every time credentials are invalidated, and used to avoid caching
+     * the credentials that are verified before but cached after they are invalidated
+     */
+    private final AtomicLong credentialGeneration = new AtomicLong();
+
     /**
      * @param mongoClient can be null if SessionProperties#enableAuthentication is false
      */
     public UserService(
             @Autowired(required = false) @Qualifier("userMongoClient") TurmsMongoClient mongoClient,
-            PasswordManager passwordManager) {
+            PasswordManager passwordManager,
+            TurmsPropertiesManager turmsPropertiesManager,
+            MetricsService metricsService) {
         this.mongoClient = mongoClient;
         this.passwordManager = passwordManager;
+        PasswordVerificationProperties properties = turmsPropertiesManager.getLocalProperties()
+                .getGateway()
+                .getSession()
+                .getPasswordVerification();
+        MeterRegistry registry = metricsService.getRegistry();
+        if (passwordManager.getUserPasswordEncodingAlgorithm() == PasswordEncodingAlgorithm.BCRYPT) {
+            int threads = properties.getThreads();
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            passwordVerifier = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                    new NamedThreadFactory(ThreadNameConstant.PASSWORD_VERIFIER, true),
+                    new ThreadPoolExecutor.AbortPolicy());
+            Gauge.builder(PENDING_PASSWORD_VERIFICATIONS_GAUGE_NAME, passwordVerifier, executor -> executor.getQueue().size())
+                    .register(registry);
+        } else {
+            passwordVerifier = null;
+        }
+        rejectedPasswordVerificationsCounter = registry.counter(REJECTED_PASSWORD_VERIFICATIONS_COUNTER_NAME);
+        int ttlSeconds = properties.getVerifiedCredentialCacheTtlSeconds();
+        int maxSize = properties.getVerifiedCredentialCacheMaxSize();
+        if (ttlSeconds > 0 && maxSize > 0) {
+            verifiedCredentialCache = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                    .build();
+            credentialDigestSalt = new byte[CREDENTIAL_DIGEST_SALT_LENGTH];
+            new SecureRandom().nextBytes(credentialDigestSalt);
+        } else {
+            verifiedCredentialCache = null;
+            credentialDigestSalt = null;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (passwordVerifier != null) {
+            passwordVerifier.shutdownNow();
+        }
     }
 
     public Mono<Boolean> authenticate(
@@ -64,9 +162,44 @@ public class UserService {
                 .eq(DomainFieldName.ID, userId);
         QueryOptions options = QueryOptions.newBuilder(2)
                 .include(User.Fields.PASSWORD);
-        return mongoClient.findOne(User.class, filter, options)
-                .map(user -> passwordManager.matchesUserPassword(rawPassword, user.getPassword()))
-                .defaultIfEmpty(false);
+        return Mono.defer(() -> {
+            // Record the generation before querying the password
+            // so that we can know whether the credential is invalidated after querying
+            long generation = credentialGeneration.get();
+            return mongoClient.findOne(User.class, filter, options)
+                    .flatMap(user -> matchesPassword(rawPassword, user.getPassword()))
+                    .doOnNext(matched -> {
+                        if (matched) {
+                            cacheVerifiedCredential(userId, rawPassword, generation);
+                        }
+                    })
+                    .defaultIfEmpty(false);
+        });
+    }
+
+    /**
+     * @return true if the user has logged in with the same password recently
+     * and the password hasn't been changed, and the user hasn't been deleted or inactivated since then
+     */
+    public boolean isVerifiedCredentialCached(@NotNull Long userId, @Nullable String rawPassword) {
+        if (verifiedCredentialCache == null || rawPassword == null) {
+            return false;
+        }
+        VerifiedCredential credential = verifiedCredentialCache.getIfPresent(userId);
+        return credential != null
+                && credential.digest() != null
+                && MessageDigest.isEqual(credential.digest(), digestCredential(rawPassword));
+    }
+
+    @Override
+    public void invalidateLocalVerifiedCredentials(@NotNull Set<Long> userIds) {
+        if (verifiedCredentialCache != null) {
+            long generation = credentialGeneration.incrementAndGet();
+            VerifiedCredential tombstone = new VerifiedCredential(null, generation);
+            for (Long userId : userIds) {
+                verifiedCredentialCache.put(userId, tombstone);
+            }
+        }
     }
 
     public Mono<Boolean> isActiveAndNotDeleted(@NotNull Long userId) {
@@ -82,5 +215,63 @@ public class UserService {
         return mongoClient.exists(User.class, filter);
     }
 
-}
+    private Mono<Boolean> matchesPassword(@Nullable String rawPassword, @Nullable byte[] encodedPassword) {
+        if (passwordVerifier == null) {
+            return Mono.just(passwordManager.matchesUserPassword(rawPassword, encodedPassword));
+        }
+        return Mono.create(sink -> {
+            try {
+                passwordVerifier.execute(() -> {
+                    try {
+                        sink.success(passwordManager.matchesUserPassword(rawPassword, encodedPassword));
+                    } catch (Exception e) {
+                        sink.error(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejectedPasswordVerificationsCounter.increment();
+                sink.error(TurmsBusinessException.get(TurmsStatusCode.SERVER_UNAVAILABLE,
+                        "Too many pending password verifications"));
+            }
+        });
+    }
 
+    /**
+     * @param generation the credential generation before the password was queried
+     */
+    private void cacheVerifiedCredential(Long userId, @Nullable String rawPassword, long generation) {
+        if (verifiedCredentialCache == null || rawPassword == null) {
+            return;
+        }
+        byte[] digest = digestCredential(rawPassword);
+        verifiedCredentialCache.asMap().compute(userId, (key, existingCredential) -> {
+            if (existingCredential == null) {
+                // If the tombstone of the user has been evicted, we cannot know whether the credential of the user
+                // has been invalidated, so we don't cache the credential if any credential has been invalidated
+                return generation == credentialGeneration.get()
+                        ? new VerifiedCredential(digest, generation)
+                        : null;
+            }
+            // Don't overwrite the tombstone or the credential that is newer than the verified credential
+            return existingCredential.generation() > generation
+                    ? existingCredential
+                    : new VerifiedCredential(digest, generation);
+        });
+    }
+
+    private byte[] digestCredential(String rawPassword) {
+        MessageDigest digest = MessageDigestPool.getSha256();
+        digest.update(credentialDigestSalt);
+        return digest.digest(StringUtil.getBytes(rawPassword));
+    }
+
+    /**
+     * @param digest null if the credential has been invalidated
+     */
+    private record VerifiedCredential(
+            @Nullable byte[] digest,
+            long generation
+    ) {
+    }
+
+}
@@ -20,7 +20,7 @@ package im.turms.gateway.service.mediator;
 import im.turms.common.constant.DeviceType;
 import im.turms.common.constant.UserStatus;
 import im.turms.common.constant.statuscode.SessionCloseStatus;
-import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.gateway.manager.SessionResumptionTokenManager;
 import im.turms.gateway.manager.UserSessionsManager;
 import im.turms.gateway.plugin.extension.UserAuthenticator;
 import im.turms.gateway.plugin.extension.UserOnlineStatusChangeHandler;
@@ -35,6 +35,7 @@ import im.turms.server.common.cluster.node.Node;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.dto.CloseReason;
 import im.turms.server.common.dto.ServiceRequest;
+import im.turms.server.common.dto.ServiceResponse;
 import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.server.common.lang.ByteArrayWrapper;
 import im.turms.server.common.plugin.PluginManager;
@@ -44,6 +45,7 @@ import reactor.core.publisher.Mono;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -97,9 +99,24 @@ public class ServiceMediator {
         if (userSimultaneousLoginService.isForbiddenDeviceType(deviceType)) {
             return Mono.error(TurmsBusinessException.get(TurmsStatusCode.LOGIN_FROM_FORBIDDEN_DEVICE_TYPE));
         }
-        return authenticate(version, userId, password, deviceType, deviceDetails, userStatus, coordinates, ipStr)
+        String resumptionToken = deviceDetails == null
+                ? null
+                : deviceDetails.get(SessionResumptionTokenManager.DEVICE_DETAILS_KEY);
+        if (resumptionToken != null) {
+            UserSession session = sessionService
+                    .tryResumeLocalSession(ip, userId, deviceType, resumptionToken, userStatus, coordinates);
+            if (session != null) {
+                return Mono.just(session);
+            }
+            // Fall back to logging in with the credentials,
+            // and don't store the token as a device detail
+            deviceDetails = new HashMap<>(deviceDetails);
+            deviceDetails.remove(SessionResumptionTokenManager.DEVICE_DETAILS_KEY);
+        }
+        Map<String, String> finalDeviceDetails = deviceDetails;
+        return authenticate(version, userId, password, deviceType, finalDeviceDetails, userStatus, coordinates, ipStr)
                 .flatMap(statusCode -> statusCode == TurmsStatusCode.OK
-                        ? sessionService.tryRegisterOnlineUser(version, ip, userId, deviceType, deviceDetails, userStatus, coordinates)
+                        ? sessionService.tryRegisterOnlineUser(version, ip, userId, deviceType, finalDeviceDetails, userStatus, coordinates)
                         : Mono.error(TurmsBusinessException.get(statusCode)));
     }
 
@@ -131,9 +148,13 @@ public class ServiceMediator {
         sessionService.onSessionEstablished(userSessionsManager, deviceType);
     }
 
+    public void onSessionResumed(UserSessionsManager userSessionsManager, DeviceType deviceType) {
+        sessionService.onSessionResumed(userSessionsManager, deviceType);
+    }
+
     // Request
 
-    public Mono<TurmsNotification> processServiceRequest(ServiceRequest serviceRequest) {
+    public Mono<ServiceResponse> processServiceRequest(ServiceRequest serviceRequest) {
         return inboundRequestService.processServiceRequest(serviceRequest);
     }
 
@@ -201,6 +222,10 @@ public class ServiceMediator {
     private Mono<TurmsStatusCode> authenticate0(
             @NotNull Long userId,
             @Nullable String password) {
+        // Skip querying and verifying the password for the users who logged in recently
+        if (userService.isVerifiedCredentialCached(userId, password)) {
+            return Mono.just(TurmsStatusCode.OK);
+        }
         return userService.isActiveAndNotDeleted(userId)
                 .flatMap(isActiveAndNotDeleted -> isActiveAndNotDeleted
                         ? userService.authenticate(userId, password)
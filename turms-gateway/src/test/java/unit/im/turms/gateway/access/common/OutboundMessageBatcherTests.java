@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.gateway.access.common;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.gateway.access.common.OutboundMessageBatcher;
+import im.turms.server.common.constant.TurmsStatusCode;
+import im.turms.server.common.property.constant.SlowConsumerPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class OutboundMessageBatcherTests {
+
+    @Test
+    void send_shouldFlushOnce_forMessagesQueuedTogether() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter);
+        DistributionSummary summary = newSummary();
+        OutboundMessageBatcher batcher = newBatcher(channel, 64, 1024, summary);
+
+        for (int i = 0; i < 10; i++) {
+            batcher.send(Unpooled.buffer().writeByte(i), false);
+        }
+        channel.runPendingTasks();
+
+        assertThat(counter.flushCount).isEqualTo(1);
+        assertThat(summary.count()).isEqualTo(1);
+        assertThat(summary.totalAmount()).isEqualTo(10);
+        for (int i = 0; i < 10; i++) {
+            ByteBuf message = channel.readOutbound();
+            assertThat(message.readByte()).isEqualTo((byte) i);
+            message.release();
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void send_shouldFlush_ifMaxMessagesPerFlushIsReached() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter);
+        DistributionSummary summary = newSummary();
+        OutboundMessageBatcher batcher = newBatcher(channel, 4, 1024, summary);
+
+        for (int i = 0; i < 10; i++) {
+            batcher.send(Unpooled.buffer().writeByte(i), false);
+        }
+        channel.runPendingTasks();
+
+        assertThat(counter.flushCount).isEqualTo(3);
+        assertThat(summary.count()).isEqualTo(3);
+        assertThat(summary.max()).isEqualTo(4);
+        assertThat(channel.outboundMessages()).hasSize(10);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void send_shouldFlush_ifMaxBytesPerFlushIsReached() {
+        FlushCounter counter = new FlushCounter();
+        EmbeddedChannel channel = new EmbeddedChannel(counter);
+        OutboundMessageBatcher batcher = newBatcher(channel, 64, 8, newSummary());
+
+        batcher.send(Unpooled.buffer().writeLong(1), false);
+        batcher.send(Unpooled.buffer().writeLong(2), false);
+        channel.runPendingTasks();
+
+        assertThat(counter.flushCount).isEqualTo(2);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void send_shouldReleaseMessages_ifChannelIsClosed() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        OutboundMessageBatcher batcher = newBatcher(channel, 64, 1024, newSummary());
+        channel.close();
+        List<ByteBuf> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ByteBuf buffer = Unpooled.buffer().writeByte(i);
+            buffers.add(buffer);
+            batcher.send(buffer, false);
+        }
+        channel.runPendingTasks();
+
+        assertThat(buffers).allMatch(buffer -> buffer.refCnt() == 0);
+    }
+
+    @Test
+    void send_shouldDropOldestNotifications_ifPendingBytesExceedBudget() {
+        EmbeddedChannel channel = newUnwritableChannel();
+        OutboundMessageBatcher batcher = newBatcher(channel, SlowConsumerPolicy.DROP_OLDEST_NOTIFICATIONS, () -> {
+        });
+
+        batcher.send(Unpooled.buffer().writeByte(0), false);
+        batcher.send(Unpooled.buffer().writeByte(1), false);
+        batcher.send(Unpooled.buffer().writeByte(2), true);
+        batcher.send(Unpooled.buffer().writeByte(3), false);
+        batcher.send(Unpooled.buffer().writeByte(4), false);
+        channel.runPendingTasks();
+
+        // 0 is written before the channel becomes unwritable,
+        // and 1 and 3 are dropped to fit in the budget
+        assertThat(readOutboundBytes(channel)).containsExactly((byte) 0, (byte) 2, (byte) 4);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void send_shouldReplaceNotificationsWithResyncNotification_ifPendingBytesExceedBudget() throws InvalidProtocolBufferException {
+        EmbeddedChannel channel = newUnwritableChannel();
+        OutboundMessageBatcher batcher = newBatcher(channel, SlowConsumerPolicy.RESYNC, () -> {
+        });
+
+        batcher.send(Unpooled.buffer().writeByte(0), false);
+        batcher.send(Unpooled.buffer().writeByte(1), false);
+        batcher.send(Unpooled.buffer().writeByte(2), true);
+        batcher.send(Unpooled.buffer().writeByte(3), false);
+        batcher.send(Unpooled.buffer().writeByte(4), false);
+        channel.runPendingTasks();
+
+        ByteBuf message = readOutbound(channel);
+        assertThat(message.readByte()).isZero();
+        message.release();
+        message = readOutbound(channel);
+        assertThat(message.readByte()).isEqualTo((byte) 2);
+        message.release();
+        message = readOutbound(channel);
+        TurmsNotification notification = TurmsNotification.parseFrom(message.nioBuffer());
+        assertThat(notification.getCode()).isEqualTo(TurmsStatusCode.NOTIFICATIONS_DROPPED.getBusinessCode());
+        message.release();
+        assertThat(readOutbound(channel)).isNull();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void send_shouldCloseConnection_ifPendingBytesExceedBudget() {
+        EmbeddedChannel channel = newUnwritableChannel();
+        AtomicInteger closeCount = new AtomicInteger();
+        OutboundMessageBatcher batcher = newBatcher(channel, SlowConsumerPolicy.DISCONNECT, closeCount::incrementAndGet);
+        List<ByteBuf> buffers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ByteBuf buffer = Unpooled.buffer().writeByte(i);
+            buffers.add(buffer);
+            batcher.send(buffer, false);
+        }
+        channel.runPendingTasks();
+
+        assertThat(closeCount).hasValue(1);
+        assertThat(buffers.subList(1, buffers.size())).allMatch(buffer -> buffer.refCnt() == 0);
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * @return a channel that becomes unwritable once a message is written
+     */
+    private EmbeddedChannel newUnwritableChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 2));
+        return channel;
+    }
+
+    private List<Byte> readOutboundBytes(EmbeddedChannel channel) {
+        List<Byte> bytes = new ArrayList<>();
+        ByteBuf message;
+        while ((message = readOutbound(channel)) != null) {
+            bytes.add(message.readByte());
+            message.release();
+        }
+        return bytes;
+    }
+
+    /**
+     * Netty notifies the writability change in a later task,
+     * so run the pending tasks to write the pending messages
+     */
+    private ByteBuf readOutbound(EmbeddedChannel channel) {
+        ByteBuf message = channel.readOutbound();
+        if (message == null) {
+            channel.runPendingTasks();
+            message = channel.readOutbound();
+        }
+        return message;
+    }
+
+    private OutboundMessageBatcher newBatcher(EmbeddedChannel channel,
+                                              SlowConsumerPolicy policy,
+                                              Runnable slowConsumerHandler) {
+        return new OutboundMessageBatcher(channel,
+                false,
+                64,
+                1024,
+                0,
+                2,
+                policy,
+                newSummary(),
+                newCounter(),
+                slowConsumerHandler,
+                t -> {
+                });
+    }
+
+    private OutboundMessageBatcher newBatcher(EmbeddedChannel channel,
+                                              int maxMessagesPerFlush,
+                                              int maxBytesPerFlush,
+                                              DistributionSummary summary) {
+        return new OutboundMessageBatcher(channel,
+                false,
+                maxMessagesPerFlush,
+                maxBytesPerFlush,
+                0,
+                1024,
+                SlowConsumerPolicy.DISCONNECT,
+                summary,
+                newCounter(),
+                () -> {
+                },
+                t -> {
+                });
+    }
+
+    private Counter newCounter() {
+        return Counter.builder("test").register(new SimpleMeterRegistry());
+    }
+
+    private DistributionSummary newSummary() {
+        return DistributionSummary.builder("test").register(new SimpleMeterRegistry());
+    }
+
+    private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+        private int flushCount;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            flushCount++;
+            ctx.flush();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.gateway.manager;
+
+import im.turms.common.constant.DeviceType;
+import im.turms.gateway.manager.HeartbeatManager;
+import im.turms.gateway.pojo.bo.session.UserSession;
+import im.turms.gateway.pojo.bo.session.connection.NetConnection;
+import im.turms.gateway.service.impl.session.SessionService;
+import im.turms.server.common.lang.ByteArrayWrapper;
+import im.turms.server.common.service.session.UserStatusService;
+import io.lettuce.core.protocol.LongKeyGenerator;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class HeartbeatManagerTests {
+
+    private final long userId = 1L;
+    private final DeviceType deviceType = DeviceType.ANDROID;
+
+    @Test
+    void scheduleHeartbeatCheck_shouldRefreshUserTtl_forActiveSession() {
+        SessionService sessionService = mock(SessionService.class);
+        UserStatusService userStatusService = mock(UserStatusService.class);
+        List<Long> refreshedUserIds = new ArrayList<>();
+        when(userStatusService.updateOnlineUsersTtl(any(), anyInt()))
+                .thenAnswer(invocation -> {
+                    LongKeyGenerator generator = invocation.getArgument(0);
+                    long userId;
+                    while ((userId = generator.next()) != -1) {
+                        refreshedUserIds.add(userId);
+                    }
+                    return Mono.empty();
+                });
+        HeartbeatManager manager = new HeartbeatManager(sessionService, userStatusService, 180, 0, 540);
+        try {
+            UserSession session = newSession();
+            manager.scheduleHeartbeatCheck(session);
+
+            verify(userStatusService, timeout(5000)).updateOnlineUsersTtl(any(), eq(180));
+            assertThat(refreshedUserIds).containsExactly(userId);
+            assertThat(session.getLastHeartbeatUpdateTimestampMillis()).isPositive();
+            verify(sessionService, never()).setLocalSessionOfflineByUserIdAndDeviceType(any(), any(), any());
+        } finally {
+            manager.destroy();
+        }
+    }
+
+    @Test
+    void scheduleHeartbeatCheck_shouldCloseSession_forIdleSession() {
+        SessionService sessionService = mock(SessionService.class);
+        when(sessionService.setLocalSessionOfflineByUserIdAndDeviceType(any(), any(), any()))
+                .thenReturn(Mono.just(true));
+        UserStatusService userStatusService = mock(UserStatusService.class);
+        HeartbeatManager manager = new HeartbeatManager(sessionService, userStatusService, 1, 0, 3);
+        try {
+            UserSession session = newSession();
+            session.setLastHeartbeatRequestTimestampMillis(System.currentTimeMillis() - 5000);
+            manager.scheduleHeartbeatCheck(session);
+
+            verify(sessionService, timeout(5000))
+                    .setLocalSessionOfflineByUserIdAndDeviceType(eq(userId), eq(deviceType), any());
+            verify(userStatusService, never()).updateOnlineUsersTtl(any(), anyInt());
+        } finally {
+            manager.destroy();
+        }
+    }
+
+    @Test
+    void scheduleHeartbeatCheck_shouldStopChecking_forClosedSession() throws InterruptedException {
+        SessionService sessionService = mock(SessionService.class);
+        UserStatusService userStatusService = mock(UserStatusService.class);
+        HeartbeatManager manager = new HeartbeatManager(sessionService, userStatusService, 180, 0, 540);
+        try {
+            UserSession session = newSession();
+            manager.scheduleHeartbeatCheck(session);
+            session.close(null);
+            assertThat(session.getHeartbeatTimeout().isCancelled()).isTrue();
+
+            Thread.sleep(2500);
+            verify(userStatusService, never()).updateOnlineUsersTtl(any(), anyInt());
+        } finally {
+            manager.destroy();
+        }
+    }
+
+    private UserSession newSession() {
+        UserSession session = new UserSession(1, userId, deviceType, null, null);
+        session.setConnection(mock(NetConnection.class), new ByteArrayWrapper(new byte[]{}));
+        return session;
+    }
+
+}
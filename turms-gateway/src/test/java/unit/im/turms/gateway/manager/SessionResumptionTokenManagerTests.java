@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.gateway.manager;
+
+import im.turms.common.constant.DeviceType;
+import im.turms.gateway.manager.SessionResumptionTokenManager;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class SessionResumptionTokenManagerTests {
+
+    private final long userId = 1L;
+    private final DeviceType deviceType = DeviceType.ANDROID;
+    private final int sessionId = 123456;
+    private final int sequence = 3;
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    void verify_shouldReturnSessionIdAndSequence_forIssuedToken() {
+        SessionResumptionTokenManager manager = new SessionResumptionTokenManager();
+        String token = manager.issue(userId, deviceType, sessionId, sequence, now + 60_000);
+
+        assertThat(manager.verify(userId, deviceType, token, now))
+                .isEqualTo(new SessionResumptionTokenManager.VerifiedToken(sessionId, sequence));
+    }
+
+    @Test
+    void verify_shouldReturnNull_ifTokenExpired() {
+        SessionResumptionTokenManager manager = new SessionResumptionTokenManager();
+        String token = manager.issue(userId, deviceType, sessionId, sequence, now);
+
+        assertThat(manager.verify(userId, deviceType, token, now)).isNull();
+    }
+
+    @Test
+    void verify_shouldReturnNull_forAnotherUserOrDeviceType() {
+        SessionResumptionTokenManager manager = new SessionResumptionTokenManager();
+        String token = manager.issue(userId, deviceType, sessionId, sequence, now + 60_000);
+
+        assertThat(manager.verify(userId + 1, deviceType, token, now)).isNull();
+        assertThat(manager.verify(userId, DeviceType.IOS, token, now)).isNull();
+    }
+
+    @Test
+    void verify_shouldReturnNull_forTokenIssuedByAnotherNode() {
+        String token = new SessionResumptionTokenManager()
+                .issue(userId, deviceType, sessionId, sequence, now + 60_000);
+
+        assertThat(new SessionResumptionTokenManager().verify(userId, deviceType, token, now)).isNull();
+    }
+
+    @Test
+    void verify_shouldReturnNull_forMalformedToken() {
+        SessionResumptionTokenManager manager = new SessionResumptionTokenManager();
+        String token = manager.issue(userId, deviceType, sessionId, sequence, now + 60_000);
+        // Tamper with the signed sequence
+        char c = token.charAt(8);
+        String tamperedToken = token.substring(0, 8) + (c == 'A' ? 'B' : 'A') + token.substring(9);
+
+        assertThat(manager.verify(userId, deviceType, null, now)).isNull();
+        assertThat(manager.verify(userId, deviceType, "!@#", now)).isNull();
+        assertThat(manager.verify(userId, deviceType, token.substring(1), now)).isNull();
+        assertThat(manager.verify(userId, deviceType, tamperedToken, now)).isNull();
+    }
+
+}
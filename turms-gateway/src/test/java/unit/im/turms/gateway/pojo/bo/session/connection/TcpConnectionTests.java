@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.gateway.pojo.bo.session.connection;
+
+import im.turms.gateway.access.tcp.handler.TcpHandlerConfig;
+import im.turms.gateway.pojo.bo.session.connection.NetConnection;
+import im.turms.gateway.pojo.bo.session.connection.TcpConnection;
+import im.turms.server.common.access.tcp.codec.CodecFactory;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import reactor.netty.channel.ChannelOperations;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class TcpConnectionTests {
+
+    private static final byte[] LARGE_FRAME = "hello".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void enableCompression_shouldNotCompressFrames_ifServerDisablesCompression() {
+        EmbeddedChannel channel = newChannel();
+        TcpConnection connection = newConnection(channel);
+
+        assertThat(connection.enableCompression()).isFalse();
+        assertThat(connection.isCompressionEnabled()).isFalse();
+        assertThat(channel.pipeline().get(TcpHandlerConfig.COMPRESSING_FRAME_ENCODER_NAME)).isNull();
+
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void enableCompression_shouldOnlyCompressFramesAfterClientOptsIn() {
+        EmbeddedChannel channel = newChannel();
+        channel.attr(TcpHandlerConfig.COMPRESSING_FRAME_ENCODER)
+                .set(CodecFactory.getCompressingFrameEncoder(new DeflateFrameCompressor(6), 256));
+        TcpConnection connection = newConnection(channel);
+
+        channel.writeOutbound(Unpooled.wrappedBuffer(LARGE_FRAME));
+        ByteBuf frameBeforeOptIn = skipLength(channel.readOutbound());
+        assertThat(DeflateFrameCompressor.isCompressed(frameBeforeOptIn)).isFalse();
+        frameBeforeOptIn.release();
+
+        assertThat(connection.enableCompression()).isTrue();
+        assertThat(connection.enableCompression())
+                .as("Enabling compression again should be a no-op")
+                .isTrue();
+        assertThat(connection.isCompressionEnabled()).isTrue();
+
+        channel.writeOutbound(Unpooled.wrappedBuffer(LARGE_FRAME));
+        ByteBuf frameAfterOptIn = skipLength(channel.readOutbound());
+        assertThat(DeflateFrameCompressor.isCompressed(frameAfterOptIn)).isTrue();
+        frameAfterOptIn.release();
+
+        channel.finishAndReleaseAll();
+    }
+
+    private EmbeddedChannel newChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(TcpHandlerConfig.VARINT_LENGTH_FIELD_PREPENDER_NAME,
+                CodecFactory.getVarintLengthFieldPrepender());
+        return channel;
+    }
+
+    private ByteBuf skipLength(ByteBuf frame) {
+        while ((frame.readByte() & 0x80) != 0) {
+            // Skip the varint-encoded length
+        }
+        return frame;
+    }
+
+    private TcpConnection newConnection(EmbeddedChannel channel) {
+        ChannelOperations<?, ?> operations = mock(ChannelOperations.class);
+        when(operations.channel()).thenReturn(channel);
+        return (TcpConnection) NetConnection.create(operations);
+    }
+
+}
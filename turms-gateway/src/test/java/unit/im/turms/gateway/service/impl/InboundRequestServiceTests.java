@@ -51,7 +51,7 @@ class InboundRequestServiceTests {
     @Test
     void processServiceRequest_shouldThrow_ifUserIsOffline() {
         InboundRequestService inboundRequestService = newInboundRequestService(false, true);
-        Mono<TurmsNotification> result = inboundRequestService.processServiceRequest(newServiceRequest());
+        Mono<ServiceResponse> result = inboundRequestService.processServiceRequest(newServiceRequest());
 
         StepVerifier.create(result)
                 .expectErrorMatches(throwable -> throwable instanceof TurmsBusinessException e
@@ -62,7 +62,7 @@ class InboundRequestServiceTests {
     @Test
     void processServiceRequest_shouldReturnError_ifFailedToHandleRequest() {
         InboundRequestService inboundRequestService = newInboundRequestService(true, false);
-        Mono<TurmsNotification> result = inboundRequestService.processServiceRequest(newServiceRequest());
+        Mono<ServiceResponse> result = inboundRequestService.processServiceRequest(newServiceRequest());
 
         StepVerifier.create(result)
                 .verifyErrorMatches(t -> t == HANDLE_REQUEST_FAILURE_EXCEPTION);
@@ -71,10 +71,10 @@ class InboundRequestServiceTests {
     @Test
     void processServiceRequest_shouldReturnOk_ifHandleRequestSuccessfully() {
         InboundRequestService inboundRequestService = newInboundRequestService(true, true);
-        Mono<TurmsNotification> result = inboundRequestService.processServiceRequest(newServiceRequest());
+        Mono<ServiceResponse> result = inboundRequestService.processServiceRequest(newServiceRequest());
 
         StepVerifier.create(result)
-                .expectNextMatches(notification -> notification.getCode() == responseForSuccess.code().getBusinessCode())
+                .expectNextMatches(response -> response.code() == responseForSuccess.code())
                 .verifyComplete();
     }
 
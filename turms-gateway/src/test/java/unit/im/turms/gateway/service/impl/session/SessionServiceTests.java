@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.gateway.service.impl.session;
+
+import im.turms.common.constant.DeviceType;
+import im.turms.common.constant.UserStatus;
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.gateway.manager.SessionResumptionTokenManager;
+import im.turms.gateway.manager.UserSessionsManager;
+import im.turms.gateway.pojo.bo.session.UserSession;
+import im.turms.gateway.pojo.bo.session.connection.NetConnection;
+import im.turms.gateway.service.impl.observability.MetricsService;
+import im.turms.gateway.service.impl.session.SessionService;
+import im.turms.gateway.service.impl.session.UserSimultaneousLoginService;
+import im.turms.server.common.bo.session.UserSessionsStatus;
+import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.plugin.PluginManager;
+import im.turms.server.common.property.TurmsProperties;
+import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.service.session.SessionLocationService;
+import im.turms.server.common.service.session.UserStatusService;
+import im.turms.server.common.lang.ByteArrayWrapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static im.turms.gateway.constant.MetricsConstant.LOGGED_IN_USERS_COUNTER_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class SessionServiceTests {
+
+    private static final long USER_ID = 1L;
+    private static final DeviceType DEVICE_TYPE = DeviceType.ANDROID;
+    private static final ByteArrayWrapper IP = new ByteArrayWrapper(new byte[]{127, 0, 0, 1});
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SessionService sessionService = newSessionService();
+    private final List<ByteBuf> notifications = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        sessionService.destroy();
+    }
+
+    @Test
+    void tryResumeLocalSession_shouldResumeOnlyOnce_withSameToken() {
+        UserSession session = registerDisconnectedSession();
+        String token = establishAndGetToken(session);
+        session.setLastHeartbeatRequestTimestampMillis(0);
+
+        UserSession resumedSession = sessionService.tryResumeLocalSession(IP, USER_ID, DEVICE_TYPE, token, null, null);
+
+        assertThat(resumedSession).isSameAs(session);
+        assertThat(session.getLastHeartbeatRequestTimestampMillis()).isPositive();
+        assertThat(sessionService.tryResumeLocalSession(IP, USER_ID, DEVICE_TYPE, token, null, null)).isNull();
+    }
+
+    @Test
+    void tryResumeLocalSession_shouldBeClaimedByOneClient_ifResumedConcurrently() throws Exception {
+        UserSession session = registerDisconnectedSession();
+        String token = establishAndGetToken(session);
+        int clientCount = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(clientCount);
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Callable<UserSession>> tasks = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            tasks.add(() -> {
+                latch.await();
+                return sessionService.tryResumeLocalSession(IP, USER_ID, DEVICE_TYPE, token, null, null);
+            });
+        }
+        try {
+            List<Future<UserSession>> futures = new ArrayList<>(clientCount);
+            for (Callable<UserSession> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            latch.countDown();
+            int resumedCount = 0;
+            for (Future<UserSession> future : futures) {
+                if (future.get() != null) {
+                    resumedCount++;
+                }
+            }
+            assertThat(resumedCount).isOne();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void tryResumeLocalSession_shouldReject_ifTokensAreRevoked() {
+        UserSession session = registerDisconnectedSession();
+        String token = establishAndGetToken(session);
+
+        sessionService.revokeLocalSessionResumptionTokens(Set.of(USER_ID));
+
+        assertThat(sessionService.tryResumeLocalSession(IP, USER_ID, DEVICE_TYPE, token, null, null)).isNull();
+    }
+
+    @Test
+    void onSessionResumed_shouldIssueNewTokenWithoutCountingLogin() {
+        UserSession session = registerDisconnectedSession();
+        String token = establishAndGetToken(session);
+        UserSessionsManager manager = sessionService.getUserSessionsManager(USER_ID);
+        assertThat(sessionService.tryResumeLocalSession(IP, USER_ID, DEVICE_TYPE, token, null, null)).isSameAs(session);
+
+        sessionService.onSessionResumed(manager, DEVICE_TYPE);
+
+        assertThat(registry.counter(LOGGED_IN_USERS_COUNTER_NAME).count()).isOne();
+        String newToken = getLastToken();
+        assertThat(newToken).isNotEqualTo(token);
+        assertThat(sessionService.tryResumeLocalSession(IP, USER_ID, DEVICE_TYPE, newToken, null, null)).isSameAs(session);
+    }
+
+    private UserSession registerDisconnectedSession() {
+        UserSession session = sessionService
+                .tryRegisterOnlineUser(1, IP, USER_ID, DEVICE_TYPE, null, null, null)
+                .block();
+        assertThat(session).isNotNull();
+        NetConnection connection = mock(NetConnection.class);
+        when(connection.isConnected()).thenReturn(false);
+        session.setConnection(connection, IP);
+        session.setNotificationConsumer((notification, tracingContext) -> notifications.add(notification));
+        return session;
+    }
+
+    private String establishAndGetToken(UserSession session) {
+        sessionService.onSessionEstablished(sessionService.getUserSessionsManager(session.getUserId()), DEVICE_TYPE);
+        return getLastToken();
+    }
+
+    private String getLastToken() {
+        ByteBuf buffer = notifications.get(notifications.size() - 1);
+        try {
+            String token = TurmsNotification.parseFrom(ByteBufUtil.getBytes(buffer)).getReason();
+            assertThat(token).isNotEmpty();
+            return token;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private SessionService newSessionService() {
+        TurmsProperties properties = new TurmsProperties();
+        Node node = mock(Node.class);
+        when(node.getSharedProperties()).thenReturn(properties);
+        TurmsPropertiesManager propertiesManager = mock(TurmsPropertiesManager.class);
+        when(propertiesManager.getLocalProperties()).thenReturn(properties);
+        UserStatusService userStatusService = mock(UserStatusService.class);
+        when(userStatusService.fetchUserSessionsStatus(anyLong()))
+                .thenReturn(Mono.just(new UserSessionsStatus(UserStatus.OFFLINE, Collections.emptyMap())));
+        when(userStatusService.addOnlineDeviceIfAbsent(anyLong(), any(), any(), anyInt()))
+                .thenReturn(Mono.just(true));
+        when(userStatusService.removeStatusByUserIdAndDeviceTypes(anyLong(), any()))
+                .thenReturn(Mono.just(true));
+        MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.getRegistry()).thenReturn(registry);
+        return new SessionService(node,
+                propertiesManager,
+                mock(PluginManager.class),
+                mock(SessionLocationService.class),
+                userStatusService,
+                mock(UserSimultaneousLoginService.class),
+                metricsService);
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.gateway.service.impl.session;
+
+import im.turms.gateway.service.impl.observability.MetricsService;
+import im.turms.gateway.service.impl.session.UserService;
+import im.turms.server.common.constant.TurmsStatusCode;
+import im.turms.server.common.dao.domain.User;
+import im.turms.server.common.exception.TurmsBusinessException;
+import im.turms.server.common.mongo.TurmsMongoClient;
+import im.turms.server.common.mongo.operation.option.Filter;
+import im.turms.server.common.mongo.operation.option.QueryOptions;
+import im.turms.server.common.property.TurmsProperties;
+import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.constant.PasswordEncodingAlgorithm;
+import im.turms.server.common.property.env.gateway.PasswordVerificationProperties;
+import im.turms.server.common.security.PasswordManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static im.turms.gateway.constant.MetricsConstant.REJECTED_PASSWORD_VERIFICATIONS_COUNTER_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class UserServiceTests {
+
+    private static final Long USER_ID = 1L;
+    private static final String PASSWORD = "123";
+    private static final User USER = new User(USER_ID, new byte[]{1}, null, null, null, null, null, null, null, null);
+
+    private final TurmsMongoClient mongoClient = mock(TurmsMongoClient.class);
+    private final PasswordManager passwordManager = mock(PasswordManager.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void authenticate_shouldCacheVerifiedCredential() {
+        UserService userService = newUserService(PasswordEncodingAlgorithm.SALTED_SHA256, 1, 1);
+        when(mongoClient.findOne(eq(User.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Mono.just(USER));
+
+        StepVerifier.create(userService.authenticate(USER_ID, PASSWORD))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertThat(userService.isVerifiedCredentialCached(USER_ID, PASSWORD)).isTrue();
+        assertThat(userService.isVerifiedCredentialCached(USER_ID, PASSWORD + "4")).isFalse();
+        assertThat(userService.isVerifiedCredentialCached(USER_ID + 1, PASSWORD)).isFalse();
+    }
+
+    @Test
+    void invalidateLocalVerifiedCredentials_shouldInvalidateCachedCredential() {
+        UserService userService = newUserService(PasswordEncodingAlgorithm.SALTED_SHA256, 1, 1);
+        when(mongoClient.findOne(eq(User.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Mono.just(USER));
+        userService.authenticate(USER_ID, PASSWORD).block();
+
+        userService.invalidateLocalVerifiedCredentials(Set.of(USER_ID));
+
+        assertThat(userService.isVerifiedCredentialCached(USER_ID, PASSWORD)).isFalse();
+        // The credential verified after the invalidation can be cached
+        userService.authenticate(USER_ID, PASSWORD).block();
+        assertThat(userService.isVerifiedCredentialCached(USER_ID, PASSWORD)).isTrue();
+    }
+
+    @Test
+    void authenticate_shouldNotCacheCredential_ifInvalidatedDuringVerification() {
+        UserService userService = newUserService(PasswordEncodingAlgorithm.SALTED_SHA256, 1, 1);
+        Sinks.One<User> userSink = Sinks.one();
+        when(mongoClient.findOne(eq(User.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(userSink.asMono());
+
+        StepVerifier.create(userService.authenticate(USER_ID, PASSWORD))
+                .then(() -> {
+                    userService.invalidateLocalVerifiedCredentials(Set.of(USER_ID));
+                    userSink.tryEmitValue(USER);
+                })
+                .expectNext(true)
+                .verifyComplete();
+
+        assertThat(userService.isVerifiedCredentialCached(USER_ID, PASSWORD)).isFalse();
+    }
+
+    @Test
+    void authenticate_shouldRejectFast_ifPasswordVerifierIsOverloaded() throws InterruptedException {
+        UserService userService = newUserService(PasswordEncodingAlgorithm.BCRYPT, 1, 1);
+        CountDownLatch verificationLatch = new CountDownLatch(1);
+        when(passwordManager.matchesUserPassword(any(), any())).thenAnswer(invocation -> {
+            verificationLatch.await();
+            return true;
+        });
+        when(mongoClient.findOne(eq(User.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Mono.just(USER));
+        try {
+            // The first verification occupies the only thread, and the second one occupies the only slot of the queue
+            Mono<Boolean> runningVerification = userService.authenticate(USER_ID, PASSWORD).cache();
+            Mono<Boolean> queuedVerification = userService.authenticate(USER_ID, PASSWORD).cache();
+            runningVerification.subscribe();
+            queuedVerification.subscribe();
+
+            StepVerifier.create(userService.authenticate(USER_ID, PASSWORD))
+                    .expectErrorMatches(t -> t instanceof TurmsBusinessException e
+                            && e.getCode() == TurmsStatusCode.SERVER_UNAVAILABLE)
+                    .verify();
+            assertThat(registry.counter(REJECTED_PASSWORD_VERIFICATIONS_COUNTER_NAME).count()).isOne();
+
+            verificationLatch.countDown();
+            StepVerifier.create(runningVerification)
+                    .expectNext(true)
+                    .verifyComplete();
+            StepVerifier.create(queuedVerification)
+                    .expectNext(true)
+                    .verifyComplete();
+        } finally {
+            verificationLatch.countDown();
+            userService.destroy();
+        }
+    }
+
+    private UserService newUserService(PasswordEncodingAlgorithm algorithm, int threads, int queueCapacity) {
+        TurmsProperties properties = new TurmsProperties();
+        PasswordVerificationProperties verificationProperties = properties.getGateway()
+                .getSession()
+                .getPasswordVerification();
+        verificationProperties.setThreads(threads);
+        verificationProperties.setQueueCapacity(queueCapacity);
+        TurmsPropertiesManager propertiesManager = mock(TurmsPropertiesManager.class);
+        when(propertiesManager.getLocalProperties()).thenReturn(properties);
+        when(passwordManager.getUserPasswordEncodingAlgorithm()).thenReturn(algorithm);
+        when(passwordManager.matchesUserPassword(PASSWORD, USER.getPassword())).thenReturn(true);
+        MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.getRegistry()).thenReturn(registry);
+        return new UserService(mongoClient, passwordManager, propertiesManager, metricsService);
+    }
+
+}
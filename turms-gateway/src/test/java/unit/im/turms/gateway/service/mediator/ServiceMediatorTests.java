@@ -19,7 +19,7 @@ package unit.im.turms.gateway.service.mediator;
 
 import im.turms.common.constant.DeviceType;
 import im.turms.common.constant.statuscode.SessionCloseStatus;
-import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.gateway.manager.SessionResumptionTokenManager;
 import im.turms.gateway.manager.UserSessionsManager;
 import im.turms.gateway.pojo.bo.session.UserSession;
 import im.turms.gateway.service.impl.message.InboundRequestService;
@@ -30,6 +30,7 @@ import im.turms.gateway.service.mediator.ServiceMediator;
 import im.turms.server.common.cluster.node.Node;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.dto.ServiceRequest;
+import im.turms.server.common.dto.ServiceResponse;
 import im.turms.server.common.lang.ByteArrayWrapper;
 import im.turms.server.common.plugin.PluginManager;
 import im.turms.server.common.property.TurmsProperties;
@@ -41,6 +42,8 @@ import org.junit.jupiter.api.Test;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.mockito.ArgumentMatchers.any;
@@ -61,6 +64,8 @@ class ServiceMediatorTests {
     private final Long userId = 1L;
     private final DeviceType deviceType = DeviceType.ANDROID;
 
+    private static final String VALID_RESUMPTION_TOKEN = "valid";
+
     @Test
     void constructor_shouldSucceed() {
         ServiceMediator mediator = new ServiceMediator(null, null, null, null, null, null);
@@ -120,6 +125,28 @@ class ServiceMediatorTests {
                 .verifyComplete();
     }
 
+    @Test
+    void processLoginRequest_shouldResumeSession_ifResumptionTokenIsValid() {
+        ServiceMediator mediator = newServiceMediator(true, true, false, false);
+        Map<String, String> deviceDetails = Map.of(SessionResumptionTokenManager.DEVICE_DETAILS_KEY, VALID_RESUMPTION_TOKEN);
+        Mono<UserSession> result = mediator.processLoginRequest(version, ip, userId, null, deviceType, deviceDetails, null, null, null);
+
+        StepVerifier.create(result)
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void processLoginRequest_shouldAuthenticate_ifResumptionTokenIsInvalid() {
+        ServiceMediator mediator = newServiceMediator(true, true, false, false);
+        Map<String, String> deviceDetails = Map.of(SessionResumptionTokenManager.DEVICE_DETAILS_KEY, "invalid");
+        Mono<UserSession> result = mediator.processLoginRequest(version, ip, userId, null, deviceType, deviceDetails, null, null, null);
+
+        StepVerifier.create(result)
+                .expectErrorMatches(throwable -> ThrowableUtil.isStatusCode(throwable, TurmsStatusCode.LOGIN_AUTHENTICATION_FAILED))
+                .verify();
+    }
+
     @Test
     void setLocalUserDeviceOffline_shouldSucceed() {
         ServiceMediator mediator = newServiceMediator();
@@ -151,7 +178,7 @@ class ServiceMediatorTests {
     void processServiceRequest_shouldSucceed() {
         ServiceMediator mediator = newServiceMediator();
         ServiceRequest request = mock(ServiceRequest.class);
-        Mono<TurmsNotification> result = mediator.processServiceRequest(request);
+        Mono<ServiceResponse> result = mediator.processServiceRequest(request);
 
         StepVerifier.create(result)
                 .verifyComplete();
@@ -210,6 +237,8 @@ class ServiceMediatorTests {
         UserSession userSession = mock(UserSession.class);
         when(sessionService.tryRegisterOnlineUser(anyInt(), any(), any(), any(), any(), any(), any()))
                 .thenReturn(Mono.just(userSession));
+        when(sessionService.tryResumeLocalSession(any(), any(), any(), eq(VALID_RESUMPTION_TOKEN), any(), any()))
+                .thenReturn(userSession);
         when(sessionService.setLocalSessionOfflineByUserIdAndDeviceType(any(), any(), any()))
                 .thenReturn(Mono.just(true));
 
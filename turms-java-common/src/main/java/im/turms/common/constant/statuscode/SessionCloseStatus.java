@@ -45,6 +45,8 @@ public enum SessionCloseStatus {
     //* Closed due to network error
     //**********************************************************
     CONNECTION_CLOSED(300),
+    // Closed because the client receives data too slowly
+    SLOW_CONSUMER(301),
 
     //**********************************************************
     //* Closed due to unknown error
@@ -17,8 +17,10 @@
 
 package im.turms.plugin.antispam;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
 import im.turms.common.model.dto.request.TurmsRequest;
 import im.turms.plugin.antispam.ac.AhoCorasickCodec;
 import im.turms.plugin.antispam.ac.AhoCorasickDoubleArrayTrie;
@@ -33,8 +35,10 @@ import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.server.common.plugin.TurmsExtension;
 import im.turms.service.plugin.extension.ClientRequestTransformer;
 import im.turms.service.workflow.access.servicerequest.dto.ClientRequest;
+import io.netty.buffer.ByteBuf;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
@@ -56,6 +60,10 @@ public class AntiSpamHandler extends TurmsExtension implements ClientRequestTran
     private final TextPreprocessor textPreprocessor;
 
     private final Map<TurmsRequest.KindCase, TextTypeProperties> textTypeMap = new IdentityHashMap<>();
+    /**
+     * The field numbers of the text fields to scan indexed by the field number of the request in TurmsRequest
+     */
+    private final int[][] textFieldNumbersByRequestFieldNumber;
 
     public AntiSpamHandler() {
         AntiSpamProperties properties = loadProperties(AntiSpamProperties.class);
@@ -68,6 +76,7 @@ public class AntiSpamHandler extends TurmsExtension implements ClientRequestTran
                 ? new SpamDetector(textPreprocessor, buildTrie(properties.getDictParsing(), textPreprocessor))
                 : null;
         initTextTypeMap(textTypeMap, properties.getTextTypes(), properties.getSilentIllegalTextTypes());
+        textFieldNumbersByRequestFieldNumber = getTextFieldNumbersByRequestFieldNumber(textTypeMap);
     }
 
     public AntiSpamHandler(AntiSpamProperties properties) {
@@ -80,6 +89,7 @@ public class AntiSpamHandler extends TurmsExtension implements ClientRequestTran
                 ? new SpamDetector(textPreprocessor, buildTrie(properties.getDictParsing(), textPreprocessor))
                 : null;
         initTextTypeMap(textTypeMap, properties.getTextTypes(), properties.getSilentIllegalTextTypes());
+        textFieldNumbersByRequestFieldNumber = getTextFieldNumbersByRequestFieldNumber(textTypeMap);
     }
 
     private void initTextTypeMap(Map<TurmsRequest.KindCase, TextTypeProperties> map,
@@ -98,6 +108,69 @@ public class AntiSpamHandler extends TurmsExtension implements ClientRequestTran
         }
     }
 
+    private int[][] getTextFieldNumbersByRequestFieldNumber(Map<TurmsRequest.KindCase, TextTypeProperties> map) {
+        int maxRequestFieldNumber = 0;
+        for (TurmsRequest.KindCase requestType : map.keySet()) {
+            maxRequestFieldNumber = Math.max(maxRequestFieldNumber, requestType.getNumber());
+        }
+        int[][] fieldNumbers = new int[maxRequestFieldNumber + 1][];
+        for (Map.Entry<TurmsRequest.KindCase, TextTypeProperties> entry : map.entrySet()) {
+            List<RequestField> fields = entry.getValue().fields;
+            int[] numbers = new int[fields.size()];
+            int i = 0;
+            for (RequestField field : fields) {
+                numbers[i++] = field.descriptor.getNumber();
+            }
+            fieldNumbers[entry.getKey().getNumber()] = numbers;
+        }
+        return fieldNumbers;
+    }
+
+    /**
+     * Scan the text fields in the encoded request directly so that the request doesn't need
+     * to be transformed if it contains no unwanted word, which is the case for most requests.
+     */
+    @Override
+    public boolean shouldTransform(ByteBuf requestBuffer) {
+        if (!enabled) {
+            return false;
+        }
+        int readerIndex = requestBuffer.readerIndex();
+        CodedInputStream stream = CodedInputStream.newInstance(requestBuffer.nioBuffer());
+        try {
+            int tag;
+            while ((tag = stream.readTag()) != 0) {
+                int requestFieldNumber = WireFormat.getTagFieldNumber(tag);
+                int[] textFieldNumbers = requestFieldNumber < textFieldNumbersByRequestFieldNumber.length
+                        ? textFieldNumbersByRequestFieldNumber[requestFieldNumber]
+                        : null;
+                if (textFieldNumbers == null || WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    stream.skipField(tag);
+                    continue;
+                }
+                int oldLimit = stream.pushLimit(stream.readRawVarint32());
+                while ((tag = stream.readTag()) != 0) {
+                    if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED
+                            || !contains(textFieldNumbers, WireFormat.getTagFieldNumber(tag))) {
+                        stream.skipField(tag);
+                        continue;
+                    }
+                    int length = stream.readRawVarint32();
+                    int start = readerIndex + stream.getTotalBytesRead();
+                    if (spamDetector.containsUnwantedWords(requestBuffer, start, start + length)) {
+                        return true;
+                    }
+                    stream.skipRawBytes(length);
+                }
+                stream.popLimit(oldLimit);
+            }
+        } catch (IOException e) {
+            // Let transform() handle the request as usual
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public Mono<ClientRequest> transform(ClientRequest clientRequest) {
         if (!enabled) {
@@ -106,6 +179,9 @@ public class AntiSpamHandler extends TurmsExtension implements ClientRequestTran
         TurmsRequest.Builder builder = clientRequest.turmsRequestBuilder();
         TurmsRequest.KindCase requestType = builder.getKindCase();
         TextTypeProperties properties = textTypeMap.get(requestType);
+        if (properties == null) {
+            return Mono.just(clientRequest);
+        }
         FieldDescriptor requestFieldDescriptor = properties.requestFieldDescriptor;
         Message.Builder req = builder.getFieldBuilder(requestFieldDescriptor);
         for (RequestField field : properties.fields) {
@@ -141,6 +217,15 @@ public class AntiSpamHandler extends TurmsExtension implements ClientRequestTran
         return Mono.just(clientRequest);
     }
 
+    private static boolean contains(int[] numbers, int number) {
+        for (int n : numbers) {
+            if (n == number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private AhoCorasickDoubleArrayTrie buildTrie(DictionaryParsingProperties dictParsing,
                                                  TextPreprocessor textPreprocessor) {
         String path = dictParsing.getBinFilePath();
@@ -20,6 +20,7 @@ package im.turms.plugin.antispam;
 import im.turms.plugin.antispam.ac.AhoCorasickDoubleArrayTrie;
 import im.turms.server.common.lang.FastStringBuilder;
 import im.turms.server.common.util.StringUtil;
+import io.netty.buffer.ByteBuf;
 
 import java.util.Arrays;
 
@@ -30,6 +31,8 @@ public class SpamDetector extends AhoCorasickDoubleArrayTrie {
 
     public static final byte UNWANTED_WORD_DELIMITER = 0x1E; // "Record Separator"
 
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
     private final TextPreprocessor textPreprocessor;
 
     public SpamDetector(TextPreprocessor textPreprocessor, AhoCorasickDoubleArrayTrie trie) {
@@ -135,6 +138,92 @@ public class SpamDetector extends AhoCorasickDoubleArrayTrie {
         return false;
     }
 
+    /**
+     * Scan the UTF-8 encoded text in place without decoding it into a String.
+     * Characters outside the BMP are fed as surrogate pairs so that the result is the same as
+     * {@link #containsUnwantedWords(String)}, and malformed sequences are fed as the replacement character.
+     *
+     * @param start the index of the first byte of the text
+     * @param end   the index after the last byte of the text
+     */
+    public boolean containsUnwantedWords(ByteBuf buffer, int start, int end) {
+        int currentState = 0;
+        int i = start;
+        while (i < end) {
+            int b = buffer.getByte(i++);
+            if (b >= 0) {
+                currentState = findNextStateByRawChar(currentState, (char) b);
+                if (currentState == STATUS_NOT_FOUND) {
+                    return true;
+                }
+                continue;
+            }
+            int codePoint;
+            int remaining;
+            if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                remaining = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                remaining = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                remaining = 3;
+            } else {
+                codePoint = REPLACEMENT_CHARACTER;
+                remaining = 0;
+            }
+            if (i + remaining > end) {
+                codePoint = REPLACEMENT_CHARACTER;
+                i = end;
+            } else {
+                for (; remaining > 0; remaining--) {
+                    int next = buffer.getByte(i);
+                    if ((next & 0xC0) != 0x80) {
+                        codePoint = REPLACEMENT_CHARACTER;
+                        break;
+                    }
+                    codePoint = (codePoint << 6) | (next & 0x3F);
+                    i++;
+                }
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                currentState = findNextStateByRawChar(currentState, (char) codePoint);
+            } else {
+                currentState = findNextStateByRawChar(currentState, Character.highSurrogate(codePoint));
+                if (currentState == STATUS_NOT_FOUND) {
+                    return true;
+                }
+                currentState = findNextStateByRawChar(currentState, Character.lowSurrogate(codePoint));
+            }
+            if (currentState == STATUS_NOT_FOUND) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the next state, or {@link #STATUS_NOT_FOUND} if an unwanted word is found
+     */
+    private int findNextStateByRawChar(int currentState, char code) {
+        Object newChars = textPreprocessor.process(code);
+        if (newChars instanceof char[] chars) {
+            for (char c : chars) {
+                currentState = findNextState(currentState, c);
+                if (output[currentState] != null) {
+                    return STATUS_NOT_FOUND;
+                }
+            }
+        } else if (newChars instanceof Character c) {
+            currentState = findNextState(currentState, c);
+            if (output[currentState] != null) {
+                return STATUS_NOT_FOUND;
+            }
+        }
+        return currentState;
+    }
+
     /**
      * @param maxNumberOfUnwantedWordsToReturn should be greater than 0
      */
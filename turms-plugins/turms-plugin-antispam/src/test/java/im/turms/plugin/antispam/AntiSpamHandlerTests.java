@@ -20,6 +20,8 @@ package im.turms.plugin.antispam;
 import im.turms.common.constant.DeviceType;
 import im.turms.common.model.dto.request.TurmsRequest;
 import im.turms.common.model.dto.request.group.CreateGroupRequest;
+import im.turms.common.model.dto.request.group.QueryGroupRequest;
+import im.turms.plugin.antispam.ac.AhoCorasickDoubleArrayTrie;
 import im.turms.plugin.antispam.ac.Store;
 import im.turms.plugin.antispam.property.AntiSpamProperties;
 import im.turms.plugin.antispam.property.TextParsingStrategy;
@@ -27,6 +29,8 @@ import im.turms.plugin.antispam.property.UnwantedWordHandleStrategy;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.service.workflow.access.servicerequest.dto.ClientRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 import reactor.core.publisher.Mono;
@@ -65,6 +69,68 @@ class AntiSpamHandlerTests {
                 .verify();
     }
 
+    @Test
+    void shouldTransform_shouldReturnFalse_forCleanText() {
+        AntiSpamHandler handler = createHandler(UnwantedWordHandleStrategy.MASK_TEXT,
+                TextParsingStrategy.NORMALIZATION_TRANSLITERATION, false);
+        TurmsRequest request = TurmsRequest
+                .newBuilder()
+                .setRequestId(1L)
+                .setCreateGroupRequest(CreateGroupRequest.newBuilder()
+                        .setName("don't take me home tonight")
+                        .setMinimumScore(1))
+                .build();
+        assertThat(handler.shouldTransform(toBuffer(request))).isFalse();
+    }
+
+    @Test
+    void shouldTransform_shouldReturnTrue_forUnwantedText() {
+        AntiSpamHandler handler = createHandler(UnwantedWordHandleStrategy.MASK_TEXT,
+                TextParsingStrategy.NORMALIZATION_TRANSLITERATION, false);
+        TurmsRequest request = TurmsRequest
+                .newBuilder()
+                .setRequestId(1L)
+                .setCreateGroupRequest(CreateGroupRequest.newBuilder()
+                        .setName("don't take me home tonight")
+                        .setMinimumScore(1)
+                        .setAnnouncement("Hello敏感词句.,asd#(&𤳵/()"))
+                .build();
+        assertThat(handler.shouldTransform(toBuffer(request))).isTrue();
+    }
+
+    @Test
+    void shouldTransform_shouldReturnFalse_forUntargetedRequest() {
+        AntiSpamHandler handler = createHandler(UnwantedWordHandleStrategy.MASK_TEXT,
+                TextParsingStrategy.NORMALIZATION_TRANSLITERATION, false);
+        TurmsRequest request = TurmsRequest
+                .newBuilder()
+                .setRequestId(1L)
+                .setQueryGroupRequest(QueryGroupRequest.newBuilder()
+                        .setGroupId(1L))
+                .build();
+        assertThat(handler.shouldTransform(toBuffer(request))).isFalse();
+    }
+
+    @Test
+    void containsUnwantedWords_shouldBeSame_forStringAndUtf8Bytes() {
+        SpamDetector detector = new SpamDetector(new TextPreprocessor(TextParsingStrategy.NORMALIZATION_TRANSLITERATION),
+                new AhoCorasickDoubleArrayTrie(Store.UNWANTED_WORDS));
+        List<String> texts = List.of("",
+                "don't take me home tonight",
+                "Oh no, loving you is not right",
+                "Hello敏感词句.,asd#(&𤳵/()",
+                "𤳵𤳵 so baby won't you hold me tight",
+                "12%&123敏gan词321",
+                "薬指のリングより");
+        for (String text : texts) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+            assertThat(detector.containsUnwantedWords(buffer, 0, bytes.length))
+                    .as(text)
+                    .isEqualTo(detector.containsUnwantedWords(text));
+        }
+    }
+
     @Test
     void shouldMask_forLatin1Text() {
         String original = "Oh no, loving you is not right. But no, don't take me home tonight. Oh yes, so baby won't you hold me tight";
@@ -162,6 +228,16 @@ class AntiSpamHandlerTests {
                 .verify();
     }
 
+    ByteBuf toBuffer(TurmsRequest request) {
+        // Prepend a byte to make sure the reader index is respected
+        byte[] bytes = request.toByteArray();
+        ByteBuf buffer = Unpooled.buffer(bytes.length + 1)
+                .writeByte(0)
+                .writeBytes(bytes);
+        buffer.skipBytes(1);
+        return buffer;
+    }
+
     @SneakyThrows
     AntiSpamHandler createHandler(UnwantedWordHandleStrategy handleStrategy, TextParsingStrategy strategy, boolean shouldReturnUnwantedWords) {
         try {
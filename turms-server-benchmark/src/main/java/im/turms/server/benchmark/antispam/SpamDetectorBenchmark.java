@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.antispam;
+
+import im.turms.plugin.antispam.SpamDetector;
+import im.turms.plugin.antispam.TextPreprocessor;
+import im.turms.plugin.antispam.ac.AhoCorasickDoubleArrayTrie;
+import im.turms.plugin.antispam.dictionary.Word;
+import im.turms.plugin.antispam.property.TextParsingStrategy;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpamDetectorBenchmark {
+
+    private static final byte MASK = '*';
+
+    @Param({"NORMALIZATION", "NORMALIZATION_TRANSLITERATION"})
+    private TextParsingStrategy textParsingStrategy;
+
+    private SpamDetector spamDetector;
+    private String cleanText;
+    private String unwantedText;
+    private ByteBuf cleanTextBuffer;
+
+    @Setup
+    public void setup() {
+        List<Word> words = Stream.of("敏感词", "敏感词句", "人目忍ぶ恋", "切なさ", "oh no", "but no", "loving you is not right")
+                .map(word -> new Word(word.toCharArray()))
+                .toList();
+        TextPreprocessor preprocessor = new TextPreprocessor(textParsingStrategy);
+        spamDetector = new SpamDetector(preprocessor, new AhoCorasickDoubleArrayTrie(words));
+        cleanText = "Hello, this is a clean message for the benchmark of the spam detector. 你好，世界！こんにちは。";
+        unwantedText = "Oh no, this message contains 敏感词句 and 人目忍ぶ恋, but no one knows loving you is not right.";
+        cleanTextBuffer = Unpooled.directBuffer()
+                .writeBytes(cleanText.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String maskCleanText() {
+        return spamDetector.mask(cleanText, MASK);
+    }
+
+    @Benchmark
+    public String maskUnwantedText() {
+        return spamDetector.mask(unwantedText, MASK);
+    }
+
+    @Benchmark
+    public boolean containsUnwantedWordsInCleanText() {
+        return spamDetector.containsUnwantedWords(cleanText);
+    }
+
+    @Benchmark
+    public boolean containsUnwantedWordsInCleanUtf8Bytes() {
+        return spamDetector.containsUnwantedWords(cleanTextBuffer, 0, cleanTextBuffer.writerIndex());
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.gateway;
+
+import im.turms.common.constant.DeviceType;
+import im.turms.common.model.dto.request.TurmsRequest;
+import im.turms.common.model.dto.request.message.CreateMessageRequest;
+import im.turms.common.model.dto.request.user.CreateSessionRequest;
+import im.turms.gateway.pojo.dto.SimpleTurmsRequest;
+import im.turms.gateway.pojo.parser.TurmsRequestParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TurmsRequestParserBenchmark {
+
+    private ByteBuffer createMessageRequest;
+    private ByteBuffer createSessionRequest;
+
+    @Setup
+    public void setup() {
+        TurmsRequest request = TurmsRequest.newBuilder()
+                .setRequestId(123456789L)
+                .setCreateMessageRequest(CreateMessageRequest.newBuilder()
+                        .setRecipientId(987654321L)
+                        .setDeliveryDate(System.currentTimeMillis())
+                        .setText("Hello, this is a message for the benchmark of the request parser"))
+                .build();
+        createMessageRequest = ByteBuffer.allocateDirect(request.getSerializedSize())
+                .put(request.toByteArray())
+                .flip();
+        request = TurmsRequest.newBuilder()
+                .setRequestId(123456789L)
+                .setCreateSessionRequest(CreateSessionRequest.newBuilder()
+                        .setVersion(1)
+                        .setUserId(987654321L)
+                        .setPassword("password")
+                        .setDeviceType(DeviceType.ANDROID))
+                .build();
+        createSessionRequest = ByteBuffer.allocateDirect(request.getSerializedSize())
+                .put(request.toByteArray())
+                .flip();
+    }
+
+    @Benchmark
+    public SimpleTurmsRequest parseCreateMessageRequest() {
+        return TurmsRequestParser.parseSimpleRequest(createMessageRequest.duplicate());
+    }
+
+    @Benchmark
+    public SimpleTurmsRequest parseCreateSessionRequest() {
+        return TurmsRequestParser.parseSimpleRequest(createSessionRequest.duplicate());
+    }
+
+}
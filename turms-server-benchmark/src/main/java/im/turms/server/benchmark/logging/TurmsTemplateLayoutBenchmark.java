@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.logging;
+
+import im.turms.server.common.cluster.node.NodeType;
+import im.turms.server.common.logging.core.layout.TurmsTemplateLayout;
+import im.turms.server.common.logging.core.model.LogLevel;
+import im.turms.server.common.tracing.TracingCloseableContext;
+import im.turms.server.common.tracing.TracingContext;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TurmsTemplateLayoutBenchmark {
+
+    private static final String MESSAGE = "Failed to handle the request from the user {} with the device type {}";
+
+    private final TurmsTemplateLayout layout = new TurmsTemplateLayout(NodeType.SERVICE, "turms-service-001");
+    private final byte[] className = TurmsTemplateLayout.formatClassName(TurmsTemplateLayoutBenchmark.class.getName());
+    private final Object[] args = {987654321L, "ANDROID"};
+
+    private TracingCloseableContext tracingContext;
+
+    @Setup
+    public void setup() {
+        // Format with a trace ID as most logs in the hot paths do
+        tracingContext = new TracingContext().asCloseable();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracingContext.close();
+    }
+
+    @Benchmark
+    public int formatWithArgs() {
+        ByteBuf buffer = layout.format(true, className, LogLevel.INFO, MESSAGE, args, null);
+        int length = buffer.readableBytes();
+        buffer.release();
+        return length;
+    }
+
+    @Benchmark
+    public int formatWithoutArgs() {
+        ByteBuf buffer = layout.format(false, className, LogLevel.INFO, MESSAGE, null, null);
+        int length = buffer.readableBytes();
+        buffer.release();
+        return length;
+    }
+
+}
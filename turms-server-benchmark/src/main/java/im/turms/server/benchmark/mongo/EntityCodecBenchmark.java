@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.mongo;
+
+import com.mongodb.client.model.geojson.codecs.GeoJsonCodecProvider;
+import im.turms.server.common.mongo.codec.MongoCodecProvider;
+import im.turms.service.workflow.dao.domain.message.Message;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.BsonCodecProvider;
+import org.bson.codecs.BsonValueCodecProvider;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.IterableCodecProvider;
+import org.bson.codecs.MapCodecProvider;
+import org.bson.codecs.ValueCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.jsr310.Jsr310CodecProvider;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntityCodecBenchmark {
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private Codec<Message> codec;
+    private Message message;
+    private byte[] encodedMessage;
+
+    @Setup
+    public void setup() {
+        // The same registry as the one used by MongoContext
+        CodecRegistry commonCodecRegistry = CodecRegistries.fromProviders(
+                new ValueCodecProvider(),
+                new BsonValueCodecProvider(),
+                new DocumentCodecProvider(),
+                new MapCodecProvider(),
+                new IterableCodecProvider(),
+                new GeoJsonCodecProvider(),
+                new Jsr310CodecProvider(),
+                new BsonCodecProvider());
+        MongoCodecProvider mongoCodecProvider = new MongoCodecProvider();
+        CodecRegistry registry = CodecRegistries.fromRegistries(commonCodecRegistry,
+                CodecRegistries.fromProviders(mongoCodecProvider));
+        mongoCodecProvider.setRegistry(registry);
+        codec = registry.get(Message.class);
+
+        Date now = new Date();
+        message = new Message(1234567890123L,
+                null,
+                false,
+                false,
+                now,
+                null,
+                null,
+                null,
+                "Hello, this is a message for the benchmark of the entity codec",
+                987654321L,
+                123456789L,
+                List.of(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}),
+                null,
+                null,
+                1,
+                null);
+        encodedMessage = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(256);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, message, ENCODER_CONTEXT);
+        }
+        return buffer.getInternalBuffer();
+    }
+
+    @Benchmark
+    public Message decode() {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(encodedMessage))) {
+            return codec.decode(reader, DECODER_CONTEXT);
+        }
+    }
+
+}
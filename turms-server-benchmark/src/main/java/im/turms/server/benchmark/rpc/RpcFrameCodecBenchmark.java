@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.rpc;
+
+import com.google.common.net.InetAddresses;
+import im.turms.common.constant.DeviceType;
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.common.model.dto.request.TurmsRequest;
+import im.turms.common.model.dto.request.message.CreateMessageRequest;
+import im.turms.server.common.cluster.service.codec.CodecService;
+import im.turms.server.common.cluster.service.rpc.codec.RpcFrameDecoder;
+import im.turms.server.common.cluster.service.rpc.codec.RpcFrameEncoder;
+import im.turms.server.common.cluster.service.rpc.dto.RpcRequest;
+import im.turms.server.common.dto.ServiceRequest;
+import im.turms.server.common.rpc.request.HandleServiceRequest;
+import im.turms.server.common.rpc.request.SendNotificationRequest;
+import im.turms.server.common.tracing.TracingContext;
+import im.turms.server.common.util.ProtoUtil;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode an RPC request into a frame (without the length field) and decode it back
+ * as what {@link RpcFrameEncoder} and {@link RpcFrameDecoder} do for the connections between nodes.
+ *
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RpcFrameCodecBenchmark {
+
+    private static final byte[] IP = InetAddresses.forString("127.0.0.1").getAddress();
+
+    private final CodecService codecService = new CodecService();
+    private final RpcFrameDecoder decoder = new RpcFrameDecoder();
+    private final TracingContext tracingContext = new TracingContext();
+
+    private ByteBuf turmsRequestBuffer;
+    private ByteBuf notificationBuffer;
+    private Set<Long> recipientIds;
+
+    @Setup
+    public void setup() {
+        TurmsRequest request = TurmsRequest.newBuilder()
+                .setRequestId(123456789L)
+                .setCreateMessageRequest(CreateMessageRequest.newBuilder()
+                        .setRecipientId(987654321L)
+                        .setText("Hello, this is a message for the benchmark of the RPC codec"))
+                .build();
+        turmsRequestBuffer = ProtoUtil.getDirectByteBuffer(request);
+        TurmsNotification notification = TurmsNotification.newBuilder()
+                .setRequesterId(987654321L)
+                .setRelayedRequest(request)
+                .build();
+        notificationBuffer = ProtoUtil.getDirectByteBuffer(notification);
+        recipientIds = Set.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        turmsRequestBuffer.release();
+        notificationBuffer.release();
+    }
+
+    @Benchmark
+    public Object handleServiceRequestRoundTrip() {
+        ServiceRequest serviceRequest = new ServiceRequest(IP,
+                987654321L,
+                DeviceType.ANDROID,
+                123456789L,
+                TurmsRequest.KindCase.CREATE_MESSAGE_REQUEST,
+                turmsRequestBuffer.retainedDuplicate());
+        HandleServiceRequest request = new HandleServiceRequest(serviceRequest);
+        HandleServiceRequest decodedRequest = (HandleServiceRequest) roundTrip(request);
+        decodedRequest.getServiceRequest().getTurmsRequestBuffer().release();
+        return decodedRequest;
+    }
+
+    @Benchmark
+    public Object sendNotificationRequestRoundTrip() {
+        SendNotificationRequest request =
+                new SendNotificationRequest(notificationBuffer.retainedDuplicate(), recipientIds);
+        SendNotificationRequest decodedRequest = (SendNotificationRequest) roundTrip(request);
+        decodedRequest.getNotificationBuffer().release();
+        return decodedRequest;
+    }
+
+    private Object roundTrip(RpcRequest<?> request) {
+        request.setRequestId(1);
+        request.setTracingContext(tracingContext);
+        ByteBuf requestBody = codecService.serializeWithoutCodecId(request);
+        ByteBuf frame = RpcFrameEncoder.INSTANCE.encodeRequest(request, requestBody);
+        try {
+            return decoder.decodePayload(null, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+}
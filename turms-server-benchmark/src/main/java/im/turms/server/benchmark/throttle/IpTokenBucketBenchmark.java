@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.throttle;
+
+import im.turms.server.common.lang.ByteArrayWrapper;
+import im.turms.server.common.property.env.gateway.clientapi.ClientApiRateLimitingProperties;
+import im.turms.server.common.throttle.IpTokenBucketTable;
+import im.turms.server.common.throttle.TokenBucket;
+import im.turms.server.common.throttle.TokenBucketContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the map of token buckets with the off-heap table used by IpRequestThrottler
+ * when requests come from a lot of IPs.
+ *
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IpTokenBucketBenchmark {
+
+    @Param({"1024", "1048576"})
+    private int ipCount;
+
+    private TokenBucketContext context;
+    private ByteArrayWrapper[] ips;
+    private Map<ByteArrayWrapper, TokenBucket> map;
+    private IpTokenBucketTable table;
+
+    @Setup
+    public void setup() {
+        context = new TokenBucketContext(new ClientApiRateLimitingProperties());
+        ips = new ByteArrayWrapper[ipCount];
+        for (int i = 0; i < ipCount; i++) {
+            ips[i] = new ByteArrayWrapper(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i});
+        }
+        map = new ConcurrentHashMap<>(256);
+        table = new IpTokenBucketTable(context, 256 * 1024);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean map() {
+        ByteArrayWrapper ip = nextIp();
+        return map.computeIfAbsent(ip, key -> new TokenBucket(context))
+                .tryAcquire(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean table() {
+        return table.tryAcquire(nextIp().getBytes(), System.currentTimeMillis());
+    }
+
+    private ByteArrayWrapper nextIp() {
+        return ips[ThreadLocalRandom.current().nextInt(ipCount)];
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.benchmark.throttle;
+
+import im.turms.server.common.property.env.gateway.clientapi.ClientApiRateLimitingProperties;
+import im.turms.server.common.throttle.TokenBucket;
+import im.turms.server.common.throttle.TokenBucketContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author James Chen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenBucketBenchmark {
+
+    private TokenBucket bucket;
+
+    @Setup
+    public void setup() {
+        TokenBucketContext context = new TokenBucketContext(new ClientApiRateLimitingProperties());
+        bucket = new TokenBucket(context);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryAcquire() {
+        return bucket.tryAcquire(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryAcquireUnderContention() {
+        return bucket.tryAcquire(System.currentTimeMillis());
+    }
+
+}
@@ -50,4 +50,12 @@ public final class CodecFactory {
         return PROTOBUF_FRAME_ENCODER;
     }
 
+    public static CompressingFrameEncoder getCompressingFrameEncoder(DeflateFrameCompressor compressor, int minBytesToCompress) {
+        return new CompressingFrameEncoder(compressor, minBytesToCompress);
+    }
+
+    public static DecompressingFrameDecoder getDecompressingFrameDecoder(int maxFrameLength) {
+        return new DecompressingFrameDecoder(maxFrameLength);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.access.tcp.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * Passes through the frames that are smaller than minBytesToCompress or have been compressed
+ * (e.g. a notification compressed once for all recipients).
+ *
+ * @author James Chen
+ * @see DeflateFrameCompressor
+ */
+@ChannelHandler.Sharable
+public class CompressingFrameEncoder extends MessageToMessageEncoder<ByteBuf> {
+
+    private final DeflateFrameCompressor compressor;
+    private final int minBytesToCompress;
+
+    public CompressingFrameEncoder(DeflateFrameCompressor compressor, int minBytesToCompress) {
+        this.compressor = compressor;
+        this.minBytesToCompress = minBytesToCompress;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) {
+        if (frame.readableBytes() >= minBytesToCompress && !DeflateFrameCompressor.isCompressed(frame)) {
+            ByteBuf compressedFrame = compressor.compress(ctx.alloc(), frame);
+            if (compressedFrame != null) {
+                out.add(compressedFrame);
+                return;
+            }
+        }
+        out.add(frame.retain());
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.access.tcp.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * Passes through uncompressed frames so that the peers that don't compress frames are still supported.
+ *
+ * @author James Chen
+ * @see DeflateFrameCompressor
+ */
+@ChannelHandler.Sharable
+public class DecompressingFrameDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+    private final int maxFrameLength;
+
+    public DecompressingFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) {
+        if (DeflateFrameCompressor.isCompressed(frame)) {
+            out.add(DeflateFrameCompressor.decompress(ctx.alloc(), frame, maxFrameLength));
+        } else {
+            out.add(frame.retain());
+        }
+    }
+
+}
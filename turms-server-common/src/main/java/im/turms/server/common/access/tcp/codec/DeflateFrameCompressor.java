@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.access.tcp.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses a TCP frame with raw DEFLATE and a preset dictionary.
+ * A compressed frame is "FLAG_DEFLATE + deflated bytes", and an uncompressed frame
+ * is just the bytes of the protobuf message so that uncompressed frames stay
+ * the same as the ones sent by the servers that don't support compression.
+ * <p>
+ * Each frame is compressed independently without context takeover,
+ * so the compressed frame of a notification can be shared by all recipients.
+ *
+ * @author James Chen
+ */
+public final class DeflateFrameCompressor {
+
+    /**
+     * An uncompressed frame never starts with the flag because a protobuf message starts with a tag,
+     * which is "(field_number << 3) | wire_type", and the field number is always greater than 0
+     */
+    public static final byte FLAG_DEFLATE = 1;
+
+    /**
+     * A client opts in to receiving compressed frames by putting the entry
+     * "{@link #DEVICE_DETAILS_KEY}: {@link #DEVICE_DETAILS_VALUE}" into the device details
+     * of its create-session request. The frames sent to other clients are never compressed
+     */
+    public static final String DEVICE_DETAILS_KEY = "compression";
+    public static final String DEVICE_DETAILS_VALUE = "deflate";
+
+    /**
+     * The preset dictionary is a part of the protocol, so it must never be changed.
+     * A new dictionary should be added as a new version with a new value of the entry {@link #DEVICE_DETAILS_KEY}.
+     * <p>
+     * There is no corpus of real notifications in the repository to train a dictionary,
+     * so the dictionary consists of the encoded notifications that are sent most frequently:
+     * a response with messages, a response with IDs, and a relayed message.
+     * Note that DEFLATE prefers the bytes at the end of the dictionary,
+     * so the most frequent one is put at last.
+     */
+    public static final int DICTIONARY_VERSION = 1;
+    private static final String DICTIONARY_PATH = "/compression/deflate_dictionary_v" + DICTIONARY_VERSION + ".bin";
+    private static final byte[] DICTIONARY = loadDictionary();
+
+    private static final FastThreadLocal<Inflater> INFLATER = new FastThreadLocal<>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+
+        @Override
+        protected void onRemoval(Inflater inflater) {
+            inflater.end();
+        }
+    };
+
+    private final FastThreadLocal<Deflater> deflater;
+
+    public DeflateFrameCompressor(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("The compression level must be in the range of ["
+                    + Deflater.BEST_SPEED + ", " + Deflater.BEST_COMPRESSION + "]");
+        }
+        deflater = new FastThreadLocal<>() {
+            @Override
+            protected Deflater initialValue() {
+                return new Deflater(level, true);
+            }
+
+            @Override
+            protected void onRemoval(Deflater deflater) {
+                deflater.end();
+            }
+        };
+    }
+
+    public static boolean isCompressed(ByteBuf frame) {
+        return frame.isReadable() && frame.getByte(frame.readerIndex()) == FLAG_DEFLATE;
+    }
+
+    /**
+     * @return the compressed frame, or null if the compressed frame is larger than the frame
+     * @implNote The method doesn't change the reader index and the reference count of the frame
+     */
+    @Nullable
+    public ByteBuf compress(ByteBufAllocator allocator, ByteBuf frame) {
+        int length = frame.readableBytes();
+        if (length <= 1) {
+            return null;
+        }
+        Deflater compressor = deflater.get();
+        compressor.reset();
+        compressor.setDictionary(DICTIONARY);
+        compressor.setInput(frame.nioBuffer());
+        compressor.finish();
+        // Give up if the compressed bytes cannot fit in the length of the frame
+        ByteBuf output = allocator.directBuffer(length);
+        output.writeByte(FLAG_DEFLATE);
+        ByteBuffer outputBuffer = output.nioBuffer(output.writerIndex(), output.writableBytes());
+        int compressedLength = compressor.deflate(outputBuffer);
+        if (!compressor.finished()) {
+            output.release();
+            return null;
+        }
+        return output.writerIndex(output.writerIndex() + compressedLength);
+    }
+
+    /**
+     * @param maxLength the max length of the decompressed frame to prevent decompression bombs
+     * @implNote The method doesn't change the reader index and the reference count of the frame
+     */
+    public static ByteBuf decompress(ByteBufAllocator allocator, ByteBuf frame, int maxLength) {
+        Inflater decompressor = INFLATER.get();
+        decompressor.reset();
+        decompressor.setDictionary(DICTIONARY);
+        decompressor.setInput(frame.nioBuffer(frame.readerIndex() + 1, frame.readableBytes() - 1));
+        ByteBuf output = allocator.directBuffer(Math.min(frame.readableBytes() * 4, maxLength));
+        try {
+            while (!decompressor.finished()) {
+                if (!output.isWritable()) {
+                    if (output.capacity() >= maxLength) {
+                        throw new StacklessCorruptedFrameException("too large decompressed frame");
+                    }
+                    output.capacity(Math.min(output.capacity() * 2, maxLength));
+                }
+                int writerIndex = output.writerIndex();
+                int decompressedLength = decompressor
+                        .inflate(output.nioBuffer(writerIndex, output.writableBytes()));
+                if (decompressedLength == 0 && decompressor.needsInput()) {
+                    throw new StacklessCorruptedFrameException("truncated compressed frame");
+                }
+                output.writerIndex(writerIndex + decompressedLength);
+            }
+        } catch (DataFormatException e) {
+            output.release();
+            throw new StacklessCorruptedFrameException("malformed compressed frame: " + e.getMessage());
+        } catch (Exception e) {
+            output.release();
+            throw e;
+        }
+        return output;
+    }
+
+    private static byte[] loadDictionary() {
+        try (InputStream input = DeflateFrameCompressor.class.getResourceAsStream(DICTIONARY_PATH)) {
+            if (input == null) {
+                throw new IllegalStateException("The dictionary is not found: " + DICTIONARY_PATH);
+            }
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load the dictionary: " + DICTIONARY_PATH, e);
+        }
+    }
+
+}
@@ -24,6 +24,7 @@ import im.turms.common.model.dto.request.user.CreateSessionRequest;
 import im.turms.common.model.dto.request.user.DeleteSessionRequest;
 import im.turms.common.util.RandomUtil;
 import im.turms.server.common.access.tcp.codec.CodecFactory;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
@@ -74,6 +75,8 @@ public class TurmsTcpClient extends TurmsClient {
                     connection
                             // Inbound
                             .addHandlerLast("varintLengthBasedFrameDecoder", CodecFactory.getVarintLengthBasedFrameDecoder())
+                            // Pass through uncompressed frames, so it works whether the server compresses frames or not
+                            .addHandlerLast("decompressingFrameDecoder", CodecFactory.getDecompressingFrameDecoder(Integer.MAX_VALUE))
                             .addHandlerLast("turmsNotificationDecoder", CodecFactory.getTurmsNotificationDecoder())
                             // Outbound
                             .addHandlerFirst("protobufFrameEncoder", CodecFactory.getProtobufFrameEncoder())
@@ -96,6 +99,8 @@ public class TurmsTcpClient extends TurmsClient {
                         .setUserId(userId)
                         .setDeviceType(deviceType)
                         .setPassword(password)
+                        // The client can decompress frames
+                        .putDeviceDetails(DeflateFrameCompressor.DEVICE_DETAILS_KEY, DeflateFrameCompressor.DEVICE_DETAILS_VALUE)
                         .build()))
                 .flatMap(n -> {
                     if (n.getCode() != TurmsStatusCode.OK.getBusinessCode()) {
@@ -60,6 +60,7 @@ public enum CodecId {
     // RPC - Business
     RPC_SET_USER_OFFLINE(1300),
     RPC_UPDATE_ONLINE_USER_STATUS(1301),
+    RPC_INVALIDATE_USER_CREDENTIALS(1302),
 
     // RPC - Statistics
     RPC_COUNT_ONLINE_USERS(1400),
@@ -34,6 +34,7 @@ import im.turms.server.common.cluster.service.connection.codec.OpeningHandshakeR
 import im.turms.server.common.cluster.service.rpc.codec.RpcExceptionCodec;
 import im.turms.server.common.rpc.codec.request.CountOnlineUsersRequestCodec;
 import im.turms.server.common.rpc.codec.request.HandleServiceRequestCodec;
+import im.turms.server.common.rpc.codec.request.InvalidateUserCredentialsRequestCodec;
 import im.turms.server.common.rpc.codec.request.SendNotificationRequestCodec;
 import im.turms.server.common.rpc.codec.request.SetUserOfflineRequestCodec;
 import im.turms.server.common.rpc.codec.response.ServiceResponseCodec;
@@ -81,6 +82,7 @@ public final class CodecPool {
 
         register(new CountOnlineUsersRequestCodec());
         register(new HandleServiceRequestCodec());
+        register(new InvalidateUserCredentialsRequestCodec());
         register(new SendNotificationRequestCodec());
         register(new SetUserOfflineRequestCodec());
 
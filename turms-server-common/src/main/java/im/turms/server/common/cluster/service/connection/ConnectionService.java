@@ -51,11 +51,11 @@ import reactor.netty.tcp.TcpClient;
 import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -91,10 +91,16 @@ public class ConnectionService implements ClusterService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionService.class);
 
+    /**
+     * Used to reject the connections from a misbehaving member
+     */
+    private static final int MAX_CONNECTIONS_PER_MEMBER = 256;
+
     private final Ssl clientSsl;
     private final long keepaliveIntervalMillis;
     private final long keepaliveTimeoutMillis;
     private final Duration reconnectInterval;
+    private final int connectionsPerMember;
 
     // Thread resources
     private final ScheduledExecutorService connectionRetryScheduler;
@@ -105,14 +111,25 @@ public class ConnectionService implements ClusterService {
      * Note that:
      * 1. It is allowed to connect to non-member turms servers.
      * 2. Only after handshake done, a connection can be put in the pool.
+     * 3. There may be multiple connections to a member so that requests can be sent
+     * and handled by multiple I/O threads concurrently.
      */
-    private final Map<String, TurmsConnection> connectionPool = new ConcurrentHashMap<>();
+    private final Map<String, List<TurmsConnection>> connectionPool = new ConcurrentHashMap<>();
     /**
      * Address -> Retry times.
      * Never stop reconnecting until the member is removed from the discovery registry
      */
     private final Map<String, Integer> connectionRetryTimesMap = new ConcurrentHashMap<>();
-    private final Set<String> connectingMembers = ConcurrentHashMap.newKeySet();
+    /**
+     * Node ID -> The number of connections that are connecting or handshaking
+     */
+    private final Map<String, Integer> connectingCountMap = new ConcurrentHashMap<>();
+    /**
+     * Node ID -> The max number of connections accepted by the member.
+     * Used to stop connecting to the members that only accept fewer connections
+     * (e.g. the members of old versions only accept one connection)
+     */
+    private final Map<String, Integer> memberConnectionLimitMap = new ConcurrentHashMap<>();
     /**
      * Use supplier rather than just listener so that we can bind each generated listener
      * to a specific TcpConnection to make logic simple
@@ -134,6 +151,10 @@ public class ConnectionService implements ClusterService {
         keepaliveIntervalMillis = clientProperties.getKeepaliveIntervalSeconds() * 1000L;
         keepaliveTimeoutMillis = clientProperties.getKeepaliveTimeoutSeconds() * 1000L;
         reconnectInterval = Duration.ofSeconds(clientProperties.getReconnectIntervalSeconds());
+        int configuredConnectionsPerMember = clientProperties.getConnectionsPerMember();
+        connectionsPerMember = configuredConnectionsPerMember == 0
+                ? Runtime.getRuntime().availableProcessors()
+                : Math.min(configuredConnectionsPerMember, MAX_CONNECTIONS_PER_MEMBER);
         eventLoopGroupForClients = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors(),
                 new DefaultThreadFactory(ThreadNameConstant.NODE_CONNECTION_CLIENT_IO));
         connectionRetryScheduler = Executors.newScheduledThreadPool(1,
@@ -157,20 +178,22 @@ public class ConnectionService implements ClusterService {
                 LOGGER.error("Failed to stop the local server", e);
             }
         }
-        ClosingHandshakeRequest request = new ClosingHandshakeRequest(CLOSE_STATUS_CODE_SERVER_SHUTTING_DOWN);
-        for (TurmsConnection connection : connectionPool.values()) {
-            connection.setClosing(true);
-            Connection conn = connection.getConnection();
-            if (conn.isDisposed()) {
-                continue;
-            }
-            String nodeId = connection.getNodeId();
-            if (nodeId == null) {
-                conn.dispose();
-            } else {
-                rpcService.requestResponse(nodeId, request)
-                        .doOnTerminate(conn::dispose)
-                        .subscribe(null, t -> LOGGER.error("Failed to send a closing handshake request", t));
+        for (List<TurmsConnection> connections : connectionPool.values()) {
+            for (TurmsConnection connection : connections) {
+                connection.setClosing(true);
+                Connection conn = connection.getConnection();
+                if (conn.isDisposed()) {
+                    continue;
+                }
+                String nodeId = connection.getNodeId();
+                if (nodeId == null) {
+                    conn.dispose();
+                } else {
+                    ClosingHandshakeRequest request = new ClosingHandshakeRequest(CLOSE_STATUS_CODE_SERVER_SHUTTING_DOWN);
+                    rpcService.requestResponse(nodeId, request, null, connection)
+                            .doOnTerminate(conn::dispose)
+                            .subscribe(null, t -> LOGGER.error("Failed to send a closing handshake request", t));
+                }
             }
         }
         connectionPool.clear();
@@ -189,16 +212,22 @@ public class ConnectionService implements ClusterService {
 
     // Connect/Disconnect
 
-    @Nullable
-    public TurmsConnection getMemberConnection(String memberId) {
-        return connectionPool.get(memberId);
+    public boolean isMemberConnected(String memberId) {
+        return countActiveConnections(memberId) > 0;
     }
 
-    public boolean isMemberConnected(String memberId) {
-        TurmsConnection connection = connectionPool.get(memberId);
-        return connection != null
-                && !connection.getConnection().isDisposed()
-                && !connection.isClosing();
+    private int countActiveConnections(String memberId) {
+        List<TurmsConnection> connections = connectionPool.get(memberId);
+        if (connections == null) {
+            return 0;
+        }
+        int count = 0;
+        for (TurmsConnection connection : connections) {
+            if (!connection.getConnection().isDisposed() && !connection.isClosing()) {
+                count++;
+            }
+        }
+        return count;
     }
 
     public synchronized void updateHasConnectedToAllMembers(Set<String> allMemberNodeIds) {
@@ -238,15 +267,41 @@ public class ConnectionService implements ClusterService {
         return client.connect();
     }
 
+    /**
+     * Connect to the member until the number of connections reaches the expected number
+     */
     public void connectMemberUntilSucceedOrRemoved(Member member) {
-        String nodeId = member.getNodeId();
-        if (!member.isSameNode(discoveryService.getLocalMember())
-                && !isMemberConnected(nodeId)
-                && connectingMembers.add(nodeId)) {
+        if (member.isSameNode(discoveryService.getLocalMember())) {
+            return;
+        }
+        int count = reserveConnections(member.getNodeId());
+        for (int i = 0; i < count; i++) {
             connectMemberUntilSucceedOrRemoved0(member);
         }
     }
 
+    /**
+     * @return the number of connections to create
+     */
+    private int reserveConnections(String nodeId) {
+        int[] missingCount = new int[1];
+        connectingCountMap.compute(nodeId, (id, connectingCount) -> {
+            int limit = memberConnectionLimitMap.getOrDefault(id, connectionsPerMember);
+            int currentCount = connectingCount == null ? 0 : connectingCount;
+            int missing = limit - countActiveConnections(id) - currentCount;
+            if (missing <= 0) {
+                return connectingCount;
+            }
+            missingCount[0] = missing;
+            return currentCount + missing;
+        });
+        return missingCount[0];
+    }
+
+    private void releaseConnectionReservation(String nodeId) {
+        connectingCountMap.computeIfPresent(nodeId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
     private void connectMemberUntilSucceedOrRemoved0(Member member) {
         String nodeId = member.getNodeId();
         LOGGER.info("[Client] Connecting to member: {}[{}:{}]. Retry times: {}",
@@ -266,20 +321,38 @@ public class ConnectionService implements ClusterService {
                             .subscribe(code -> {
                                 if (code == OpeningHandshakeRequest.RESPONSE_CODE_SUCCESS) {
                                     onMemberConnectionHandshakeCompleted(member, connection, true);
+                                } else if (code == OpeningHandshakeRequest.RESPONSE_CODE_CONNECTION_ALREADY_EXISTS
+                                        && isMemberConnected(nodeId)) {
+                                    // The member doesn't accept more connections,
+                                    // so we don't try to create more connections until all connections are closed
+                                    int limit = countActiveConnections(nodeId);
+                                    memberConnectionLimitMap.put(nodeId, limit);
+                                    LOGGER.warn("[Client] The member {}[{}:{}] only accepts {} connection(s)",
+                                            nodeId, member.getMemberHost(), member.getMemberPort(), limit);
+                                    releaseConnectionReservation(nodeId);
+                                    disconnectConnection(connection);
                                 } else {
                                     throw new IllegalStateException("Failure code: " + code);
                                 }
                             }, t -> {
                                 LOGGER.error("[Client] Failed to complete handshake with member: {}[{}:{}]. Closing connection to reconnect",
                                         nodeId, member.getMemberHost(), member.getMemberPort(), t);
+                                releaseConnectionReservation(nodeId);
                                 // To keep logic simple, just disconnect to
                                 // connect and start a handshake again.
                                 // After disposed, the listener to onDispose will reconnect
-                                disconnectConnection(connection);
+                                if (connection.getConnection().isDisposed()) {
+                                    // onConnectionClosed() may have been called before releasing the reservation,
+                                    // so we need to reconnect here
+                                    reconnectMemberLater(nodeId);
+                                } else {
+                                    disconnectConnection(connection);
+                                }
                             });
                 })
                 .onErrorResume(throwable -> {
                     if (!discoveryService.isKnownMember(nodeId)) {
+                        releaseConnectionReservation(nodeId);
                         return Mono.empty();
                     }
                     int retryTimes = connectionRetryTimesMap.getOrDefault(nodeId, 0);
@@ -288,9 +361,10 @@ public class ConnectionService implements ClusterService {
                     retryTimes++;
                     connectionRetryTimesMap.put(nodeId, retryTimes);
                     connectionRetryScheduler.schedule(() -> {
-                        if (!isMemberConnected(nodeId) && discoveryService.isKnownMember(nodeId)) {
+                        if (discoveryService.isKnownMember(nodeId)) {
                             connectMemberUntilSucceedOrRemoved0(member);
                         } else {
+                            releaseConnectionReservation(nodeId);
                             connectionRetryTimesMap.remove(nodeId);
                         }
                     }, Math.min(retryTimes * 10, 60), TimeUnit.SECONDS);
@@ -306,22 +380,24 @@ public class ConnectionService implements ClusterService {
 
     // Keepalive
 
-    public void keepalive(String nodeId) {
-        TurmsConnection connection = connectionPool.get(nodeId);
+    public void keepalive(@Nullable TurmsConnection connection) {
         if (connection == null) {
-            throw new IllegalStateException("Received a keepalive request from a non-connected node: " + nodeId);
+            throw new IllegalStateException("Received a keepalive request from a non-connected node");
         }
         connection.setLastKeepaliveTimestamp(System.currentTimeMillis());
     }
 
     private void sendKeepaliveToConnectionsForever() {
         while (!Thread.currentThread().isInterrupted()) {
-            Iterator<Map.Entry<String, TurmsConnection>> iterator = connectionPool.entrySet().iterator();
-            while (iterator.hasNext()) {
-                try {
-                    sendKeepalive(iterator);
-                } catch (Exception e) {
-                    LOGGER.error("Caught an error while sending keepalive", e);
+            for (Map.Entry<String, List<TurmsConnection>> entry : connectionPool.entrySet()) {
+                String nodeId = entry.getKey();
+                List<TurmsConnection> connections = entry.getValue();
+                for (TurmsConnection connection : connections) {
+                    try {
+                        sendKeepalive(nodeId, connections, connection);
+                    } catch (Exception e) {
+                        LOGGER.error("Caught an error while sending keepalive", e);
+                    }
                 }
             }
             try {
@@ -332,13 +408,10 @@ public class ConnectionService implements ClusterService {
         }
     }
 
-    private void sendKeepalive(Iterator<Map.Entry<String, TurmsConnection>> iterator) {
-        Map.Entry<String, TurmsConnection> entry = iterator.next();
-        String nodeId = entry.getKey();
-        TurmsConnection connection = entry.getValue();
+    private void sendKeepalive(String nodeId, List<TurmsConnection> connections, TurmsConnection connection) {
         Connection conn = connection.getConnection();
         if (conn.isDisposed()) {
-            iterator.remove();
+            connections.remove(connection);
             return;
         }
         if (!connection.isLocalNodeClient()) {
@@ -350,13 +423,13 @@ public class ConnectionService implements ClusterService {
             LOGGER.warn("Reconnecting to the member {} due to keepalive timeout", nodeId);
             // onConnectionClosed() will reconnect the member
             disconnectConnection(connection);
-            iterator.remove();
             return;
         }
         if (elapsedTime < keepaliveIntervalMillis) {
             return;
         }
-        rpcService.requestResponse(nodeId, new KeepaliveRequest())
+        // Send keepalive requests over every connection to detect half-open connections
+        rpcService.requestResponse(nodeId, new KeepaliveRequest(), null, connection)
                 .subscribe(null,
                         t -> LOGGER.warn("Failed to send a keepalive request to the member " + nodeId, t),
                         () -> connection.setLastKeepaliveTimestamp(System.currentTimeMillis()));
@@ -377,12 +450,10 @@ public class ConnectionService implements ClusterService {
         if (member == null) {
             return OpeningHandshakeRequest.RESPONSE_CODE_UNKNOWN_MEMBER;
         }
-        TurmsConnection existingConnection = connectionPool.get(nodeId);
-        if (existingConnection != null) {
-            if (!existingConnection.getConnection().isDisposed()) {
-                return OpeningHandshakeRequest.RESPONSE_CODE_CONNECTION_ALREADY_EXISTS;
-            }
-        } else if (connection.getConnection().isDisposed()) {
+        if (countActiveConnections(nodeId) >= MAX_CONNECTIONS_PER_MEMBER) {
+            return OpeningHandshakeRequest.RESPONSE_CODE_CONNECTION_ALREADY_EXISTS;
+        }
+        if (connection.getConnection().isDisposed()) {
             onConnectionClosed(connection, null);
             return OpeningHandshakeRequest.RESPONSE_CODE_CONNECTION_CLOSED;
         }
@@ -461,6 +532,17 @@ public class ConnectionService implements ClusterService {
                 memberIdAndAddress,
                 connection.isClosing() ? "" : " unexpectedly",
                 throwable);
+        // Remove the connection before invoking listeners
+        // so that the listeners can know whether there are other connections to the member
+        if (nodeId != null) {
+            connectionPool.computeIfPresent(nodeId, (id, connections) -> {
+                connections.remove(connection);
+                return connections.isEmpty() ? null : connections;
+            });
+            if (!isMemberConnected(nodeId)) {
+                memberConnectionLimitMap.remove(nodeId);
+            }
+        }
         for (MemberConnectionListener listener : connection.getListeners()) {
             try {
                 listener.onConnectionClosed();
@@ -471,13 +553,7 @@ public class ConnectionService implements ClusterService {
         boolean isKnownMember = nodeId != null && discoveryService.isKnownMember(nodeId);
         boolean isClosing = discoveryService.getLocalNodeStatusManager().isClosing();
         if (isLocalNodeClient && isKnownMember && !isClosing) {
-            Mono.delay(reconnectInterval)
-                    .subscribe(ignored -> {
-                        Member memberToConnect = discoveryService.getAllKnownMembers().get(nodeId);
-                        if (memberToConnect != null) {
-                            connectMemberUntilSucceedOrRemoved(memberToConnect);
-                        }
-                    });
+            reconnectMemberLater(nodeId);
         } else {
             String reason = !isLocalNodeClient
                     ? "the local node is server"
@@ -489,6 +565,16 @@ public class ConnectionService implements ClusterService {
         }
     }
 
+    private void reconnectMemberLater(String nodeId) {
+        Mono.delay(reconnectInterval)
+                .subscribe(ignored -> {
+                    Member memberToConnect = discoveryService.getAllKnownMembers().get(nodeId);
+                    if (memberToConnect != null) {
+                        connectMemberUntilSucceedOrRemoved(memberToConnect);
+                    }
+                });
+    }
+
     private void onMemberConnectionHandshakeCompleted(Member member, TurmsConnection connection, boolean isLocalNodeClient) {
         String nodeId = member.getNodeId();
         LOGGER.info("[{}] Completed the handshake with member: {}[{}:{}]",
@@ -496,9 +582,17 @@ public class ConnectionService implements ClusterService {
                 nodeId,
                 member.getMemberHost(),
                 member.getMemberPort());
-        connectionPool.put(nodeId, connection);
+        connectionPool.compute(nodeId, (id, connections) -> {
+            if (connections == null) {
+                connections = new CopyOnWriteArrayList<>();
+            }
+            connections.add(connection);
+            return connections;
+        });
+        if (isLocalNodeClient) {
+            releaseConnectionReservation(nodeId);
+        }
         connectionRetryTimesMap.remove(nodeId);
-        connectingMembers.remove(nodeId);
         updateHasConnectedToAllMembers(discoveryService.getAllKnownMembers().keySet());
         for (MemberConnectionListener listener : connection.getListeners()) {
             try {
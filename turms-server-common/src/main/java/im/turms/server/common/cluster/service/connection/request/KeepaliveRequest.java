@@ -64,7 +64,7 @@ public class KeepaliveRequest extends RpcRequest<Null> {
 
     @Override
     public Null call() {
-        node.getConnectionService().keepalive(getFromNodeId());
+        node.getConnectionService().keepalive(getConnection());
         return null;
     }
 
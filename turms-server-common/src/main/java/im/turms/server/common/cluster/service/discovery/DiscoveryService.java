@@ -251,7 +251,8 @@ public class DiscoveryService implements ClusterService {
 
             @Override
             public void onConnectionClosed() {
-                if (member != null) {
+                // Only remove the member when all connections to the member have been closed
+                if (member != null && !connectionService.isMemberConnected(member.getNodeId())) {
                     updateOtherActiveConnectedMemberList(false, member);
                 }
             }
@@ -468,8 +469,8 @@ public class DiscoveryService implements ClusterService {
                         TimeUnit.SECONDS);
             }
         }
-        // shouldLocalNodeBeClient is used to ensure there is
-        // only one TCP connection between two peers
+        // shouldLocalNodeBeClient is used to ensure that
+        // only one peer creates the TCP connections between two peers
         boolean shouldLocalNodeBeClient = compareMemberPriority(localMember, newMember) < 0;
         if (!isLocalNode && shouldLocalNodeBeClient) {
             connectionService.connectMemberUntilSucceedOrRemoved(newMember);
@@ -509,10 +510,11 @@ public class DiscoveryService implements ClusterService {
                 : memberList.size();
         List<Member> tempOtherActiveConnectedMembers = new ArrayList<>(size);
         tempOtherActiveConnectedMembers.addAll(memberList);
+        // Remove the existing member first to avoid duplicate members
+        // because there may be multiple connections to a member
+        tempOtherActiveConnectedMembers.remove(member);
         if (isAdd) {
             tempOtherActiveConnectedMembers.add(member);
-        } else {
-            tempOtherActiveConnectedMembers.remove(member);
         }
         if (isServiceMember) {
             otherActiveConnectedServiceMembers = tempOtherActiveConnectedMembers;
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.cluster.service.rpc;
+
+import im.turms.server.common.cluster.service.connection.TurmsConnection;
+import im.turms.server.common.cluster.service.rpc.codec.RpcFrameEncoder;
+import im.turms.server.common.cluster.service.rpc.dto.RpcRequest;
+import im.turms.server.common.cluster.service.rpc.dto.RpcResponse;
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AttributeKey;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCountUtil;
+import lombok.Getter;
+import org.jctools.maps.NonBlockingHashMapLong;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.channel.ChannelOperations;
+
+import javax.annotation.Nullable;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Send RPC requests and resolve their responses over one connection.
+ * The requests and the responses are always matched on the same connection,
+ * so the request IDs only need to be unique in a connection.
+ *
+ * @author James Chen
+ */
+public final class RpcChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpcChannel.class);
+
+    private static final AttributeKey<RpcChannel> RPC_CHANNEL = AttributeKey.valueOf("rpcChannel");
+
+    private static final int EXPECTED_MAX_QPS = 1000;
+    private static final int EXPECTED_AVERAGE_RTT = 10;
+    private static final int INITIAL_CAPACITY_PERCENTAGE = 10;
+
+    @Getter
+    private final TurmsConnection connection;
+    private final NonBlockingHashMapLong<Sinks.One<?>> pendingRequestMap =
+            new NonBlockingHashMapLong<>((int) (EXPECTED_MAX_QPS * EXPECTED_AVERAGE_RTT * (INITIAL_CAPACITY_PERCENTAGE / 100F)));
+
+    private RpcChannel(TurmsConnection connection) {
+        this.connection = connection;
+    }
+
+    public static RpcChannel bind(TurmsConnection connection) {
+        RpcChannel channel = new RpcChannel(connection);
+        RpcChannel previous = connection.getConnection().channel().attr(RPC_CHANNEL).setIfAbsent(channel);
+        return previous == null ? channel : previous;
+    }
+
+    @Nullable
+    public static RpcChannel get(TurmsConnection connection) {
+        return connection.getConnection().channel().attr(RPC_CHANNEL).get();
+    }
+
+    public boolean isActive() {
+        return !connection.getConnection().isDisposed();
+    }
+
+    public int getPendingRequestCount() {
+        return pendingRequestMap.size();
+    }
+
+    // Handle Request
+
+    /**
+     * @implNote The method ensures requestBody will be released by 1
+     */
+    public <T> Mono<T> sendRequest(RpcRequest<T> request, ByteBuf requestBody) {
+        ChannelOperations<?, ?> conn = connection.getConnection();
+        if (requestBody.refCnt() == 0) {
+            return Mono.error(new IllegalReferenceCountException("The request body has been released"));
+        }
+        if (conn.isDisposed()) {
+            requestBody.release();
+            return Mono.error(new ClosedChannelException());
+        }
+        Sinks.One<T> sink = Sinks.one();
+        int requestId;
+        while (true) {
+            requestId = generateRandomId();
+            Sinks.One<?> previous = pendingRequestMap.putIfAbsent(requestId, sink);
+            if (previous != null) {
+                continue;
+            }
+            request.setRequestId(requestId);
+            ByteBuf buffer;
+            try {
+                buffer = RpcFrameEncoder.INSTANCE.encodeRequest(request, requestBody);
+            } catch (Exception e) {
+                requestBody.release();
+                resolveRequest(requestId, null, new IllegalStateException("Failed to encode request", e));
+                break;
+            }
+            // sendObject() will release the buffer no matter it succeeds or fails
+            int id = requestId;
+            conn.sendObject(buffer)
+                    .then()
+                    .subscribe(null, t -> resolveRequest(id, null, t));
+            break;
+        }
+        int finalRequestId = requestId;
+        // Remove the sink if the request is cancelled (e.g. timed out)
+        // so that the late response can be released instead of being cached by the sink
+        return sink.asMono()
+                .doOnCancel(() -> pendingRequestMap.remove(finalRequestId));
+    }
+
+    private int generateRandomId() {
+        int id;
+        do {
+            id = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+        } while (pendingRequestMap.containsKey(id));
+        return id;
+    }
+
+    // Handle Response
+
+    public void handleResponse(RpcResponse response) {
+        resolveRequest(response.requestId(), response.result(), response.exception());
+    }
+
+    /**
+     * Fail the pending requests immediately instead of waiting for them to time out
+     * because their responses will never come after the connection is closed
+     */
+    public void failPendingRequests() {
+        for (Long requestId : pendingRequestMap.keySet()) {
+            resolveRequest(requestId.intValue(), null, new ClosedChannelException());
+        }
+    }
+
+    private <T> void resolveRequest(int requestId, T response, Throwable error) {
+        Sinks.One<T> sink = (Sinks.One<T>) pendingRequestMap.remove(requestId);
+        if (sink == null) {
+            LOGGER.warn("No sink of the request with ID {} is found for the response: " + response, requestId);
+            ReferenceCountUtil.release(response);
+            return;
+        }
+        if (error == null) {
+            sink.tryEmitValue(response);
+        } else {
+            sink.tryEmitError(error);
+        }
+    }
+
+}
@@ -17,44 +17,119 @@
 
 package im.turms.server.common.cluster.service.rpc;
 
-import im.turms.server.common.cluster.service.connection.TurmsConnection;
-import im.turms.server.common.cluster.service.rpc.codec.RpcFrameEncoder;
 import im.turms.server.common.cluster.service.rpc.dto.RpcRequest;
-import im.turms.server.common.cluster.service.rpc.dto.RpcResponse;
-import im.turms.server.common.logging.core.logger.Logger;
-import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.property.constant.RpcConnectionSelectionStrategy;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.IllegalReferenceCountException;
 import lombok.Getter;
-import org.jctools.maps.NonBlockingHashMapLong;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
-import reactor.netty.channel.ChannelOperations;
 
+import javax.annotation.Nullable;
 import java.nio.channels.ClosedChannelException;
-import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * An RPC endpoint of a member, which sends requests over one of the connections to the member
+ * so that the requests can be handled by multiple I/O threads concurrently.
+ *
  * @author James Chen
  */
 public final class RpcEndpoint {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(RpcEndpoint.class);
-
-    private static final int EXPECTED_MAX_QPS = 1000;
-    private static final int EXPECTED_AVERAGE_RTT = 10;
-    private static final int INITIAL_CAPACITY_PERCENTAGE = 10;
+    private static final RpcChannel[] EMPTY_CHANNELS = new RpcChannel[0];
 
     @Getter
     private final String nodeId;
-    @Getter
-    private final TurmsConnection connection;
-    private final NonBlockingHashMapLong<Sinks.One<?>> pendingRequestMap =
-            new NonBlockingHashMapLong<>((int) (EXPECTED_MAX_QPS * EXPECTED_AVERAGE_RTT * (INITIAL_CAPACITY_PERCENTAGE / 100F)));
+    private final RpcConnectionSelectionStrategy selectionStrategy;
+    /**
+     * Copy on write because connections are rarely added or removed
+     */
+    private volatile RpcChannel[] channels;
+    /**
+     * It's acceptable that the index isn't updated atomically
+     * because it only makes the distribution a little uneven
+     */
+    private int nextChannelIndex;
+    /**
+     * The exponentially weighted moving average of response latency in nanoseconds.
+     * It's acceptable that concurrent updates may be lost
+     * because the value is only used for load balancing
+     */
+    private volatile long latencyEwmaNanos;
 
-    public RpcEndpoint(String nodeId, TurmsConnection connection) {
+    public RpcEndpoint(String nodeId, RpcConnectionSelectionStrategy selectionStrategy) {
         this.nodeId = nodeId;
-        this.connection = connection;
+        this.selectionStrategy = selectionStrategy;
+        channels = EMPTY_CHANNELS;
+    }
+
+    public RpcEndpoint(String nodeId, RpcChannel channel) {
+        this.nodeId = nodeId;
+        selectionStrategy = RpcConnectionSelectionStrategy.ROUND_ROBIN;
+        channels = new RpcChannel[]{channel};
+    }
+
+    public int getConnectionCount() {
+        return channels.length;
+    }
+
+    public int getPendingRequestCount() {
+        int count = 0;
+        for (RpcChannel channel : channels) {
+            count += channel.getPendingRequestCount();
+        }
+        return count;
+    }
+
+    public long getLatencyEwmaNanos() {
+        return latencyEwmaNanos;
+    }
+
+    /**
+     * @return the estimated cost to send a new request to the endpoint,
+     * which grows with the response latency and the number of in-flight requests
+     */
+    public long getCost() {
+        // Plus 1 so that the cost still depends on the other factor
+        // when there is no in-flight request or no latency sample
+        return (latencyEwmaNanos + 1) * (getPendingRequestCount() + 1);
+    }
+
+    private void recordLatency(long latencyNanos) {
+        long ewma = latencyEwmaNanos;
+        // Use the same smoothing factor (1/8) as the smoothed RTT of TCP (RFC 6298)
+        latencyEwmaNanos = ewma == 0
+                ? latencyNanos
+                : ewma + ((latencyNanos - ewma) >> 3);
+    }
+
+    public synchronized void addChannel(RpcChannel channel) {
+        RpcChannel[] oldChannels = channels;
+        for (RpcChannel oldChannel : oldChannels) {
+            if (oldChannel == channel) {
+                return;
+            }
+        }
+        RpcChannel[] newChannels = new RpcChannel[oldChannels.length + 1];
+        System.arraycopy(oldChannels, 0, newChannels, 0, oldChannels.length);
+        newChannels[oldChannels.length] = channel;
+        channels = newChannels;
+    }
+
+    /**
+     * @return true if no channel remains
+     */
+    public synchronized boolean removeChannel(RpcChannel channel) {
+        RpcChannel[] oldChannels = channels;
+        int length = oldChannels.length;
+        for (int i = 0; i < length; i++) {
+            if (oldChannels[i] == channel) {
+                RpcChannel[] newChannels = new RpcChannel[length - 1];
+                System.arraycopy(oldChannels, 0, newChannels, 0, i);
+                System.arraycopy(oldChannels, i + 1, newChannels, i, length - i - 1);
+                channels = newChannels;
+                return newChannels.length == 0;
+            }
+        }
+        return length == 0;
     }
 
     // Handle Request
@@ -65,64 +140,86 @@ public final class RpcEndpoint {
      * @implNote The method ensures requestBody will be released by 1
      */
     public <T> Mono<T> sendRequest(RpcRequest<T> request, ByteBuf requestBody) {
-        ChannelOperations<?, ?> conn = connection.getConnection();
-        if (requestBody.refCnt() == 0) {
-            return Mono.error(new IllegalReferenceCountException("The request body has been released"));
-        }
-        if (conn.isDisposed()) {
+        RpcChannel channel = selectChannel(request);
+        if (channel == null) {
             requestBody.release();
             return Mono.error(new ClosedChannelException());
         }
-        Sinks.One<T> sink = Sinks.one();
-        while (true) {
-            int requestId = generateRandomId();
-            Sinks.One<?> previous = pendingRequestMap.putIfAbsent(requestId, sink);
-            if (previous != null) {
-                continue;
-            }
-            request.setRequestId(requestId);
-            ByteBuf buffer;
-            try {
-                buffer = RpcFrameEncoder.INSTANCE.encodeRequest(request, requestBody);
-            } catch (Exception e) {
-                requestBody.release();
-                resolveRequest(requestId, null, new IllegalStateException("Failed to encode request", e));
-                break;
-            }
-            // sendObject() will release the buffer no matter it succeeds or fails
-            conn.sendObject(buffer)
-                    .then()
-                    .subscribe(null, t -> resolveRequest(requestId, null, t));
-            break;
-        }
-        return sink.asMono();
+        long startTime = System.nanoTime();
+        // Record the latency of failed and cancelled (e.g. timed out) requests too
+        // so that the endpoints that respond slowly or never respond are penalized
+        return channel.sendRequest(request, requestBody)
+                .doFinally(signal -> recordLatency(System.nanoTime() - startTime));
     }
 
-    private int generateRandomId() {
-        int id;
-        do {
-            id = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
-        } while (pendingRequestMap.containsKey(id));
-        return id;
+    @Nullable
+    private RpcChannel selectChannel(RpcRequest<?> request) {
+        RpcChannel[] currentChannels = channels;
+        int length = currentChannels.length;
+        // fast path
+        if (length == 1) {
+            return currentChannels[0];
+        }
+        if (length == 0) {
+            return null;
+        }
+        // slow path
+        return switch (selectionStrategy) {
+            case ROUND_ROBIN -> selectChannelInTurn(currentChannels);
+            case LEAST_PENDING_REQUESTS -> selectChannelWithLeastPendingRequests(currentChannels);
+            case AFFINITY -> {
+                long key = request.affinityKey();
+                if (key == RpcRequest.NO_AFFINITY_KEY) {
+                    yield selectChannelInTurn(currentChannels);
+                }
+                RpcChannel channel = currentChannels[(int) Math.floorMod(mix(key), (long) length)];
+                yield channel.isActive()
+                        ? channel
+                        : selectChannelInTurn(currentChannels);
+            }
+        };
     }
 
-    // Handle Response
-
-    public void handleResponse(RpcResponse response) {
-        resolveRequest(response.requestId(), response.result(), response.exception());
+    private RpcChannel selectChannelInTurn(RpcChannel[] currentChannels) {
+        int length = currentChannels.length;
+        int index = nextChannelIndex++ & Integer.MAX_VALUE;
+        RpcChannel channel = null;
+        for (int i = 0; i < length; i++) {
+            channel = currentChannels[(index + i) % length];
+            if (channel.isActive()) {
+                return channel;
+            }
+        }
+        // All channels are inactive, and let the channel return the error
+        return channel;
     }
 
-    private <T> void resolveRequest(int requestId, T response, Throwable error) {
-        Sinks.One<T> sink = (Sinks.One<T>) pendingRequestMap.remove(requestId);
-        if (sink == null) {
-            LOGGER.warn("No sink of the request with ID {} is found for the response: " + response, requestId);
-            return;
-        }
-        if (error == null) {
-            sink.tryEmitValue(response);
-        } else {
-            sink.tryEmitError(error);
+    private RpcChannel selectChannelWithLeastPendingRequests(RpcChannel[] currentChannels) {
+        RpcChannel selectedChannel = null;
+        int leastPendingRequestCount = Integer.MAX_VALUE;
+        for (RpcChannel channel : currentChannels) {
+            if (!channel.isActive()) {
+                continue;
+            }
+            int count = channel.getPendingRequestCount();
+            if (count < leastPendingRequestCount) {
+                selectedChannel = channel;
+                leastPendingRequestCount = count;
+            }
         }
+        return selectedChannel == null
+                ? currentChannels[0]
+                : selectedChannel;
+    }
+
+    /**
+     * Spread sequential keys (e.g. user IDs generated by Snowflake) over connections
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key;
     }
 
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.cluster.service.rpc;
+
+import im.turms.server.common.cluster.service.codec.codec.Codec;
+import im.turms.server.common.cluster.service.codec.codec.CodecId;
+import im.turms.server.common.cluster.service.codec.codec.CodecPool;
+import im.turms.server.common.cluster.service.rpc.dto.RpcRequest;
+import im.turms.server.common.metrics.RequestMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The metrics of RPC requests sent to other nodes, which are registered
+ * lazily once per target node, request codec ID, and request tag.
+ *
+ * @author James Chen
+ */
+final class RpcRequestMetrics {
+
+    private static final String METRICS_NAME_RPC_REQUEST = "rpc.request";
+    private static final String METRICS_TAG_REQUEST_NAME = "name";
+    private static final String METRICS_TAG_REQUEST_TARGET_NODE_ID = "node";
+
+    private static final int CODEC_ID_COUNT = CodecId.values().length;
+
+    private final MeterRegistry registry;
+
+    /**
+     * Node ID -> Request metrics indexed by the ordinal of the codec ID of requests
+     */
+    private final Map<String, AtomicReferenceArray<CodecRequestMetrics>> nodeIdToMetrics = new ConcurrentHashMap<>(32);
+
+    RpcRequestMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    RequestMetrics get(RpcRequest<?> request, String nodeId) {
+        AtomicReferenceArray<CodecRequestMetrics> codecIdToMetrics = nodeIdToMetrics.get(nodeId);
+        if (codecIdToMetrics == null) {
+            codecIdToMetrics = nodeIdToMetrics
+                    .computeIfAbsent(nodeId, key -> new AtomicReferenceArray<>(CODEC_ID_COUNT));
+        }
+        Codec<?> codec = CodecPool.getCodec(request.getClass());
+        // Should never happen because the request cannot be serialized without codec
+        if (codec == null) {
+            return createMetrics(request, nodeId, request.tag());
+        }
+        int index = codec.getCodecId().ordinal();
+        CodecRequestMetrics metrics = codecIdToMetrics.get(index);
+        if (metrics == null) {
+            metrics = new CodecRequestMetrics(createMetrics(request, nodeId, null));
+            if (!codecIdToMetrics.compareAndSet(index, null, metrics)) {
+                metrics = codecIdToMetrics.get(index);
+            }
+        }
+        Tag tag = request.tag();
+        if (tag == null) {
+            return metrics.untaggedMetrics;
+        }
+        RequestMetrics taggedMetrics = metrics.tagToMetrics.get(tag);
+        if (taggedMetrics == null) {
+            taggedMetrics = metrics.tagToMetrics
+                    .computeIfAbsent(tag, key -> createMetrics(request, nodeId, key));
+        }
+        return taggedMetrics;
+    }
+
+    /**
+     * Note that the meters are shared with the existing metrics
+     * with the same name and tags in the registry
+     */
+    private RequestMetrics createMetrics(RpcRequest<?> request, String nodeId, @Nullable Tag tag) {
+        Tags tags = Tags.of(METRICS_TAG_REQUEST_NAME, request.name(),
+                METRICS_TAG_REQUEST_TARGET_NODE_ID, nodeId);
+        if (tag != null) {
+            tags = tags.and(tag);
+        }
+        return new RequestMetrics(registry, METRICS_NAME_RPC_REQUEST, tags);
+    }
+
+    private static final class CodecRequestMetrics {
+        private final RequestMetrics untaggedMetrics;
+        private final Map<Tag, RequestMetrics> tagToMetrics = new ConcurrentHashMap<>(16);
+
+        private CodecRequestMetrics(RequestMetrics untaggedMetrics) {
+            this.untaggedMetrics = untaggedMetrics;
+        }
+    }
+
+}
@@ -38,13 +38,15 @@ import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.lang.Null;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.property.constant.RpcConnectionSelectionStrategy;
+import im.turms.server.common.property.constant.RpcMemberSelectionStrategy;
 import im.turms.server.common.property.env.common.cluster.RpcProperties;
 import im.turms.server.common.tracing.TracingCloseableContext;
 import im.turms.server.common.tracing.TracingContext;
 import im.turms.server.common.util.CollectorUtil;
 import im.turms.server.common.util.MapUtil;
 import im.turms.server.common.util.ThrowableUtil;
-import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Metrics;
 import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import org.springframework.context.ApplicationContext;
@@ -61,6 +63,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author James Chen
@@ -69,14 +72,12 @@ public class RpcService implements ClusterService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RpcService.class);
 
-    private static final String METRICS_NAME_RPC_REQUEST = "rpc.request";
-    private static final String METRICS_TAG_REQUEST_NAME = "name";
-    private static final String METRICS_TAG_REQUEST_TARGET_NODE_ID = "node";
-
     private final NodeType nodeType;
     @Getter
     private final RpcRequestExecutor requestExecutor;
     private final Duration defaultRequestTimeoutDuration;
+    private final RpcConnectionSelectionStrategy connectionSelectionStrategy;
+    private final RpcMemberSelectionStrategy memberSelectionStrategy;
 
     private CodecService codecService;
     private ConnectionService connectionService;
@@ -87,12 +88,16 @@ public class RpcService implements ClusterService {
      */
     private final Map<String, RpcEndpoint> endpointPool = new ConcurrentHashMap<>(32);
 
+    private final RpcRequestMetrics requestMetrics = new RpcRequestMetrics(Metrics.globalRegistry);
+
     public RpcService(ApplicationContext context,
                       NodeType nodeType,
                       RpcProperties rpcProperties) {
         this.nodeType = nodeType;
         this.requestExecutor = new RpcRequestExecutor(context);
         defaultRequestTimeoutDuration = Duration.ofMillis(rpcProperties.getRequestTimeoutMillis());
+        connectionSelectionStrategy = rpcProperties.getConnectionSelectionStrategy();
+        memberSelectionStrategy = rpcProperties.getMemberSelectionStrategy();
     }
 
     @Override
@@ -107,12 +112,13 @@ public class RpcService implements ClusterService {
         this.discoveryService = discoveryService;
         connectionService.addMemberConnectionListenerSupplier(() -> new MemberConnectionListener() {
             private TurmsConnection connection;
+            private RpcChannel channel;
             private Member member;
-            private RpcEndpoint endpoint;
 
             @Override
             public void onConnectionOpen(TurmsConnection connection) {
                 this.connection = connection;
+                channel = RpcChannel.bind(connection);
                 ChannelOperations<?, ?> conn = connection.getConnection();
                 conn.addHandlerLast("rpcRequestFrameDecoder", new RpcFrameDecoder());
                 conn.addHandlerLast("rpcRequestFrameEncoder", RpcFrameEncoder.INSTANCE);
@@ -121,14 +127,19 @@ public class RpcService implements ClusterService {
             @Override
             public void onConnectionClosed() {
                 if (member != null) {
-                    endpointPool.remove(member.getNodeId());
+                    // Remove the endpoint atomically so that a channel being added concurrently won't be lost
+                    endpointPool.computeIfPresent(member.getNodeId(),
+                            (nodeId, endpoint) -> endpoint.removeChannel(channel) ? null : endpoint);
                 }
+                channel.failPendingRequests();
             }
 
             @Override
             public void onOpeningHandshakeCompleted(Member member) {
                 this.member = member;
-                endpoint = getOrCreateEndpoint(member.getNodeId(), connection);
+                String nodeId = member.getNodeId();
+                endpointPool.computeIfAbsent(nodeId, id -> new RpcEndpoint(id, connectionSelectionStrategy))
+                        .addChannel(channel);
             }
 
             @Override
@@ -187,43 +198,35 @@ public class RpcService implements ClusterService {
             }
 
             public void onResponseReceived(RpcResponse response) {
-                if (endpoint == null) {
-                    endpoint = getOrCreateEndpoint(connection.getNodeId(), connection);
-                }
-                endpoint.handleResponse(response);
+                channel.handleResponse(response);
             }
         });
     }
 
-    public RpcEndpoint getOrCreateEndpoint(String nodeId) {
-        return getOrCreateEndpoint(nodeId, null);
-    }
-
-    public RpcEndpoint getOrCreateEndpoint(String nodeId, @Nullable TurmsConnection connection) {
+    public RpcEndpoint getEndpoint(String nodeId) {
         if (nodeId.equals(discoveryService.getLocalMember().getNodeId())) {
             throw new IllegalArgumentException("The target node ID of RPC endpoint cannot be the local node ID: " + nodeId);
         }
         RpcEndpoint endpoint = endpointPool.get(nodeId);
-        if (endpoint != null && (connection == null || connection == endpoint.getConnection())) {
-            return endpoint;
-        }
-        endpoint = createEndpoint(nodeId, connection);
-        RpcEndpoint previous = endpointPool.putIfAbsent(nodeId, endpoint);
-        if (previous != null) {
-            return previous;
+        if (endpoint == null) {
+            throw new ConnectionNotFound("The connection to the member " + nodeId
+                    + " doesn't exist");
         }
         return endpoint;
     }
 
-    public RpcEndpoint createEndpoint(String nodeId, @Nullable TurmsConnection connection) {
+    private RpcEndpoint getEndpoint(String nodeId, @Nullable TurmsConnection connection) {
         if (connection == null) {
-            connection = connectionService.getMemberConnection(nodeId);
-            if (connection == null) {
-                throw new ConnectionNotFound("The connection to the member " + nodeId
-                        + " doesn't exist");
-            }
+            return getEndpoint(nodeId);
         }
-        return new RpcEndpoint(nodeId, connection);
+        // Used to send requests over the specified connection (e.g. keepalive requests)
+        // even if the connection hasn't been added to the endpoint
+        RpcChannel channel = RpcChannel.get(connection);
+        if (channel == null) {
+            throw new ConnectionNotFound("The RPC channel of the connection to the member " + nodeId
+                    + " doesn't exist");
+        }
+        return new RpcEndpoint(nodeId, channel);
     }
 
     /**
@@ -232,36 +235,20 @@ public class RpcService implements ClusterService {
      * 3. error for other cases (e.g. no peer exists).
      */
     public <T> Mono<T> requestResponse(RpcRequest<T> request) {
-        //TODO: Provide richer load balancing strategies
         List<Member> otherMembers = getOtherActiveConnectedMembersToRespond(request);
-        int size = otherMembers.size();
-        if (size == 0) {
+        if (otherMembers.isEmpty()) {
             request.release();
             return Mono.error(RpcException.get(RpcErrorCode.MEMBER_NOT_FOUND, TurmsStatusCode.SERVER_UNAVAILABLE));
         }
-        // use System.currentTimeMillis() instead of "RandomUtil.nextPositiveInt()" for better performance
-        int index = (int) System.currentTimeMillis() % size;
-        Member member = otherMembers.get(index);
-        // fast path
-        if (!member.getStatus().isHealthy()) {
-            // slow path
-            int retry = 0;
-            boolean isUnhealthy;
-            do {
-                retry++;
-                index = (index + retry) % size;
-                member = otherMembers.get(index);
-                isUnhealthy = !member.getStatus().isHealthy();
-            } while (isUnhealthy && retry < size);
-            if (isUnhealthy) {
-                request.release();
-                return Mono.error(RpcException.get(RpcErrorCode.HEALTHY_MEMBER_NOT_FOUND, TurmsStatusCode.SERVER_UNAVAILABLE));
-            }
+        Member member = selectMember(otherMembers, request);
+        if (member == null) {
+            request.release();
+            return Mono.error(RpcException.get(RpcErrorCode.HEALTHY_MEMBER_NOT_FOUND, TurmsStatusCode.SERVER_UNAVAILABLE));
         }
         String memberNodeId = member.getNodeId();
         RpcEndpoint client;
         try {
-            client = getOrCreateEndpoint(memberNodeId);
+            client = getEndpoint(memberNodeId);
         } catch (Exception e) {
             request.release();
             return Mono.error(e);
@@ -315,7 +302,7 @@ public class RpcService implements ClusterService {
                         null,
                         memberNodeId);
             }
-            RpcEndpoint endpoint = getOrCreateEndpoint(memberNodeId, connection);
+            RpcEndpoint endpoint = getEndpoint(memberNodeId, connection);
             return requestResponse0(endpoint, request, timeout);
         } catch (Exception e) {
             request.release();
@@ -407,16 +394,9 @@ public class RpcService implements ClusterService {
                     }
                     return endpoint.sendRequest(request, requestBody);
                 })
-                .timeout(timeout)
-                .name(METRICS_NAME_RPC_REQUEST)
-                .tag(METRICS_TAG_REQUEST_NAME, request.name())
-                .tag(METRICS_TAG_REQUEST_TARGET_NODE_ID, endpoint.getNodeId());
-        Tag tag = request.tag();
-        if (tag != null) {
-            mono = mono.tag(tag.getKey(), tag.getValue());
-        }
-        return mono
-                .metrics()
+                .timeout(timeout);
+        return requestMetrics.get(request, endpoint.getNodeId())
+                .measure(mono)
                 .onErrorMap(t -> mapThrowable(t, request));
     }
 
@@ -444,25 +424,17 @@ public class RpcService implements ClusterService {
                 String memberId = member.getNodeId();
                 RpcEndpoint client;
                 try {
-                    client = getOrCreateEndpoint(memberId);
+                    client = getEndpoint(memberId);
                 } catch (Exception e) {
                     results.add(Mono.error(e));
                     continue;
                 }
                 requestBody.retain();
-                Mono<T> responseMono = client.sendRequest(request, requestBody)
-                        .name(METRICS_NAME_RPC_REQUEST)
-                        .tag(METRICS_TAG_REQUEST_NAME, request.name())
-                        .tag(METRICS_TAG_REQUEST_TARGET_NODE_ID, memberId)
-                        .metrics();
+                Mono<T> responseMono = requestMetrics.get(request, memberId)
+                        .measure(client.sendRequest(request, requestBody));
                 results.add(responseMono);
             }
-            Flux<T> responseFlux = Flux.merge(results);
-            Tag tag = request.tag();
-            if (tag != null) {
-                responseFlux = responseFlux.tag(tag.getKey(), tag.getValue());
-            }
-            return responseFlux
+            return Flux.merge(results)
                     .timeout(timeout)
                     .onErrorMap(t -> mapThrowable(t, request))
                     .doFinally(signal -> requestBody.release());
@@ -494,26 +466,18 @@ public class RpcService implements ClusterService {
                 String memberId = member.getNodeId();
                 RpcEndpoint client;
                 try {
-                    client = getOrCreateEndpoint(memberId);
+                    client = getEndpoint(memberId);
                 } catch (Exception e) {
                     results.add(Mono.error(e));
                     continue;
                 }
                 requestBody.retain();
-                Mono<Pair<String, T>> responseMono = client.sendRequest(request, requestBody)
-                        .name(METRICS_NAME_RPC_REQUEST)
-                        .tag(METRICS_TAG_REQUEST_NAME, request.name())
-                        .tag(METRICS_TAG_REQUEST_TARGET_NODE_ID, memberId)
-                        .metrics()
+                Mono<Pair<String, T>> responseMono = requestMetrics.get(request, memberId)
+                        .measure(client.sendRequest(request, requestBody))
                         .map(payload -> Pair.of(memberId, payload));
                 results.add(responseMono);
             }
-            Flux<Pair<String, T>> resultFlux = Flux.merge(results);
-            Tag tag = request.tag();
-            if (tag != null) {
-                resultFlux = resultFlux.tag(tag.getKey(), tag.getValue());
-            }
-            return resultFlux
+            return Flux.merge(results)
                     .timeout(timeout)
                     .collectMap(Pair::getFirst, Pair::getSecond, CollectorUtil.toMap(MapUtil.getCapability(size)))
                     .onErrorMap(t -> mapThrowable(t, request))
@@ -538,6 +502,121 @@ public class RpcService implements ClusterService {
         return new IllegalStateException("Failed to request a response for the request: " + callable, throwable);
     }
 
+    // Select member
+
+    @Nullable
+    public Member selectMember(List<Member> members, RpcRequest<?> request) {
+        // fast path
+        int size = members.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            Member member = members.get(0);
+            return member.getStatus().isHealthy() ? member : null;
+        }
+        // slow path
+        return switch (memberSelectionStrategy) {
+            case RANDOM -> selectRandomHealthyMember(members);
+            case POWER_OF_TWO_CHOICES -> selectMemberByPowerOfTwoChoices(members, false);
+            case LEAST_LATENCY -> selectMemberByPowerOfTwoChoices(members, true);
+            case CONSISTENT_HASH -> {
+                long key = request.affinityKey();
+                yield key == RpcRequest.NO_AFFINITY_KEY
+                        ? selectMemberByPowerOfTwoChoices(members, false)
+                        : selectMemberByRendezvousHashing(members, key);
+            }
+        };
+    }
+
+    @Nullable
+    private Member selectRandomHealthyMember(List<Member> members) {
+        int size = members.size();
+        int index = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Member member = members.get((index + i) % size);
+            if (member.getStatus().isHealthy()) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @implNote Compared with selecting the least loaded member among all members,
+     * the power of two choices avoids sending all requests to the same member
+     * that looks least loaded because of stale load information
+     */
+    @Nullable
+    private Member selectMemberByPowerOfTwoChoices(List<Member> members, boolean compareLatency) {
+        int size = members.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index1 = random.nextInt(size);
+        // Ensure the second index is different from the first one
+        int index2 = (index1 + 1 + random.nextInt(size - 1)) % size;
+        Member member1 = members.get(index1);
+        Member member2 = members.get(index2);
+        boolean isMember1Healthy = member1.getStatus().isHealthy();
+        boolean isMember2Healthy = member2.getStatus().isHealthy();
+        if (isMember1Healthy && isMember2Healthy) {
+            return getMemberCost(member1, compareLatency) <= getMemberCost(member2, compareLatency)
+                    ? member1
+                    : member2;
+        }
+        if (isMember1Healthy) {
+            return member1;
+        }
+        if (isMember2Healthy) {
+            return member2;
+        }
+        return selectRandomHealthyMember(members);
+    }
+
+    private long getMemberCost(Member member, boolean compareLatency) {
+        RpcEndpoint endpoint = endpointPool.get(member.getNodeId());
+        if (endpoint == null) {
+            return Long.MAX_VALUE;
+        }
+        return compareLatency
+                ? endpoint.getCost()
+                : endpoint.getPendingRequestCount();
+    }
+
+    /**
+     * Select the healthy member with the highest score for the key,
+     * so the key is always mapped to the same member unless the member is removed or unhealthy.
+     */
+    @Nullable
+    private Member selectMemberByRendezvousHashing(List<Member> members, long key) {
+        Member selectedMember = null;
+        long highestScore = Long.MIN_VALUE;
+        long keyHash = mix(key);
+        for (Member member : members) {
+            if (!member.getStatus().isHealthy()) {
+                continue;
+            }
+            // String caches its hash code, so it's cheap to get
+            long score = mix(keyHash ^ member.getNodeId().hashCode());
+            if (selectedMember == null || score > highestScore) {
+                selectedMember = member;
+                highestScore = score;
+            }
+        }
+        return selectedMember;
+    }
+
+    /**
+     * The finalization mix of MurmurHash3
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
     // Validate node type
 
     private List<Member> getOtherActiveConnectedMembersToRespond(RpcRequest<?> request) {
@@ -52,6 +52,8 @@ import javax.annotation.Nullable;
  */
 public abstract class RpcRequest<T> implements ReferenceCounted {
 
+    public static final long NO_AFFINITY_KEY = Long.MIN_VALUE;
+
     /**
      * Is null if the RPC request runs on the local node
      */
@@ -130,6 +132,16 @@ public abstract class RpcRequest<T> implements ReferenceCounted {
         return null;
     }
 
+    /**
+     * Used to send the requests with the same key over the same connection
+     * if the connection selection strategy is {@link im.turms.server.common.property.constant.RpcConnectionSelectionStrategy#AFFINITY}
+     *
+     * @return {@link #NO_AFFINITY_KEY} if the request can be sent over any connection
+     */
+    public long affinityKey() {
+        return NO_AFFINITY_KEY;
+    }
+
     /**
      * Use a method instead of a field to avoid serializing/deserializing
      */
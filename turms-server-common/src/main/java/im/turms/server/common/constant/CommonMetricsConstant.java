@@ -39,4 +39,10 @@ public final class CommonMetricsConstant {
     public static final String CLIENT_REQUEST_NAME = "turms.client.request";
     public static final String CLIENT_REQUEST_TAG_TYPE = "type";
 
+    // Plugins
+
+    public static final String JS_PLUGIN_INVOCATION_NAME = "turms.plugin.js.invocation";
+    public static final String JS_PLUGIN_INVOCATION_TAG_PLUGIN = "plugin";
+    public static final String JS_PLUGIN_INVOCATION_TAG_METHOD = "method";
+
 }
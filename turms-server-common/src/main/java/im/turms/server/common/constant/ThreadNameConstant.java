@@ -43,9 +43,11 @@ public class ThreadNameConstant {
     // Log
     public static final String LOG_PROCESSOR = "turms-log-processor";
     public static final String LOG_SHUTDOWN = "turms-log-shutdown";
+    public static final String LOG_FILE_COMPRESSOR = "turms-log-file-compressor";
 
     // MongoDB
     public static final String MONGO_CHANGE_WATCHER = "turms-mongo-change-watcher";
+    public static final String MONGO_GROUP_COMMIT_FLUSHER = "turms-mongo-group-commit-flusher";
     public static final String MONGO_EVENT_LOOP = "mongo-event-loop";
 
     // Node
@@ -56,6 +58,12 @@ public class ThreadNameConstant {
     public static final String NODE_DISCOVERY_CHANGE_NOTIFIER = "turms-node-discovery-change-notifier";
     public static final String NODE_DISCOVERY_HEARTBEAT_REFRESHER = "turms-node-discovery-heartbeat-refresher";
 
+    // Plugin
+    public static final String JS_PLUGIN_INVOCATION_TIMEOUT_TIMER = "turms-js-plugin-invocation-timeout-timer";
+
+    // Security
+    public static final String PASSWORD_VERIFIER = "turms-password-verifier";
+
     // Task
     public static final String TRIVIAL_TASK_MANAGER = "turms-trivial-task-manager";
 
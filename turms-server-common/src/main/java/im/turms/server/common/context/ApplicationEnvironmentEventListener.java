@@ -21,8 +21,10 @@ import im.turms.server.common.cluster.node.Node;
 import im.turms.server.common.cluster.node.NodeType;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.logging.core.model.LogLevel;
+import im.turms.server.common.logging.core.processor.QueueFullPolicy;
 import im.turms.server.common.property.env.common.logging.ConsoleLoggingProperties;
 import im.turms.server.common.property.env.common.logging.FileLoggingProperties;
+import im.turms.server.common.property.env.common.logging.LogProcessorProperties;
 import im.turms.server.common.property.env.common.logging.LoggingProperties;
 import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
 import org.springframework.boot.context.logging.LoggingApplicationListener;
@@ -79,10 +81,28 @@ public class ApplicationEnvironmentEventListener implements ApplicationListener<
                 .maxFileSizeMb(env.getProperty("turms.logging.file.maxFileSizeMb",
                         Integer.class,
                         FileLoggingProperties.DEFAULT_VALUE_FILE_SIZE_MB))
+                .compressRolledFiles(env.getProperty("turms.logging.file.compressRolledFiles",
+                        Boolean.class,
+                        FileLoggingProperties.DEFAULT_VALUE_COMPRESS_ROLLED_FILES))
+                .build();
+        LogProcessorProperties processorProperties = LogProcessorProperties.builder()
+                .queueCapacity(env.getProperty("turms.logging.processor.queueCapacity",
+                        Integer.class,
+                        LogProcessorProperties.DEFAULT_VALUE_QUEUE_CAPACITY))
+                .queueFullPolicy(env.getProperty("turms.logging.processor.queueFullPolicy",
+                        QueueFullPolicy.class,
+                        LogProcessorProperties.DEFAULT_VALUE_QUEUE_FULL_POLICY))
+                .flushIntervalMillis(env.getProperty("turms.logging.processor.flushIntervalMillis",
+                        Integer.class,
+                        LogProcessorProperties.DEFAULT_VALUE_FLUSH_INTERVAL_MILLIS))
+                .writeBufferSizeKb(env.getProperty("turms.logging.processor.writeBufferSizeKb",
+                        Integer.class,
+                        LogProcessorProperties.DEFAULT_VALUE_WRITE_BUFFER_SIZE_KB))
                 .build();
         LoggingProperties loggingProperties = new LoggingProperties().toBuilder()
                 .console(consoleLoggingProperties)
                 .file(fileLoggingProperties)
+                .processor(processorProperties)
                 .build();
 
         LoggerFactory.init(nodeType, Node.getNodeId(), loggingProperties);
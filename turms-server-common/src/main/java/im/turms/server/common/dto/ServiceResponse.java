@@ -20,23 +20,85 @@ package im.turms.server.common.dto;
 import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.util.ProtoUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
 
 import javax.annotation.Nullable;
 
 /**
+ * @param dataForRequesterBuffer the serialized {@link TurmsNotification.Data} that is decoded from
+ *                               the RPC response as it is, so that turms-gateway can relay it
+ *                               to the client without parsing and serializing it again.
  * @author James Chen
  */
 public record ServiceResponse(
         @Nullable TurmsNotification.Data dataForRequester,
         TurmsStatusCode code,
-        String reason
-) {
+        String reason,
+        @Nullable ByteBuf dataForRequesterBuffer
+) implements ReferenceCounted {
+
+    public ServiceResponse(@Nullable TurmsNotification.Data dataForRequester, TurmsStatusCode code, String reason) {
+        this(dataForRequester, code, reason, null);
+    }
+
     @Override
     public String toString() {
         return "ServiceResponse[" +
                 "dataForRequester=" + ProtoUtil.toLogString(dataForRequester) +
                 ", code=" + code +
                 ", reason=" + reason +
+                ", dataForRequesterBufferSize=" + (dataForRequesterBuffer == null ? 0 : dataForRequesterBuffer.readableBytes()) +
                 ']';
     }
-}
\ No newline at end of file
+
+    // Adaptor to ReferenceCounted
+
+    @Override
+    public int refCnt() {
+        return dataForRequesterBuffer == null ? 1 : dataForRequesterBuffer.refCnt();
+    }
+
+    @Override
+    public ServiceResponse retain() {
+        if (dataForRequesterBuffer != null) {
+            dataForRequesterBuffer.retain();
+        }
+        return this;
+    }
+
+    @Override
+    public ServiceResponse retain(int increment) {
+        if (dataForRequesterBuffer != null) {
+            dataForRequesterBuffer.retain(increment);
+        }
+        return this;
+    }
+
+    @Override
+    public ServiceResponse touch() {
+        if (dataForRequesterBuffer != null) {
+            dataForRequesterBuffer.touch();
+        }
+        return this;
+    }
+
+    @Override
+    public ServiceResponse touch(Object hint) {
+        if (dataForRequesterBuffer != null) {
+            dataForRequesterBuffer.touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return dataForRequesterBuffer != null && dataForRequesterBuffer.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return dataForRequesterBuffer != null && dataForRequesterBuffer.release(decrement);
+    }
+
+}
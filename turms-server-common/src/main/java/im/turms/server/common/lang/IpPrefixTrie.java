@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.lang;
+
+import java.util.Arrays;
+
+/**
+ * A compressed binary radix (Patricia) trie over the raw bytes of IPv4 and IPv6 addresses,
+ * which maps IP prefixes (CIDR blocks) to their expiration time.
+ * <p>
+ * A rule is either an IP address (4 or 16 bytes) that matches the address itself,
+ * or the network address followed by one byte of the prefix length (5 or 17 bytes)
+ * that matches all addresses in the CIDR block.
+ * <p>
+ * A lookup walks at most one node per branching bit so its cost depends on the number of bits
+ * of the address instead of the number of rules, and it doesn't allocate any object.
+ * The memory usage is proportional to the number of rules instead of the number of blocked addresses.
+ *
+ * @author James Chen
+ * @implNote Lookups are lock-free and can run concurrently with updates because a node is always
+ * fully constructed before it is published via a volatile reference. Updates are serialized.
+ */
+public final class IpPrefixTrie {
+
+    private static final int IPV4_BYTE_LENGTH = 4;
+    private static final int IPV6_BYTE_LENGTH = 16;
+    private static final long NO_VALUE = Long.MIN_VALUE;
+
+    private volatile Node ipV4Root;
+    private volatile Node ipV6Root;
+    private int size;
+
+    /**
+     * @return true if there is a rule matching the IP address and its expiration time is not before "now"
+     */
+    public boolean matches(byte[] ip, long now) {
+        Node node;
+        int bitLength;
+        if (ip.length == IPV4_BYTE_LENGTH) {
+            node = ipV4Root;
+            bitLength = IPV4_BYTE_LENGTH * 8;
+        } else if (ip.length == IPV6_BYTE_LENGTH) {
+            node = ipV6Root;
+            bitLength = IPV6_BYTE_LENGTH * 8;
+        } else {
+            return false;
+        }
+        int checkedBits = 0;
+        while (node != null) {
+            int prefixLength = node.prefixLength;
+            if (commonPrefixLength(node.address, ip, checkedBits, prefixLength) < prefixLength) {
+                return false;
+            }
+            // NO_VALUE is always less than now
+            if (node.expirationTime >= now) {
+                return true;
+            }
+            if (prefixLength == bitLength) {
+                return false;
+            }
+            checkedBits = prefixLength;
+            node = getBit(ip, prefixLength) == 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Add the rule or replace its expiration time if the rule exists
+     */
+    public synchronized void put(byte[] rule, long expirationTime) {
+        boolean isIpV4 = isIpV4(rule);
+        byte[] address = getNetworkAddress(rule);
+        int prefixLength = getPrefixLength(rule);
+        Node node = isIpV4 ? ipV4Root : ipV6Root;
+        if (node == null) {
+            setRoot(isIpV4, new Node(address, prefixLength, expirationTime));
+            size++;
+            return;
+        }
+        Node parent = null;
+        while (true) {
+            int nodePrefixLength = node.prefixLength;
+            int common = commonPrefixLength(node.address, address, 0, Math.min(nodePrefixLength, prefixLength));
+            if (common == nodePrefixLength) {
+                if (common == prefixLength) {
+                    if (node.expirationTime == NO_VALUE) {
+                        size++;
+                    }
+                    node.expirationTime = expirationTime;
+                    return;
+                }
+                int bit = getBit(address, common);
+                Node child = bit == 0 ? node.left : node.right;
+                if (child == null) {
+                    setChild(node, bit, new Node(address, prefixLength, expirationTime));
+                    size++;
+                    return;
+                }
+                parent = node;
+                node = child;
+                continue;
+            }
+            Node newNode;
+            if (common == prefixLength) {
+                // The new rule covers the node
+                newNode = new Node(address, prefixLength, expirationTime);
+                setChild(newNode, getBit(node.address, common), node);
+            } else {
+                // Split at the first different bit
+                newNode = new Node(mask(address, common), common, NO_VALUE);
+                setChild(newNode, getBit(node.address, common), node);
+                setChild(newNode, getBit(address, common), new Node(address, prefixLength, expirationTime));
+            }
+            replace(isIpV4, parent, node, newNode);
+            size++;
+            return;
+        }
+    }
+
+    /**
+     * @return true if the rule existed and has been removed
+     */
+    public synchronized boolean remove(byte[] rule) {
+        return remove(rule, NO_VALUE, false);
+    }
+
+    /**
+     * Remove the rule only if its expiration time is the expected one
+     *
+     * @return true if the rule existed and has been removed
+     */
+    public synchronized boolean remove(byte[] rule, long expectedExpirationTime) {
+        return remove(rule, expectedExpirationTime, true);
+    }
+
+    public synchronized void clear() {
+        ipV4Root = null;
+        ipV6Root = null;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean remove(byte[] rule, long expectedExpirationTime, boolean checkExpirationTime) {
+        boolean isIpV4 = isIpV4(rule);
+        byte[] address = getNetworkAddress(rule);
+        int prefixLength = getPrefixLength(rule);
+        Node grandparent = null;
+        Node parent = null;
+        Node node = isIpV4 ? ipV4Root : ipV6Root;
+        while (node != null) {
+            int nodePrefixLength = node.prefixLength;
+            if (nodePrefixLength > prefixLength
+                    || commonPrefixLength(node.address, address, 0, nodePrefixLength) < nodePrefixLength) {
+                return false;
+            }
+            if (nodePrefixLength == prefixLength) {
+                break;
+            }
+            grandparent = parent;
+            parent = node;
+            node = getBit(address, nodePrefixLength) == 0 ? node.left : node.right;
+        }
+        if (node == null) {
+            return false;
+        }
+        long expirationTime = node.expirationTime;
+        if (expirationTime == NO_VALUE || (checkExpirationTime && expirationTime != expectedExpirationTime)) {
+            return false;
+        }
+        node.expirationTime = NO_VALUE;
+        size--;
+        // Remove the nodes that are no longer needed
+        Node left = node.left;
+        Node right = node.right;
+        if (left != null && right != null) {
+            return true;
+        }
+        Node child = left == null ? right : left;
+        replace(isIpV4, parent, node, child);
+        if (child == null && parent != null && parent.expirationTime == NO_VALUE) {
+            // The parent was a branching node with two children,
+            // so it can be replaced by the remaining child
+            Node sibling = parent.left == null ? parent.right : parent.left;
+            replace(isIpV4, grandparent, parent, sibling);
+        }
+        return true;
+    }
+
+    private void setRoot(boolean isIpV4, Node root) {
+        if (isIpV4) {
+            ipV4Root = root;
+        } else {
+            ipV6Root = root;
+        }
+    }
+
+    private void replace(boolean isIpV4, Node parent, Node oldNode, Node newNode) {
+        if (parent == null) {
+            setRoot(isIpV4, newNode);
+        } else if (parent.left == oldNode) {
+            parent.left = newNode;
+        } else {
+            parent.right = newNode;
+        }
+    }
+
+    private static void setChild(Node parent, int bit, Node child) {
+        if (bit == 0) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+    }
+
+    private static boolean isIpV4(byte[] rule) {
+        int length = rule.length;
+        if (length == IPV4_BYTE_LENGTH || length == IPV4_BYTE_LENGTH + 1) {
+            return true;
+        }
+        if (length == IPV6_BYTE_LENGTH || length == IPV6_BYTE_LENGTH + 1) {
+            return false;
+        }
+        throw new IllegalArgumentException("The rule must be an IPv4 or IPv6 address or a CIDR block, but got: "
+                + Arrays.toString(rule));
+    }
+
+    private static int getPrefixLength(byte[] rule) {
+        int length = rule.length;
+        if (length == IPV4_BYTE_LENGTH || length == IPV6_BYTE_LENGTH) {
+            return length * 8;
+        }
+        int prefixLength = rule[length - 1] & 0xFF;
+        if (prefixLength > (length - 1) * 8) {
+            throw new IllegalArgumentException("The prefix length " + prefixLength + " is out of range");
+        }
+        return prefixLength;
+    }
+
+    private static byte[] getNetworkAddress(byte[] rule) {
+        int length = rule.length;
+        if (length == IPV4_BYTE_LENGTH || length == IPV6_BYTE_LENGTH) {
+            return rule;
+        }
+        return mask(Arrays.copyOf(rule, length - 1), rule[length - 1] & 0xFF);
+    }
+
+    private static byte[] mask(byte[] address, int prefixLength) {
+        byte[] masked = Arrays.copyOf(address, address.length);
+        int index = prefixLength >>> 3;
+        int remainingBits = prefixLength & 7;
+        if (remainingBits != 0) {
+            masked[index] &= (byte) (0xFF << (8 - remainingBits));
+            index++;
+        }
+        Arrays.fill(masked, index, masked.length, (byte) 0);
+        return masked;
+    }
+
+    private static int getBit(byte[] address, int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * @return the number of the same leading bits of the two addresses,
+     * assuming that the bits before "fromBit" are the same
+     */
+    private static int commonPrefixLength(byte[] a, byte[] b, int fromBit, int maxBits) {
+        for (int i = fromBit >>> 3; (i << 3) < maxBits; i++) {
+            int diff = (a[i] ^ b[i]) & 0xFF;
+            if (diff != 0) {
+                return Math.min(maxBits, (i << 3) + Integer.numberOfLeadingZeros(diff) - 24);
+            }
+        }
+        return maxBits;
+    }
+
+    private static final class Node {
+        /**
+         * The address whose bits after the prefix length are zero
+         */
+        private final byte[] address;
+        private final int prefixLength;
+        /**
+         * {@link #NO_VALUE} if the node is only used to branch
+         */
+        private volatile long expirationTime;
+        private volatile Node left;
+        private volatile Node right;
+
+        private Node(byte[] address, int prefixLength, long expirationTime) {
+            this.address = address;
+            this.prefixLength = prefixLength;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+}
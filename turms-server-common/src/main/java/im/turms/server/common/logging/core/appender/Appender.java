@@ -20,49 +20,105 @@ package im.turms.server.common.logging.core.appender;
 import im.turms.server.common.logging.core.model.LogLevel;
 import im.turms.server.common.logging.core.model.LogRecord;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.CompositeByteBuf;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.SneakyThrows;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
+ * Records are copied into a reusable direct buffer and written to the channel
+ * when the buffer is full or {@link #flush()} is called by the log processor,
+ * so that there is one syscall per batch instead of one per record.
+ *
  * @author James Chen
  */
 @Data
 public abstract class Appender implements AutoCloseable {
 
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 64 * 1024;
+
     private final LogLevel level;
 
     protected FileChannel channel;
 
-    @SneakyThrows
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer writeBuffer;
+
     protected Appender(LogLevel level) {
+        this(level, DEFAULT_WRITE_BUFFER_SIZE);
+    }
+
+    protected Appender(LogLevel level, int writeBufferSize) {
         this.level = level;
+        writeBuffer = ByteBuffer.allocateDirect(Math.max(writeBufferSize, 1024));
     }
 
     @SneakyThrows
     @Override
     public void close() {
+        flush();
         channel.force(true);
         channel.close();
     }
 
+    /**
+     * @return the number of bytes of the record that will be written
+     */
     @SneakyThrows
     public int append(LogRecord record) {
         if (!record.level().isLoggable(level)) {
             return 0;
         }
         ByteBuf buffer = record.data();
-        if (buffer instanceof CompositeByteBuf buf) {
-            int written = 0;
-            for (ByteBuffer nioBuffer : buf.nioBuffers()) {
-                written += channel.write(nioBuffer);
+        int length = buffer.readableBytes();
+        if (length > writeBuffer.remaining()) {
+            if (length > writeBuffer.capacity()) {
+                writeWithPendingData(buffer);
+                return length;
             }
-            return written;
+            flush();
+        }
+        int limit = writeBuffer.limit();
+        writeBuffer.limit(writeBuffer.position() + length);
+        buffer.getBytes(buffer.readerIndex(), writeBuffer);
+        writeBuffer.limit(limit);
+        return length;
+    }
+
+    /**
+     * Write the pending data to the channel
+     */
+    @SneakyThrows
+    public void flush() {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Write the pending data and the large record with a single gathering write
+     * instead of copying the record
+     */
+    @SneakyThrows
+    private void writeWithPendingData(ByteBuf buffer) {
+        ByteBuffer[] recordBuffers = buffer.nioBuffers();
+        ByteBuffer[] buffers = new ByteBuffer[recordBuffers.length + 1];
+        writeBuffer.flip();
+        buffers[0] = writeBuffer;
+        System.arraycopy(recordBuffers, 0, buffers, 1, recordBuffers.length);
+        long remaining = writeBuffer.remaining() + (long) buffer.readableBytes();
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
         }
-        return channel.write(buffer.nioBuffer());
+        writeBuffer.clear();
     }
 
 }
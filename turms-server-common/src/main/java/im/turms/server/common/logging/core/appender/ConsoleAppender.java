@@ -28,7 +28,11 @@ import java.io.FileOutputStream;
 public class ConsoleAppender extends Appender {
 
     public ConsoleAppender(LogLevel level) {
-        super(level);
+        this(level, DEFAULT_WRITE_BUFFER_SIZE);
+    }
+
+    public ConsoleAppender(LogLevel level, int writeBufferSize) {
+        super(level, writeBufferSize);
         channel = new FileOutputStream(FileDescriptor.out).getChannel();
     }
 
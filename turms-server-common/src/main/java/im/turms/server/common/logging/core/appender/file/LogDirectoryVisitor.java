@@ -36,6 +36,7 @@ import java.util.Comparator;
 import java.util.Deque;
 import java.util.TreeSet;
 
+import static im.turms.server.common.logging.core.appender.file.RollingFileAppender.COMPRESSED_FILE_SUFFIX;
 import static im.turms.server.common.logging.core.appender.file.RollingFileAppender.FIELD_DELIMITER;
 
 /**
@@ -74,7 +75,10 @@ public class LogDirectoryVisitor extends SimpleFileVisitor<Path> {
             if (!isLogFile(name)) {
                 return FileVisitResult.CONTINUE;
             }
-            int indexEnd = name.length() - fileSuffix.length();
+            String suffix = name.endsWith(COMPRESSED_FILE_SUFFIX)
+                    ? fileSuffix + COMPRESSED_FILE_SUFFIX
+                    : fileSuffix;
+            int indexEnd = name.length() - suffix.length();
             int indexStart = name.lastIndexOf(FIELD_DELIMITER, indexEnd - 1);
             if (indexStart == filePrefix.length() + fileMiddle.length() + 1) {
                 long index = Long.parseUnsignedLong(name.substring(indexStart + 1, indexEnd));
@@ -93,7 +97,7 @@ public class LogDirectoryVisitor extends SimpleFileVisitor<Path> {
     private boolean isLogFile(String name) {
         return (name.length() > filePrefix.length() + fileSuffix.length() + fileMiddle.length() + 1)
                 && name.startsWith(filePrefix)
-                && name.endsWith(fileSuffix);
+                && (name.endsWith(fileSuffix) || name.endsWith(fileSuffix + COMPRESSED_FILE_SUFFIX));
     }
 
     private void handleLogFile(Path path, ZonedDateTime timestamp, long index) {
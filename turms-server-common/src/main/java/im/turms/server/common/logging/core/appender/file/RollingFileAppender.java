@@ -17,22 +17,31 @@
 
 package im.turms.server.common.logging.core.appender.file;
 
+import im.turms.server.common.constant.ThreadNameConstant;
 import im.turms.server.common.constant.TimeZoneConstant;
 import im.turms.server.common.logging.core.appender.Appender;
+import im.turms.server.common.logging.core.logger.InternalLogger;
 import im.turms.server.common.logging.core.model.LogLevel;
 import im.turms.server.common.logging.core.model.LogRecord;
+import im.turms.server.common.util.NamedThreadFactory;
 import lombok.SneakyThrows;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.Deque;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author James Chen
@@ -40,7 +49,15 @@ import java.util.concurrent.TimeUnit;
 public class RollingFileAppender extends Appender {
 
     public static final char FIELD_DELIMITER = '_';
+    public static final String COMPRESSED_FILE_SUFFIX = ".gz";
     private static final String FILE_MIDDLE = "yyyyMMdd";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * Compress rolled files in a background thread to avoid blocking the log processor
+     */
+    private static final ExecutorService COMPRESSOR = Executors
+            .newSingleThreadExecutor(new NamedThreadFactory(ThreadNameConstant.LOG_FILE_COMPRESSOR, true));
 
     private final String filePrefix;
     private final String fileSuffix;
@@ -53,6 +70,7 @@ public class RollingFileAppender extends Appender {
 
     private final int maxFiles;
     private final long maxFileSize;
+    private final boolean compressRolledFiles;
 
     private final Deque<LogFile> files;
     private LogFile currentFile;
@@ -61,12 +79,21 @@ public class RollingFileAppender extends Appender {
     private long nextIndex;
     private long nextDay = Long.MIN_VALUE;
 
-    @SneakyThrows
     public RollingFileAppender(LogLevel level,
                                String file,
                                int maxFiles,
                                long maxFileMb) {
-        super(level);
+        this(level, file, maxFiles, maxFileMb, false, DEFAULT_WRITE_BUFFER_SIZE);
+    }
+
+    @SneakyThrows
+    public RollingFileAppender(LogLevel level,
+                               String file,
+                               int maxFiles,
+                               long maxFileMb,
+                               boolean compressRolledFiles,
+                               int writeBufferSize) {
+        super(level, writeBufferSize);
         Path filePath = Paths.get(file).toAbsolutePath();
         String fileName = filePath.getFileName().toString();
         int index = fileName.lastIndexOf('.');
@@ -77,6 +104,7 @@ public class RollingFileAppender extends Appender {
 
         this.maxFiles = Math.max(maxFiles, 0);
         this.maxFileSize = (maxFileMb > 0) ? maxFileMb * 1024 * 1024 : Long.MAX_VALUE;
+        this.compressRolledFiles = compressRolledFiles;
 
         Files.createDirectories(fileDirectory);
         files = LogDirectoryVisitor.visit(fileDirectory, filePrefix, fileSuffix, FILE_MIDDLE, fileDateTimeFormatter, maxFiles);
@@ -85,9 +113,22 @@ public class RollingFileAppender extends Appender {
 
         if (logFile == null) {
             openNewFile();
+        } else if (isCompressed(logFile.path())) {
+            // Never append to a compressed file
+            nextIndex = logFile.index() + 1;
+            openNewFile();
         } else {
             openExistingFile(logFile);
         }
+
+        if (compressRolledFiles) {
+            // Compress the rolled files that weren't compressed before the server stopped
+            for (LogFile rolledFile : files) {
+                if (rolledFile != currentFile && !isCompressed(rolledFile.path())) {
+                    compress(rolledFile.path());
+                }
+            }
+        }
     }
 
     @SneakyThrows
@@ -125,7 +166,11 @@ public class RollingFileAppender extends Appender {
     @SneakyThrows
     private void roll() {
         closeFile();
+        Path rolledFile = currentFile.path();
         openNewFile();
+        if (compressRolledFiles) {
+            compress(rolledFile);
+        }
         clean();
     }
 
@@ -142,7 +187,7 @@ public class RollingFileAppender extends Appender {
         files.add(currentFile);
 
         nextFileSize = channel.size();
-        nextDay = TimeUnit.SECONDS.toNanos(next.toEpochSecond());
+        nextDay = next.toInstant().toEpochMilli();
         nextIndex++;
     }
 
@@ -158,12 +203,13 @@ public class RollingFileAppender extends Appender {
         currentFile = existingFile;
 
         nextFileSize = channel.size();
-        nextDay = TimeUnit.SECONDS.toNanos(next.toEpochSecond());
+        nextDay = next.toInstant().toEpochMilli();
         nextIndex = existingFile.index() + 1;
     }
 
     @SneakyThrows
     private void closeFile() {
+        flush();
         channel.force(true);
         channel.close();
     }
@@ -173,13 +219,50 @@ public class RollingFileAppender extends Appender {
             LogFile file = files.remove();
             if (maxFiles > 0) {
                 try {
-                    Files.deleteIfExists(file.path());
+                    Path path = file.path();
+                    Files.deleteIfExists(path);
+                    if (!isCompressed(path)) {
+                        // The file may have been compressed in the background
+                        Files.deleteIfExists(getCompressedFilePath(path));
+                    }
                 } catch (Exception ignored) {
                 }
             }
         }
     }
 
+    private void compress(Path file) {
+        COMPRESSOR.execute(() -> {
+            Path compressedFile = getCompressedFilePath(file);
+            Path tempFile = compressedFile.resolveSibling(compressedFile.getFileName() + TEMP_FILE_SUFFIX);
+            try {
+                try (InputStream input = Files.newInputStream(file);
+                     OutputStream output = new GZIPOutputStream(Files.newOutputStream(tempFile), DEFAULT_WRITE_BUFFER_SIZE)) {
+                    input.transferTo(output);
+                }
+                Files.move(tempFile, compressedFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.delete(file);
+            } catch (NoSuchFileException ignored) {
+                // The file has been deleted because of exceeding the max number of files
+            } catch (Exception e) {
+                InternalLogger.printException(e);
+            } finally {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (Exception ignored) {
+                }
+            }
+        });
+    }
+
+    private static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(COMPRESSED_FILE_SUFFIX);
+    }
+
+    private static Path getCompressedFilePath(Path file) {
+        return file.resolveSibling(file.getFileName() + COMPRESSED_FILE_SUFFIX);
+    }
+
     private Path getFilePath(ZonedDateTime currentDay) {
         String name = filePrefix
                 + FIELD_DELIMITER
@@ -21,10 +21,10 @@ import im.turms.server.common.logging.core.appender.Appender;
 import im.turms.server.common.logging.core.layout.TurmsTemplateLayout;
 import im.turms.server.common.logging.core.model.LogLevel;
 import im.turms.server.common.logging.core.model.LogRecord;
+import im.turms.server.common.logging.core.processor.LogRecordQueue;
 import im.turms.server.common.util.ByteBufUtil;
 import io.netty.buffer.ByteBuf;
 import lombok.Data;
-import org.jctools.queues.MpscUnboundedArrayQueue;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -39,7 +39,7 @@ public final class AsyncLogger implements Logger {
     private final int level;
     private final List<Appender> appenders;
     private final TurmsTemplateLayout layout;
-    private final MpscUnboundedArrayQueue<LogRecord> queue;
+    private final LogRecordQueue queue;
 
     private final byte[] nameForLog;
     private final boolean shouldParse;
@@ -48,7 +48,7 @@ public final class AsyncLogger implements Logger {
                        boolean shouldParse,
                        List<Appender> appenders,
                        TurmsTemplateLayout layout,
-                       MpscUnboundedArrayQueue<LogRecord> queue) {
+                       LogRecordQueue queue) {
         this.name = name;
         this.shouldParse = shouldParse;
         this.appenders = appenders;
@@ -196,7 +196,7 @@ public final class AsyncLogger implements Logger {
         try {
             buffer = layout.format(shouldParse, nameForLog, level, message, args, throwable);
             boolean offer = queue.offer(new LogRecord(this, level, System.currentTimeMillis(), buffer));
-            // Should never happen because the queue is unlimited
+            // The record is dropped if the queue is full and the policy is DROP
             if (!offer) {
                 buffer.release();
             }
@@ -211,7 +211,7 @@ public final class AsyncLogger implements Logger {
         try {
             buffer = layout.format(nameForLog, level, message);
             boolean offer = queue.offer(new LogRecord(this, level, System.currentTimeMillis(), buffer));
-            // Should never happen because the queue is unlimited
+            // The record is dropped if the queue is full and the policy is DROP
             if (!offer) {
                 buffer.release();
             }
@@ -23,14 +23,14 @@ import im.turms.server.common.logging.core.appender.ConsoleAppender;
 import im.turms.server.common.logging.core.appender.file.RollingFileAppender;
 import im.turms.server.common.logging.core.layout.TurmsTemplateLayout;
 import im.turms.server.common.logging.core.model.LogLevel;
-import im.turms.server.common.logging.core.model.LogRecord;
 import im.turms.server.common.logging.core.processor.LogProcessor;
+import im.turms.server.common.logging.core.processor.LogRecordQueue;
 import im.turms.server.common.property.env.common.logging.ConsoleLoggingProperties;
 import im.turms.server.common.property.env.common.logging.FileLoggingProperties;
+import im.turms.server.common.property.env.common.logging.LogProcessorProperties;
 import im.turms.server.common.property.env.common.logging.LoggingProperties;
 import lombok.Getter;
 import lombok.SneakyThrows;
-import org.jctools.queues.MpscUnboundedArrayQueue;
 import org.springframework.data.util.Pair;
 
 import java.util.ArrayList;
@@ -48,13 +48,14 @@ public class LoggerFactory {
 
     private static final List<Appender> ALL_APPENDERS = new CopyOnWriteArrayList<>();
     private static final List<Appender> DEFAULT_APPENDERS = new ArrayList<>(2);
-    private static final MpscUnboundedArrayQueue<LogRecord> QUEUE = new MpscUnboundedArrayQueue<>(1024);
     private static final Queue<Pair<LoggerOptions, WrappedLogger>> UNINITIALIZED_LOGGERS = new LinkedList<>();
+    private static final LogRecordQueue QUEUE = new LogRecordQueue();
 
     private static String homeDir;
     private static String serverTypeName;
     private static FileLoggingProperties fileLoggingProperties;
     private static ConsoleAppender defaultConsoleAppender;
+    private static int writeBufferSize;
 
     @SneakyThrows
     public static synchronized void init(NodeType nodeType, String nodeId, LoggingProperties properties) {
@@ -70,10 +71,13 @@ public class LoggerFactory {
         serverTypeName = nodeType == NodeType.SERVICE
                 ? "turms-service"
                 : "turms-gateway";
+        LogProcessorProperties processorProperties = properties.getProcessor();
+        writeBufferSize = processorProperties.getWriteBufferSizeKb() * 1024;
+        QUEUE.configure(processorProperties.getQueueCapacity(), processorProperties.getQueueFullPolicy());
         ConsoleLoggingProperties consoleLoggingProperties = properties.getConsole();
         FileLoggingProperties fileLoggingProperties = properties.getFile();
         if (consoleLoggingProperties.isEnabled()) {
-            ConsoleAppender consoleAppender = new ConsoleAppender(consoleLoggingProperties.getLevel());
+            ConsoleAppender consoleAppender = new ConsoleAppender(consoleLoggingProperties.getLevel(), writeBufferSize);
             defaultConsoleAppender = consoleAppender;
             DEFAULT_APPENDERS.add(consoleAppender);
         }
@@ -82,7 +86,9 @@ public class LoggerFactory {
             RollingFileAppender fileAppender = new RollingFileAppender(fileLoggingProperties.getLevel(),
                     getFilePath(fileLoggingProperties.getFilePath()),
                     fileLoggingProperties.getMaxFiles(),
-                    fileLoggingProperties.getMaxFileSizeMb());
+                    fileLoggingProperties.getMaxFileSizeMb(),
+                    fileLoggingProperties.isCompressRolledFiles(),
+                    writeBufferSize);
             DEFAULT_APPENDERS.add(fileAppender);
         }
         layout = new TurmsTemplateLayout(nodeType, nodeId);
@@ -94,7 +100,7 @@ public class LoggerFactory {
             pair.getSecond().setLogger(getLogger(pair.getFirst()));
         }
 
-        new LogProcessor(QUEUE).start();
+        new LogProcessor(QUEUE, processorProperties.getFlushIntervalMillis()).start();
     }
 
     private static synchronized void initForTest() {
@@ -113,6 +119,7 @@ public class LoggerFactory {
         init(nodeType, "node-id-test", LoggingProperties.builder()
                 .console(new ConsoleLoggingProperties().toBuilder().level(LogLevel.INFO).enabled(true).build())
                 .file(new FileLoggingProperties().toBuilder().level(LogLevel.INFO).enabled(true).build())
+                .processor(new LogProcessorProperties())
                 .build());
     }
 
@@ -148,7 +155,9 @@ public class LoggerFactory {
                 RollingFileAppender appender = new RollingFileAppender(level,
                         filePath,
                         fileLoggingProperties.getMaxFiles(),
-                        fileLoggingProperties.getMaxFileSizeMb());
+                        fileLoggingProperties.getMaxFileSizeMb(),
+                        fileLoggingProperties.isCompressRolledFiles(),
+                        writeBufferSize);
                 appenders.add(appender);
                 ALL_APPENDERS.add(appender);
                 if (defaultConsoleAppender != null) {
@@ -174,6 +183,13 @@ public class LoggerFactory {
         return ALL_APPENDERS;
     }
 
+    /**
+     * @return the number of log records dropped because the queue was full
+     */
+    public static long getDroppedRecordCount() {
+        return QUEUE.getDroppedRecordCount();
+    }
+
     private static String getFilePath(String path) {
         if (path == null) {
             return ".";
@@ -24,9 +24,11 @@ import im.turms.server.common.logging.core.logger.InternalLogger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.logging.core.model.LogRecord;
 import im.turms.server.common.util.ByteBufUtil;
-import org.jctools.queues.MpscUnboundedArrayQueue;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Note that we only use one thread to process logs,
@@ -39,8 +41,8 @@ public final class LogProcessor {
     private final Thread thread;
     private volatile boolean active;
 
-    public LogProcessor(MpscUnboundedArrayQueue<LogRecord> recordQueue) {
-        thread = new Thread(() -> drainLogsForever(recordQueue),
+    public LogProcessor(LogRecordQueue recordQueue, long flushIntervalMillis) {
+        thread = new Thread(() -> drainLogsForever(recordQueue, flushIntervalMillis),
                 ThreadNameConstant.LOG_PROCESSOR);
         Runtime.getRuntime()
                 .addShutdownHook(new Thread(this::close, ThreadNameConstant.LOG_SHUTDOWN));
@@ -57,31 +59,52 @@ public final class LogProcessor {
         active = false;
     }
 
-    private void drainLogsForever(MpscUnboundedArrayQueue<LogRecord> recordQueue) {
+    /**
+     * Records are written into the buffers of appenders in batches,
+     * and the buffers are flushed when the queue is drained or the flush interval elapses
+     * so that a burst of records results in a few large writes instead of a write per record.
+     */
+    private void drainLogsForever(LogRecordQueue recordQueue, long flushIntervalMillis) {
         BackoffIdleStrategy idleStrategy = new BackoffIdleStrategy(128,
                 128,
                 1024000,
                 1024000);
+        // Use identity semantics because an appender is shared by loggers
+        Set<Appender> dirtyAppenders = Collections.newSetFromMap(new IdentityHashMap<>(8));
+        long lastFlushTimestamp = System.currentTimeMillis();
         LogRecord logRecord;
         Thread currentThread = Thread.currentThread();
         while (true) {
-            while ((logRecord = recordQueue.relaxedPoll()) != null) {
+            while ((logRecord = recordQueue.poll()) != null) {
                 idleStrategy.reset();
                 List<Appender> appenders = logRecord.logger().getAppenders();
                 for (Appender appender : appenders) {
                     try {
                         appender.append(logRecord);
+                        dirtyAppenders.add(appender);
                     } catch (Exception e) {
                         InternalLogger.printException(e);
                     }
                 }
                 ByteBufUtil.safeEnsureReleased(logRecord.data());
+                if (flushIntervalMillis > 0) {
+                    long now = System.currentTimeMillis();
+                    if (now - lastFlushTimestamp >= flushIntervalMillis) {
+                        flush(dirtyAppenders);
+                        lastFlushTimestamp = now;
+                    }
+                }
+            }
+            if (!dirtyAppenders.isEmpty()) {
+                flush(dirtyAppenders);
+                lastFlushTimestamp = System.currentTimeMillis();
             }
             if (!active || currentThread.isInterrupted()) {
                 break;
             }
             idleStrategy.idle();
         }
+        recordQueue.close();
         List<Appender> appenders = LoggerFactory.getAllAppenders();
         for (Appender appender : appenders) {
             try {
@@ -92,4 +115,15 @@ public final class LogProcessor {
         }
     }
 
+    private void flush(Set<Appender> appenders) {
+        for (Appender appender : appenders) {
+            try {
+                appender.flush();
+            } catch (Exception e) {
+                InternalLogger.printException(e);
+            }
+        }
+        appenders.clear();
+    }
+
 }
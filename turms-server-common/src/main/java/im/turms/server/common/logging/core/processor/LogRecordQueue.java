@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.logging.core.processor;
+
+import im.turms.server.common.logging.core.model.LogRecord;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The queue between the threads that log and the log processor.
+ * If the queue is bounded, new records are dropped or the logging threads are blocked
+ * when the queue is full according to {@link QueueFullPolicy}.
+ * <p>
+ * The queue is configured in place instead of being recreated
+ * so that its holders can keep a final reference to it.
+ *
+ * @author James Chen
+ */
+public final class LogRecordQueue {
+
+    private static final long BLOCK_PARK_NANOS = 100_000;
+
+    private final MpscUnboundedArrayQueue<LogRecord> queue = new MpscUnboundedArrayQueue<>(1024);
+    private final LongAdder droppedRecordCount = new LongAdder();
+
+    /**
+     * The queue is unbounded if less than or equal to 0.
+     * Note that it's a soft limit because the size is checked before a record is offered,
+     * so concurrent logging threads may exceed the limit by at most the number of the threads
+     */
+    private volatile int capacity;
+    private volatile QueueFullPolicy queueFullPolicy = QueueFullPolicy.DROP;
+
+    private volatile boolean closed;
+
+    /**
+     * @param capacity the queue is unbounded if less than or equal to 0
+     */
+    public void configure(int capacity, QueueFullPolicy queueFullPolicy) {
+        this.capacity = capacity;
+        this.queueFullPolicy = queueFullPolicy;
+    }
+
+    /**
+     * @return false if the record is dropped, and the caller should release the record
+     */
+    public boolean offer(LogRecord record) {
+        if (!isFull()) {
+            return queue.offer(record);
+        }
+        if (queueFullPolicy == QueueFullPolicy.BLOCK) {
+            // Don't block forever if the processor has stopped
+            while (!closed) {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                if (!isFull()) {
+                    return queue.offer(record);
+                }
+            }
+        }
+        droppedRecordCount.increment();
+        return false;
+    }
+
+    public LogRecord poll() {
+        return queue.relaxedPoll();
+    }
+
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.sum();
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    private boolean isFull() {
+        int currentCapacity = capacity;
+        return currentCapacity > 0 && queue.size() >= currentCapacity;
+    }
+
+}
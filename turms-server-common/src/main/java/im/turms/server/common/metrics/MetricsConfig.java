@@ -76,7 +76,9 @@ public class MetricsConfig {
                 new JvmGcMetrics(),
                 new JvmMemoryMetrics(),
                 new JvmThreadMetrics(),
-                new ClassLoaderMetrics()
+                new ClassLoaderMetrics(),
+                // Logging
+                new LoggingMetrics()
                 // org.springframework.boot.actuate.autoconfigure.metrics.web.reactive.WebFluxMetricsAutoConfiguration
         );
         for (MeterBinder binder : binders) {
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.metrics;
+
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @author James Chen
+ */
+final class MonoMeasure<T> extends MonoOperator<T, T> {
+
+    private final RequestMetrics metrics;
+
+    MonoMeasure(Mono<? extends T> source, RequestMetrics metrics) {
+        super(source);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super T> actual) {
+        source.subscribe(new MeasureSubscriber<>(actual, metrics));
+    }
+
+    private static final class MeasureSubscriber<T> implements CoreSubscriber<T>, Subscription {
+
+        private static final AtomicIntegerFieldUpdater<MeasureSubscriber> DONE =
+                AtomicIntegerFieldUpdater.newUpdater(MeasureSubscriber.class, "done");
+
+        private final CoreSubscriber<? super T> actual;
+        private final RequestMetrics metrics;
+        private long startNanos;
+        private Subscription subscription;
+        /**
+         * Used to record once because the subscription may be cancelled
+         * while the source is completing in another thread
+         */
+        private volatile int done;
+
+        private MeasureSubscriber(CoreSubscriber<? super T> actual, RequestMetrics metrics) {
+            this.actual = actual;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            if (Operators.validate(subscription, s)) {
+                subscription = s;
+                metrics.recordSubscribed();
+                startNanos = System.nanoTime();
+                actual.onSubscribe(this);
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (tryFinish()) {
+                metrics.recordCompleted(startNanos);
+            }
+            actual.onNext(t);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (tryFinish()) {
+                metrics.recordError(startNanos);
+            }
+            actual.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            if (tryFinish()) {
+                metrics.recordCompletedEmpty(startNanos);
+            }
+            actual.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            subscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            if (tryFinish()) {
+                metrics.recordCancelled(startNanos);
+            }
+            subscription.cancel();
+        }
+
+        private boolean tryFinish() {
+            return done == 0 && DONE.compareAndSet(this, 0, 1);
+        }
+
+    }
+
+}
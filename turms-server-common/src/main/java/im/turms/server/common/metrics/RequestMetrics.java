@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pre-registered meters of a kind of request.
+ * <p>
+ * Compared with {@link Mono#metrics()}, which looks up and registers its meters with the tags
+ * built for every subscription, the meters are registered once so that recording a request
+ * only needs a timestamp pair and the increments of lock-free adders in meters.
+ * The names of meters are the same as the ones of {@link Mono#metrics()} so that
+ * they can still be queried by the same names via {@link MetricsPool}.
+ * <p>
+ * Note that the tags are different: unlike {@link Mono#metrics()}, the meters don't have the "type" tag
+ * (e.g. "Mono"), and the timers of errors don't have the "exception" tag of the exception class name,
+ * so all errors of a kind of request are recorded by a single timer with the tag "status" of "error".
+ *
+ * @author James Chen
+ */
+public final class RequestMetrics {
+
+    public static final String METER_NAME_SUFFIX_SUBSCRIBED = ".subscribed";
+    public static final String METER_NAME_SUFFIX_FLOW_DURATION = ".flow.duration";
+
+    public static final String TAG_STATUS = "status";
+    public static final String TAG_STATUS_COMPLETED = "completed";
+    public static final String TAG_STATUS_COMPLETED_EMPTY = "completedEmpty";
+    public static final String TAG_STATUS_ERROR = "error";
+    public static final String TAG_STATUS_CANCELLED = "cancelled";
+
+    private final Counter subscribedCounter;
+    private final Timer completedTimer;
+    private final Timer completedEmptyTimer;
+    private final Timer errorTimer;
+    private final Timer cancelledTimer;
+
+    public RequestMetrics(MeterRegistry registry, String name, Tags tags) {
+        subscribedCounter = Counter.builder(name + METER_NAME_SUFFIX_SUBSCRIBED)
+                .tags(tags)
+                .register(registry);
+        String flowDurationName = name + METER_NAME_SUFFIX_FLOW_DURATION;
+        completedTimer = registerTimer(registry, flowDurationName, tags, TAG_STATUS_COMPLETED);
+        completedEmptyTimer = registerTimer(registry, flowDurationName, tags, TAG_STATUS_COMPLETED_EMPTY);
+        errorTimer = registerTimer(registry, flowDurationName, tags, TAG_STATUS_ERROR);
+        cancelledTimer = registerTimer(registry, flowDurationName, tags, TAG_STATUS_CANCELLED);
+    }
+
+    /**
+     * @return the metrics for every constant of the enum class
+     */
+    public static <E extends Enum<E>> EnumMap<E, RequestMetrics> createEnumMap(MeterRegistry registry,
+                                                                               String name,
+                                                                               Class<E> enumClass,
+                                                                               String tagKey) {
+        EnumMap<E, RequestMetrics> map = new EnumMap<>(enumClass);
+        for (E constant : enumClass.getEnumConstants()) {
+            map.put(constant, new RequestMetrics(registry, name, Tags.of(tagKey, constant.name())));
+        }
+        return map;
+    }
+
+    /**
+     * Record the metrics of the source when it is subscribed
+     */
+    public <T> Mono<T> measure(Mono<T> source) {
+        return new MonoMeasure<>(source, this);
+    }
+
+    public void recordSubscribed() {
+        subscribedCounter.increment();
+    }
+
+    public void recordCompleted(long startNanos) {
+        record(completedTimer, startNanos);
+    }
+
+    public void recordCompletedEmpty(long startNanos) {
+        record(completedEmptyTimer, startNanos);
+    }
+
+    public void recordError(long startNanos) {
+        record(errorTimer, startNanos);
+    }
+
+    public void recordCancelled(long startNanos) {
+        record(cancelledTimer, startNanos);
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer registerTimer(MeterRegistry registry, String name, Tags tags, String status) {
+        return Timer.builder(name)
+                .tags(tags)
+                .tag(TAG_STATUS, status)
+                .register(registry);
+    }
+
+}
@@ -31,6 +31,8 @@ public final class MongoErrorCodes {
     private MongoErrorCodes() {
     }
 
+    public static final int NAMESPACE_EXISTS = 48;
+
     public static final int NO_SUCH_TRANSACTION = 251;
     public static final int TRANSACTION_COMMITTED = 256;
     public static final int TRANSACTION_TOO_LARGE = 257;
@@ -0,0 +1,536 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.mongo.codec;
+
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.mongo.DomainFieldName;
+import im.turms.server.common.mongo.MongoContext;
+import im.turms.server.common.mongo.entity.EntityField;
+import im.turms.server.common.mongo.entity.MongoEntity;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.springframework.data.mapping.PreferredConstructor;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A codec that resolves everything that doesn't depend on the value once per entity class
+ * instead of per document or per field like {@link EntityCodec}:
+ * 1. Getters, setters and no-arg constructors are generated as lambdas by {@link LambdaMetafactory}
+ * if the entity has the corresponding methods, so they can be inlined by JIT like plain method calls.
+ * Other constructors are invoked via a spreader {@link MethodHandle}.
+ * 2. The BSON names and the codecs of fields are resolved and cached.
+ * 3. Field names are looked up in a pre-hashed table, and the field following the previous one
+ * is checked first because documents are usually stored in the same order as they are encoded.
+ * <p>
+ * {@link EntityCodec} is kept as the fallback if an entity class cannot be compiled,
+ * and as the reference implementation to verify the equivalence of the two codecs.
+ *
+ * @author James Chen
+ */
+public class CompiledEntityCodec<T> implements Codec<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledEntityCodec.class);
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<T> entityClass;
+    private final MongoEntity<T> entity;
+
+    /**
+     * In the same order as {@link EntityCodec} encodes fields
+     */
+    private final CompiledField[] fields;
+    private final FieldNameTable fieldNameTable;
+
+    @Nullable
+    private final Supplier<T> noArgConstructor;
+    /**
+     * (Object[])Object
+     */
+    @Nullable
+    private final MethodHandle constructor;
+    private final int constructorParamCount;
+
+    public CompiledEntityCodec(CodecRegistry registry, Class<T> entityClass) {
+        this.entityClass = entityClass;
+        entity = MongoContext.ENTITY_FACTORY.parse(entityClass);
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(entityClass, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Failed to access the class " + entityClass.getName(), e);
+        }
+        Map<String, Field> javaFields = getJavaFields(entityClass);
+        Collection<EntityField<?>> entityFields = entity.fieldMap().values();
+        fields = new CompiledField[entityFields.size()];
+        // The ID field can be also found by its name in the entity class like EntityCodec
+        Map<String, CompiledField> aliases = new HashMap<>(2);
+        int i = 0;
+        for (EntityField<?> entityField : entityFields) {
+            Field javaField = javaFields.get(entityField.getName());
+            if (javaField == null) {
+                throw new IllegalStateException("Cannot find the field %s of the class %s"
+                        .formatted(entityField.getName(), entityClass.getName()));
+            }
+            fields[i] = new CompiledField(i,
+                    entityField.isIdField() ? DomainFieldName.ID : entityField.getName(),
+                    entityField,
+                    compileGetter(lookup, javaField, entityField),
+                    compileSetter(lookup, javaField, entityField),
+                    registry);
+            if (entityField.isIdField()) {
+                aliases.put(entityField.getName(), fields[i]);
+            }
+            i++;
+        }
+        fieldNameTable = new FieldNameTable(fields, aliases);
+        PreferredConstructor<T, ?> preferredConstructor = entity.constructor();
+        try {
+            MethodHandle ctorHandle = lookup.unreflectConstructor(preferredConstructor.getConstructor());
+            if (preferredConstructor.isNoArgConstructor()) {
+                noArgConstructor = compileNoArgConstructor(lookup, ctorHandle);
+                constructor = null;
+                constructorParamCount = 0;
+            } else {
+                noArgConstructor = null;
+                constructorParamCount = preferredConstructor.getParameters().size();
+                constructor = ctorHandle
+                        .asSpreader(Object[].class, constructorParamCount)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to compile the constructor of the class " + entityClass.getName(), t);
+        }
+    }
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext decoderContext) {
+        try {
+            if (noArgConstructor != null) {
+                T instance = noArgConstructor.get();
+                initInstance(instance, reader, decoderContext);
+                return instance;
+            } else {
+                Object[] ctorValues = parseCtorValues(reader, decoderContext);
+                return (T) constructor.invokeExact(ctorValues);
+            }
+        } catch (Throwable t) {
+            throw new RuntimeException("Failed to decode Bson to " + entityClass.getName(), t);
+        }
+    }
+
+    @Override
+    public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        try {
+            for (CompiledField field : fields) {
+                Object fieldValue = field.getter.apply(value);
+                if (fieldValue == null) {
+                    continue;
+                }
+                writer.writeName(field.bsonName);
+                encoderContext.encodeWithChildContext(field.getEncoder(fieldValue.getClass()), writer, fieldValue);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to encode " + entityClass.getName(), e);
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return entityClass;
+    }
+
+    private void initInstance(T instance, BsonReader reader, DecoderContext decoderContext) {
+        reader.readStartDocument();
+        int nextFieldIndex = 0;
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String fieldName = reader.readName();
+            CompiledField field = findField(fieldName, nextFieldIndex);
+            if (field == null) {
+                LOGGER.warn("Found properties {} not present in the entity {}", fieldName, entity.collectionName());
+                reader.skipValue();
+                continue;
+            }
+            nextFieldIndex = field.index + 1;
+            Object value = decodeValue(field, reader, decoderContext);
+            try {
+                field.setter.accept(instance, value);
+            } catch (Exception e) {
+                String message = "Failed to set the field %s of the class %s"
+                        .formatted(fieldName, entityClass.getName());
+                throw new IllegalStateException(message, e);
+            }
+        }
+        reader.readEndDocument();
+    }
+
+    private Object[] parseCtorValues(BsonReader reader, DecoderContext decoderContext) {
+        Object[] values = new Object[constructorParamCount];
+        reader.readStartDocument();
+        int nextFieldIndex = 0;
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String fieldName = reader.readName();
+            CompiledField field = findField(fieldName, nextFieldIndex);
+            if (field == null) {
+                LOGGER.warn("Found properties not present in the entity: " + fieldName);
+                reader.skipValue();
+                continue;
+            }
+            nextFieldIndex = field.index + 1;
+            values[field.ctorParamIndex] = decodeValue(field, reader, decoderContext);
+        }
+        reader.readEndDocument();
+        return values;
+    }
+
+    @Nullable
+    private CompiledField findField(String fieldName, int nextFieldIndex) {
+        if (nextFieldIndex < fields.length) {
+            CompiledField field = fields[nextFieldIndex];
+            if (field.bsonName.equals(fieldName)) {
+                return field;
+            }
+        }
+        return fieldNameTable.get(fieldName);
+    }
+
+    @Nullable
+    private Object decodeValue(CompiledField field, BsonReader reader, DecoderContext decoderContext) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return null;
+        }
+        try {
+            return decoderContext.decodeWithChildContext(field.getDecoder(), reader);
+        } catch (Exception e) {
+            String message = "Failed to decode the field %s of the class %s"
+                    .formatted(field.bsonName, entityClass.getName());
+            throw new IllegalStateException(message, e);
+        }
+    }
+
+    // Compilation
+
+    private static Map<String, Field> getJavaFields(Class<?> clazz) {
+        Field[] declaredFields = clazz.getDeclaredFields();
+        Map<String, Field> fields = new HashMap<>(declaredFields.length * 2);
+        for (Field field : declaredFields) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            im.turms.server.common.mongo.entity.annotation.Field property =
+                    field.getAnnotation(im.turms.server.common.mongo.entity.annotation.Field.class);
+            fields.put(property == null ? field.getName() : property.value(), field);
+        }
+        return fields;
+    }
+
+    private static Function<Object, Object> compileGetter(MethodHandles.Lookup lookup,
+                                                          Field javaField,
+                                                          EntityField<?> entityField) {
+        Method accessor = findAccessor(javaField);
+        if (accessor != null) {
+            try {
+                MethodHandle handle = lookup.unreflect(accessor);
+                CallSite site = LambdaMetafactory.metafactory(lookup,
+                        "apply",
+                        MethodType.methodType(Function.class),
+                        GETTER_TYPE,
+                        handle,
+                        MethodType.methodType(ClassUtils.primitiveToWrapper(javaField.getType()), javaField.getDeclaringClass()));
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable t) {
+                LOGGER.warn("Failed to generate the getter lambda for the field {} of the class {}. " +
+                                "Fall back to the method handle of the field",
+                        javaField.getName(), javaField.getDeclaringClass().getName(), t);
+            }
+        }
+        MethodHandle getter = entityField.getGetter().asType(GETTER_TYPE);
+        return instance -> {
+            try {
+                return getter.invokeExact(instance);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> compileSetter(MethodHandles.Lookup lookup,
+                                                            Field javaField,
+                                                            EntityField<?> entityField) {
+        MethodHandle setter = entityField.getSetter();
+        Method mutator = null;
+        try {
+            // The setter may be a method annotated with @PropertySetter
+            MethodHandleInfo info = lookup.revealDirect(setter);
+            if (info.getReferenceKind() == MethodHandleInfo.REF_invokeVirtual) {
+                mutator = info.reflectAs(Method.class, lookup);
+            }
+        } catch (Exception ignored) {
+            // The setter isn't a direct method handle
+        }
+        if (mutator == null) {
+            mutator = findMutator(javaField);
+        }
+        if (mutator != null) {
+            try {
+                MethodHandle handle = lookup.unreflect(mutator);
+                CallSite site = LambdaMetafactory.metafactory(lookup,
+                        "accept",
+                        MethodType.methodType(BiConsumer.class),
+                        SETTER_TYPE,
+                        handle,
+                        MethodType.methodType(void.class,
+                                javaField.getDeclaringClass(),
+                                ClassUtils.primitiveToWrapper(mutator.getParameterTypes()[0])));
+                return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable t) {
+                LOGGER.warn("Failed to generate the setter lambda for the field {} of the class {}. " +
+                                "Fall back to the method handle of the field",
+                        javaField.getName(), javaField.getDeclaringClass().getName(), t);
+            }
+        }
+        MethodHandle adaptedSetter = setter.asType(SETTER_TYPE);
+        return (instance, value) -> {
+            try {
+                adaptedSetter.invokeExact(instance, value);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    private static <T> Supplier<T> compileNoArgConstructor(MethodHandles.Lookup lookup, MethodHandle ctorHandle) {
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup,
+                    "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    ctorHandle,
+                    ctorHandle.type());
+            return (Supplier<T>) site.getTarget().invokeExact();
+        } catch (Throwable t) {
+            MethodHandle handle = ctorHandle.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return (T) handle.invokeExact();
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the getter following the naming conventions of JavaBeans and records
+     */
+    @Nullable
+    private static Method findAccessor(Field field) {
+        String name = field.getName();
+        String capitalizedName = StringUtils.capitalize(name);
+        Class<?> type = field.getType();
+        for (String methodName : new String[]{"get" + capitalizedName, "is" + capitalizedName, name}) {
+            try {
+                Method method = field.getDeclaringClass().getDeclaredMethod(methodName);
+                if (method.getReturnType() == type && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ignored) {
+                // Try the next convention
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Method findMutator(Field field) {
+        if (Modifier.isFinal(field.getModifiers())) {
+            return null;
+        }
+        try {
+            Method method = field.getDeclaringClass()
+                    .getDeclaredMethod("set" + StringUtils.capitalize(field.getName()), field.getType());
+            return Modifier.isStatic(method.getModifiers()) ? null : method;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static final class CompiledField {
+        private final int index;
+        private final String bsonName;
+        private final int ctorParamIndex;
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter;
+
+        private final Class<?> fieldClass;
+        private final Class<?> keyClass;
+        private final Class<?> elementClass;
+        private final CodecRegistry registry;
+        /**
+         * Resolved lazily because the codecs of fields may depend on the codec being created
+         */
+        private Codec<?> decoder;
+        private EncoderCache encoderCache;
+
+        private CompiledField(int index,
+                              String bsonName,
+                              EntityField<?> field,
+                              Function<Object, Object> getter,
+                              BiConsumer<Object, Object> setter,
+                              CodecRegistry registry) {
+            this.index = index;
+            this.bsonName = bsonName;
+            this.ctorParamIndex = field.getCtorParamIndex();
+            this.getter = getter;
+            this.setter = setter;
+            this.fieldClass = field.getClazz();
+            this.keyClass = field.getKeyClass();
+            this.elementClass = field.getElementClass();
+            this.registry = registry;
+        }
+
+        private Codec<?> getDecoder() {
+            Codec<?> codec = decoder;
+            if (codec == null) {
+                if (Iterable.class.isAssignableFrom(fieldClass)) {
+                    TurmsIterableCodec iterableCodec = new TurmsIterableCodec(fieldClass, elementClass);
+                    iterableCodec.setRegistry(registry);
+                    codec = iterableCodec;
+                } else if (Map.class.isAssignableFrom(fieldClass)) {
+                    codec = newMapCodec();
+                } else {
+                    codec = registry.get(ClassUtils.primitiveToWrapper(fieldClass));
+                }
+                decoder = codec;
+            }
+            return codec;
+        }
+
+        /**
+         * @implNote Cache the codec of the last value class because the values of a field
+         * are almost always of the same class
+         */
+        private Codec getEncoder(Class<?> valueClass) {
+            EncoderCache cache = encoderCache;
+            if (cache != null && cache.valueClass == valueClass) {
+                return cache.codec;
+            }
+            Codec<?> codec = Map.class.isAssignableFrom(valueClass)
+                    ? newMapCodec()
+                    : registry.get(valueClass);
+            encoderCache = new EncoderCache(valueClass, codec);
+            return codec;
+        }
+
+        private TurmsMapCodec newMapCodec() {
+            TurmsMapCodec codec = new TurmsMapCodec(keyClass, elementClass);
+            codec.setRegistry(registry);
+            return codec;
+        }
+    }
+
+    private record EncoderCache(
+            Class<?> valueClass,
+            Codec<?> codec
+    ) {
+    }
+
+    /**
+     * An open addressing hash table with the hash codes of field names computed in advance
+     */
+    private static final class FieldNameTable {
+        private final String[] names;
+        private final int[] hashes;
+        private final CompiledField[] fields;
+        private final int mask;
+
+        /**
+         * @param aliases the names that are also mapped to the fields
+         */
+        private FieldNameTable(CompiledField[] fields, Map<String, CompiledField> aliases) {
+            int capacity = Integer.highestOneBit(Math.max(fields.length + aliases.size(), 1) * 4 - 1) << 1;
+            names = new String[capacity];
+            hashes = new int[capacity];
+            this.fields = new CompiledField[capacity];
+            mask = capacity - 1;
+            for (CompiledField field : fields) {
+                put(field.bsonName, field);
+            }
+            for (Map.Entry<String, CompiledField> entry : aliases.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void put(String name, CompiledField field) {
+            int hash = name.hashCode();
+            int slot = hash & mask;
+            while (names[slot] != null) {
+                if (names[slot].equals(name)) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            hashes[slot] = hash;
+            fields[slot] = field;
+        }
+
+        @Nullable
+        private CompiledField get(String name) {
+            int hash = name.hashCode();
+            int slot = hash & mask;
+            String slotName;
+            while ((slotName = names[slot]) != null) {
+                if (hashes[slot] == hash && slotName.equals(name)) {
+                    return fields[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+    }
+
+}
@@ -17,6 +17,8 @@
 
 package im.turms.server.common.mongo.codec;
 
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
 import lombok.Data;
 import org.bson.codecs.Codec;
 import org.bson.codecs.configuration.CodecProvider;
@@ -32,7 +34,21 @@ import java.util.Map;
 @Data
 public class EntityCodecProvider implements CodecProvider {
 
-    private final Map<Class<?>, EntityCodec<?>> codecs = new IdentityHashMap<>(64);
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityCodecProvider.class);
+
+    private final Map<Class<?>, Codec<?>> codecs = new IdentityHashMap<>(64);
+    /**
+     * Use {@link EntityCodec} for all entities instead of {@link CompiledEntityCodec}
+     */
+    private final boolean useReflectiveCodec;
+
+    public EntityCodecProvider() {
+        this(false);
+    }
+
+    public EntityCodecProvider(boolean useReflectiveCodec) {
+        this.useReflectiveCodec = useReflectiveCodec;
+    }
 
     @Override
     public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
@@ -40,15 +56,28 @@ public class EntityCodecProvider implements CodecProvider {
     }
 
     private <T> Codec<T> getEntityCodec(Class<T> clazz, CodecRegistry registry) {
-        EntityCodec<T> codec = (EntityCodec<T>) codecs.get(clazz);
+        Codec<T> codec = (Codec<T>) codecs.get(clazz);
         if (codec == null) {
-            codec = new EntityCodec<>(registry, clazz);
+            codec = createCodec(clazz, registry);
             registerCodec(clazz, codec);
         }
         return codec;
     }
 
-    private synchronized <T> void registerCodec(Class<T> clazz, EntityCodec<T> codec) {
+    private <T> Codec<T> createCodec(Class<T> clazz, CodecRegistry registry) {
+        if (useReflectiveCodec) {
+            return new EntityCodec<>(registry, clazz);
+        }
+        try {
+            return new CompiledEntityCodec<>(registry, clazz);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to compile the codec for the class {}. Fall back to the reflective codec",
+                    clazz.getName(), e);
+            return new EntityCodec<>(registry, clazz);
+        }
+    }
+
+    private synchronized <T> void registerCodec(Class<T> clazz, Codec<T> codec) {
         codecs.put(clazz, codec);
     }
 
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.mongo.operation;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import im.turms.server.common.constant.ThreadNameConstant;
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.mongo.exception.DuplicateKeyException;
+import im.turms.server.common.util.NamedThreadFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects concurrent inserts of the same type into a bounded window and flushes them
+ * with one insertMany request when either the batch is full or the max delay has elapsed,
+ * so that bursts of inserts cost one round trip per batch instead of one round trip per document.
+ * <p>
+ * The Mono returned by {@link #insert(Object)} completes when the batch containing the value
+ * has been acknowledged, and fails only if the value itself failed to be inserted.
+ *
+ * @author James Chen
+ */
+public class GroupCommitInserter<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitInserter.class);
+
+    private final MongoOperationsSupport mongoClient;
+    private final int maxBatchSize;
+    private final long maxDelayMicros;
+    private final ScheduledThreadPoolExecutor flusher;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer batchLatencyTimer;
+
+    private final Object lock = new Object();
+    private List<PendingInsert<T>> batch;
+    /**
+     * Used to ignore the scheduled flush of a batch that has been flushed because it was full
+     */
+    private long batchSequence;
+
+    /**
+     * @param metricsName e.g. "message.persistence" to register the meters
+     *                    "message.persistence.batch.size" and "message.persistence.batch.latency"
+     */
+    public GroupCommitInserter(MongoOperationsSupport mongoClient,
+                               int maxBatchSize,
+                               long maxDelayMicros,
+                               MeterRegistry registry,
+                               String metricsName) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+        }
+        if (maxDelayMicros < 0) {
+            throw new IllegalArgumentException("maxDelayMicros must be greater than or equal to 0");
+        }
+        this.mongoClient = mongoClient;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMicros = maxDelayMicros;
+        flusher = new ScheduledThreadPoolExecutor(1,
+                new NamedThreadFactory(ThreadNameConstant.MONGO_GROUP_COMMIT_FLUSHER, true));
+        flusher.setRemoveOnCancelPolicy(true);
+        batchSizeSummary = DistributionSummary.builder(metricsName + ".batch.size")
+                .description("The number of documents inserted per batch")
+                .publishPercentileHistogram()
+                .register(registry);
+        batchLatencyTimer = Timer.builder(metricsName + ".batch.latency")
+                .description("The time to insert a batch of documents")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public Mono<Void> insert(T value) {
+        return Mono.create(sink -> add(new PendingInsert<>(value, sink)));
+    }
+
+    /**
+     * Flush the pending inserts and stop accepting the scheduled flushes
+     */
+    public void destroy() {
+        List<PendingInsert<T>> batchToFlush;
+        synchronized (lock) {
+            batchToFlush = batch;
+            batch = null;
+        }
+        if (batchToFlush != null) {
+            flush(batchToFlush);
+        }
+        flusher.shutdown();
+    }
+
+    private void add(PendingInsert<T> insert) {
+        List<PendingInsert<T>> batchToFlush = null;
+        synchronized (lock) {
+            if (batch == null) {
+                batch = new ArrayList<>(maxBatchSize);
+                long sequence = ++batchSequence;
+                flusher.schedule(() -> flush(sequence), maxDelayMicros, TimeUnit.MICROSECONDS);
+            }
+            batch.add(insert);
+            if (batch.size() >= maxBatchSize) {
+                batchToFlush = batch;
+                batch = null;
+            }
+        }
+        if (batchToFlush != null) {
+            flush(batchToFlush);
+        }
+    }
+
+    private void flush(long sequence) {
+        List<PendingInsert<T>> batchToFlush;
+        synchronized (lock) {
+            if (sequence != batchSequence || batch == null) {
+                return;
+            }
+            batchToFlush = batch;
+            batch = null;
+        }
+        flush(batchToFlush);
+    }
+
+    private void flush(List<PendingInsert<T>> batchToFlush) {
+        int size = batchToFlush.size();
+        List<T> values = new ArrayList<>(size);
+        for (PendingInsert<T> insert : batchToFlush) {
+            values.add(insert.value);
+        }
+        batchSizeSummary.record(size);
+        long startTime = System.nanoTime();
+        mongoClient.insertAllOfSameType(values, false)
+                .subscribe(null, t -> {
+                    batchLatencyTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                    onBatchError(batchToFlush, t);
+                }, () -> {
+                    batchLatencyTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                    for (PendingInsert<T> insert : batchToFlush) {
+                        insert.sink.success();
+                    }
+                });
+    }
+
+    private void onBatchError(List<PendingInsert<T>> batchToFlush, Throwable throwable) {
+        MongoBulkWriteException bulkWriteException = findBulkWriteException(throwable);
+        // Fail all the inserts if we cannot know which inserts have failed
+        // (e.g. network errors or write concern errors)
+        if (bulkWriteException == null
+                || bulkWriteException.getWriteConcernError() != null
+                || bulkWriteException.getWriteErrors().isEmpty()) {
+            LOGGER.error("Failed to insert a batch of {} documents", batchToFlush.size(), throwable);
+            for (PendingInsert<T> insert : batchToFlush) {
+                insert.sink.error(throwable);
+            }
+            return;
+        }
+        List<BulkWriteError> errors = bulkWriteException.getWriteErrors();
+        BulkWriteError[] errorByIndex = new BulkWriteError[batchToFlush.size()];
+        for (BulkWriteError error : errors) {
+            errorByIndex[error.getIndex()] = error;
+        }
+        for (int i = 0; i < errorByIndex.length; i++) {
+            PendingInsert<T> insert = batchToFlush.get(i);
+            BulkWriteError error = errorByIndex[i];
+            if (error == null) {
+                insert.sink.success();
+            } else if (error.getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                insert.sink.error(new DuplicateKeyException(error.getMessage(), bulkWriteException));
+            } else {
+                insert.sink.error(bulkWriteException);
+            }
+        }
+    }
+
+    private MongoBulkWriteException findBulkWriteException(Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof MongoBulkWriteException e) {
+                return e;
+            }
+            current = current.getCause();
+        }
+        return null;
+    }
+
+    private record PendingInsert<T>(
+            T value,
+            MonoSink<Void> sink
+    ) {
+    }
+
+}
@@ -36,6 +36,7 @@ import reactor.core.publisher.Mono;
 import javax.annotation.Nullable;
 import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
@@ -45,6 +46,15 @@ import java.util.function.Function;
  */
 public interface MongoOperationsSupport {
 
+    <T> Mono<Void> enableTimePartitioning(Class<T> clazz,
+                                          String dateFieldName,
+                                          int partitionDays,
+                                          Function<T, Date> dateGetter);
+
+    boolean isTimePartitioned(Class<?> clazz);
+
+    <T> Mono<List<String>> dropPartitionsBefore(Class<T> clazz, Date date);
+
     <T> Mono<T> findById(Class<T> clazz, Object id);
 
     <T> Mono<T> findOne(Class<T> clazz);
@@ -81,6 +91,8 @@ public interface MongoOperationsSupport {
 
     Mono<Void> insertAllOfSameType(List<?> values);
 
+    Mono<Void> insertAllOfSameType(List<?> values, boolean ordered);
+
     <T> Mono<UpdateResult> updateOne(Class<T> clazz, Filter filter, Update update);
 
     <T> Mono<UpdateResult> updateOne(@Nullable ClientSession session, Class<T> clazz, Filter filter, Update update);
@@ -18,11 +18,13 @@
 package im.turms.server.common.mongo.operation;
 
 import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoNamespace;
 import com.mongodb.TransactionOptions;
 import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.DeleteOptions;
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.InsertOneOptions;
@@ -30,6 +32,7 @@ import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.client.result.InsertOneResult;
@@ -58,6 +61,8 @@ import im.turms.server.common.mongo.model.Tag;
 import im.turms.server.common.mongo.operation.option.Filter;
 import im.turms.server.common.mongo.operation.option.QueryOptions;
 import im.turms.server.common.mongo.operation.option.Update;
+import im.turms.server.common.mongo.partition.TimePartitionedCollection;
+import im.turms.server.common.mongo.partition.TimePartitioner;
 import im.turms.server.common.util.CollectorUtil;
 import im.turms.server.common.util.MapUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -80,9 +85,11 @@ import javax.annotation.Nullable;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.IdentityHashMap;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -115,24 +122,113 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
     private static final CountOptions DEFAULT_COUNT_OPTIONS = new CountOptions();
     private static final DeleteOptions DEFAULT_DELETE_OPTIONS = new DeleteOptions();
     private static final InsertManyOptions DEFAULT_INSERT_MANY_OPTIONS = new InsertManyOptions();
+    private static final InsertManyOptions UNORDERED_INSERT_MANY_OPTIONS = new InsertManyOptions().ordered(false);
     private static final InsertOneOptions DEFAULT_INSERT_ONE_OPTIONS = new InsertOneOptions();
     private static final UpdateOptions DEFAULT_UPDATE_OPTIONS = new UpdateOptions();
     private static final UpdateOptions DEFAULT_UPSERT_OPTIONS = new UpdateOptions().upsert(true);
+    private static final UpdateResult EMPTY_UPDATE_RESULT = UpdateResult.acknowledged(0, 0L, null);
+    private static final DeleteResult EMPTY_DELETE_RESULT = DeleteResult.acknowledged(0);
 
     private final MongoContext context;
     private final MongoExceptionTranslator translator = new MongoExceptionTranslator();
-    private final Map<Class<?>, MongoOperationPublisher<?>> publisherMap = new IdentityHashMap<>(32);
+    /**
+     * Keyed by the namespace instead of the entity class because
+     * the partitions of a time-partitioned entity share the same class
+     */
+    private final Map<MongoNamespace, MongoOperationPublisher<?>> publisherMap = new ConcurrentHashMap<>(32);
+    private final Map<Class<?>, TimePartitionedCollection<?>> partitionedCollections = new ConcurrentHashMap<>(4);
 
     public TurmsMongoOperations(MongoContext context) {
         this.context = context;
     }
 
+    // Partition
+
+    /**
+     * Store the records of the entity class in one collection per time bucket
+     * instead of the base collection, so that expired records can be removed
+     * by dropping whole partitions.
+     * The base collection is still indexed and is used as the template of the indexes of new partitions.
+     *
+     * @param dateFieldName the field used to route records to partitions
+     * @param dateGetter    the getter of the field used to route records to partitions
+     */
+    @Override
+    public <T> Mono<Void> enableTimePartitioning(Class<T> clazz,
+                                                 String dateFieldName,
+                                                 int partitionDays,
+                                                 Function<T, Date> dateGetter) {
+        MongoEntity<T> entity = context.getEntity(clazz);
+        TimePartitioner partitioner = new TimePartitioner(entity.collectionName(), dateFieldName, partitionDays);
+        TimePartitionedCollection<T> partitionedCollection = new TimePartitionedCollection<>(partitioner,
+                entity,
+                dateGetter,
+                context.getDatabase(),
+                context.getCollection(clazz));
+        return partitionedCollection.loadPartitions()
+                .doOnSuccess(ignored -> {
+                    partitionedCollections.put(clazz, partitionedCollection);
+                    watchDroppedPartitions(partitionedCollection);
+                });
+    }
+
+    /**
+     * Only the leader drops expired partitions,
+     * so other nodes need to forget the dropped partitions in time.
+     * Otherwise, a late insert into a dropped partition will recreate the collection implicitly without indexes.
+     * If the change stream is unavailable, the dropped partitions will be removed when refreshing partitions.
+     */
+    private void watchDroppedPartitions(TimePartitionedCollection<?> partitionedCollection) {
+        String dbName = context.getDatabase().getName();
+        List<Bson> pipeline = List.of(Aggregates.match(Filters.eq("operationType", OperationType.DROP.getValue())));
+        Flux.from(context.getDatabase().watch(pipeline))
+                .doOnNext(event -> {
+                    MongoNamespace namespace = event.getNamespace();
+                    if (namespace != null && partitionedCollection.removePartition(namespace.getCollectionName())) {
+                        publisherMap.remove(new MongoNamespace(dbName, namespace.getCollectionName()));
+                        LOGGER.info("Removed the partition dropped by another node: {}", namespace.getCollectionName());
+                    }
+                })
+                .onErrorContinue((throwable, o) -> LOGGER
+                        .error("Caught an error while processing the change stream event of dropped collections: {}", o, throwable))
+                .subscribe(null, t -> LOGGER.error("The change stream of dropped collections is unavailable, " +
+                        "and the dropped partitions will be removed when refreshing partitions", t));
+    }
+
+    @Override
+    public boolean isTimePartitioned(Class<?> clazz) {
+        return partitionedCollections.containsKey(clazz);
+    }
+
+    /**
+     * @return the names of the dropped partitions
+     */
+    @Override
+    public <T> Mono<List<String>> dropPartitionsBefore(Class<T> clazz, Date date) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection == null) {
+            return Mono.just(Collections.emptyList());
+        }
+        String dbName = context.getDatabase().getName();
+        return partitionedCollection.dropPartitionsBefore(date)
+                .doOnNext(names -> {
+                    for (String name : names) {
+                        publisherMap.remove(new MongoNamespace(dbName, name));
+                    }
+                });
+    }
+
     // Query
 
     @Override
     public <T> Mono<T> findById(Class<T> clazz, Object id) {
+        Document filter = new Document(DomainFieldName.ID, id);
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return findInPartitions(partitionedCollection, filter, null).next();
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
-        FindPublisher<T> source = find(collection, new Document(DomainFieldName.ID, id), null);
+        FindPublisher<T> source = find(collection, filter, null);
         return Mono.from(source);
     }
 
@@ -148,10 +244,14 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<T> findOne(Class<T> clazz, Filter filter, @Nullable QueryOptions options) {
-        MongoCollection<T> collection = context.getCollection(clazz);
         options = options == null
                 ? QueryOptions.newBuilder(1).limit(1)
                 : options.limit(1);
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return findInPartitions(partitionedCollection, filter, options).next();
+        }
+        MongoCollection<T> collection = context.getCollection(clazz);
         FindPublisher<T> source = find(collection, filter, options);
         return Mono.from(source);
     }
@@ -163,6 +263,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Flux<T> findMany(Class<T> clazz, Filter filter, @Nullable QueryOptions options) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return findInPartitions(partitionedCollection, filter, options);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         FindPublisher<T> source = find(collection, filter, options);
         return Flux.from(source);
@@ -175,6 +279,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Flux<T> findAll(Class<T> clazz, @Nullable QueryOptions options) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return findInPartitions(partitionedCollection, FILTER_ALL_DOCUMENT, options);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         FindPublisher<T> source = find(collection, FILTER_ALL_DOCUMENT, options);
         return Flux.from(source);
@@ -182,10 +290,14 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<Boolean> exists(Class<T> clazz, Filter filter) {
-        MongoCollection<T> collection = context.getCollection(clazz);
         QueryOptions options = QueryOptions.newBuilder(2)
                 .projection(ID_ONLY)
                 .limit(1);
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return findInPartitions(partitionedCollection, filter, options).hasElements();
+        }
+        MongoCollection<T> collection = context.getCollection(clazz);
         FindPublisher<T> publisher = find(collection, filter, options);
         return Mono.from(publisher).hasElement();
     }
@@ -194,6 +306,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<Long> count(Class<T> clazz, Filter filter) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return countInPartitions(partitionedCollection, filter);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<Long> source = collection.countDocuments(filter, DEFAULT_COUNT_OPTIONS);
         return Mono.from(source);
@@ -201,6 +317,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<Long> countAll(Class<T> clazz) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return countInPartitions(partitionedCollection, FILTER_ALL_DOCUMENT);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<Long> source = collection.countDocuments(FILTER_ALL_DOCUMENT, DEFAULT_COUNT_OPTIONS);
         return Mono.from(source);
@@ -217,13 +337,24 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
     public <T> Mono<Void> upsert(@Nullable ClientSession session, T record) {
         Class<T> clazz = (Class<T>) record.getClass();
         MongoEntity<T> entity = (MongoEntity<T>) context.getEntity(record.getClass());
-        MongoCollection<T> collection = context.getCollection(clazz);
         BsonDocument recordDoc = encodeEntity(record);
         ShardKey shardKey = entity.shardKey();
         BsonDocument filter = shardKey == null
                 ? EMPTY_FILTER
                 : applyShardKey(shardKey, recordDoc);
         BsonDocument update = encodeEntityForUpdateOps(recordDoc);
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return partitionedCollection.getOrCreatePartition(record)
+                    .flatMap(collection -> upsert(session, collection, filter, update));
+        }
+        return upsert(session, context.getCollection(clazz), filter, update);
+    }
+
+    private <T> Mono<Void> upsert(@Nullable ClientSession session,
+                                  MongoCollection<T> collection,
+                                  BsonDocument filter,
+                                  BsonDocument update) {
         Publisher<UpdateResult> result = session == null
                 ? collection.updateOne(filter, update, DEFAULT_UPSERT_OPTIONS)
                 : collection.updateOne(session, filter, update, DEFAULT_UPSERT_OPTIONS);
@@ -271,6 +402,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<Void> upsert(Class<T> clazz, Filter filter, Update update) {
+        if (isTimePartitioned(clazz)) {
+            return Mono.error(new UnsupportedOperationException(
+                    "Cannot upsert by a filter for the time-partitioned entity: " + clazz.getName()));
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<UpdateResult> source = collection.updateOne(filter, update, DEFAULT_UPSERT_OPTIONS);
         return Mono.from(source)
@@ -288,7 +423,15 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
     @Override
     public <T> Mono<Void> insert(@Nullable ClientSession session, T value) {
         Class<T> clazz = (Class<T>) value.getClass();
-        MongoCollection<T> collection = context.getCollection(clazz);
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return partitionedCollection.getOrCreatePartition(value)
+                    .flatMap(collection -> insert(session, collection, value));
+        }
+        return insert(session, context.getCollection(clazz), value);
+    }
+
+    private <T> Mono<Void> insert(@Nullable ClientSession session, MongoCollection<T> collection, T value) {
         Publisher<InsertOneResult> source = session == null
                 ? collection.insertOne(value, DEFAULT_INSERT_ONE_OPTIONS)
                 : collection.insertOne(session, value, DEFAULT_INSERT_ONE_OPTIONS);
@@ -307,8 +450,11 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
                 .entrySet()
                 .stream()
                 .map(entry -> {
-                    MongoCollection collection = context.getCollection(entry.getKey());
                     List<?> value = entry.getValue();
+                    if (isTimePartitioned(entry.getKey())) {
+                        return insertAllOfSameType(value, true);
+                    }
+                    MongoCollection collection = context.getCollection(entry.getKey());
                     Publisher<InsertManyResult> source = collection.insertMany(value, DEFAULT_INSERT_MANY_OPTIONS);
                     return Mono.from(source)
                             .onErrorMap(translator::translate)
@@ -320,11 +466,37 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public Mono<Void> insertAllOfSameType(List<?> values) {
+        return insertAllOfSameType(values, true);
+    }
+
+    /**
+     * @param ordered if false, the values after a failed value will still be inserted,
+     *                and the failed values can be found in {@link com.mongodb.MongoBulkWriteException#getWriteErrors()}
+     */
+    @Override
+    public Mono<Void> insertAllOfSameType(List<?> values, boolean ordered) {
         if (values.isEmpty()) {
             return Mono.empty();
         }
+        InsertManyOptions options = ordered
+                ? DEFAULT_INSERT_MANY_OPTIONS
+                : UNORDERED_INSERT_MANY_OPTIONS;
+        TimePartitionedCollection partitionedCollection = getPartitionedCollection(values.get(0).getClass());
+        if (partitionedCollection != null) {
+            Collection<List<?>> valuesOfPartitions = partitionedCollection.groupByPartition(values);
+            List<Mono<Void>> sources = new ArrayList<>(valuesOfPartitions.size());
+            for (List<?> valuesOfPartition : valuesOfPartitions) {
+                Mono<MongoCollection> partition = partitionedCollection.getOrCreatePartition(valuesOfPartition.get(0));
+                sources.add(partition.flatMap(collection -> insertMany(collection, valuesOfPartition, options)));
+            }
+            return Mono.whenDelayError(sources);
+        }
         MongoCollection collection = context.getCollection(values.get(0).getClass());
-        Publisher<InsertManyResult> source = collection.insertMany(values, DEFAULT_INSERT_MANY_OPTIONS);
+        return insertMany(collection, values, options);
+    }
+
+    private Mono<Void> insertMany(MongoCollection collection, List<?> values, InsertManyOptions options) {
+        Publisher<InsertManyResult> source = collection.insertMany(values, options);
         return Mono.from(source)
                 .onErrorMap(translator::translate)
                 .then();
@@ -339,6 +511,19 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<UpdateResult> updateOne(@Nullable ClientSession session, Class<T> clazz, Filter filter, Update update) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            // Scan the partitions from newest to oldest because recent records are more likely to be updated,
+            // and stop at the first partition that has a matched record
+            return partitionedCollection.getPartitionsToQuery(filter, false)
+                    .flatMapIterable(Function.identity())
+                    .concatMap(collection -> session == null
+                            ? collection.updateOne(filter, update, DEFAULT_UPDATE_OPTIONS)
+                            : collection.updateOne(session, filter, update, DEFAULT_UPDATE_OPTIONS))
+                    .filter(result -> result.getMatchedCount() > 0)
+                    .next()
+                    .defaultIfEmpty(EMPTY_UPDATE_RESULT);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<UpdateResult> source = session == null
                 ? collection.updateOne(filter, update, DEFAULT_UPDATE_OPTIONS)
@@ -353,6 +538,18 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<UpdateResult> updateMany(@Nullable ClientSession session, Class<T> clazz, Filter filter, Update update) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return partitionedCollection.getPartitionsToQuery(filter, true)
+                    .flatMapIterable(Function.identity())
+                    .flatMap(collection -> session == null
+                            ? collection.updateMany(filter, update, DEFAULT_UPDATE_OPTIONS)
+                            : collection.updateMany(session, filter, update, DEFAULT_UPDATE_OPTIONS))
+                    .reduce(EMPTY_UPDATE_RESULT, (result1, result2) -> UpdateResult.acknowledged(
+                            result1.getMatchedCount() + result2.getMatchedCount(),
+                            result1.getModifiedCount() + result2.getModifiedCount(),
+                            null));
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<UpdateResult> source = session == null
                 ? collection.updateMany(filter, update, DEFAULT_UPDATE_OPTIONS)
@@ -364,6 +561,19 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<DeleteResult> deleteOne(@Nullable ClientSession session, Class<T> clazz, Filter filter) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            // Scan the partitions from newest to oldest because recent records are more likely to be deleted,
+            // and stop at the first partition that has a deleted record
+            return partitionedCollection.getPartitionsToQuery(filter, false)
+                    .flatMapIterable(Function.identity())
+                    .concatMap(collection -> session == null
+                            ? collection.deleteOne(filter, DEFAULT_DELETE_OPTIONS)
+                            : collection.deleteOne(session, filter, DEFAULT_DELETE_OPTIONS))
+                    .filter(result -> result.getDeletedCount() > 0)
+                    .next()
+                    .defaultIfEmpty(EMPTY_DELETE_RESULT);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<DeleteResult> source = session == null
                 ? collection.deleteOne(filter, DEFAULT_DELETE_OPTIONS)
@@ -378,6 +588,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<DeleteResult> deleteMany(@Nullable ClientSession session, Class<T> clazz, Filter filter) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return deleteManyInPartitions(session, partitionedCollection, filter);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<DeleteResult> source = session == null
                 ? collection.deleteMany(filter, DEFAULT_DELETE_OPTIONS)
@@ -392,6 +606,10 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
 
     @Override
     public <T> Mono<DeleteResult> deleteAll(Class<T> clazz) {
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            return deleteManyInPartitions(null, partitionedCollection, FILTER_ALL_DOCUMENT);
+        }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<DeleteResult> source = collection.deleteMany(FILTER_ALL_DOCUMENT, DEFAULT_DELETE_OPTIONS);
         return Mono.from(source);
@@ -418,13 +636,23 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
     public <T> Mono<Long> countDistinct(Class<T> clazz,
                                         Filter filter,
                                         String groupByFieldName) {
-        MongoCollection<?> collection = context.getCollection(clazz);
         List<Bson> pipeline = List.of(
                 Aggregates.match(filter),
                 Aggregates.project(Projections.fields(
                         Projections.excludeId(),
                         Projections.include(groupByFieldName))),
                 Aggregates.group("$" + groupByFieldName, Accumulators.sum("count", 1)));
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            // A value may exist in multiple partitions, so we count the distinct group keys of all partitions
+            return partitionedCollection.getPartitionsToQuery(filter, true)
+                    .flatMapIterable(Function.identity())
+                    .flatMap(collection -> collection.aggregate(pipeline, Document.class))
+                    .map(document -> String.valueOf(document.get(DomainFieldName.ID)))
+                    .distinct()
+                    .count();
+        }
+        MongoCollection<?> collection = context.getCollection(clazz);
         AggregatePublisher<Document> count = collection.aggregate(pipeline, Document.class);
         return Mono.from(count)
                 .map(document -> Long.valueOf((Integer) document.get("count")))
@@ -440,6 +668,18 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
         }
         MongoCollection<T> collection = context.getCollection(clazz);
         Publisher<String> source = collection.createIndexes(indexModels);
+        TimePartitionedCollection<T> partitionedCollection = getPartitionedCollection(clazz);
+        if (partitionedCollection != null) {
+            // New partitions copy the indexes of the base collection,
+            // but the existing partitions need to be indexed explicitly
+            List<MongoCollection<T>> partitions = partitionedCollection.getPartitions();
+            List<Publisher<String>> sources = new ArrayList<>(partitions.size() + 1);
+            sources.add(source);
+            for (MongoCollection<T> partition : partitions) {
+                sources.add(partition.createIndexes(indexModels));
+            }
+            source = Flux.concat(sources);
+        }
         String collectionName = context.getEntity(clazz).collectionName();
         return Flux.from(source)
                 .then()
@@ -704,15 +944,46 @@ public class TurmsMongoOperations implements MongoOperationsSupport {
     }
 
     private <T> MongoOperationPublisher<T> getPublisher(MongoCollection<T> collection) {
-        Class<T> entityClass = collection.getDocumentClass();
-        MongoOperationPublisher<T> publisher = (MongoOperationPublisher<T>) publisherMap.get(entityClass);
+        MongoNamespace namespace = collection.getNamespace();
+        MongoOperationPublisher<T> publisher = (MongoOperationPublisher<T>) publisherMap.get(namespace);
         if (publisher == null) {
-            synchronized (publisherMap) {
-                return (MongoOperationPublisher<T>) publisherMap
-                        .computeIfAbsent(entityClass, clazz -> MongoCollectionUtil.getPublisher(collection));
-            }
+            return (MongoOperationPublisher<T>) publisherMap
+                    .computeIfAbsent(namespace, key -> MongoCollectionUtil.getPublisher(collection));
         }
         return publisher;
     }
 
+    @Nullable
+    private <T> TimePartitionedCollection<T> getPartitionedCollection(Class<T> clazz) {
+        return partitionedCollections.isEmpty()
+                ? null
+                : (TimePartitionedCollection<T>) partitionedCollections.get(clazz);
+    }
+
+    private <T> Flux<T> findInPartitions(TimePartitionedCollection<T> partitionedCollection,
+                                         Bson filter,
+                                         @Nullable QueryOptions options) {
+        return partitionedCollection.find(filter, options,
+                (collection, partitionOptions) -> find(collection, filter, partitionOptions));
+    }
+
+    private <T> Mono<Long> countInPartitions(TimePartitionedCollection<T> partitionedCollection, Bson filter) {
+        return partitionedCollection.getPartitionsToQuery(filter, true)
+                .flatMapIterable(Function.identity())
+                .flatMap(collection -> collection.countDocuments(filter, DEFAULT_COUNT_OPTIONS))
+                .reduce(0L, Long::sum);
+    }
+
+    private <T> Mono<DeleteResult> deleteManyInPartitions(@Nullable ClientSession session,
+                                                          TimePartitionedCollection<T> partitionedCollection,
+                                                          Bson filter) {
+        return partitionedCollection.getPartitionsToQuery(filter, true)
+                .flatMapIterable(Function.identity())
+                .flatMap(collection -> session == null
+                        ? collection.deleteMany(filter, DEFAULT_DELETE_OPTIONS)
+                        : collection.deleteMany(session, filter, DEFAULT_DELETE_OPTIONS))
+                .reduce(EMPTY_DELETE_RESULT, (result1, result2) ->
+                        DeleteResult.acknowledged(result1.getDeletedCount() + result2.getDeletedCount()));
+    }
+
 }
\ No newline at end of file
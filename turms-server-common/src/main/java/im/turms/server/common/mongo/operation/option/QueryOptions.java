@@ -25,6 +25,7 @@ import org.bson.BsonBoolean;
 import org.bson.BsonDocument;
 import org.bson.BsonInt32;
 import org.bson.BsonString;
+import org.bson.BsonValue;
 
 import javax.annotation.Nullable;
 
@@ -46,6 +47,10 @@ public final class QueryOptions {
         document.put("find", COLLECTION_NAME_PLACEHOLDER);
     }
 
+    private QueryOptions(BsonDocument document) {
+        this.document = document;
+    }
+
     public static QueryOptions newBuilder() {
         return new QueryOptions(4);
     }
@@ -65,6 +70,47 @@ public final class QueryOptions {
         return document;
     }
 
+    /**
+     * Used when the same options are applied to multiple collections concurrently
+     * because {@link #asDocument} mutates the underlying document
+     */
+    public QueryOptions copy() {
+        BsonDocument copy = new BsonDocument(MapUtil.getCapability(document.size() + 1));
+        copy.putAll(document);
+        return new QueryOptions(copy);
+    }
+
+    public int getSkip() {
+        BsonValue skip = document.get("skip");
+        return skip == null ? 0 : skip.asInt32().getValue();
+    }
+
+    /**
+     * @return 0 if there is no limit
+     */
+    public int getLimit() {
+        BsonValue limit = document.get("limit");
+        return limit == null ? 0 : limit.asInt32().getValue();
+    }
+
+    @Nullable
+    public BsonDocument getSort() {
+        BsonValue sort = document.get("sort");
+        return sort == null ? null : sort.asDocument();
+    }
+
+    /**
+     * @implNote filter count: 1
+     */
+    public QueryOptions skip(int skip) {
+        if (skip == 0) {
+            document.remove("skip");
+        } else {
+            document.put("skip", new BsonInt32(skip));
+        }
+        return this;
+    }
+
     /**
      * @implNote filter count: 1
      */
@@ -117,6 +163,21 @@ public final class QueryOptions {
         return this;
     }
 
+    /**
+     * @implNote filter count: 1
+     */
+    public QueryOptions sort(boolean asc, String... fields) {
+        BsonInt32 value = asc
+                ? BsonPool.BSON_INT32_1
+                : BsonPool.BSON_INT32_NEGATIVE_1;
+        BsonDocument sort = new BsonDocument();
+        for (String field : fields) {
+            sort.append(field, value);
+        }
+        document.put("sort", sort);
+        return this;
+    }
+
     /**
      * @implNote filter count: 1
      */
@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.mongo.partition;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.mongo.DomainFieldName;
+import im.turms.server.common.mongo.MongoErrorCodes;
+import im.turms.server.common.mongo.entity.EntityField;
+import im.turms.server.common.mongo.entity.MongoEntity;
+import im.turms.server.common.mongo.operation.option.QueryOptions;
+import org.apache.commons.lang3.ClassUtils;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The partitions of an entity class that is stored in one collection per time bucket.
+ * The base collection of the entity class is kept as the template of the indexes of new partitions.
+ * <p>
+ * The records stored in the base collection before time partitioning was enabled are not migrated,
+ * so the base collection is treated as a legacy partition that may contain records of any date
+ * until it becomes empty (e.g. all its records have expired and been deleted).
+ * <p>
+ * The known partitions are local to each node, so they are refreshed from the database
+ * periodically and before a query whose date range reaches past the newest known partition,
+ * in which case the partition may have been created by another node.
+ *
+ * @author James Chen
+ */
+public final class TimePartitionedCollection<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimePartitionedCollection.class);
+
+    private static final CountOptions COUNT_ONE_OPTIONS = new CountOptions().limit(1);
+
+    /**
+     * The max interval to refresh the known partitions
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 60 * 1000L;
+    /**
+     * The min interval to refresh the known partitions again if a query reaches past
+     * the newest known partition and the last refresh didn't find any newer partition,
+     * so that queries won't list the collections one by one when no record has been inserted
+     * into the current time bucket yet
+     */
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = 1000L;
+
+    private final TimePartitioner partitioner;
+    private final MongoEntity<T> entity;
+    private final Function<T, Date> dateGetter;
+    private final MongoDatabase database;
+    private final MongoCollection<T> baseCollection;
+
+    /**
+     * Partition start date -> Partition
+     */
+    private final NavigableMap<Long, PartitionCollection<T>> partitions = new ConcurrentSkipListMap<>();
+    private final Map<Long, Mono<PartitionCollection<T>>> pendingPartitions = new ConcurrentHashMap<>(8);
+    /**
+     * Whether the base collection still has the records inserted before time partitioning was enabled
+     */
+    private volatile boolean hasLegacyRecords;
+
+    private volatile long lastRefreshTime;
+    private volatile long nextRefreshTimeForNewerPartitions;
+    private final AtomicReference<Mono<Void>> pendingRefresh = new AtomicReference<>();
+
+    public TimePartitionedCollection(TimePartitioner partitioner,
+                                     MongoEntity<T> entity,
+                                     Function<T, Date> dateGetter,
+                                     MongoDatabase database,
+                                     MongoCollection<T> baseCollection) {
+        this.partitioner = partitioner;
+        this.entity = entity;
+        this.dateGetter = dateGetter;
+        this.database = database;
+        this.baseCollection = baseCollection;
+    }
+
+    public TimePartitioner getPartitioner() {
+        return partitioner;
+    }
+
+    public boolean hasLegacyRecords() {
+        return hasLegacyRecords;
+    }
+
+    /**
+     * Load the existing partitions in the database
+     */
+    public Mono<Void> loadPartitions() {
+        return refreshPartitions()
+                .then(refreshLegacyRecords())
+                .doOnSuccess(ignored -> LOGGER.info("Loaded {} partitions of the collection {}. Has legacy records: {}",
+                        partitions.size(), partitioner.getBaseCollectionName(), hasLegacyRecords));
+    }
+
+    /**
+     * Sync the known partitions with the partitions in the database,
+     * which may have been created or dropped by other nodes.
+     * Concurrent calls share the same refresh.
+     */
+    public Mono<Void> refreshPartitions() {
+        Mono<Void> refresh = pendingRefresh.get();
+        if (refresh != null) {
+            return refresh;
+        }
+        Mono<Void> newRefresh = Mono.<Void>defer(() -> {
+                    long startTime = System.currentTimeMillis();
+                    // Only the partitions known before listing can be removed
+                    // because the partitions created during listing may not be listed
+                    Set<Long> knownPartitionStarts = new HashSet<>(partitions.keySet());
+                    return Flux.from(database.listCollectionNames())
+                            .doOnNext(name -> {
+                                TimePartitioner.Partition partition = partitioner.parsePartition(name);
+                                if (partition != null && !knownPartitionStarts.remove(partition.start())) {
+                                    partitions.putIfAbsent(partition.start(), newPartitionCollection(partition));
+                                }
+                            })
+                            .then(Mono.<Void>fromRunnable(() -> {
+                                for (Long start : knownPartitionStarts) {
+                                    PartitionCollection<T> removedPartition = partitions.remove(start);
+                                    if (removedPartition != null) {
+                                        LOGGER.info("Removed the partition dropped by another node: {}",
+                                                removedPartition.partition.name());
+                                    }
+                                }
+                                lastRefreshTime = startTime;
+                            }));
+                })
+                .doFinally(signal -> pendingRefresh.set(null))
+                .cache();
+        return pendingRefresh.compareAndSet(null, newRefresh)
+                ? newRefresh
+                : refreshPartitions();
+    }
+
+    /**
+     * Called when a partition is dropped by another node
+     *
+     * @return true if the collection is a known partition
+     */
+    public boolean removePartition(String collectionName) {
+        TimePartitioner.Partition partition = partitioner.parsePartition(collectionName);
+        if (partition == null) {
+            return false;
+        }
+        PartitionCollection<T> knownPartition = partitions.get(partition.start());
+        return knownPartition != null
+                && knownPartition.partition.name().equals(collectionName)
+                && partitions.remove(partition.start(), knownPartition);
+    }
+
+    /**
+     * Check whether the base collection still has legacy records.
+     * Note that no record will be inserted into the base collection once time partitioning is enabled,
+     * so the base collection won't be queried again once it becomes empty.
+     */
+    public Mono<Void> refreshLegacyRecords() {
+        return Mono.from(baseCollection.countDocuments(new BsonDocument(), COUNT_ONE_OPTIONS))
+                .doOnNext(count -> hasLegacyRecords = count > 0)
+                .then();
+    }
+
+    /**
+     * @return the partitions that may contain the records matching the filter
+     * after refreshing the known partitions if needed
+     * @see #getPartitions(Bson, boolean)
+     */
+    public Mono<List<MongoCollection<T>>> getPartitionsToQuery(@Nullable Bson filter, boolean ascending) {
+        long[] range = partitioner.getDateRange(filter);
+        Mono<Void> refresh = refreshPartitionsIfNeeded(range[1]);
+        return refresh == null
+                ? Mono.just(getPartitions(range, ascending))
+                : refresh.then(Mono.fromCallable(() -> getPartitions(range, ascending)));
+    }
+
+    /**
+     * @return the known partitions that may contain the records matching the filter,
+     * ordered by the start date. The base collection is regarded as the oldest partition
+     * if it has legacy records because the dates of legacy records are unknown
+     */
+    public List<MongoCollection<T>> getPartitions(@Nullable Bson filter, boolean ascending) {
+        return getPartitions(partitioner.getDateRange(filter), ascending);
+    }
+
+    private List<MongoCollection<T>> getPartitions(long[] range, boolean ascending) {
+        Collection<PartitionCollection<T>> candidates = range[1] == Long.MAX_VALUE
+                ? partitions.values()
+                : partitions.headMap(range[1], false).values();
+        boolean includeBaseCollection = hasLegacyRecords;
+        List<MongoCollection<T>> collections = new ArrayList<>(candidates.size() + (includeBaseCollection ? 1 : 0));
+        if (includeBaseCollection) {
+            collections.add(baseCollection);
+        }
+        for (PartitionCollection<T> candidate : candidates) {
+            if (candidate.partition.overlaps(range[0], range[1])) {
+                collections.add(candidate.collection);
+            }
+        }
+        if (!ascending) {
+            Collections.reverse(collections);
+        }
+        return collections;
+    }
+
+    /**
+     * @param finder finds the records in a partition with the filter and the options
+     * @implNote 1. Only the partitions that may contain the matched records are queried, and they are queried in parallel.
+     * 2. If the records are sorted, the results of partitions are merged with a k-way merge by the sort fields,
+     * so that the results are sorted globally even if the partitions overlap (e.g. the legacy partition)
+     * or the records are not sorted by the partition date field first.
+     * Note that the sort fields must not be excluded by the projection.
+     * 3. "skip" is applied after merging, so every partition is queried with the limit of "skip + limit".
+     */
+    public Flux<T> find(Bson filter,
+                        @Nullable QueryOptions options,
+                        BiFunction<MongoCollection<T>, QueryOptions, Publisher<T>> finder) {
+        long[] range = partitioner.getDateRange(filter);
+        Mono<Void> refresh = refreshPartitionsIfNeeded(range[1]);
+        return refresh == null
+                ? find(getPartitions(range, true), options, finder)
+                : refresh.thenMany(Flux.defer(() -> find(getPartitions(range, true), options, finder)));
+    }
+
+    private Flux<T> find(List<MongoCollection<T>> collections,
+                         @Nullable QueryOptions options,
+                         BiFunction<MongoCollection<T>, QueryOptions, Publisher<T>> finder) {
+        int collectionCount = collections.size();
+        if (collectionCount == 0) {
+            return Flux.empty();
+        }
+        if (collectionCount == 1) {
+            return Flux.from(finder.apply(collections.get(0), options));
+        }
+        Comparator<T> comparator = null;
+        if (options != null) {
+            BsonDocument sort = options.getSort();
+            if (sort != null && !sort.isEmpty()) {
+                try {
+                    comparator = getComparator(sort);
+                } catch (UnsupportedOperationException e) {
+                    return Flux.error(e);
+                }
+            }
+        }
+        int skip = options == null ? 0 : options.getSkip();
+        int limit = options == null ? 0 : options.getLimit();
+        Publisher<T>[] sources = new Publisher[collectionCount];
+        for (int i = 0; i < collectionCount; i++) {
+            QueryOptions partitionOptions = null;
+            if (options != null) {
+                partitionOptions = options.copy().skip(0);
+                if (limit > 0) {
+                    partitionOptions.limit(skip + limit);
+                }
+            }
+            sources[i] = finder.apply(collections.get(i), partitionOptions);
+        }
+        Flux<T> results = comparator == null
+                ? Flux.merge(sources)
+                : Flux.mergeComparing(comparator, sources);
+        if (skip > 0) {
+            results = results.skip(skip);
+        }
+        if (limit > 0) {
+            results = results.take(limit);
+        }
+        return results;
+    }
+
+    public List<MongoCollection<T>> getPartitions() {
+        List<MongoCollection<T>> collections = new ArrayList<>(partitions.size());
+        for (PartitionCollection<T> partition : partitions.values()) {
+            collections.add(partition.collection);
+        }
+        return collections;
+    }
+
+    public Mono<MongoCollection<T>> getOrCreatePartition(T value) {
+        Date date = dateGetter.apply(value);
+        if (date == null) {
+            return Mono.error(new IllegalArgumentException("The partition date of the record must not be null: " + value));
+        }
+        TimePartitioner.Partition partition = partitioner.getPartition(date.getTime());
+        PartitionCollection<T> existingPartition = partitions.get(partition.start());
+        if (existingPartition != null) {
+            return Mono.just(existingPartition.collection);
+        }
+        return pendingPartitions.computeIfAbsent(partition.start(), key -> createPartition(partition)
+                        .doOnSuccess(created -> {
+                            partitions.put(key, created);
+                            pendingPartitions.remove(key);
+                        })
+                        .doOnError(t -> pendingPartitions.remove(key))
+                        .cache())
+                .map(PartitionCollection::collection);
+    }
+
+    /**
+     * @return the values grouped by the partitions to which they belong
+     */
+    public Collection<List<T>> groupByPartition(List<T> values) {
+        Map<Long, List<T>> valuesByPartition = new HashMap<>(8);
+        for (T value : values) {
+            Date date = dateGetter.apply(value);
+            if (date == null) {
+                throw new IllegalArgumentException("The partition date of the record must not be null: " + value);
+            }
+            long start = partitioner.getPartition(date.getTime()).start();
+            valuesByPartition.computeIfAbsent(start, key -> new ArrayList<>(values.size()))
+                    .add(value);
+        }
+        return valuesByPartition.values();
+    }
+
+    /**
+     * Drop the partitions whose time buckets end before or at the date.
+     * Dropping a collection is a metadata-only operation regardless of its size.
+     *
+     * @return the names of dropped partitions
+     */
+    public Mono<List<String>> dropPartitionsBefore(Date date) {
+        long time = date.getTime();
+        List<PartitionCollection<T>> expiredPartitions = new ArrayList<>();
+        for (PartitionCollection<T> partition : partitions.headMap(time, false).values()) {
+            if (partition.partition.end() <= time) {
+                expiredPartitions.add(partition);
+            }
+        }
+        if (expiredPartitions.isEmpty()) {
+            return hasLegacyRecords
+                    ? refreshLegacyRecords().thenReturn(Collections.emptyList())
+                    : Mono.just(Collections.emptyList());
+        }
+        List<Mono<String>> drops = new ArrayList<>(expiredPartitions.size());
+        for (PartitionCollection<T> partition : expiredPartitions) {
+            // Remove the partition first so that new requests won't be routed to it
+            partitions.remove(partition.partition.start());
+            String name = partition.partition.name();
+            drops.add(Mono.from(partition.collection.drop())
+                    .doOnSuccess(ignored -> LOGGER.info("Dropped the expired partition: {}", name))
+                    .thenReturn(name));
+        }
+        return Flux.mergeDelayError(drops.size(), drops.toArray(new Mono[0]))
+                .collectList()
+                .flatMap(names -> hasLegacyRecords
+                        ? refreshLegacyRecords().thenReturn(names)
+                        : Mono.just(names));
+    }
+
+    /**
+     * @param rangeEnd the exclusive end of the date range to query
+     * @return null if the known partitions don't need to be refreshed
+     */
+    @Nullable
+    private Mono<Void> refreshPartitionsIfNeeded(long rangeEnd) {
+        long now = System.currentTimeMillis();
+        if (now - lastRefreshTime >= REFRESH_INTERVAL_MILLIS) {
+            return refreshPartitions();
+        }
+        // A partition newer than the newest known partition can only exist
+        // if the time bucket of the newest known partition has ended
+        Map.Entry<Long, PartitionCollection<T>> newestPartition = partitions.lastEntry();
+        long newestPartitionEnd = newestPartition == null
+                ? Long.MIN_VALUE
+                : newestPartition.getValue().partition.end();
+        if (rangeEnd <= newestPartitionEnd
+                || now < newestPartitionEnd
+                || now < nextRefreshTimeForNewerPartitions) {
+            return null;
+        }
+        return refreshPartitions()
+                .doOnSuccess(ignored -> {
+                    Map.Entry<Long, PartitionCollection<T>> refreshedNewestPartition = partitions.lastEntry();
+                    if (refreshedNewestPartition == null
+                            || refreshedNewestPartition.getValue().partition.end() <= now) {
+                        nextRefreshTimeForNewerPartitions = now + MIN_REFRESH_INTERVAL_MILLIS;
+                    }
+                });
+    }
+
+    /**
+     * @throws UnsupportedOperationException if a sort field is not a comparable top-level field of the entity
+     */
+    private Comparator<T> getComparator(BsonDocument sort) {
+        Comparator<T> comparator = null;
+        for (Map.Entry<String, BsonValue> entry : sort.entrySet()) {
+            String fieldName = entry.getKey();
+            EntityField<?> field = entity.getField(DomainFieldName.ID.equals(fieldName)
+                    ? entity.idFieldName()
+                    : fieldName);
+            if (field == null || !Comparable.class.isAssignableFrom(ClassUtils.primitiveToWrapper(field.getClazz()))) {
+                throw new UnsupportedOperationException("Cannot sort the records in multiple partitions of the collection \""
+                        + partitioner.getBaseCollectionName() + "\" by the field: " + fieldName);
+            }
+            // Null values come first in ascending order, which is the same as MongoDB
+            Comparator<T> fieldComparator = Comparator.comparing(
+                    value -> (Comparable) field.get(value),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            if (entry.getValue().asNumber().intValue() < 0) {
+                fieldComparator = fieldComparator.reversed();
+            }
+            comparator = comparator == null
+                    ? fieldComparator
+                    : comparator.thenComparing(fieldComparator);
+        }
+        return comparator;
+    }
+
+    private Mono<PartitionCollection<T>> createPartition(TimePartitioner.Partition partition) {
+        PartitionCollection<T> partitionCollection = newPartitionCollection(partition);
+        Mono<Void> createCollection = Mono.from(database.createCollection(partition.name()))
+                .onErrorResume(MongoCommandException.class, e -> e.getErrorCode() == MongoErrorCodes.NAMESPACE_EXISTS
+                        ? Mono.empty()
+                        : Mono.error(e));
+        return createCollection
+                .then(Flux.from(baseCollection.listIndexes(BsonDocument.class))
+                        .filter(index -> !"_id_".equals(index.getString("name").getValue()))
+                        .map(this::toIndexModel)
+                        .collectList())
+                .flatMap(indexModels -> indexModels.isEmpty()
+                        ? Mono.empty()
+                        : Flux.from(partitionCollection.collection.createIndexes(indexModels)).then())
+                .doOnSuccess(ignored -> LOGGER.info("Created the partition: {}", partition.name()))
+                .thenReturn(partitionCollection);
+    }
+
+    private IndexModel toIndexModel(BsonDocument index) {
+        IndexOptions options = new IndexOptions()
+                .name(index.getString("name").getValue());
+        if (index.containsKey("unique")) {
+            options.unique(index.getBoolean("unique").getValue());
+        }
+        if (index.containsKey("sparse")) {
+            options.sparse(index.getBoolean("sparse").getValue());
+        }
+        if (index.containsKey("expireAfterSeconds")) {
+            options.expireAfter(index.getNumber("expireAfterSeconds").longValue(), TimeUnit.SECONDS);
+        }
+        if (index.containsKey("partialFilterExpression")) {
+            options.partialFilterExpression(index.getDocument("partialFilterExpression"));
+        }
+        return new IndexModel(index.getDocument("key"), options);
+    }
+
+    private PartitionCollection<T> newPartitionCollection(TimePartitioner.Partition partition) {
+        MongoCollection<T> collection = database
+                .getCollection(partition.name(), baseCollection.getDocumentClass())
+                .withWriteConcern(baseCollection.getWriteConcern());
+        return new PartitionCollection<>(partition, collection);
+    }
+
+    private record PartitionCollection<T>(
+            TimePartitioner.Partition partition,
+            MongoCollection<T> collection
+    ) {
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.mongo.partition;
+
+import im.turms.server.common.mongo.operation.option.Filter;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import javax.annotation.Nullable;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps a date to the collection (partition) that stores the records created in the time bucket of the date.
+ * A partition is named "{baseCollectionName}_{yyyyMMdd of the start date}_{days of the bucket}d",
+ * and time buckets are aligned to the Unix epoch in UTC.
+ * <p>
+ * The length of buckets is a part of the name so that the existing partitions are still
+ * routed correctly after the length is changed.
+ *
+ * @author James Chen
+ */
+public final class TimePartitioner {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final String baseCollectionName;
+    private final String namePrefix;
+    private final String dateFieldName;
+    private final int partitionDays;
+    private final long partitionMillis;
+
+    public TimePartitioner(String baseCollectionName, String dateFieldName, int partitionDays) {
+        if (partitionDays <= 0) {
+            throw new IllegalArgumentException("The number of days of a partition must be greater than 0");
+        }
+        this.baseCollectionName = baseCollectionName;
+        this.dateFieldName = dateFieldName;
+        this.partitionDays = partitionDays;
+        namePrefix = baseCollectionName + "_";
+        partitionMillis = partitionDays * MILLIS_PER_DAY;
+    }
+
+    public String getBaseCollectionName() {
+        return baseCollectionName;
+    }
+
+    public String getDateFieldName() {
+        return dateFieldName;
+    }
+
+    public Partition getPartition(long dateMillis) {
+        long start = Math.floorDiv(dateMillis, partitionMillis) * partitionMillis;
+        String date = LocalDate.ofEpochDay(Math.floorDiv(start, MILLIS_PER_DAY)).format(DATE_FORMATTER);
+        String name = namePrefix + date + "_" + partitionDays + "d";
+        return new Partition(name, start, start + partitionMillis);
+    }
+
+    /**
+     * @return null if the collection isn't a partition of the base collection
+     */
+    @Nullable
+    public Partition parsePartition(String collectionName) {
+        if (!collectionName.startsWith(namePrefix)) {
+            return null;
+        }
+        String suffix = collectionName.substring(namePrefix.length());
+        int separatorIndex = suffix.indexOf('_');
+        if (separatorIndex < 0 || !suffix.endsWith("d")) {
+            return null;
+        }
+        try {
+            long start = LocalDate.parse(suffix.substring(0, separatorIndex), DATE_FORMATTER)
+                    .atStartOfDay(ZoneOffset.UTC)
+                    .toInstant()
+                    .toEpochMilli();
+            int days = Integer.parseInt(suffix.substring(separatorIndex + 1, suffix.length() - 1));
+            if (days <= 0) {
+                return null;
+            }
+            return new Partition(collectionName, start, start + days * MILLIS_PER_DAY);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extract the range of the date field from the top-level conditions of the filter
+     * so that the partitions out of the range can be skipped.
+     *
+     * @return [start, end). Long.MIN_VALUE and Long.MAX_VALUE mean unbounded
+     */
+    public long[] getDateRange(@Nullable Bson filter) {
+        long[] range = {Long.MIN_VALUE, Long.MAX_VALUE};
+        BsonDocument document;
+        if (filter instanceof BsonDocument doc) {
+            document = doc;
+        } else if (filter instanceof Filter f) {
+            document = f.toBsonDocument(BsonDocument.class, null);
+        } else {
+            return range;
+        }
+        BsonValue value = document.get(dateFieldName);
+        if (value == null) {
+            return range;
+        }
+        if (value.isDateTime()) {
+            long date = value.asDateTime().getValue();
+            range[0] = date;
+            range[1] = date + 1;
+        } else if (value.isDocument()) {
+            for (var entry : value.asDocument().entrySet()) {
+                BsonValue operand = entry.getValue();
+                switch (entry.getKey()) {
+                    case "$eq" -> {
+                        if (operand.isDateTime()) {
+                            range[0] = Math.max(range[0], operand.asDateTime().getValue());
+                            range[1] = Math.min(range[1], operand.asDateTime().getValue() + 1);
+                        }
+                    }
+                    case "$gt", "$gte" -> {
+                        if (operand.isDateTime()) {
+                            range[0] = Math.max(range[0], operand.asDateTime().getValue());
+                        }
+                    }
+                    case "$lt" -> {
+                        if (operand.isDateTime()) {
+                            range[1] = Math.min(range[1], operand.asDateTime().getValue());
+                        }
+                    }
+                    case "$lte" -> {
+                        if (operand.isDateTime()) {
+                            range[1] = Math.min(range[1], operand.asDateTime().getValue() + 1);
+                        }
+                    }
+                    case "$in" -> {
+                        if (operand.isArray()) {
+                            long[] inRange = getRange(operand.asArray());
+                            if (inRange != null) {
+                                range[0] = Math.max(range[0], inRange[0]);
+                                range[1] = Math.min(range[1], inRange[1]);
+                            }
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        return range;
+    }
+
+    @Nullable
+    private long[] getRange(BsonArray dates) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (BsonValue date : dates) {
+            if (!(date instanceof BsonDateTime dateTime)) {
+                return null;
+            }
+            min = Math.min(min, dateTime.getValue());
+            max = Math.max(max, dateTime.getValue());
+        }
+        return dates.isEmpty() ? null : new long[]{min, max + 1};
+    }
+
+    /**
+     * @param start inclusive
+     * @param end   exclusive
+     */
+    public record Partition(
+            String name,
+            long start,
+            long end
+    ) {
+        public boolean overlaps(long rangeStart, long rangeEnd) {
+            return start < rangeEnd && rangeStart < end;
+        }
+    }
+
+}
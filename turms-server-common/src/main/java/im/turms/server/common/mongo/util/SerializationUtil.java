@@ -17,7 +17,6 @@
 
 package im.turms.server.common.mongo.util;
 
-import im.turms.server.common.mongo.codec.EntityCodec;
 import org.bson.BsonArray;
 import org.bson.BsonBoolean;
 import org.bson.BsonDateTime;
@@ -30,6 +29,7 @@ import org.bson.BsonNull;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
 import org.bson.codecs.EncoderContext;
 import org.bson.codecs.configuration.CodecRegistry;
 
@@ -115,7 +115,7 @@ public final class SerializationUtil {
         EncoderContext encoderContext = EncoderContext.builder().build();
         BsonDocument document = new BsonDocument();
         BsonWriter writer = new BsonDocumentWriter(document);
-        EntityCodec codec = (EntityCodec) codecRegistry.get(clazz);
+        Codec codec = codecRegistry.get(clazz);
         codec.encode(writer, value, encoderContext);
         return document;
     }
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.plugin;
+
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Value;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The GraalJS contexts of a JavaScript plugin. All contexts share the engine of {@link PluginManager}
+ * so that the parsed sources and the compiled code are shared.
+ * <p>
+ * A context can only be entered by one thread at a time, so every thread is pinned to a context
+ * to avoid contention (e.g. every event loop has its own context if the pool size is
+ * the number of processors), and it borrows another idle context if the pinned one is busy.
+ * If all contexts are busy, non-blocking threads queue their invocations instead of waiting for a context.
+ *
+ * @author James Chen
+ */
+public final class JsContextPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsContextPool.class);
+
+    private static final Duration INTERRUPT_TIMEOUT = Duration.ofSeconds(1);
+    private static final long INTERRUPTION_WAIT_NANOS = 100_000;
+
+    private static final AtomicInteger NEXT_THREAD_INDEX = new AtomicInteger();
+    private static final FastThreadLocal<Integer> THREAD_INDEX = new FastThreadLocal<>() {
+        @Override
+        protected Integer initialValue() {
+            return NEXT_THREAD_INDEX.getAndIncrement() & Integer.MAX_VALUE;
+        }
+    };
+
+    private final PooledContext[] contexts;
+    /**
+     * The tasks that can run with any context, which are run by the thread that releases a context
+     */
+    private final Queue<Consumer<PooledContext>> waitingTasks = new ConcurrentLinkedQueue<>();
+    private final long invocationTimeoutMillis;
+    @Nullable
+    private final Timer timeoutTimer;
+    private volatile boolean isClosed;
+
+    JsContextPool(PooledContext[] contexts, long invocationTimeoutMillis, @Nullable Timer timeoutTimer) {
+        if (contexts.length == 0) {
+            throw new IllegalArgumentException("The contexts must not be empty");
+        }
+        this.contexts = contexts;
+        this.invocationTimeoutMillis = invocationTimeoutMillis;
+        this.timeoutTimer = invocationTimeoutMillis > 0 ? timeoutTimer : null;
+    }
+
+    public int size() {
+        return contexts.length;
+    }
+
+    public long getInvocationTimeoutMillis() {
+        return invocationTimeoutMillis;
+    }
+
+    /**
+     * @return an idle context locked by the current thread, which must be released by {@link #release},
+     * or null if all contexts are busy
+     */
+    @Nullable
+    PooledContext tryAcquire() {
+        int size = contexts.length;
+        int index = THREAD_INDEX.get() % size;
+        for (int i = 0; i < size; i++) {
+            PooledContext context = contexts[(index + i) % size];
+            if (tryLock(context)) {
+                return context;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a context locked by the current thread, which must be released by {@link #release}
+     * @throws RejectedExecutionException if all contexts are busy and the current thread is non-blocking
+     * (e.g. an event loop), which should use {@link #runWithContext} instead
+     */
+    PooledContext acquire() {
+        PooledContext context = tryAcquire();
+        if (context != null) {
+            return context;
+        }
+        if (Schedulers.isInNonBlockingThread()) {
+            throw new RejectedExecutionException("All the contexts are busy");
+        }
+        PooledContext pinnedContext = contexts[THREAD_INDEX.get() % contexts.length];
+        lock(pinnedContext);
+        return pinnedContext;
+    }
+
+    /**
+     * Run the task with an idle context, or queue the task to run with the first released context
+     * if all contexts are busy, so that the current thread is never blocked.
+     * The context is released after the task is run.
+     */
+    void runWithContext(Consumer<PooledContext> task) {
+        PooledContext context = tryAcquire();
+        if (context != null) {
+            try {
+                task.accept(context);
+            } finally {
+                release(context);
+            }
+            return;
+        }
+        waitingTasks.offer(task);
+        // A context may have been released before the task was queued
+        context = tryAcquire();
+        if (context != null) {
+            release(context);
+        }
+    }
+
+    /**
+     * Run the queued tasks before and after unlocking the context
+     * so that a task queued while the context is being unlocked won't be missed
+     */
+    void release(PooledContext context) {
+        while (true) {
+            if (canRunQueuedTasks(context)) {
+                runQueuedTasks(context);
+            }
+            context.lock.unlock();
+            // The outer invocation will run the tasks if the context is reentered
+            if (context.lock.isHeldByCurrentThread()
+                    || (context.pendingTasks.isEmpty() && waitingTasks.isEmpty())) {
+                return;
+            }
+            // Let the thread that holds the context run the tasks
+            if (!tryLock(context)) {
+                return;
+            }
+        }
+    }
+
+    private boolean tryLock(PooledContext context) {
+        if (!context.lock.tryLock()) {
+            return false;
+        }
+        // Don't use the context while it is being interrupted
+        // so that the interruption cannot interrupt the next invocation
+        if (context.isInterrupting) {
+            context.lock.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    private void lock(PooledContext context) {
+        while (true) {
+            context.lock.lock();
+            if (!context.isInterrupting) {
+                return;
+            }
+            context.lock.unlock();
+            LockSupport.parkNanos(INTERRUPTION_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Don't run the queued tasks if the context is being interrupted,
+     * or if it is reentered (e.g. the plugin invokes itself) because the outer invocation is still running
+     */
+    private boolean canRunQueuedTasks(PooledContext context) {
+        return !context.isInterrupting && context.lock.getHoldCount() == 1;
+    }
+
+    private void runQueuedTasks(PooledContext context) {
+        Consumer<PooledContext> task;
+        while ((task = context.pendingTasks.poll()) != null || (task = waitingTasks.poll()) != null) {
+            try {
+                task.accept(context);
+            } catch (Exception e) {
+                LOGGER.error("Caught an error while running the queued task", e);
+            }
+        }
+    }
+
+    /**
+     * @throws JsInvocationTimeoutException if the invocation was interrupted because of timeout
+     * @implNote The caller must have acquired the context
+     */
+    Value execute(PooledContext context, Value function, @Nullable Object[] args) {
+        if (timeoutTimer == null) {
+            return args == null ? function.execute() : function.execute(args);
+        }
+        long invocationId = context.startInvocation();
+        Timeout timeout;
+        try {
+            timeout = timeoutTimer.newTimeout(t -> interrupt(context, invocationId),
+                    invocationTimeoutMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            // The timer has been stopped
+            timeout = null;
+        }
+        try {
+            return args == null ? function.execute() : function.execute(args);
+        } catch (PolyglotException e) {
+            if (context.finishInvocation()) {
+                throw new JsInvocationTimeoutException(invocationTimeoutMillis, e);
+            }
+            throw e;
+        } finally {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            context.finishInvocation();
+        }
+    }
+
+    private void interrupt(PooledContext context, long invocationId) {
+        if (context.interrupt(invocationId) && tryLock(context)) {
+            // Run the tasks that were queued while the context was being interrupted
+            release(context);
+        }
+    }
+
+    /**
+     * Used to run the callbacks of extensions (e.g. "onStarted") in every context.
+     * On non-blocking threads, the callbacks for the busy contexts are run
+     * by the threads that hold the contexts when they release them,
+     * and the errors thrown by these callbacks are logged instead of being thrown.
+     */
+    void executeOnAllContexts(Consumer<PooledContext> consumer) {
+        boolean isNonBlockingThread = Schedulers.isInNonBlockingThread();
+        for (PooledContext context : contexts) {
+            if (tryLock(context)) {
+                // Run the tasks queued before first
+                // so that the callbacks are run in order
+                runQueuedTasksAndConsume(context, consumer);
+            } else if (isNonBlockingThread) {
+                context.pendingTasks.offer(consumer);
+                // The context may have been released before the task was queued
+                if (tryLock(context)) {
+                    release(context);
+                }
+            } else {
+                lock(context);
+                runQueuedTasksAndConsume(context, consumer);
+            }
+        }
+    }
+
+    private void runQueuedTasksAndConsume(PooledContext context, Consumer<PooledContext> consumer) {
+        try {
+            if (canRunQueuedTasks(context)) {
+                runQueuedTasks(context);
+            }
+            consumer.accept(context);
+        } finally {
+            release(context);
+        }
+    }
+
+    /**
+     * Cancel the running invocations and close all contexts
+     */
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        for (PooledContext context : contexts) {
+            try {
+                context.context.close(true);
+            } catch (Exception e) {
+                LOGGER.error("Caught an error while closing the context", e);
+            }
+        }
+    }
+
+    static final class PooledContext {
+        private final Context context;
+        private final ReentrantLock lock;
+        /**
+         * The instances of the extensions in the order of {@link JsPlugin#extensions()}
+         */
+        private final List<ExtensionInstance> extensions;
+
+        private final Object interruptionLock = new Object();
+        /**
+         * Guarded by interruptionLock
+         */
+        private long runningInvocationId;
+        /**
+         * Guarded by interruptionLock
+         */
+        private boolean isRunningInvocationInterrupted;
+        /**
+         * Only accessed by the thread that acquires the context
+         */
+        private long lastInvocationId;
+        private volatile boolean isInterrupting;
+        /**
+         * The tasks that must run with this context, which are run by the thread that releases the context
+         */
+        private final Queue<Consumer<PooledContext>> pendingTasks = new ConcurrentLinkedQueue<>();
+
+        PooledContext(Context context, ReentrantLock lock, List<ExtensionInstance> extensions) {
+            this.context = context;
+            this.lock = lock;
+            this.extensions = extensions;
+        }
+
+        ExtensionInstance getExtension(int index) {
+            return extensions.get(index);
+        }
+
+        private long startInvocation() {
+            long invocationId = ++lastInvocationId;
+            synchronized (interruptionLock) {
+                runningInvocationId = invocationId;
+                isRunningInvocationInterrupted = false;
+            }
+            return invocationId;
+        }
+
+        /**
+         * @return true if the finished invocation was interrupted
+         */
+        private boolean finishInvocation() {
+            synchronized (interruptionLock) {
+                boolean isInterrupted = isRunningInvocationInterrupted;
+                runningInvocationId = 0;
+                isRunningInvocationInterrupted = false;
+                return isInterrupted;
+            }
+        }
+
+        /**
+         * Interrupt outside the interruption lock so that the thread that finishes the invocation
+         * won't be blocked by the interruption, and {@link #isInterrupting} prevents the context
+         * from being acquired until the interruption finishes.
+         *
+         * @return true if the invocation was interrupted
+         */
+        private boolean interrupt(long invocationId) {
+            synchronized (interruptionLock) {
+                if (runningInvocationId != invocationId) {
+                    return false;
+                }
+                isRunningInvocationInterrupted = true;
+                isInterrupting = true;
+            }
+            try {
+                context.interrupt(INTERRUPT_TIMEOUT);
+            } catch (TimeoutException e) {
+                LOGGER.warn("Failed to interrupt the timed out invocation in {} millis", INTERRUPT_TIMEOUT.toMillis());
+            } catch (Exception e) {
+                LOGGER.error("Caught an error while interrupting the timed out invocation", e);
+            } finally {
+                isInterrupting = false;
+            }
+            return true;
+        }
+    }
+
+    static final class JsInvocationTimeoutException extends RuntimeException {
+        JsInvocationTimeoutException(long timeoutMillis, Throwable cause) {
+            super("The invocation timed out after " + timeoutMillis + " millis", cause, false, false);
+        }
+    }
+
+    record ExtensionInstance(
+            Map<Class<? extends ExtensionPoint>, Map<String, Value>> functions,
+            @Nullable Value onStarted,
+            @Nullable Value onStopped
+    ) {
+    }
+
+}
@@ -17,18 +17,34 @@
 
 package im.turms.server.common.plugin;
 
+import im.turms.server.common.plugin.JsContextPool.JsInvocationTimeoutException;
+import im.turms.server.common.plugin.JsContextPool.PooledContext;
 import im.turms.server.common.plugin.script.ScriptExceptionSource;
 import im.turms.server.common.plugin.script.ScriptExecutionException;
 import im.turms.server.common.plugin.script.ValueDecoder;
+import im.turms.server.common.util.MapUtil;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.graalvm.polyglot.Value;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
+import static im.turms.server.common.constant.CommonMetricsConstant.JS_PLUGIN_INVOCATION_NAME;
+import static im.turms.server.common.constant.CommonMetricsConstant.JS_PLUGIN_INVOCATION_TAG_METHOD;
+import static im.turms.server.common.constant.CommonMetricsConstant.JS_PLUGIN_INVOCATION_TAG_PLUGIN;
+
 /**
  * @author James Chen
  */
@@ -38,10 +54,30 @@ public class JsExtensionPointInvocationHandler implements InvocationHandler {
             "hashCode",
             "toString");
 
-    private final Map<Class<? extends ExtensionPoint>, Map<String, Value>> functions;
+    private final JsContextPool contextPool;
+    private final int extensionIndex;
+    private final Map<Method, Timer> invocationTimers;
+    private final Duration invocationTimeout;
 
-    public JsExtensionPointInvocationHandler(Map<Class<? extends ExtensionPoint>, Map<String, Value>> functions) {
-        this.functions = functions;
+    public JsExtensionPointInvocationHandler(String pluginId,
+                                             JsContextPool contextPool,
+                                             int extensionIndex,
+                                             List<Class<? extends ExtensionPoint>> extensionPointClasses) {
+        this.contextPool = contextPool;
+        this.extensionIndex = extensionIndex;
+        long invocationTimeoutMillis = contextPool.getInvocationTimeoutMillis();
+        invocationTimeout = invocationTimeoutMillis > 0 ? Duration.ofMillis(invocationTimeoutMillis) : null;
+        Map<Method, Timer> timers = new HashMap<>(MapUtil.getCapability(extensionPointClasses.size() * 4));
+        for (Class<? extends ExtensionPoint> extensionPointClass : extensionPointClasses) {
+            for (Method method : extensionPointClass.getMethods()) {
+                Timer timer = Timer.builder(JS_PLUGIN_INVOCATION_NAME)
+                        .tag(JS_PLUGIN_INVOCATION_TAG_PLUGIN, pluginId)
+                        .tag(JS_PLUGIN_INVOCATION_TAG_METHOD, extensionPointClass.getSimpleName() + "." + method.getName())
+                        .register(Metrics.globalRegistry);
+                timers.put(method, timer);
+            }
+        }
+        invocationTimers = timers;
     }
 
     @Override
@@ -49,36 +85,110 @@ public class JsExtensionPointInvocationHandler implements InvocationHandler {
         if (OBJECT_METHODS.contains(method.getName())) {
             return method.invoke(proxy, args);
         }
-        Map<String, Value> functionMap = functions.get(method.getDeclaringClass());
         Class<?> returnType = method.getReturnType();
         // We only check Mono because we never use Flux
         // for the interfaces of extension points
         boolean isAsync = returnType.isAssignableFrom(Mono.class);
-        if (functionMap == null) {
-            return isAsync ? Mono.empty() : null;
+        long startTime = System.nanoTime();
+        PooledContext context = contextPool.tryAcquire();
+        Object result;
+        if (context == null) {
+            result = isAsync
+                    ? invokeWhenContextIsIdle(proxy, method, args)
+                    : invokeWhenContextIsAcquired(proxy, method, args);
+        } else {
+            try {
+                result = invoke(proxy, context, method, args, isAsync);
+            } finally {
+                contextPool.release(context);
+            }
+        }
+        Timer timer = invocationTimers.get(method);
+        if (timer == null) {
+            return result;
+        }
+        if (isAsync && result instanceof Mono<?> mono) {
+            return mono.doFinally(signal -> timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS));
+        }
+        timer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Queue the invocation instead of blocking the current thread (e.g. an event loop)
+     * until a context is idle
+     */
+    private Mono<?> invokeWhenContextIsIdle(Object proxy, Method method, Object[] args) {
+        Sinks.One<Object> sink = Sinks.one();
+        contextPool.runWithContext(context -> {
+            Object result;
+            try {
+                result = invoke(proxy, context, method, args, true);
+            } catch (Throwable t) {
+                sink.tryEmitError(t);
+                return;
+            }
+            if (result == null) {
+                sink.tryEmitEmpty();
+            } else {
+                sink.tryEmitValue(result);
+            }
+        });
+        return sink.asMono()
+                .flatMap(result -> (Mono<?>) result);
+    }
+
+    private Object invokeWhenContextIsAcquired(Object proxy, Method method, Object[] args) throws Throwable {
+        PooledContext context;
+        try {
+            context = contextPool.acquire();
+        } catch (RejectedExecutionException e) {
+            String message = "Failed to execute the function \"%s\" in the class %s because all the contexts are busy";
+            throw new ScriptExecutionException(message.formatted(method.getName(), method.getDeclaringClass().getName()),
+                    e,
+                    ScriptExceptionSource.HOST);
         }
-        Value function = functionMap.get(method.getName());
+        try {
+            return invoke(proxy, context, method, args, false);
+        } finally {
+            contextPool.release(context);
+        }
+    }
+
+    private Object invoke(Object proxy, PooledContext context, Method method, Object[] args, boolean isAsync) throws Throwable {
+        Map<String, Value> functionMap = context.getExtension(extensionIndex)
+                .functions()
+                .get(method.getDeclaringClass());
+        Value function = functionMap == null
+                ? null
+                : functionMap.get(method.getName());
         if (function == null) {
-            if (isAsync) {
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            } else if (functionMap == null) {
+                return isAsync ? Mono.empty() : null;
+            } else if (isAsync) {
                 // Keep it simple because we have only
                 // the return type of Mono currently
                 return Mono.empty();
-            } else if (void.class == returnType) {
+            } else if (void.class == method.getReturnType()) {
                 return null;
             } else {
-                String message = "Cannot find a default return value for the return type: " + returnType.getName();
+                String message = "Cannot find a default return value for the return type: " + method.getReturnType().getName();
                 throw new ScriptExecutionException(message, ScriptExceptionSource.HOST);
             }
         }
         Value returnValue;
         try {
-            returnValue = args == null
-                    ? function.execute()
-                    : function.execute(args);
+            returnValue = contextPool.execute(context, function, args);
         } catch (Exception e) {
-            String message = "Failed to execute the function \"%s\" in the class %s"
-                    .formatted(method.getName(), method.getDeclaringClass().getName());
-            ScriptExecutionException exception = new ScriptExecutionException(message, e, ScriptExceptionSource.SCRIPT);
+            String message = e instanceof JsInvocationTimeoutException
+                    ? "The function \"%s\" in the class %s timed out"
+                    : "Failed to execute the function \"%s\" in the class %s";
+            ScriptExecutionException exception = new ScriptExecutionException(
+                    message.formatted(method.getName(), method.getDeclaringClass().getName()),
+                    e,
+                    ScriptExceptionSource.SCRIPT);
             if (isAsync) {
                 return Mono.error(exception);
             } else {
@@ -88,27 +198,43 @@ public class JsExtensionPointInvocationHandler implements InvocationHandler {
         return parseReturnValue(isAsync, returnValue);
     }
 
+    /**
+     * @implNote The method must be called while holding the context
+     * because the return value can only be accessed in its context
+     */
     private Object parseReturnValue(boolean isAsync, Value returnValue) {
         if (returnValue.getMetaObject().getMetaSimpleName().equals("Promise")) {
-            return Mono.create(sink -> {
-                try {
-                    Consumer<Object> resolve = o -> {
-                        if (o == null) {
-                            sink.success();
-                        } else if (o instanceof Value v) {
-                            sink.success(ValueDecoder.decode(v));
+            // Register the callbacks eagerly instead of on subscription
+            // because the subscriber may not hold the context
+            Sinks.One<Object> sink = Sinks.one();
+            try {
+                Consumer<Object> resolve = o -> {
+                    if (o == null) {
+                        sink.tryEmitEmpty();
+                    } else if (o instanceof Value v) {
+                        Object value = ValueDecoder.decode(v);
+                        if (value == null) {
+                            sink.tryEmitEmpty();
                         } else {
-                            sink.success(o);
+                            sink.tryEmitValue(value);
                         }
-                    };
-                    Consumer<Object> reject = error -> sink.error(ValueDecoder.translateException(error));
-                    returnValue
-                            .invokeMember("then", resolve)
-                            .invokeMember("catch", reject);
-                } catch (Exception e) {
-                    sink.error(new ScriptExecutionException("Failed to run the promise", e, ScriptExceptionSource.HOST));
-                }
-            });
+                    } else {
+                        sink.tryEmitValue(o);
+                    }
+                };
+                Consumer<Object> reject = error -> sink.tryEmitError(ValueDecoder.translateException(error));
+                returnValue
+                        .invokeMember("then", resolve)
+                        .invokeMember("catch", reject);
+            } catch (Exception e) {
+                sink.tryEmitError(new ScriptExecutionException("Failed to run the promise", e, ScriptExceptionSource.HOST));
+            }
+            Mono<Object> result = sink.asMono();
+            return invocationTimeout == null
+                    ? result
+                    : result.timeout(invocationTimeout)
+                    .onErrorMap(TimeoutException.class,
+                            e -> new ScriptExecutionException("The promise timed out", e, ScriptExceptionSource.HOST));
         }
         Object val = ValueDecoder.decode(returnValue);
         if (isAsync) {
@@ -17,15 +17,13 @@
 
 package im.turms.server.common.plugin;
 
-import org.graalvm.polyglot.Context;
-
 import java.util.List;
 
 /**
  * @author James Chen
  */
 public record JsPlugin(
-        Context context,
+        JsContextPool contextPool,
         JsPluginDescriptor descriptor,
         List<TurmsExtension> extensions
 ) {
@@ -17,10 +17,13 @@
 
 package im.turms.server.common.plugin;
 
+import im.turms.server.common.plugin.JsContextPool.ExtensionInstance;
+import im.turms.server.common.plugin.JsContextPool.PooledContext;
 import im.turms.server.common.plugin.script.CorruptedScriptException;
 import im.turms.server.common.plugin.script.JsContext;
 import im.turms.server.common.plugin.script.ValueInspector;
 import im.turms.server.common.util.MapUtil;
+import io.netty.util.Timer;
 import lombok.Data;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
@@ -39,6 +42,7 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author James Chen
@@ -74,24 +78,73 @@ public class JsPluginFactory {
         }
     }
 
-    public static JsPlugin create(Engine engine, String script, @Nullable Path path) {
-        Context context = Context.newBuilder(JS_LANGUAGE_TYPE)
-                .allowHostAccess(HostAccess.ALL)
-                .allowHostClassLookup(className -> true)
-                .engine(engine)
-                .build();
+    /**
+     * Evaluate the script in contextPoolSize contexts sharing the engine,
+     * so the script is parsed once and the compiled code is shared among the contexts
+     */
+    public static JsPlugin create(Engine engine,
+                                  String script,
+                                  @Nullable Path path,
+                                  int contextPoolSize,
+                                  long invocationTimeoutMillis,
+                                  @Nullable Timer invocationTimeoutTimer) {
         Source source = parseScript(script);
-        context.eval(PLUGIN_CONTEXT);
-        context.eval(source);
-        Value bindings = context.getBindings(JS_LANGUAGE_TYPE);
-        JsPluginDescriptor descriptor = JsPluginDescriptorFactory.parsePluginDescriptor(bindings, script, path);
-        List<TurmsExtension> extensions = createExtensions(bindings, bindings.getMemberKeys());
-        new JsContext(descriptor.getId()).bind(context, bindings);
-        return new JsPlugin(context, descriptor, extensions);
+        JsPluginDescriptor descriptor = null;
+        List<String> extensionClassKeys = null;
+        List<List<Class<? extends ExtensionPoint>>> extensionPointClassesList = null;
+        PooledContext[] contexts = new PooledContext[contextPoolSize];
+        List<Context> createdContexts = new ArrayList<>(contextPoolSize);
+        try {
+            for (int i = 0; i < contextPoolSize; i++) {
+                Context context = Context.newBuilder(JS_LANGUAGE_TYPE)
+                        .allowHostAccess(HostAccess.ALL)
+                        .allowHostClassLookup(className -> true)
+                        .engine(engine)
+                        .build();
+                createdContexts.add(context);
+                context.eval(PLUGIN_CONTEXT);
+                context.eval(source);
+                Value bindings = context.getBindings(JS_LANGUAGE_TYPE);
+                // The script is the same for all contexts, so we only parse the descriptor
+                // and find the extension classes in the first context
+                if (descriptor == null) {
+                    descriptor = JsPluginDescriptorFactory.parsePluginDescriptor(bindings, script, path);
+                    extensionClassKeys = findExtensionClassKeys(bindings, bindings.getMemberKeys());
+                    extensionPointClassesList = new ArrayList<>(extensionClassKeys.size());
+                }
+                List<ExtensionInstance> extensions = new ArrayList<>(extensionClassKeys.size());
+                for (String key : extensionClassKeys) {
+                    ExtensionClassInfo info = createExtension(bindings.getMember(key));
+                    if (i == 0) {
+                        extensionPointClassesList.add(info.extensionPointClasses);
+                    }
+                    extensions.add(new ExtensionInstance(info.functions, info.onStarted, info.onStopped));
+                }
+                ReentrantLock lock = new ReentrantLock();
+                new JsContext(descriptor.getId(), lock).bind(context, bindings);
+                contexts[i] = new PooledContext(context, lock, extensions);
+            }
+        } catch (Exception e) {
+            for (Context context : createdContexts) {
+                context.close(true);
+            }
+            throw e;
+        }
+        JsContextPool contextPool = new JsContextPool(contexts, invocationTimeoutMillis, invocationTimeoutTimer);
+        int extensionCount = extensionClassKeys.size();
+        List<TurmsExtension> extensions = new ArrayList<>(extensionCount);
+        for (int i = 0; i < extensionCount; i++) {
+            List<Class<? extends ExtensionPoint>> extensionPointClasses = extensionPointClassesList.get(i);
+            Object extensionPointProxy = Proxy.newProxyInstance(JsPluginFactory.class.getClassLoader(),
+                    extensionPointClasses.toArray(new Class[0]),
+                    new JsExtensionPointInvocationHandler(descriptor.getId(), contextPool, i, extensionPointClasses));
+            extensions.add(new JsTurmsExtensionAdaptor(extensionPointProxy, extensionPointClasses, contextPool, i));
+        }
+        return new JsPlugin(contextPool, descriptor, extensions);
     }
 
-    private static List<TurmsExtension> createExtensions(Value bindings, Set<String> memberKeys) {
-        List<TurmsExtension> extensions = new ArrayList<>(memberKeys.size() - BUILTIN_ROOT_MEMBER_KEYS.size());
+    private static List<String> findExtensionClassKeys(Value bindings, Set<String> memberKeys) {
+        List<String> keys = new ArrayList<>(memberKeys.size() - BUILTIN_ROOT_MEMBER_KEYS.size());
         for (String memberKey : memberKeys) {
             if (BUILTIN_ROOT_MEMBER_KEYS.contains(memberKey)) {
                 continue;
@@ -99,13 +152,13 @@ public class JsPluginFactory {
             Value extensionClass = bindings.getMember(memberKey);
             Value isTurmsExtension = extensionClass.getMember(IS_TURMS_EXTENSION);
             if (extensionClass.canInstantiate() && ValueInspector.getBool(isTurmsExtension)) {
-                extensions.add(createExtension(extensionClass));
+                keys.add(memberKey);
             }
         }
-        return extensions;
+        return keys;
     }
 
-    private static JsTurmsExtensionAdaptor createExtension(Value extensionClass) {
+    private static ExtensionClassInfo createExtension(Value extensionClass) {
         Value extension = extensionClass.newInstance();
         Value getExtensionPoints = extension.getMember(GET_EXTENSION_POINTS);
         if (getExtensionPoints == null || !getExtensionPoints.canExecute()) {
@@ -114,11 +167,7 @@ public class JsPluginFactory {
             throw new CorruptedScriptException(message);
         }
         Value extensionPointStrings = getExtensionPoints.execute();
-        ExtensionClassInfo info = parseExtensionClassInfo(extension, extensionPointStrings);
-        Object extensionPointProxy = Proxy.newProxyInstance(JsPluginFactory.class.getClassLoader(),
-                info.extensionPointClasses.toArray(new Class[0]),
-                new JsExtensionPointInvocationHandler(info.functions));
-        return new JsTurmsExtensionAdaptor(extensionPointProxy, info.extensionPointClasses, extension);
+        return parseExtensionClassInfo(extension, extensionPointStrings);
     }
 
     private static ExtensionClassInfo parseExtensionClassInfo(Value extension,
@@ -146,7 +195,10 @@ public class JsPluginFactory {
             }
             extensionPointClasses.add(extensionPointClass);
         }
-        return new ExtensionClassInfo(extensionPointClasses, functions);
+        return new ExtensionClassInfo(extensionPointClasses,
+                functions,
+                ValueInspector.returnIfFunction(extension.getMember("onStarted")),
+                ValueInspector.returnIfFunction(extension.getMember("onStopped")));
     }
 
     private static Class<? extends ExtensionPoint> parseExtensionPointClass(Value classString) {
@@ -167,7 +219,9 @@ public class JsPluginFactory {
 
     private static record ExtensionClassInfo(
             List<Class<? extends ExtensionPoint>> extensionPointClasses,
-            Map<Class<? extends ExtensionPoint>, Map<String, Value>> functions
+            Map<Class<? extends ExtensionPoint>, Map<String, Value>> functions,
+            @Nullable Value onStarted,
+            @Nullable Value onStopped
     ) {
     }
 
@@ -17,7 +17,6 @@
 
 package im.turms.server.common.plugin;
 
-import im.turms.server.common.plugin.script.ValueInspector;
 import lombok.Getter;
 import org.graalvm.polyglot.Value;
 
@@ -32,30 +31,41 @@ public class JsTurmsExtensionAdaptor extends TurmsExtension {
     private final Object proxy;
     @Getter
     private final List<Class<? extends ExtensionPoint>> extensionPointClasses;
-    private final Value onStarted;
-    private final Value onStopped;
+    @Getter
+    private final JsContextPool contextPool;
+    private final int extensionIndex;
 
     public JsTurmsExtensionAdaptor(Object proxy,
                                    List<Class<? extends ExtensionPoint>> extensionPointClasses,
-                                   Value extension) {
+                                   JsContextPool contextPool,
+                                   int extensionIndex) {
         this.proxy = proxy;
         this.extensionPointClasses = extensionPointClasses;
-        onStarted = ValueInspector.returnIfFunction(extension.getMember("onStarted"));
-        onStopped = ValueInspector.returnIfFunction(extension.getMember("onStopped"));
+        this.contextPool = contextPool;
+        this.extensionIndex = extensionIndex;
     }
 
+    /**
+     * Run in every context because every context has its own instance of the extension
+     */
     @Override
     protected void onStarted() {
-        if (onStarted != null) {
-            onStarted.execute();
-        }
+        contextPool.executeOnAllContexts(context -> {
+            Value onStarted = context.getExtension(extensionIndex).onStarted();
+            if (onStarted != null) {
+                onStarted.execute();
+            }
+        });
     }
 
     @Override
     protected void onStopped() {
-        if (onStopped != null) {
-            onStopped.execute();
-        }
+        contextPool.executeOnAllContexts(context -> {
+            Value onStopped = context.getExtension(extensionIndex).onStopped();
+            if (onStopped != null) {
+                onStopped.execute();
+            }
+        });
     }
 
 }
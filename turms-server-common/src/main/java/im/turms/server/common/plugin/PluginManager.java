@@ -17,16 +17,20 @@
 
 package im.turms.server.common.plugin;
 
+import im.turms.server.common.constant.ThreadNameConstant;
 import im.turms.server.common.context.TurmsApplicationContext;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.env.common.JsPluginProperties;
 import im.turms.server.common.property.env.common.PluginProperties;
 import im.turms.server.common.security.MessageDigestPool;
 import im.turms.server.common.util.ClassUtil;
 import im.turms.server.common.util.CollectionUtil;
 import im.turms.server.common.util.ThrowableUtil;
 import io.lettuce.core.codec.Base16;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.graalvm.polyglot.Engine;
@@ -49,7 +53,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.zip.ZipFile;
 
 /**
@@ -74,6 +80,8 @@ public class PluginManager {
      */
     @Nullable
     private Object engine;
+    private final int jsContextPoolSize;
+    private final long jsInvocationTimeoutMillis;
 
     @SneakyThrows
     public PluginManager(ApplicationContext context,
@@ -88,6 +96,12 @@ public class PluginManager {
                 : singletonExtensionPoints);
         pluginDir = getPluginDir(applicationContext.getHome(), pluginProperties.getDir());
         isJsScriptEnabled = ClassUtil.exists("org.graalvm.polyglot.Engine");
+        JsPluginProperties jsPluginProperties = pluginProperties.getJs();
+        int contextPoolSize = jsPluginProperties.getContextPoolSize();
+        jsContextPoolSize = contextPoolSize > 0
+                ? contextPoolSize
+                : Runtime.getRuntime().availableProcessors();
+        jsInvocationTimeoutMillis = jsPluginProperties.getInvocationTimeoutMillis();
         PluginFinder.FindResult findResult = PluginFinder.find(pluginDir, isJsScriptEnabled);
         loadJavaPlugins(findResult.zipFiles());
         if (isJsScriptEnabled) {
@@ -128,6 +142,7 @@ public class PluginManager {
                 }
             }
         }
+        closeJsContextPools(getPlugins());
         if (engine != null) {
             ((Engine) engine).close();
         }
@@ -167,7 +182,12 @@ public class PluginManager {
         if (!isJsScriptEnabled) {
             throw new UnsupportedOperationException("JavaScript plugins are disabled because the classes of GraalJS aren't loaded");
         }
-        JsPlugin jsPlugin = JsPluginFactory.create((Engine) engine, script, path);
+        JsPlugin jsPlugin = JsPluginFactory.create((Engine) engine,
+                script,
+                path,
+                jsContextPoolSize,
+                jsInvocationTimeoutMillis,
+                jsInvocationTimeoutMillis > 0 ? JsInvocationTimeoutTimerHolder.TIMER : null);
         Plugin plugin = JavaPluginFactory.create(jsPlugin.descriptor(), jsPlugin.extensions(), context);
         pluginRepository.register(plugin);
     }
@@ -258,6 +278,7 @@ public class PluginManager {
     public void deletePlugins(Set<String> ids, boolean deleteLocalFiles) {
         List<Plugin> plugins = pluginRepository.removePlugins(ids);
         stopPlugins(plugins);
+        closeJsContextPools(plugins);
         if (deleteLocalFiles) {
             for (Plugin plugin : plugins) {
                 try {
@@ -272,10 +293,50 @@ public class PluginManager {
         }
     }
 
+    private void closeJsContextPools(Collection<Plugin> plugins) {
+        for (Plugin plugin : plugins) {
+            for (TurmsExtension extension : plugin.extensions()) {
+                if (extension instanceof JsTurmsExtensionAdaptor adaptor) {
+                    try {
+                        adaptor.getContextPool().close();
+                    } catch (Exception e) {
+                        LOGGER.error("Caught an error while closing the JavaScript contexts of the plugin " + plugin.descriptor().getId(), e);
+                    }
+                }
+            }
+        }
+    }
+
     public <T extends ExtensionPoint> boolean hasRunningExtensions(Class<T> extensionPointClass) {
         return pluginRepository.hasRunningExtensions(extensionPointClass);
     }
 
+    /**
+     * @return true if any running extension point matches the predicate.
+     * An extension point is considered to match if the predicate throws
+     * so that the following invocation of the extension point can surface the error
+     */
+    public <T extends ExtensionPoint> boolean anyExtensionPointMatches(Class<T> extensionPointClass,
+                                                                      String methodName,
+                                                                      Predicate<T> predicate) {
+        List<T> extensionPoints = pluginRepository.getExtensionPoints(extensionPointClass);
+        for (T extensionPoint : extensionPoints) {
+            TurmsExtension extension = (TurmsExtension) extensionPoint;
+            if (!extension.isRunning()) {
+                continue;
+            }
+            try {
+                if (predicate.test(extensionPoint)) {
+                    return true;
+                }
+            } catch (Exception e) {
+                LOGGER.error(translateException(e, methodName, extension).getMessage(), e);
+                return true;
+            }
+        }
+        return false;
+    }
+
     public <T extends ExtensionPoint, R> Mono<R> invokeFirstExtensionPoint(Class<T> extensionPointClass,
                                                                            String methodName,
                                                                            @Nullable Mono<R> defaultValue,
@@ -366,4 +427,18 @@ public class PluginManager {
         return new ExtensionPointExecutionException(message, t);
     }
 
+    /**
+     * Used to interrupt the JavaScript functions that run longer than {@link #jsInvocationTimeoutMillis}.
+     * The timer is shared by all plugin managers and is created lazily when the first JavaScript plugin
+     * with the invocation timeout is loaded, and its worker thread starts on the first invocation,
+     * so that no thread is created if there is no JavaScript plugin.
+     * The timer is never stopped, and its worker thread is a daemon thread so that it won't prevent the JVM from exiting
+     */
+    private static final class JsInvocationTimeoutTimerHolder {
+        private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+                new DefaultThreadFactory(ThreadNameConstant.JS_PLUGIN_INVOCATION_TIMEOUT_TIMER, true),
+                100,
+                TimeUnit.MILLISECONDS);
+    }
+
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 
+import java.util.concurrent.locks.Lock;
+
 /**
  * @author James Chen
  */
@@ -34,9 +36,12 @@ public class JsContext {
     public final JsLogger log;
     public final JsHttp http;
 
-    public JsContext(String name) {
+    /**
+     * @param contextLock the lock that must be held to enter the context
+     */
+    public JsContext(String name, Lock contextLock) {
         this.log = new JsLogger(name);
-        this.http = new JsHttp();
+        this.http = new JsHttp(contextLock);
     }
 
     public void bind(Context context, Value bindings) {
@@ -21,6 +21,7 @@ import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
+import org.graalvm.polyglot.Value;
 import org.springframework.data.util.Pair;
 import reactor.core.publisher.Mono;
 import reactor.netty.ByteBufFlux;
@@ -28,6 +29,7 @@ import reactor.netty.http.client.HttpClient;
 import reactor.netty.http.client.HttpClientResponse;
 
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 /**
  * @author James Chen
@@ -37,6 +39,16 @@ public class JsHttp {
     private static final HttpClient HTTP_CLIENT = HttpClient.create();
     private static final FetchOptions OPTIONS = new FetchOptions();
 
+    /**
+     * The response is received by another thread,
+     * which needs to hold the lock before entering the context to resolve or reject
+     */
+    private final Lock contextLock;
+
+    public JsHttp(Lock contextLock) {
+        this.contextLock = contextLock;
+    }
+
     public Thenable fetch(String uri) {
         return fetch(uri, OPTIONS);
     }
@@ -71,12 +83,21 @@ public class JsHttp {
                         FetchResponse fetchResponse = new FetchResponse(response.status().code(),
                                 response.responseHeaders(),
                                 pair.getSecond());
-                        resolve.execute(fetchResponse);
+                        executeInContext(resolve, fetchResponse);
                     },
-                    reject::execute);
+                    t -> executeInContext(reject, t));
         };
     }
 
+    private void executeInContext(Value function, Object arg) {
+        contextLock.lock();
+        try {
+            function.execute(arg);
+        } finally {
+            contextLock.unlock();
+        }
+    }
+
     @AllArgsConstructor
     @NoArgsConstructor
     public static class FetchOptions {
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.constant;
+
+/**
+ * @author James Chen
+ */
+public enum RpcConnectionSelectionStrategy {
+    /**
+     * Select the connections to a member in turn
+     */
+    ROUND_ROBIN,
+    /**
+     * Select the connection with the least pending requests
+     */
+    LEAST_PENDING_REQUESTS,
+    /**
+     * Select the same connection for the requests with the same affinity key (e.g. the user ID),
+     * so that these requests are sent in order over one connection.
+     * Fall back to {@link #ROUND_ROBIN} if a request has no affinity key
+     */
+    AFFINITY
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.constant;
+
+/**
+ * @author James Chen
+ */
+public enum RpcMemberSelectionStrategy {
+    /**
+     * Select a healthy member randomly
+     */
+    RANDOM,
+    /**
+     * Select two healthy members randomly,
+     * and select the one with fewer in-flight requests
+     */
+    POWER_OF_TWO_CHOICES,
+    /**
+     * Select two healthy members randomly,
+     * and select the one with lower cost, which is calculated by
+     * the exponentially weighted moving average of response latency and the number of in-flight requests
+     */
+    LEAST_LATENCY,
+    /**
+     * Select the same member for the requests with the same affinity key (e.g. the user ID)
+     * by rendezvous hashing for better cache locality,
+     * and only the requests of the removed member are remapped when the members change.
+     * Fall back to {@link #POWER_OF_TWO_CHOICES} if a request has no affinity key
+     */
+    CONSISTENT_HASH
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.constant;
+
+/**
+ * The policy to apply to a client connection if the outbound data
+ * that the client hasn't received exceeds the budget
+ *
+ * @author James Chen
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Drop the oldest pending notifications until the pending data fits in the budget.
+     * Note that responses are never dropped
+     */
+    DROP_OLDEST_NOTIFICATIONS,
+    /**
+     * Drop all pending notifications and send one notification with the code
+     * {@link im.turms.server.common.constant.TurmsStatusCode#NOTIFICATIONS_DROPPED}
+     * to tell the client to resync data
+     */
+    RESYNC,
+    /**
+     * Close the session with the close status
+     * {@link im.turms.common.constant.statuscode.SessionCloseStatus#SLOW_CONSUMER}
+     */
+    DISCONNECT
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.common;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class JsPluginProperties {
+
+    @Description("The number of GraalJS contexts created for every JavaScript plugin. " +
+            "A context can only be used by one thread at a time, " +
+            "so the extension points of a plugin can be invoked by up to the number of threads in parallel. " +
+            "The number of available processors will be used if 0. " +
+            "Note that the global variables of a plugin are not shared among its contexts")
+    @Min(0)
+    private int contextPoolSize;
+
+    @Description("The timeout in milliseconds of an invocation of an extension point. " +
+            "A synchronous invocation will be interrupted, and an asynchronous invocation will fail with an error " +
+            "if it exceeds the timeout. No timeout if 0")
+    @Min(0)
+    private int invocationTimeoutMillis = 10_000;
+
+}
@@ -22,6 +22,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * Convention over configuration
@@ -40,4 +41,7 @@ public class PluginProperties {
     @Description("The relative path of plugins")
     private String dir = "plugins";
 
+    @NestedConfigurationProperty
+    private JsPluginProperties js = new JsPluginProperties();
+
 }
\ No newline at end of file
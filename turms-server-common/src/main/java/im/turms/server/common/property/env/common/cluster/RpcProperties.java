@@ -17,6 +17,8 @@
 
 package im.turms.server.common.property.env.common.cluster;
 
+import im.turms.server.common.property.constant.RpcConnectionSelectionStrategy;
+import im.turms.server.common.property.constant.RpcMemberSelectionStrategy;
 import im.turms.server.common.property.metadata.annotation.Description;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -38,4 +40,10 @@ public class RpcProperties {
     @Min(1)
     private int requestTimeoutMillis = 30 * 1000;
 
+    @Description("The strategy to select a member to send an RPC request if the request can be handled by any member")
+    private RpcMemberSelectionStrategy memberSelectionStrategy = RpcMemberSelectionStrategy.POWER_OF_TWO_CHOICES;
+
+    @Description("The strategy to select one of the connections to a member to send an RPC request")
+    private RpcConnectionSelectionStrategy connectionSelectionStrategy = RpcConnectionSelectionStrategy.ROUND_ROBIN;
+
 }
\ No newline at end of file
@@ -17,7 +17,7 @@
 
 package im.turms.server.common.property.env.common.cluster.connection;
 
-
+import im.turms.server.common.property.metadata.annotation.Description;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -45,6 +45,12 @@ public class ConnectionClientProperties {
     @Min(0)
     private int reconnectIntervalSeconds = 15;
 
+    @Description("The number of TCP connections to open to every member so that RPC requests " +
+            "can be sent and handled by multiple I/O threads concurrently. " +
+            "0 means the number of available processors")
+    @Min(0)
+    private int connectionsPerMember = 1;
+
     @NestedConfigurationProperty
     private Ssl ssl = new Ssl();
 
@@ -37,6 +37,7 @@ public class FileLoggingProperties {
     public static final String DEFAULT_VALUE_FILE_PATH = "@HOME/@SERVICE_TYPE_NAME.log";
     public static final int DEFAULT_VALUE_MAX_FILES = 32;
     public static final int DEFAULT_VALUE_FILE_SIZE_MB = 32;
+    public static final boolean DEFAULT_VALUE_COMPRESS_ROLLED_FILES = true;
 
     private boolean enabled = DEFAULT_VALUE_ENABLED;
 
@@ -46,4 +47,9 @@ public class FileLoggingProperties {
     private int maxFiles = 32;
     private int maxFileSizeMb = 32;
 
+    /**
+     * Compress rolled files with gzip in the background
+     */
+    private boolean compressRolledFiles = DEFAULT_VALUE_COMPRESS_ROLLED_FILES;
+
 }
\ No newline at end of file
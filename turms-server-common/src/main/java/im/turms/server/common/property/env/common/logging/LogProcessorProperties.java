@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.common.logging;
+
+import im.turms.server.common.logging.core.processor.QueueFullPolicy;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class LogProcessorProperties {
+
+    /**
+     * The queue is unbounded if less than or equal to 0
+     */
+    public static final int DEFAULT_VALUE_QUEUE_CAPACITY = 1024 * 1024;
+    public static final QueueFullPolicy DEFAULT_VALUE_QUEUE_FULL_POLICY = QueueFullPolicy.DROP;
+    public static final int DEFAULT_VALUE_FLUSH_INTERVAL_MILLIS = 100;
+    public static final int DEFAULT_VALUE_WRITE_BUFFER_SIZE_KB = 64;
+
+    private int queueCapacity = DEFAULT_VALUE_QUEUE_CAPACITY;
+
+    private QueueFullPolicy queueFullPolicy = DEFAULT_VALUE_QUEUE_FULL_POLICY;
+
+    private int flushIntervalMillis = DEFAULT_VALUE_FLUSH_INTERVAL_MILLIS;
+
+    private int writeBufferSizeKb = DEFAULT_VALUE_WRITE_BUFFER_SIZE_KB;
+
+}
@@ -38,4 +38,7 @@ public class LoggingProperties {
     @NestedConfigurationProperty
     private FileLoggingProperties file = new FileLoggingProperties();
 
+    @NestedConfigurationProperty
+    private LogProcessorProperties processor = new LogProcessorProperties();
+
 }
\ No newline at end of file
@@ -84,6 +84,14 @@ public class GatewayProperties {
 
     // Network Access Layer
 
+    @JsonView(MutablePropertiesView.class)
+    @NestedConfigurationProperty
+    private OutboundBatchingProperties outboundBatching = new OutboundBatchingProperties();
+
+    @JsonView(MutablePropertiesView.class)
+    @NestedConfigurationProperty
+    private OutboundBufferProperties outboundBuffer = new OutboundBufferProperties();
+
     @JsonView(MutablePropertiesView.class)
     @NestedConfigurationProperty
     private UdpProperties udp = new UdpProperties();
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.gateway;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class OutboundBatchingProperties {
+
+    @Description("Whether to batch the outbound responses and notifications of a TCP/WebSocket connection " +
+            "so that multiple messages can be sent with one flush (i.e. one system call)")
+    private boolean enabled = true;
+
+    @Description("Flush the batched messages once the number of them reaches maxMessagesPerFlush")
+    @Min(1)
+    private int maxMessagesPerFlush = 64;
+
+    @Description("Flush the batched messages once the total size of them in bytes reaches maxBytesPerFlush")
+    @Min(1)
+    private int maxBytesPerFlush = 64 * 1024;
+
+    @Description("The max delay in microseconds to flush the batched messages after no more messages are queued. " +
+            "0 means flushing once no more messages are queued, " +
+            "which only coalesces the messages queued at the same time without adding any latency")
+    @Min(0)
+    private int flushDelayMicros;
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.gateway;
+
+import im.turms.server.common.property.constant.SlowConsumerPolicy;
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class OutboundBufferProperties {
+
+    @Description("A TCP/WebSocket connection becomes writable again once the bytes " +
+            "in its outbound buffer of Netty drop below writeBufferLowWaterMarkBytes")
+    @Min(0)
+    private int writeBufferLowWaterMarkBytes = 32 * 1024;
+
+    @Description("A TCP/WebSocket connection becomes unwritable once the bytes " +
+            "in its outbound buffer of Netty exceed writeBufferHighWaterMarkBytes, " +
+            "and the outbound messages will be held by turms-gateway until the connection becomes writable again")
+    @Min(1)
+    private int writeBufferHighWaterMarkBytes = 64 * 1024;
+
+    @Description("The max bytes of the outbound messages held by turms-gateway for an unwritable connection. " +
+            "slowConsumerPolicy will be applied if the bytes exceed the value")
+    @Min(0)
+    private int maxPendingBytes = 1024 * 1024;
+
+    @Description("The policy to apply if the bytes of the outbound messages held by turms-gateway " +
+            "for an unwritable connection exceed maxPendingBytes")
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+
+}
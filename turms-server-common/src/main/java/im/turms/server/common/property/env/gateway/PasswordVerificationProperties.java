@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.gateway;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class PasswordVerificationProperties {
+
+    @Description("The number of threads used to verify passwords encoded by BCrypt. " +
+            "Use the number of available processors if 0")
+    @Min(0)
+    private int threads;
+
+    @Description("The maximum number of pending password verifications. " +
+            "A login request will be rejected with SERVER_UNAVAILABLE if the queue is full")
+    @Min(1)
+    private int queueCapacity = 8192;
+
+    @Description("The time to live of the verified credentials cached locally so that " +
+            "a user logging in again with the same password doesn't need to query the password and verify it. " +
+            "The cache is disabled if 0")
+    @Min(0)
+    private int verifiedCredentialCacheTtlSeconds = 300;
+
+    @Description("The maximum number of the verified credentials cached locally")
+    @Min(0)
+    private int verifiedCredentialCacheMaxSize = 100_000;
+
+}
@@ -25,6 +25,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 import javax.validation.constraints.Min;
 
@@ -79,4 +80,10 @@ public class SessionProperties {
             "If false, turms-gateway won't connect to the MongoDB server for user records")
     private boolean enableAuthentication;
 
+    @NestedConfigurationProperty
+    private PasswordVerificationProperties passwordVerification = new PasswordVerificationProperties();
+
+    @NestedConfigurationProperty
+    private SessionResumptionProperties resumption = new SessionResumptionProperties();
+
 }
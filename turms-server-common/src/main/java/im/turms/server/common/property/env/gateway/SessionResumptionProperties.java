@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.gateway;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class SessionResumptionProperties {
+
+    @Description("Whether to issue resumption tokens in session notifications so that a client that " +
+            "reconnects to the same turms-gateway node can reattach to its disconnected session " +
+            "with the token instead of logging in again. " +
+            "Note that the property only works if notifyClientsOfSessionInfoAfterConnected is true")
+    private boolean enabled = true;
+
+    @Description("The time to live of a resumption token. " +
+            "A client needs to log in with its credentials again after its token expires")
+    @Min(1)
+    private int tokenTtlSeconds = 3600;
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.gateway;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class TcpCompressionProperties {
+
+    @Description("Whether to compress the frames of TCP connections with DEFLATE and a preset dictionary. " +
+            "Note that only the frames sent to the clients that opt in to compression " +
+            "with the device detail \"compression: deflate\" when creating a session are compressed, " +
+            "and the frames sent to other clients stay uncompressed")
+    private boolean enabled;
+
+    @Description("The compression level of DEFLATE from 1 (best speed) to 9 (best compression)")
+    @Min(1)
+    @Max(9)
+    private int compressionLevel = 6;
+
+    @Description("The frames smaller than the bytes will be sent uncompressed " +
+            "because compressing small frames costs CPU but saves little bandwidth")
+    @Min(0)
+    private int minBytesToCompress = 256;
+
+    @Description("Whether to compress a notification once and share the compressed frame " +
+            "among all its recipients connected over TCP instead of compressing it for every recipient")
+    private boolean compressNotificationOnceForRecipients = true;
+
+}
@@ -24,6 +24,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * @author James Chen
@@ -52,4 +53,7 @@ public class TcpProperties extends BaseServerProperties {
 
     private boolean wiretap;
 
+    @NestedConfigurationProperty
+    private TcpCompressionProperties compression = new TcpCompressionProperties();
+
 }
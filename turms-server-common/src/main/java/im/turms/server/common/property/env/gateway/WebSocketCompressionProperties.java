@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.gateway;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class WebSocketCompressionProperties {
+
+    @Description("Whether to support the permessage-deflate extension (RFC 7692) " +
+            "if the WebSocket clients request it in the handshake")
+    private boolean enabled;
+
+    @Description("The compression level of DEFLATE from 1 (best speed) to 9 (best compression)")
+    @Min(1)
+    @Max(9)
+    private int compressionLevel = 6;
+
+    @Description("The messages smaller than the bytes will be sent uncompressed " +
+            "because compressing small messages costs CPU but saves little bandwidth")
+    @Min(0)
+    private int minBytesToCompress = 256;
+
+    @Description("Whether to accept the request of clients to disable the context takeover of the server. " +
+            "If false, the extension won't be negotiated for the clients requesting it. " +
+            "Note that the server always uses context takeover unless the clients request to disable it " +
+            "because the context takeover compresses the repeated notifications much better at the cost of memory")
+    private boolean allowServerNoContextTakeover = true;
+
+    @Description("Whether to request clients to disable their context takeover to save the memory of the server")
+    private boolean preferClientNoContextTakeover;
+
+}
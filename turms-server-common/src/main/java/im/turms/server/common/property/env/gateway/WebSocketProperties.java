@@ -24,6 +24,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * @author James Chen
@@ -51,4 +52,7 @@ public class WebSocketProperties extends BaseServerProperties {
             "to close the WebSocket connection according to their business requirements")
     private int closeIdleConnectionAfterSeconds = 60 * 5;
 
+    @NestedConfigurationProperty
+    private WebSocketCompressionProperties compression = new WebSocketCompressionProperties();
+
 }
\ No newline at end of file
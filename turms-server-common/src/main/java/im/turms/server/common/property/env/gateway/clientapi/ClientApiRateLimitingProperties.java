@@ -18,11 +18,33 @@
 package im.turms.server.common.property.env.gateway.clientapi;
 
 import im.turms.server.common.property.env.common.CommonRateLimitingProperties;
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import javax.validation.constraints.Min;
+
 /**
  * @author James Chen
  */
+@AllArgsConstructor
+@Data
+@EqualsAndHashCode(callSuper = true)
 @NoArgsConstructor
 public class ClientApiRateLimitingProperties extends CommonRateLimitingProperties {
-}
\ No newline at end of file
+
+    @Description("Whether to store the token buckets of client IPs in a fixed-size off-heap table " +
+            "instead of a map on the heap. The table keeps the memory usage constant " +
+            "by reclaiming the slots of idle IPs when it is full, and doesn't allocate objects for requests, " +
+            "so it is recommended if turms-gateway may suffer from connection floods from a lot of IPs")
+    private boolean useOffHeapIpTokenBucketTable;
+
+    @Description("The number of slots of the off-heap IP token bucket table. " +
+            "The number will be rounded up to a power of 2, and every slot takes 24 bytes. " +
+            "It should be larger than the number of the IPs sending requests at the same time")
+    @Min(1)
+    private int offHeapIpTokenBucketTableSlots = 256 * 1024;
+
+}
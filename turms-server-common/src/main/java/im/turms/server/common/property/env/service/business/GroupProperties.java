@@ -101,4 +101,25 @@ public class GroupProperties {
     @GlobalProperty
     private boolean activateGroupWhenCreated = true;
 
+    /**
+     * Cache
+     */
+
+    @Description("The maximum number of group members in the local member cache. " +
+            "The members of a group are cached as a whole, and the members of a group that has " +
+            "no fewer members than the size are queried one by one. 0 means disabling the cache")
+    @Min(0)
+    private int memberCacheMaxSize = 100_000;
+
+    @Description("The members of a group will be evicted from the cache " +
+            "after the specified seconds have elapsed since they were last accessed")
+    @Min(1)
+    private int memberCacheExpireAfterAccessSeconds = 10 * 60;
+
+    @Description("The interval to compare the cached members of a group with the members version of the group " +
+            "in case some change stream events were missed or change streams are unavailable. " +
+            "0 means comparing the version every time before the cached members are used")
+    @Min(0)
+    private int memberCacheVersionCheckIntervalSeconds = 10;
+
 }
\ No newline at end of file
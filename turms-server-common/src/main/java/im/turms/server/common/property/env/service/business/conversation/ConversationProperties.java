@@ -39,4 +39,7 @@ public class ConversationProperties {
     @NestedConfigurationProperty
     private TypingStatusProperties typingStatus = new TypingStatusProperties();
 
+    @NestedConfigurationProperty
+    private UnreadMessageCountProperties unreadMessageCount = new UnreadMessageCountProperties();
+
 }
\ No newline at end of file
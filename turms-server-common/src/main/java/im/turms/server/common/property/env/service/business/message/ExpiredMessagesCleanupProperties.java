@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.service.business.message;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import im.turms.server.common.property.metadata.annotation.Description;
+import im.turms.server.common.property.metadata.annotation.GlobalProperty;
+import im.turms.server.common.property.metadata.view.MutablePropertiesView;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class ExpiredMessagesCleanupProperties {
+
+    @Description("The maximum number of expired messages to query and delete in a batch")
+    @GlobalProperty
+    @JsonView(MutablePropertiesView.class)
+    @Min(1)
+    private int batchSize = 1000;
+
+    @Description("The maximum number of expired messages to delete per second. " +
+            "Every deleted message is an entry in the oplog, so the property also limits the oplog growth " +
+            "caused by the cleanup. 0 means no limit")
+    @GlobalProperty
+    @JsonView(MutablePropertiesView.class)
+    @Min(0)
+    private int maxDeletedMessagesPerSecond = 5000;
+
+}
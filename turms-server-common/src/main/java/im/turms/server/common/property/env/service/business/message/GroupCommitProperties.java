@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.service.business.message;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class GroupCommitProperties {
+
+    @Description("Whether to insert messages in batches. If true, concurrent message inserts are collected " +
+            "and inserted with one request when the batch is full or the max delay has elapsed, " +
+            "and the sequence IDs of the same conversation are reserved in ranges")
+    private boolean enabled;
+
+    @Description("The maximum number of messages in a batch")
+    @Min(1)
+    private int maxBatchSize = 256;
+
+    @Description("The maximum delay in microseconds to wait for more messages before inserting a batch")
+    @Min(0)
+    private int maxDelayMicros = 2_000;
+
+}
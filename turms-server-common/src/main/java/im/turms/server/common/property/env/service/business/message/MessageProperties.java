@@ -77,6 +77,9 @@ public class MessageProperties {
     @JsonView(MutablePropertiesView.class)
     private boolean messagePersistent = true;
 
+    @NestedConfigurationProperty
+    private GroupCommitProperties groupCommit = new GroupCommitProperties();
+
     @Description("Whether to persist the records of messages in databases")
     @GlobalProperty
     @JsonView(MutablePropertiesView.class)
@@ -97,6 +100,9 @@ public class MessageProperties {
     @ValidCron
     private String expiredMessagesCleanupCron = CronConstant.DEFAULT_EXPIRED_MESSAGES_CLEANUP_CRON;
 
+    @NestedConfigurationProperty
+    private ExpiredMessagesCleanupProperties expiredMessagesCleanup = new ExpiredMessagesCleanupProperties();
+
     @Description("Whether to delete messages logically by default")
     @GlobalProperty
     @JsonView(MutablePropertiesView.class)
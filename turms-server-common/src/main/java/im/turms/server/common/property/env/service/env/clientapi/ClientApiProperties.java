@@ -43,4 +43,7 @@ public class ClientApiProperties {
     @NestedConfigurationProperty
     private ClientApiLoggingProperties logging = new ClientApiLoggingProperties();
 
+    @NestedConfigurationProperty
+    private ConcurrencyLimitProperties concurrencyLimit = new ConcurrencyLimitProperties();
+
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.service.env.clientapi;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class ConcurrencyLimitProperties {
+
+    @Description("Whether to limit the number of concurrent client requests adaptively according to the latency of handling requests. " +
+            "If the limit is reached, the requests of low priority will be rejected first with SERVER_UNAVAILABLE, " +
+            "and the critical requests (e.g. sending messages) will never be rejected")
+    private boolean enabled = true;
+
+    @Description("The initial limit of concurrent client requests")
+    @Min(1)
+    private int initialLimit = 1000;
+
+    @Description("The minimum limit of concurrent client requests")
+    @Min(1)
+    private int minLimit = 20;
+
+    @Description("The maximum limit of concurrent client requests")
+    @Min(1)
+    private int maxLimit = 10_000;
+
+    @Description("The window in milliseconds to sample the latency of requests and update the limit")
+    @Min(1)
+    private int sampleWindowMillis = 1000;
+
+    @Description("The tolerated ratio of the recent latency to the long-term latency. " +
+            "The limit starts decreasing once the recent latency exceeds the long-term latency multiplied by the ratio")
+    private float latencyTolerance = 1.5F;
+
+    @Description("The requests of low priority (e.g. querying messages and updating user profiles) will be rejected " +
+            "once the number of concurrent requests reaches the limit multiplied by the ratio")
+    @Min(0)
+    @Max(1)
+    private float lowPriorityLimitRatio = 0.8F;
+
+}
@@ -41,6 +41,9 @@ public class MessageMongoProperties extends TurmsMongoProperties {
     @NestedConfigurationProperty
     private TieredStorageProperties tieredStorage = new TieredStorageProperties();
 
+    @NestedConfigurationProperty
+    private TimePartitioningProperties timePartitioning = new TimePartitioningProperties();
+
     @NestedConfigurationProperty
     private WriteConcernProperties writeConcern = new WriteConcernProperties();
 
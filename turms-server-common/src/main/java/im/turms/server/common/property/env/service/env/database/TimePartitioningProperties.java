@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.property.env.service.env.database;
+
+import im.turms.server.common.property.metadata.annotation.Description;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * @author James Chen
+ */
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+@NoArgsConstructor
+public class TimePartitioningProperties {
+
+    @Description("Whether to store messages in one collection per time bucket of the delivery date. " +
+            "If enabled, expired messages are removed by dropping whole partitions " +
+            "when no plugin needs to be notified of the deleted messages. " +
+            "Note that the existing messages in the base collection are not migrated")
+    private boolean enabled;
+
+    @Description("The number of days of the delivery date covered by a partition")
+    @Min(1)
+    private int partitionDays = 7;
+
+}
@@ -41,4 +41,9 @@ public class TurmsRedisProperties extends CommonRedisProperties {
     @Transient
     private RedisProperties sequenceId = new RedisProperties();
 
+    @JsonIgnore
+    @NestedConfigurationProperty
+    @Transient
+    private RedisProperties unreadMessageCount = new RedisProperties();
+
 }
\ No newline at end of file
@@ -17,17 +17,35 @@
 
 package im.turms.server.common.proto;
 
+import com.google.protobuf.WireFormat;
 import im.turms.common.constant.statuscode.SessionCloseStatus;
 import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.dto.CloseReason;
+import im.turms.server.common.dto.ServiceResponse;
 import im.turms.server.common.exception.ThrowableInfo;
+import im.turms.server.common.util.CodecUtil;
+import im.turms.server.common.util.ProtoUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import javax.annotation.Nullable;
 
 /**
  * @author James Chen
  */
 public final class NotificationFactory {
 
+    private static final int REQUEST_ID_TAG =
+            (TurmsNotification.REQUEST_ID_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int CODE_TAG =
+            (TurmsNotification.CODE_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int REASON_TAG =
+            (TurmsNotification.REASON_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int DATA_TAG =
+            (TurmsNotification.DATA_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
     public static boolean returnReasonForServerError;
 
     private NotificationFactory() {
@@ -78,15 +96,78 @@ public final class NotificationFactory {
         return builder.build();
     }
 
-    private static void trySetReason(TurmsNotification.Builder builder, String reason, TurmsStatusCode code) {
-        if (reason == null) {
-            return;
-        }
-        if (TurmsStatusCode.isServerError(code.getBusinessCode())) {
-            if (returnReasonForServerError) {
+    /**
+     * Encode the response as a {@link TurmsNotification} by prepending "request_id", "code", and "reason"
+     * to {@link ServiceResponse#dataForRequesterBuffer()} so that the data doesn't need to be parsed
+     * and serialized again.
+     *
+     * @implNote The method ensures the data buffer of the response will be released by 1
+     */
+    public static ByteBuf createBuffer(ServiceResponse response, long requestId) {
+        ByteBuf dataBuffer = response.dataForRequesterBuffer();
+        TurmsNotification.Data data = response.dataForRequester();
+        if (dataBuffer == null && data != null) {
+            TurmsNotification.Builder builder = TurmsNotification.newBuilder()
+                    .setRequestId(requestId)
+                    .setCode(response.code().getBusinessCode())
+                    .setData(data);
+            String reason = response.reason();
+            if (reason != null) {
                 builder.setReason(reason);
             }
-        } else {
+            return ProtoUtil.getDirectByteBuffer(builder.build());
+        }
+        int code = response.code().getBusinessCode();
+        String reason = response.reason();
+        int reasonLength = reason == null ? 0 : ByteBufUtil.utf8Bytes(reason);
+        int dataLength = dataBuffer == null ? 0 : dataBuffer.readableBytes();
+        int headerSize = 1 + CodecUtil.computeVarint64Size(requestId)
+                + 1 + CodecUtil.computeVarint32Size(code);
+        if (reason != null) {
+            headerSize += 1 + CodecUtil.computeVarint32Size(reasonLength) + reasonLength;
+        }
+        if (dataBuffer != null) {
+            headerSize += 1 + CodecUtil.computeVarint32Size(dataLength);
+        }
+        ByteBuf header;
+        try {
+            header = PooledByteBufAllocator.DEFAULT.directBuffer(headerSize);
+        } catch (Exception e) {
+            response.release();
+            throw e;
+        }
+        header.writeByte(REQUEST_ID_TAG);
+        CodecUtil.writeVarint64(header, requestId);
+        header.writeByte(CODE_TAG);
+        CodecUtil.writeVarint32(header, code);
+        if (reason != null) {
+            header.writeByte(REASON_TAG);
+            CodecUtil.writeVarint32(header, reasonLength);
+            ByteBufUtil.reserveAndWriteUtf8(header, reason, reasonLength);
+        }
+        if (dataBuffer == null) {
+            return header;
+        }
+        header.writeByte(DATA_TAG);
+        CodecUtil.writeVarint32(header, dataLength);
+        return PooledByteBufAllocator.DEFAULT
+                .compositeDirectBuffer(2)
+                .addComponents(true, header, dataBuffer);
+    }
+
+    @Nullable
+    public static String getReasonForClient(TurmsStatusCode code, @Nullable String reason) {
+        if (reason == null) {
+            return null;
+        }
+        return TurmsStatusCode.isServerError(code.getBusinessCode()) && !returnReasonForServerError
+                ? null
+                : reason;
+    }
+
+    private static void trySetReason(TurmsNotification.Builder builder, String reason, TurmsStatusCode code) {
+        reason = getReasonForClient(code, reason);
+        if (reason != null) {
             builder.setReason(reason);
         }
     }
@@ -131,6 +131,10 @@ public class TurmsRedisClient {
         return commands.incr(key);
     }
 
+    public Mono<Long> incrby(ByteBuf key, long amount) {
+        return commands.incrby(key, amount);
+    }
+
     // Hashes
 
     public Mono<Long> hdel(Object key, Object... fields) {
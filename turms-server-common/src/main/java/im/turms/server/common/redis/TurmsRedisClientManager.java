@@ -37,6 +37,7 @@ import lombok.AllArgsConstructor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.IdentityHashMap;
@@ -106,6 +107,10 @@ public class TurmsRedisClientManager {
         return getClient(shardKey).incr(key);
     }
 
+    public Mono<Long> incrby(Long shardKey, ByteBuf key, long amount) {
+        return getClient(shardKey).incrby(key, amount);
+    }
+
     // Hashes
 
     public Mono<Long> hdel(Long shardKey, Object key, Object[] fields) {
@@ -207,6 +212,74 @@ public class TurmsRedisClientManager {
         return Mono.whenDelayError(list);
     }
 
+    /**
+     * Group keys by shard and evaluate the script once per shard with all keys of the shard,
+     * so the number of round trips depends on the number of shards instead of the number of keys.
+     *
+     * @param keys The size of keys per shard should not be larger than 1,048,576(1024*1024), or Redis will throw
+     * @return the results of all shards
+     */
+    public <T> Flux<T> eval(RedisScript script, Collection<Long> keys) {
+        return eval(script, keys, null);
+    }
+
+    /**
+     * @param arg the argument passed to the script of every shard as ARGV[1] after the keys of the shard
+     *            if not null
+     * @see #eval(RedisScript, Collection)
+     */
+    public <T> Flux<T> eval(RedisScript script, Collection<Long> keys, @Nullable byte[] arg) {
+        int keyCount = keys.size();
+        if (keyCount == 0) {
+            return Flux.empty();
+        }
+        int clientSize = clients.size();
+        int argCount = arg == null ? 0 : 1;
+        int argSize = arg == null ? 0 : arg.length + 16;
+        // fast path
+        if (clientSize == 1) {
+            ByteBuf keysBuffer = PooledByteBufAllocator.DEFAULT
+                    .directBuffer(keyCount * (Long.BYTES + 16) + argSize);
+            for (Long key : keys) {
+                CommandArgsUtil.writeRawLongArg(keysBuffer, key);
+            }
+            if (arg != null) {
+                CommandArgsUtil.writeRawBytesArg(keysBuffer, arg);
+            }
+            Mono<T> result = clients.get(0).eval(script, keyCount, new CustomKeyBuffer(keysBuffer, argCount));
+            return result.flux();
+        }
+        // slow path
+        int keysPerClient = Math.max(keyCount / clientSize, 1);
+        Map<TurmsRedisClient, BufferEntry> keyForClients = new IdentityHashMap<>(clientSize);
+        for (Long key : keys) {
+            TurmsRedisClient client = getClient(key);
+            BufferEntry entry = keyForClients.get(client);
+            ByteBuf buffer;
+            if (entry == null) {
+                buffer = PooledByteBufAllocator.DEFAULT
+                        .directBuffer(keysPerClient * (Long.BYTES + 16) + argSize);
+                entry = new BufferEntry(buffer, 1);
+                keyForClients.put(client, entry);
+            } else {
+                buffer = entry.buffer;
+                entry.incrementKeyCount();
+            }
+            CommandArgsUtil.writeRawLongArg(buffer, key);
+        }
+        List<Mono<T>> list = new ArrayList<>(keyForClients.size());
+        for (Map.Entry<TurmsRedisClient, BufferEntry> entry : keyForClients.entrySet()) {
+            BufferEntry bufferEntry = entry.getValue();
+            if (arg != null) {
+                CommandArgsUtil.writeRawBytesArg(bufferEntry.buffer, arg);
+            }
+            Mono<T> result = entry.getKey()
+                    .eval(script, bufferEntry.keyCount, new CustomKeyBuffer(bufferEntry.buffer, argCount));
+            list.add(result);
+        }
+        return Flux.mergeDelayError(list.size(), list.toArray(new Mono[0]));
+    }
+
     // Internal
 
     private TurmsRedisClient getClient(Long shardKey) {
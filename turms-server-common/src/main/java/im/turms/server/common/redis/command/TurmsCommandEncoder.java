@@ -99,7 +99,7 @@ public class TurmsCommandEncoder extends ChannelOutboundHandlerAdapter {
         if (args != null) {
             count += command.getType() == CommandType.EVAL || command.getType() == CommandType.EVALSHA
                     // Add 2, one for script, another for the length of keys
-                    ? (int) CommandArgsUtil.getLongArgument(args, 1) + 2
+                    ? (int) CommandArgsUtil.getLongArgument(args, 1) + 2 + CommandArgsUtil.countCustomKeyBufferArgs(args)
                     : args.count();
         }
         return count;
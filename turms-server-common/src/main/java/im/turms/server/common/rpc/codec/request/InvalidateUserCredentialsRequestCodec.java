@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.rpc.codec.request;
+
+import im.turms.server.common.cluster.service.codec.codec.CodecId;
+import im.turms.server.common.rpc.request.InvalidateUserCredentialsRequest;
+import im.turms.server.common.util.CollectionUtil;
+import io.netty.buffer.ByteBuf;
+
+import java.util.Set;
+
+/**
+ * @author James Chen
+ */
+public class InvalidateUserCredentialsRequestCodec extends RpcRequestCodec<InvalidateUserCredentialsRequest> {
+
+    @Override
+    public CodecId getCodecId() {
+        return CodecId.RPC_INVALIDATE_USER_CREDENTIALS;
+    }
+
+    @Override
+    public void writeRequestData(ByteBuf output, InvalidateUserCredentialsRequest data) {
+        Set<Long> userIds = data.getUserIds();
+        output.writeInt(userIds.size());
+        for (Long userId : userIds) {
+            output.writeLong(userId);
+        }
+    }
+
+    @Override
+    public InvalidateUserCredentialsRequest readRequestData(ByteBuf input) {
+        int size = input.readInt();
+        Set<Long> userIds = CollectionUtil.newSetWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            userIds.add(input.readLong());
+        }
+        return new InvalidateUserCredentialsRequest(userIds);
+    }
+
+    @Override
+    public int initialCapacityForRequest(InvalidateUserCredentialsRequest data) {
+        return Integer.BYTES + data.getUserIds().size() * Long.BYTES;
+    }
+
+}
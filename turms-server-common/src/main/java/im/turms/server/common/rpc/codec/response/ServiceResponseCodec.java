@@ -17,7 +17,6 @@
 
 package im.turms.server.common.rpc.codec.response;
 
-import com.google.protobuf.InvalidProtocolBufferException;
 import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.server.common.cluster.service.codec.codec.Codec;
 import im.turms.server.common.cluster.service.codec.codec.CodecId;
@@ -43,19 +42,12 @@ public class ServiceResponseCodec implements Codec<ServiceResponse> {
     public ServiceResponse read(ByteBuf input) {
         TurmsStatusCode statusCode = TurmsStatusCode.from(input.readShort());
         String reason = CodecUtil.readString(input);
-        TurmsNotification.Data data;
-        if (input.readableBytes() > 0) {
-            ByteBuf dataBuffer = input.readSlice(input.readableBytes());
-            try {
-                // Note that "parseFrom" won't block because the buffer is fully read
-                data = TurmsNotification.Data.parseFrom(dataBuffer.nioBuffer());
-            } catch (InvalidProtocolBufferException e) {
-                throw new RuntimeException("Failed to parse the buffer of service response", e);
-            }
-        } else {
-            data = null;
-        }
-        return new ServiceResponse(data, statusCode, reason);
+        // Keep the data as it is, so that turms-gateway can relay it to clients
+        // without parsing and serializing it again
+        ByteBuf dataBuffer = input.isReadable()
+                ? input.readRetainedSlice(input.readableBytes())
+                : null;
+        return new ServiceResponse(null, statusCode, reason, dataBuffer);
     }
 
     @Override
@@ -67,6 +59,10 @@ public class ServiceResponseCodec implements Codec<ServiceResponse> {
 
     @Override
     public ByteBuf byteBufToComposite(ServiceResponse data) {
+        ByteBuf dataForRequesterBuffer = data.dataForRequesterBuffer();
+        if (dataForRequesterBuffer != null) {
+            return dataForRequesterBuffer;
+        }
         TurmsNotification.Data dataForRequester = data.dataForRequester();
         return dataForRequester == null
                 ? null
@@ -80,6 +80,15 @@ public class HandleServiceRequest extends RpcRequest<ServiceResponse> {
         return Tag.of(METRICS_TAG_CLIENT_REQUEST_TYPE, type.name());
     }
 
+    /**
+     * Send the requests of the same user over the same connection to keep them in order
+     */
+    @Override
+    public long affinityKey() {
+        Long userId = serviceRequest.getUserId();
+        return userId == null ? NO_AFFINITY_KEY : userId;
+    }
+
     @Override
     public boolean isAsync() {
         return true;
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.rpc.request;
+
+import im.turms.server.common.cluster.service.rpc.NodeTypeToHandleRpc;
+import im.turms.server.common.cluster.service.rpc.dto.RpcRequest;
+import im.turms.server.common.rpc.service.ISessionService;
+import im.turms.server.common.rpc.service.IUserService;
+import lombok.Data;
+import org.springframework.context.ApplicationContext;
+
+import javax.validation.constraints.NotNull;
+import java.util.Set;
+
+/**
+ * Sent to turms-gateway servers when the passwords of users are changed,
+ * or the users are deleted or inactivated
+ *
+ * @author James Chen
+ */
+@Data
+public class InvalidateUserCredentialsRequest extends RpcRequest<Boolean> {
+
+    private static final String NAME = "invalidateUserCredentials";
+    private static IUserService userService;
+    private static ISessionService sessionService;
+
+    private final Set<Long> userIds;
+
+    public InvalidateUserCredentialsRequest(@NotNull Set<Long> userIds) {
+        this.userIds = userIds;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public NodeTypeToHandleRpc nodeTypeToRequest() {
+        return NodeTypeToHandleRpc.SERVICE;
+    }
+
+    @Override
+    public NodeTypeToHandleRpc nodeTypeToRespond() {
+        return NodeTypeToHandleRpc.GATEWAY;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return false;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        super.setApplicationContext(applicationContext);
+        if (userService == null) {
+            userService = getBean(IUserService.class);
+        }
+        if (sessionService == null) {
+            sessionService = getBean(ISessionService.class);
+        }
+    }
+
+    @Override
+    public Boolean call() {
+        userService.invalidateLocalVerifiedCredentials(userIds);
+        sessionService.revokeLocalSessionResumptionTokens(userIds);
+        return true;
+    }
+
+}
@@ -64,6 +64,13 @@ public class SendNotificationRequest extends RpcRequest<Boolean> {
         return NodeTypeToHandleRpc.GATEWAY;
     }
 
+    @Override
+    public long affinityKey() {
+        return recipientIds.size() == 1
+                ? recipientIds.iterator().next()
+                : NO_AFFINITY_KEY;
+    }
+
     @Override
     public boolean isAsync() {
         return false;
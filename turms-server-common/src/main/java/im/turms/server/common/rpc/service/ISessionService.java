@@ -31,6 +31,10 @@ import java.util.Set;
  */
 public interface ISessionService {
 
+    /**
+     * @param ip an IP address or a CIDR block encoded by
+     *           {@link im.turms.server.common.util.InetAddressUtil#ipOrCidrStringToBytes(String)}
+     */
     Mono<Boolean> setLocalSessionsOfflineByIp(
             @NotNull byte[] ip,
             @NotNull CloseReason closeReason);
@@ -44,4 +48,10 @@ public interface ISessionService {
             @NotNull Long userId,
             @NotNull CloseReason closeReason);
 
+    /**
+     * Revoke the issued resumption tokens of the local sessions of the users
+     * so that the clients must log in with their latest credentials
+     */
+    void revokeLocalSessionResumptionTokens(@NotNull Set<Long> userIds);
+
 }
@@ -15,25 +15,20 @@
  * limitations under the License.
  */
 
-package im.turms.gateway.access.tcp.util;
+package im.turms.server.common.rpc.service;
 
-import im.turms.common.model.dto.notification.TurmsNotification;
-import im.turms.server.common.constant.TurmsStatusCode;
+import javax.validation.constraints.NotNull;
+import java.util.Set;
 
 /**
  * @author James Chen
  */
-public final class TurmsNotificationUtil {
+public interface IUserService {
 
-    private TurmsNotificationUtil() {
-    }
+    /**
+     * Invalidate the credentials verified and cached locally,
+     * so that the users must be authenticated against their latest passwords
+     */
+    void invalidateLocalVerifiedCredentials(@NotNull Set<Long> userIds);
 
-    public static TurmsNotification sessionClosed(long requestId) {
-        return TurmsNotification
-                .newBuilder()
-                .setRequestId(requestId)
-                .setCode(TurmsStatusCode.SERVER_INTERNAL_ERROR.getBusinessCode())
-                .build();
-    }
-
-}
\ No newline at end of file
+}
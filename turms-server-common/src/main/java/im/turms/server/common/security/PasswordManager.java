@@ -50,6 +50,10 @@ public class PasswordManager {
                 ? new SaltedSha256PasswordEncoder() : null;
     }
 
+    public PasswordEncodingAlgorithm getUserPasswordEncodingAlgorithm() {
+        return userPasswordEncodingAlgorithm;
+    }
+
     public byte[] encodePassword(PasswordEncodingAlgorithm strategy, byte[] rawPassword) {
         return switch (strategy) {
             case BCRYPT -> bCryptPasswordEncoder.encode(rawPassword);
@@ -204,6 +204,9 @@ public class BlocklistService {
                 .subscribe(null, t -> LOGGER.error("Caught an error while blocking clients", t));
     }
 
+    /**
+     * @param ips IP addresses or CIDR blocks, e.g. "192.168.1.1" and "192.168.0.0/16"
+     */
     public Mono<Void> blockIpStrings(Set<String> ips, int blockMinutes) {
         if (!isIpBlocklistEnabled) {
             return Mono.error(TurmsBusinessException.get(TurmsStatusCode.IP_BLOCKLIST_IS_DISABLED));
@@ -319,7 +322,7 @@ public class BlocklistService {
     public List<BlockedClient> getBlockedIpStrings(Set<String> ips) {
         List<BlockedClient> ipList = new LinkedList<>();
         for (String ip : ips) {
-            ByteArrayWrapper address = new ByteArrayWrapper(InetAddressUtil.ipStringToBytes(ip));
+            ByteArrayWrapper address = new ByteArrayWrapper(InetAddressUtil.ipOrCidrStringToBytes(ip));
             BlockedClient blockedClient = ipBlocklistServiceManager.getBlockedClient(address);
             if (blockedClient != null) {
                 ipList.add(blockedClient);
@@ -374,14 +377,17 @@ public class BlocklistService {
         if (!isIpBlocklistEnabled) {
             return false;
         }
-        return ipBlocklistServiceManager.isTargetBlocked(new ByteArrayWrapper(InetAddressUtil.ipStringToBytes(ip)));
+        return ipBlocklistServiceManager.isIpBlocked(InetAddressUtil.ipStringToBytes(ip));
     }
 
+    /**
+     * @return true if the IP is blocked by itself or a CIDR block containing it
+     */
     public boolean isIpBlocked(byte[] ip) {
         if (!isIpBlocklistEnabled) {
             return false;
         }
-        return ipBlocklistServiceManager.isTargetBlocked(new ByteArrayWrapper(ip));
+        return ipBlocklistServiceManager.isIpBlocked(ip);
     }
 
     public boolean isUserIdBlocked(Long userId) {
@@ -396,7 +402,7 @@ public class BlocklistService {
     private Set<ByteArrayWrapper> ipsToBytes(Set<String> ips) {
         Set<ByteArrayWrapper> ipList = CollectionUtil.newSetWithExpectedSize(ips.size());
         for (String ip : ips) {
-            ByteArrayWrapper address = new ByteArrayWrapper(InetAddressUtil.ipStringToBytes(ip));
+            ByteArrayWrapper address = new ByteArrayWrapper(InetAddressUtil.ipOrCidrStringToBytes(ip));
             ipList.add(address);
         }
         return ipList;
@@ -22,6 +22,7 @@ import im.turms.server.common.cluster.node.Node;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.server.common.lang.ByteArrayWrapper;
+import im.turms.server.common.lang.IpPrefixTrie;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.redis.TurmsRedisClient;
@@ -75,6 +76,9 @@ import java.util.function.Consumer;
  * ensure the blocklist in nodes is consistent even if the Redis server crashes or the blocklist is cleared
  * 3. "blocklist:ip:log": List. Used to perform delta sync
  * 4. "blocklist:ip:log_id": Counter. Used to perform delta sync
+ * <p>
+ * An IP blocklist target is either an IP address or a CIDR block encoded as the network address
+ * followed by one byte of the prefix length, so a prefix is stored and synced as a single target.
  */
 public class BlocklistServiceManager<T> {
 
@@ -124,6 +128,11 @@ public class BlocklistServiceManager<T> {
      * block times in the skip list because it's how the skip list works
      */
     private final ConcurrentSkipListSet<BlockedClient> blockedClientSkipList;
+    /**
+     * Used to check if an IP is blocked by an IP or CIDR rule without allocating objects.
+     * Null if the blocklist isn't an IP blocklist
+     */
+    private final IpPrefixTrie ipPrefixTrie;
 
     private volatile int localTimestamp = UNINITIALIZED_ID;
     private volatile int localLogId = UNINITIALIZED_ID;
@@ -167,6 +176,7 @@ public class BlocklistServiceManager<T> {
             return i;
         });
         blocklist = new ConcurrentHashMap<>(1024);
+        ipPrefixTrie = isIpBlocklist ? new IpPrefixTrie() : null;
 
         try {
             resetAndSyncAllBlockedClients(false)
@@ -208,7 +218,7 @@ public class BlocklistServiceManager<T> {
         int i = 2;
         for (T targetId : targetIds) {
             BlockedClient blockedClient = new BlockedClient(targetId, blockEndTimeMillis);
-            blocklist.put(targetId, blockEndTimeMillis);
+            putLocalBlockedClient(targetId, blockEndTimeMillis);
             blockedClientSkipList.add(blockedClient);
             triggerOnTargetBlocked(targetId);
             args[i] = encodeId(targetId);
@@ -227,7 +237,7 @@ public class BlocklistServiceManager<T> {
             return;
         }
         T targetId = (T) blockedClient.id();
-        blocklist.put(targetId, blockEndTimeInMillis);
+        putLocalBlockedClient(targetId, blockEndTimeInMillis);
         blockedClientSkipList.add(blockedClient);
         triggerOnTargetBlocked(targetId);
     }
@@ -253,18 +263,41 @@ public class BlocklistServiceManager<T> {
                 .then();
     }
 
+    private void putLocalBlockedClient(T targetId, long blockEndTime) {
+        blocklist.put(targetId, blockEndTime);
+        if (ipPrefixTrie != null) {
+            ipPrefixTrie.put(((ByteArrayWrapper) targetId).getBytes(), blockEndTime);
+        }
+    }
+
     private void removeLocalBlockedClient(T targetId) {
         Long blockEndTime = blocklist.remove(targetId);
         if (blockEndTime == null) {
             return;
         }
+        if (ipPrefixTrie != null) {
+            ipPrefixTrie.remove(((ByteArrayWrapper) targetId).getBytes());
+        }
         BlockedClient key = new BlockedClient(targetId, blockEndTime);
         blockedClientSkipList.remove(key);
     }
 
-    public Mono<Void> unblockAll() {
+    private void removeExpiredLocalBlockedClient(T targetId, long blockEndTime) {
+        if (blocklist.remove(targetId, blockEndTime) && ipPrefixTrie != null) {
+            ipPrefixTrie.remove(((ByteArrayWrapper) targetId).getBytes(), blockEndTime);
+        }
+    }
+
+    private void clearLocalBlockedClients() {
         blocklist.clear();
+        if (ipPrefixTrie != null) {
+            ipPrefixTrie.clear();
+        }
         blockedClientSkipList.clear();
+    }
+
+    public Mono<Void> unblockAll() {
+        clearLocalBlockedClients();
         return redisClient.eval(evictAllBlockedClients, getBlocklistKey());
     }
 
@@ -276,7 +309,7 @@ public class BlocklistServiceManager<T> {
             if (blockedClient.blockEndTime() < now) {
                 iterator.remove();
                 T id = (T) blockedClient.id();
-                blocklist.remove(id, blockedClient.blockEndTime());
+                removeExpiredLocalBlockedClient(id, blockedClient.blockEndTime());
             } else {
                 break;
             }
@@ -293,20 +326,27 @@ public class BlocklistServiceManager<T> {
             return false;
         }
         if (blockEndTime < System.currentTimeMillis()) {
-            blocklist.remove(target, blockEndTime);
+            removeExpiredLocalBlockedClient(target, blockEndTime);
             blockedClientSkipList.remove(new BlockedClient(target, blockEndTime));
             return false;
         }
         return true;
     }
 
+    /**
+     * @return true if the IP is blocked by an IP or CIDR rule
+     */
+    public boolean isIpBlocked(byte[] ip) {
+        return ipPrefixTrie.matches(ip, System.currentTimeMillis());
+    }
+
     public BlockedClient getBlockedClient(T target) {
         Long blockEndTime = blocklist.get(target);
         if (blockEndTime == null) {
             return null;
         }
         if (blockEndTime < System.currentTimeMillis()) {
-            blocklist.remove(target, blockEndTime);
+            removeExpiredLocalBlockedClient(target, blockEndTime);
             blockedClientSkipList.remove(new BlockedClient(target, blockEndTime));
             return null;
         }
@@ -328,7 +368,7 @@ public class BlocklistServiceManager<T> {
             Map.Entry<T, Long> entry = iterator.next();
             blockEndTime = entry.getValue();
             if (blockEndTime < now) {
-                iterator.remove();
+                removeExpiredLocalBlockedClient(entry.getKey(), blockEndTime);
                 blockedClientSkipList.remove(new BlockedClient(entry.getKey(), blockEndTime));
             } else {
                 i++;
@@ -339,7 +379,7 @@ public class BlocklistServiceManager<T> {
             Map.Entry<T, Long> entry = iterator.next();
             blockEndTime = entry.getValue();
             if (blockEndTime < now) {
-                iterator.remove();
+                removeExpiredLocalBlockedClient(entry.getKey(), blockEndTime);
                 blockedClientSkipList.remove(new BlockedClient(entry.getKey(), blockEndTime));
             } else {
                 blockedClients.add(new BlockedClient(entry.getKey(), entry.getValue()));
@@ -386,8 +426,7 @@ public class BlocklistServiceManager<T> {
             return Mono.empty();
         }
         LOGGER.info("Starting resetting and synchronizing blocked clients");
-        blocklist.clear();
-        blockedClientSkipList.clear();
+        clearLocalBlockedClients();
         localTimestamp = UNINITIALIZED_ID;
         localLogId = UNINITIALIZED_ID;
         Mono<List<Object>> result = redisClient.eval(getBlockedClientsScript, getBlocklistKey());
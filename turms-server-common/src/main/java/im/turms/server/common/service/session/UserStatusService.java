@@ -20,6 +20,7 @@ package im.turms.server.common.service.session;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import im.turms.common.constant.DeviceType;
 import im.turms.common.constant.UserStatus;
@@ -31,6 +32,8 @@ import im.turms.server.common.property.TurmsProperties;
 import im.turms.server.common.property.TurmsPropertiesManager;
 import im.turms.server.common.redis.RedisEntryId;
 import im.turms.server.common.redis.TurmsRedisClientManager;
+import im.turms.server.common.redis.codec.SessionHashFieldCodec;
+import im.turms.server.common.redis.codec.SessionHashValueCodec;
 import im.turms.server.common.redis.script.RedisScript;
 import im.turms.server.common.util.AssertUtil;
 import im.turms.server.common.util.ByteBufUtil;
@@ -50,6 +53,7 @@ import javax.validation.constraints.NotNull;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
@@ -62,12 +66,19 @@ import java.util.Set;
 @Service
 public class UserStatusService {
 
+    private static final UserSessionsStatus OFFLINE_USER_SESSIONS_STATUS =
+            new UserSessionsStatus(UserStatus.OFFLINE, Collections.emptyMap());
+    private static final SessionHashFieldCodec SESSION_HASH_FIELD_CODEC = new SessionHashFieldCodec();
+    private static final SessionHashValueCodec SESSION_HASH_VALUE_CODEC = new SessionHashValueCodec();
+
     private final RedisScript addOnlineUserScript =
             RedisScript.get(new ClassPathResource("redis/session/try_add_online_user_with_ttl.lua"), ScriptOutputType.BOOLEAN);
     private final RedisScript updateUsersTtlScript =
             RedisScript.get(new ClassPathResource("redis/session/update_users_ttl.lua"), ScriptOutputType.BOOLEAN);
     private final RedisScript updateOnlineUserStatusIfPresent =
             RedisScript.get(new ClassPathResource("redis/session/update_online_user_status_if_present.lua"), ScriptOutputType.BOOLEAN);
+    private final RedisScript getUsersSessionsStatusScript =
+            RedisScript.get(new ClassPathResource("redis/session/get_users_sessions_status.lua"), ScriptOutputType.MULTI);
 
     /**
      * <pre>
@@ -170,6 +181,73 @@ public class UserStatusService {
                 });
     }
 
+    /**
+     * Fetch the sessions status of all the uncached users with one Redis round trip per shard
+     * instead of one round trip per user.
+     *
+     * @return the device type and node ID map of online users. Offline users are excluded
+     */
+    public Mono<Map<Long, Map<DeviceType, String>>> getDeviceAndNodeIdMapByUserIds(@NotNull Collection<Long> userIds) {
+        try {
+            AssertUtil.notNull(userIds, "userIds");
+        } catch (TurmsBusinessException e) {
+            return Mono.error(e);
+        }
+        int userCount = userIds.size();
+        if (userCount == 0) {
+            return Mono.just(Collections.emptyMap());
+        }
+        Map<Long, Map<DeviceType, String>> result = Maps.newHashMapWithExpectedSize(userCount);
+        Collection<Long> uncachedUserIds;
+        if (cacheUserSessionsStatus) {
+            uncachedUserIds = new ArrayList<>(userCount);
+            for (Long userId : userIds) {
+                UserSessionsStatus sessionsStatus = userSessionsStatusCache.getIfPresent(userId);
+                if (sessionsStatus == null) {
+                    uncachedUserIds.add(userId);
+                } else {
+                    Map<DeviceType, String> deviceTypeAndNodeIdMap = sessionsStatus.onlineDeviceTypeAndNodeIdMap();
+                    if (deviceTypeAndNodeIdMap != null && !deviceTypeAndNodeIdMap.isEmpty()) {
+                        result.put(userId, deviceTypeAndNodeIdMap);
+                    }
+                }
+            }
+            if (uncachedUserIds.isEmpty()) {
+                return Mono.just(result);
+            }
+        } else {
+            uncachedUserIds = userIds;
+        }
+        Flux<List<Object>> fetchResults = sessionRedisClientManager.eval(getUsersSessionsStatusScript, uncachedUserIds);
+        return fetchResults
+                .timeout(operationTimeout)
+                .doOnNext(userIdAndEntriesList -> {
+                    // [userId1, [field1, value1, field2, value2, ...], userId2, [...], ...]
+                    int size = userIdAndEntriesList.size();
+                    for (int i = 0; i < size; i += 2) {
+                        long userId = ((ByteBuf) userIdAndEntriesList.get(i)).readLong();
+                        List<ByteBuf> entries = (List<ByteBuf>) userIdAndEntriesList.get(i + 1);
+                        UserSessionsStatus sessionsStatus = parseUserSessionsStatus(entries);
+                        if (!sessionsStatus.onlineDeviceTypeAndNodeIdMap().isEmpty()) {
+                            result.put(userId, sessionsStatus.onlineDeviceTypeAndNodeIdMap());
+                        }
+                        if (cacheUserSessionsStatus) {
+                            userSessionsStatusCache.put(userId, sessionsStatus);
+                        }
+                    }
+                })
+                .then(Mono.fromCallable(() -> {
+                    if (cacheUserSessionsStatus) {
+                        for (Long userId : uncachedUserIds) {
+                            if (!result.containsKey(userId)) {
+                                userSessionsStatusCache.put(userId, OFFLINE_USER_SESSIONS_STATUS);
+                            }
+                        }
+                    }
+                    return result;
+                }));
+    }
+
     public Mono<SetMultimap<String, DeviceType>> getNodeIdAndDeviceMapByUserId(@NotNull Long userId) {
         return getDeviceAndNodeIdMapByUserId(userId)
                 .map(deviceTypeAndNodeIdMap -> {
@@ -277,13 +355,7 @@ public class UserStatusService {
                                     (String) entry.getValue());
                         }
                     }
-                    if (onlineDeviceTypeAndNodeIdMap == null) {
-                        userStatus = UserStatus.OFFLINE;
-                        onlineDeviceTypeAndNodeIdMap = Collections.emptyMap();
-                    } else if (userStatus == null || userStatus == UserStatus.OFFLINE) {
-                        userStatus = UserStatus.AVAILABLE;
-                    }
-                    UserSessionsStatus userSessionsStatus = new UserSessionsStatus(userStatus, onlineDeviceTypeAndNodeIdMap);
+                    UserSessionsStatus userSessionsStatus = newUserSessionsStatus(userStatus, onlineDeviceTypeAndNodeIdMap);
                     if (cacheUserSessionsStatus) {
                         userSessionsStatusCache.put(userId, userSessionsStatus);
                     }
@@ -342,4 +414,34 @@ public class UserStatusService {
         return sessionRedisClientManager.eval(userId, addOnlineUserScript, args);
     }
 
+    private UserSessionsStatus parseUserSessionsStatus(List<ByteBuf> entries) {
+        UserStatus userStatus = null;
+        Map<DeviceType, String> onlineDeviceTypeAndNodeIdMap = null;
+        int size = entries.size();
+        for (int i = 0; i < size; i += 2) {
+            Object field = SESSION_HASH_FIELD_CODEC.decode(entries.get(i).nioBuffer());
+            Object value = SESSION_HASH_VALUE_CODEC.decode(entries.get(i + 1).nioBuffer());
+            if (field.equals(RedisEntryId.SESSIONS_STATUS)) {
+                userStatus = (UserStatus) value;
+            } else {
+                if (onlineDeviceTypeAndNodeIdMap == null) {
+                    onlineDeviceTypeAndNodeIdMap = new EnumMap<>(DeviceType.class);
+                }
+                onlineDeviceTypeAndNodeIdMap.put((DeviceType) field, (String) value);
+            }
+        }
+        return newUserSessionsStatus(userStatus, onlineDeviceTypeAndNodeIdMap);
+    }
+
+    private UserSessionsStatus newUserSessionsStatus(@Nullable UserStatus userStatus,
+                                                     @Nullable Map<DeviceType, String> onlineDeviceTypeAndNodeIdMap) {
+        if (onlineDeviceTypeAndNodeIdMap == null) {
+            return OFFLINE_USER_SESSIONS_STATUS;
+        }
+        if (userStatus == null || userStatus == UserStatus.OFFLINE) {
+            userStatus = UserStatus.AVAILABLE;
+        }
+        return new UserSessionsStatus(userStatus, onlineDeviceTypeAndNodeIdMap);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.throttle;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An adaptive concurrency limiter based on the gradient of latency:
+ * The limit grows while the recent latency stays close to the long-term latency,
+ * and shrinks once the recent latency grows, which indicates that requests start queueing.
+ * <p>
+ * The latency is sampled in windows so that the limit is updated once per window
+ * by one thread instead of by every request.
+ *
+ * @author James Chen
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final AtomicIntegerFieldUpdater<AdaptiveConcurrencyLimiter> IN_FLIGHT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(AdaptiveConcurrencyLimiter.class, "inFlight");
+    private static final AtomicLongFieldUpdater<AdaptiveConcurrencyLimiter> WINDOW_START_NANOS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(AdaptiveConcurrencyLimiter.class, "windowStartNanos");
+
+    /**
+     * The weight of the latency of a new window in the long-term latency
+     */
+    private static final double LONG_TERM_LATENCY_WEIGHT = 0.05;
+    /**
+     * The weight of the new limit when updating the limit to avoid oscillation
+     */
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long sampleWindowNanos;
+    private final double latencyTolerance;
+
+    @Getter
+    private volatile int limit;
+    @Getter
+    private volatile int inFlight;
+
+    private volatile long windowStartNanos;
+    private final LongAdder windowLatencyNanos = new LongAdder();
+    private final LongAdder windowSampleCount = new LongAdder();
+    /**
+     * It's acceptable that the value is inaccurate
+     */
+    private volatile int windowMaxInFlight;
+    /**
+     * Guarded by "this"
+     */
+    private double longTermLatencyNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit,
+                                      int minLimit,
+                                      int maxLimit,
+                                      long sampleWindowMillis,
+                                      double latencyTolerance) {
+        if (minLimit <= 0) {
+            throw new IllegalArgumentException("The minimum limit must be greater than 0");
+        }
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("The maximum limit must be greater than or equal to the minimum limit");
+        }
+        if (sampleWindowMillis <= 0) {
+            throw new IllegalArgumentException("The sample window must be greater than 0");
+        }
+        if (latencyTolerance < 1) {
+            throw new IllegalArgumentException("The latency tolerance must be greater than or equal to 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.sampleWindowNanos = sampleWindowMillis * 1_000_000;
+        this.latencyTolerance = latencyTolerance;
+        limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+        windowStartNanos = System.nanoTime();
+    }
+
+    /**
+     * @param limitRatio the ratio of the limit that the request can use,
+     *                   which is used to reject the requests of low priority earlier
+     * @return true if acquired, and {@link #release} must be called once the request is handled
+     */
+    public boolean tryAcquire(float limitRatio) {
+        int allowed = (int) (limit * limitRatio);
+        int count = IN_FLIGHT_UPDATER.incrementAndGet(this);
+        if (count > allowed) {
+            IN_FLIGHT_UPDATER.decrementAndGet(this);
+            return false;
+        }
+        updateMaxInFlight(count);
+        return true;
+    }
+
+    /**
+     * Acquire regardless of the limit, which is used by the requests that should never be rejected
+     */
+    public void acquire() {
+        updateMaxInFlight(IN_FLIGHT_UPDATER.incrementAndGet(this));
+    }
+
+    /**
+     * Release without sampling the latency (e.g. the request was cancelled)
+     */
+    public void release() {
+        IN_FLIGHT_UPDATER.decrementAndGet(this);
+    }
+
+    /**
+     * Release and sample the latency of the request
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the request was acquired
+     * @param endNanos   the value of {@link System#nanoTime()} when the request was handled
+     */
+    public void release(long startNanos, long endNanos) {
+        IN_FLIGHT_UPDATER.decrementAndGet(this);
+        // Update the limit with the samples of the last window
+        // before adding the sample to the new window
+        long windowStart = windowStartNanos;
+        if (endNanos - windowStart >= sampleWindowNanos
+                && WINDOW_START_NANOS_UPDATER.compareAndSet(this, windowStart, endNanos)) {
+            updateLimit();
+        }
+        windowLatencyNanos.add(endNanos - startNanos);
+        windowSampleCount.increment();
+    }
+
+    private void updateMaxInFlight(int count) {
+        if (count > windowMaxInFlight) {
+            windowMaxInFlight = count;
+        }
+    }
+
+    private synchronized void updateLimit() {
+        long sampleCount = windowSampleCount.sumThenReset();
+        long latencyNanos = windowLatencyNanos.sumThenReset();
+        int maxInFlight = windowMaxInFlight;
+        windowMaxInFlight = 0;
+        if (sampleCount == 0 || latencyNanos <= 0) {
+            return;
+        }
+        double shortTermLatency = (double) latencyNanos / sampleCount;
+        double longTermLatency = longTermLatencyNanos;
+        if (longTermLatency == 0) {
+            longTermLatency = shortTermLatency;
+        } else {
+            longTermLatency = longTermLatency * (1 - LONG_TERM_LATENCY_WEIGHT)
+                    + shortTermLatency * LONG_TERM_LATENCY_WEIGHT;
+            // Recover faster once the overload is over
+            // because the long-term latency has been raised by the overload
+            if (longTermLatency > shortTermLatency * 2) {
+                longTermLatency *= 0.9;
+            }
+        }
+        longTermLatencyNanos = longTermLatency;
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, latencyTolerance * longTermLatency / shortTermLatency));
+        int currentLimit = limit;
+        double newLimit = currentLimit * gradient + Math.sqrt(currentLimit);
+        // Don't grow the limit if the requests don't use the limit
+        // because the latency cannot tell whether the larger limit is safe
+        if (newLimit > currentLimit && maxInFlight < currentLimit / 2) {
+            return;
+        }
+        newLimit = currentLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = (int) Math.min(Math.max(newLimit, minLimit), maxLimit);
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.server.common.throttle;
+
+import im.turms.server.common.util.UnsafeUtil;
+import sun.misc.Unsafe;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A fixed-size and open-addressed table of token buckets keyed by IPv4/IPv6 addresses.
+ * <p>
+ * Compared with a map of {@link TokenBucket}, the table:
+ * 1. Stores the buckets off heap and never grows, so the memory stays constant
+ * even if there is a connection flood from a lot of IPs;
+ * 2. Doesn't allocate any object per request;
+ * 3. Doesn't need a cleaner thread because the slots of idle buckets are reclaimed
+ * in the CLOCK style when a new IP needs a slot.
+ *
+ * @author James Chen
+ * @implNote Every slot consists of three words: the state, the high 64 bits of the IP, and the low 64 bits of the IP.
+ * IPv4 addresses are stored as IPv4-mapped IPv6 addresses.
+ * The state packs the flags, the tokens, and the last refill time (relative to {@link #epochMillis}),
+ * so that it can be updated with one CAS.
+ * <p>
+ * We don't use tombstones because slots are never removed but only reclaimed,
+ * so a lookup can stop at the first empty slot.
+ * It's acceptable that an IP may occupy two slots in a rare race
+ * because it only makes the IP get more tokens temporarily.
+ */
+public final class IpTokenBucketTable {
+
+    private static final Unsafe UNSAFE = UnsafeUtil.UNSAFE;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final int SLOT_SIZE = 3 * Long.BYTES;
+    private static final int KEY_HIGH_OFFSET = Long.BYTES;
+    private static final int KEY_LOW_OFFSET = 2 * Long.BYTES;
+    private static final int MAX_SLOT_COUNT = 1 << 28;
+    /**
+     * The max number of slots to probe for an IP
+     */
+    private static final int PROBE_LIMIT = 8;
+
+    private static final long OCCUPIED = 1L << 63;
+    /**
+     * The slot is being written by a thread
+     */
+    private static final long BUSY = 1L << 62;
+    /**
+     * The reference bit of CLOCK
+     */
+    private static final long REFERENCED = 1L << 61;
+    private static final int TOKENS_SHIFT = 40;
+    private static final long TIME_MASK = (1L << TOKENS_SHIFT) - 1;
+    private static final int MAX_TOKENS = (1 << (61 - TOKENS_SHIFT)) - 1;
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFF_0000_0000L;
+
+    private static final int ACQUIRED = 1;
+    private static final int NOT_ACQUIRED = 0;
+    private static final int RETRY = -1;
+
+    private final TokenBucketContext context;
+    private final long address;
+    private final int mask;
+    private final long seed;
+    private final long epochMillis;
+
+    /**
+     * @param slotCount will be rounded up to a power of 2
+     */
+    public IpTokenBucketTable(TokenBucketContext context, int slotCount) {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("The slot count must be greater than 0");
+        }
+        int count = Math.min(Math.max(slotCount, PROBE_LIMIT), MAX_SLOT_COUNT);
+        count = Integer.highestOneBit(count - 1) << 1;
+        long bytes = (long) count * SLOT_SIZE;
+        long memoryAddress = UNSAFE.allocateMemory(bytes);
+        UNSAFE.setMemory(memoryAddress, bytes, (byte) 0);
+        // Free the memory only if the table is unreachable
+        // so that there is no chance to access the freed memory
+        CLEANER.register(this, () -> UNSAFE.freeMemory(memoryAddress));
+        this.context = context;
+        address = memoryAddress;
+        mask = count - 1;
+        // Use a random seed so that clients cannot choose IPs to collide on purpose
+        seed = ThreadLocalRandom.current().nextLong();
+        epochMillis = System.currentTimeMillis();
+    }
+
+    public int getSlotCount() {
+        return mask + 1;
+    }
+
+    /**
+     * @param ip the IPv4 (4 bytes) or IPv6 (16 bytes) address
+     */
+    public boolean tryAcquire(byte[] ip, long time) {
+        long high = getKeyHigh(ip);
+        long low = getKeyLow(ip);
+        long now = getRelativeTime(time);
+        int index = (int) hash(high, low) & mask;
+        while (true) {
+            int result = tryAcquire(index, high, low, now);
+            if (result != RETRY) {
+                return result == ACQUIRED;
+            }
+        }
+    }
+
+    /**
+     * Mark the bucket of the IP as reclaimable if the bucket has enough tokens,
+     * which is the same as the initial state of a new bucket.
+     */
+    public void tryReclaim(byte[] ip, long time) {
+        long high = getKeyHigh(ip);
+        long low = getKeyLow(ip);
+        long now = getRelativeTime(time);
+        int index = (int) hash(high, low) & mask;
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            long slotAddress = getSlotAddress(index + i);
+            long state = getStableState(slotAddress);
+            if (state == 0) {
+                return;
+            }
+            if (isKeyEqual(slotAddress, high, low)) {
+                if ((state & REFERENCED) != 0 && hasEnoughTokens(state, now)) {
+                    UNSAFE.compareAndSwapLong(null, slotAddress, state, state & ~REFERENCED);
+                }
+                return;
+            }
+        }
+    }
+
+    private int tryAcquire(int index, long high, long low, long now) {
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            long slotAddress = getSlotAddress(index + i);
+            long state = getStableState(slotAddress);
+            if (state == 0) {
+                if (UNSAFE.compareAndSwapLong(null, slotAddress, 0, BUSY)) {
+                    return insert(slotAddress, high, low, now);
+                }
+                // Another thread has claimed the slot,
+                // and it may be inserting the same IP
+                return RETRY;
+            }
+            if (isKeyEqual(slotAddress, high, low)) {
+                return tryAcquire(slotAddress, state, now);
+            }
+        }
+        return reclaimAndInsert(index, high, low, now);
+    }
+
+    private int tryAcquire(long slotAddress, long state, long now) {
+        while (true) {
+            if ((state & BUSY) != 0) {
+                // The slot is being reclaimed for another IP
+                return RETRY;
+            }
+            int tokens = getTokens(state);
+            long lastRefillTime = state & TIME_MASK;
+            if (tokens > 0) {
+                if (UNSAFE.compareAndSwapLong(null, slotAddress, state,
+                        newState(tokens - 1, lastRefillTime))) {
+                    return ACQUIRED;
+                }
+            } else {
+                int refillInterval = context.refillIntervalMillis;
+                long periods = refillInterval > 0
+                        ? (now - lastRefillTime) / refillInterval
+                        : 0;
+                if (periods <= 0) {
+                    if ((state & REFERENCED) == 0) {
+                        UNSAFE.compareAndSwapLong(null, slotAddress, state, state | REFERENCED);
+                    }
+                    return NOT_ACQUIRED;
+                }
+                // We expect tokensPerPeriod is always greater than 0,
+                // so tokens can be always greater than or equals to 0.
+                long newTokens = Math.min(periods * context.tokensPerPeriod - 1, getCapacity());
+                if (UNSAFE.compareAndSwapLong(null, slotAddress, state,
+                        newState((int) newTokens, now))) {
+                    return ACQUIRED;
+                }
+            }
+            state = UNSAFE.getLongVolatile(null, slotAddress);
+        }
+    }
+
+    /**
+     * Like the hand of CLOCK, clear the reference bits of the probed slots,
+     * and reclaim the first unreferenced slot.
+     * The slots of buckets that have enough tokens are preferred
+     * so that the clients sending requests frequently cannot reset their buckets easily.
+     */
+    private int reclaimAndInsert(int index, long high, long low, long now) {
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            long slotAddress = getSlotAddress(index + i);
+            long state = UNSAFE.getLongVolatile(null, slotAddress);
+            if ((state & BUSY) != 0) {
+                continue;
+            }
+            if ((state & REFERENCED) != 0) {
+                UNSAFE.compareAndSwapLong(null, slotAddress, state, state & ~REFERENCED);
+            } else if (hasEnoughTokens(state, now)
+                    && UNSAFE.compareAndSwapLong(null, slotAddress, state, BUSY)) {
+                return insert(slotAddress, high, low, now);
+            }
+        }
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            long slotAddress = getSlotAddress(index + i);
+            long state = UNSAFE.getLongVolatile(null, slotAddress);
+            if ((state & (BUSY | REFERENCED)) == 0
+                    && UNSAFE.compareAndSwapLong(null, slotAddress, state, BUSY)) {
+                return insert(slotAddress, high, low, now);
+            }
+        }
+        // All probed slots are being used heavily,
+        // so treat the IP as a new client without a slot
+        return context.initialTokens > 0
+                ? ACQUIRED
+                : NOT_ACQUIRED;
+    }
+
+    /**
+     * @implNote The slot must have been claimed by the current thread with the state {@link #BUSY}
+     */
+    private int insert(long slotAddress, long high, long low, long now) {
+        UNSAFE.putLong(slotAddress + KEY_HIGH_OFFSET, high);
+        UNSAFE.putLong(slotAddress + KEY_LOW_OFFSET, low);
+        int tokens = Math.min(context.initialTokens, getCapacity());
+        int result;
+        if (tokens > 0) {
+            tokens--;
+            result = ACQUIRED;
+        } else {
+            result = NOT_ACQUIRED;
+        }
+        // Publish the key with the volatile write
+        UNSAFE.putLongVolatile(null, slotAddress, newState(tokens, now));
+        return result;
+    }
+
+    private boolean hasEnoughTokens(long state, long now) {
+        long tokens = getTokens(state);
+        int refillInterval = context.refillIntervalMillis;
+        if (refillInterval > 0) {
+            long periods = (now - (state & TIME_MASK)) / refillInterval;
+            if (periods > 0) {
+                tokens += periods * context.tokensPerPeriod;
+            }
+        }
+        return tokens >= Math.min(context.initialTokens, getCapacity());
+    }
+
+    private long getStableState(long slotAddress) {
+        long state;
+        while (((state = UNSAFE.getLongVolatile(null, slotAddress)) & BUSY) != 0) {
+            // The writer only writes two words before publishing the slot
+            Thread.onSpinWait();
+        }
+        return state;
+    }
+
+    private boolean isKeyEqual(long slotAddress, long high, long low) {
+        return UNSAFE.getLong(slotAddress + KEY_LOW_OFFSET) == low
+                && UNSAFE.getLong(slotAddress + KEY_HIGH_OFFSET) == high;
+    }
+
+    private long getSlotAddress(int index) {
+        return address + (long) (index & mask) * SLOT_SIZE;
+    }
+
+    private int getCapacity() {
+        return Math.min(context.capacity, MAX_TOKENS);
+    }
+
+    private long getRelativeTime(long time) {
+        return Math.max(time - epochMillis, 0) & TIME_MASK;
+    }
+
+    private long hash(long high, long low) {
+        long hash = (high ^ seed) * 0x9E3779B97F4A7C15L + low;
+        // The finalization mix of MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int getTokens(long state) {
+        return (int) (state >>> TOKENS_SHIFT) & MAX_TOKENS;
+    }
+
+    private static long newState(int tokens, long time) {
+        return OCCUPIED | REFERENCED | ((long) tokens << TOKENS_SHIFT) | time;
+    }
+
+    private static long getKeyHigh(byte[] ip) {
+        return switch (ip.length) {
+            case 4 -> 0;
+            case 16 -> toLong(ip, 0);
+            default -> throw new IllegalArgumentException("Invalid IP length: " + ip.length);
+        };
+    }
+
+    private static long getKeyLow(byte[] ip) {
+        return switch (ip.length) {
+            case 4 -> IPV4_MAPPED_PREFIX | (toInt(ip) & 0xFFFF_FFFFL);
+            case 16 -> toLong(ip, 8);
+            default -> throw new IllegalArgumentException("Invalid IP length: " + ip.length);
+        };
+    }
+
+    private static int toInt(byte[] bytes) {
+        return (bytes[0] & 0xFF) << 24
+                | (bytes[1] & 0xFF) << 16
+                | (bytes[2] & 0xFF) << 8
+                | (bytes[3] & 0xFF);
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+}
@@ -159,6 +159,40 @@ public final class CodecUtil {
         }
     }
 
+    public static int computeVarint64Size(long value) {
+        if ((value & (~0L << 7)) == 0L) {
+            return 1;
+        }
+        if (value < 0L) {
+            return 10;
+        }
+        int n = 2;
+        if ((value & (~0L << 35)) != 0L) {
+            n += 4;
+            value >>>= 28;
+        }
+        if ((value & (~0L << 21)) != 0L) {
+            n += 2;
+            value >>>= 14;
+        }
+        if ((value & (~0L << 14)) != 0L) {
+            n += 1;
+        }
+        return n;
+    }
+
+    public static void writeVarint64(ByteBuf out, long value) {
+        while (true) {
+            if ((value & ~0x7FL) == 0) {
+                out.writeByte((int) value);
+                return;
+            } else {
+                out.writeByte(((int) value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+        }
+    }
+
     public static int readVarint32(ByteBuf in) {
         byte tmp = in.readByte();
         if (0 <= tmp) {
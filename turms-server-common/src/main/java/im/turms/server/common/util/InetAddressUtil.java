@@ -52,6 +52,80 @@ public final class InetAddressUtil {
         }
     }
 
+    /**
+     * @return the bytes of the IP if the string is an IP address,
+     * or the bytes of the network address followed by one byte of the prefix length
+     * if the string is a CIDR block, e.g. "192.168.0.0/16" -> [192, 168, 0, 0, 16]
+     */
+    public static byte[] ipOrCidrStringToBytes(String ipOrCidr) {
+        int index = ipOrCidr.indexOf('/');
+        if (index == -1) {
+            return ipStringToBytes(ipOrCidr);
+        }
+        byte[] address = ipStringToBytes(ipOrCidr.substring(0, index));
+        int bitLength = address.length * 8;
+        int prefixLength;
+        try {
+            prefixLength = Integer.parseInt(ipOrCidr, index + 1, ipOrCidr.length(), 10);
+        } catch (NumberFormatException e) {
+            prefixLength = -1;
+        }
+        if (prefixLength < 0 || prefixLength > bitLength) {
+            throw TurmsBusinessException.get(TurmsStatusCode.ILLEGAL_ARGUMENT, "The CIDR " + ipOrCidr + " is invalid");
+        }
+        if (prefixLength == bitLength) {
+            return address;
+        }
+        byte[] cidr = Arrays.copyOf(address, address.length + 1);
+        int maskedIndex = prefixLength >>> 3;
+        int remainingBits = prefixLength & 7;
+        if (remainingBits != 0) {
+            cidr[maskedIndex] &= (byte) (0xFF << (8 - remainingBits));
+            maskedIndex++;
+        }
+        Arrays.fill(cidr, maskedIndex, address.length, (byte) 0);
+        cidr[address.length] = (byte) prefixLength;
+        return cidr;
+    }
+
+    /**
+     * @see #ipOrCidrStringToBytes(String)
+     */
+    public static String ipOrCidrBytesToString(byte[] ipOrCidr) {
+        if (!isCidr(ipOrCidr)) {
+            return ipBytesToString(ipOrCidr);
+        }
+        int addressLength = ipOrCidr.length - 1;
+        return ipBytesToString(Arrays.copyOf(ipOrCidr, addressLength)) + "/" + (ipOrCidr[addressLength] & 0xFF);
+    }
+
+    public static boolean isCidr(byte[] bytes) {
+        return bytes != null && (bytes.length == IPV4_BYTE_LENGTH + 1 || bytes.length == IPV6_BYTE_LENGTH + 1);
+    }
+
+    /**
+     * @param cidr the bytes returned by {@link #ipOrCidrStringToBytes(String)} for a CIDR block
+     */
+    public static boolean isInCidr(byte[] ip, byte[] cidr) {
+        int addressLength = cidr.length - 1;
+        if (ip.length != addressLength) {
+            return false;
+        }
+        int prefixLength = cidr[addressLength] & 0xFF;
+        int fullBytes = prefixLength >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (ip[i] != cidr[i]) {
+                return false;
+            }
+        }
+        int remainingBits = prefixLength & 7;
+        if (remainingBits == 0) {
+            return true;
+        }
+        int mask = 0xFF << (8 - remainingBits);
+        return ((ip[fullBytes] ^ cidr[fullBytes]) & mask) == 0;
+    }
+
     public static boolean isIpV4OrV6(byte[] ip) {
         return ip != null && (ip.length == IPV4_BYTE_LENGTH || ip.length == IPV6_BYTE_LENGTH);
     }
@@ -20,8 +20,11 @@ package im.turms.server.common.util;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
 import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.WireFormat;
 import im.turms.server.common.proto.ProtoFormatter;
+import im.turms.common.model.dto.notification.TurmsNotification;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 
 import javax.annotation.Nullable;
@@ -32,6 +35,11 @@ import java.nio.ByteBuffer;
  */
 public final class ProtoUtil {
 
+    private static final int RELAYED_REQUEST_NOTIFICATION_REQUESTER_ID_TAG =
+            (TurmsNotification.REQUESTER_ID_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int RELAYED_REQUEST_NOTIFICATION_RELAYED_REQUEST_TAG =
+            (TurmsNotification.RELAYED_REQUEST_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
     private ProtoUtil() {
     }
 
@@ -49,6 +57,27 @@ public final class ProtoUtil {
         return output;
     }
 
+    /**
+     * Encode a {@link TurmsNotification} with only "requester_id" and "relayed_request"
+     * by prepending a small header to the serialized request instead of encoding the request again.
+     *
+     * @param turmsRequestBuffer the serialized {@link im.turms.common.model.dto.request.TurmsRequest}.
+     *                           The method retains a slice of it, so the caller still owns the buffer.
+     */
+    public static ByteBuf getRelayedRequestNotificationBuffer(long requesterId, ByteBuf turmsRequestBuffer) {
+        int requestSize = turmsRequestBuffer.readableBytes();
+        int headerSize = 1 + CodecUtil.computeVarint64Size(requesterId)
+                + 1 + CodecUtil.computeVarint32Size(requestSize);
+        ByteBuf header = PooledByteBufAllocator.DEFAULT.directBuffer(headerSize);
+        // The field tags of "requester_id" and "relayed_request" fit in one byte
+        header.writeByte(RELAYED_REQUEST_NOTIFICATION_REQUESTER_ID_TAG);
+        CodecUtil.writeVarint64(header, requesterId);
+        header.writeByte(RELAYED_REQUEST_NOTIFICATION_RELAYED_REQUEST_TAG);
+        CodecUtil.writeVarint32(header, requestSize);
+        CompositeByteBuf notification = PooledByteBufAllocator.DEFAULT.compositeDirectBuffer(2);
+        return notification.addComponents(true, header, turmsRequestBuffer.retainedSlice());
+    }
+
     @Nullable
     public static String toLogString(MessageOrBuilder message) {
         if (message == null) {
@@ -87,6 +87,21 @@ public final class CommandArgsUtil {
         }
     }
 
+    /**
+     * @return the number of the script arguments (ARGV) encoded in {@link CustomKeyBuffer}
+     */
+    public static int countCustomKeyBufferArgs(CommandArgs<?, ?> args) {
+        int count = 0;
+        for (CommandArgs.SingularArgument arg : args.singularArguments) {
+            if (arg instanceof CommandArgs.KeyArgument<?, ?> argument
+                    && argument.key instanceof TurmsWrappedByteBuf buf
+                    && buf.unwrap() instanceof CustomKeyBuffer keyBuffer) {
+                count += keyBuffer.getArgCount();
+            }
+        }
+        return count;
+    }
+
     public static long getLongArgument(CommandArgs<?, ?> args, int i) {
         CommandArgs.IntegerArgument argument = (CommandArgs.IntegerArgument) args.singularArguments.get(i);
         return argument.val;
@@ -128,6 +143,14 @@ public final class CommandArgsUtil {
                 .writeBytes(CRLF_BYTES);
     }
 
+    public static void writeRawBytesArg(ByteBuf out, byte[] value) {
+        out.writeByte(BULK_STRINGS_FLAG_BYTE)
+                .writeBytes(getArgLength(value.length).nioBuffer())
+                .writeBytes(CRLF_BYTES)
+                .writeBytes(value)
+                .writeBytes(CRLF_BYTES);
+    }
+
     public static void writeBytesArg(CompositeByteBuf out, byte[] value) {
         int charLength = value.length;
         out.addComponent(true, BULK_STRINGS_FLAG)
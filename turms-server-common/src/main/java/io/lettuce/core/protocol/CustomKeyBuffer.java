@@ -24,7 +24,23 @@ import io.netty.buffer.TurmsWrappedByteBuf;
  * @author James Chen
  */
 public class CustomKeyBuffer extends TurmsWrappedByteBuf {
+
+    /**
+     * The number of the script arguments (ARGV) encoded after the keys
+     */
+    private final int argCount;
+
     public CustomKeyBuffer(ByteBuf buf) {
+        this(buf, 0);
+    }
+
+    public CustomKeyBuffer(ByteBuf buf, int argCount) {
         super(buf);
+        this.argCount = argCount;
     }
+
+    public int getArgCount() {
+        return argCount;
+    }
+
 }
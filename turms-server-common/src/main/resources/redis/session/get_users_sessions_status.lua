@@ -0,0 +1,10 @@
+local result = {}
+for _, user_id in ipairs(KEYS) do
+    local entries = redis.call('HGETALL', user_id)
+    if #entries > 0 then
+        result[#result + 1] = user_id
+        result[#result + 1] = entries
+    end
+end
+
+return result
\ No newline at end of file
@@ -41,6 +41,7 @@ class UserStatusServiceIT extends BaseIntegrationTest {
     static final int ORDER_ADD_ONLINE_DEVICE_IF_ABSENT = 0;
     static final int ORDER_GET_NODE_ID_BY_USER_ID_AND_DEVICE_TYPE = 10;
     static final int ORDER_GET_DEVICE_AND_NODE_ID_MAP_BY_USER_ID = 20;
+    static final int ORDER_GET_DEVICE_AND_NODE_ID_MAP_BY_USER_IDS = 25;
     static final int ORDER_GET_NODE_ID_AND_DEVICE_MAP_BY_USER_ID = 30;
     static final int ORDER_UPDATE_ONLINE_USER_STATUS = 40;
     static final int ORDER_UPDATE_ONLINE_USERS_TTL = 50;
@@ -177,6 +178,24 @@ class UserStatusServiceIT extends BaseIntegrationTest {
                 .verify();
     }
 
+    @Order(ORDER_GET_DEVICE_AND_NODE_ID_MAP_BY_USER_IDS)
+    @Test
+    void getDeviceAndNodeIdMapByUserIds_shouldReturnDeviceAndNodeIdOfOnlineUsers() {
+        Mono<Map<Long, Map<DeviceType, String>>> deviceAndNodeIdMapByUserId =
+                USER_STATUS_SERVICE.getDeviceAndNodeIdMapByUserIds(Set.of(USER_1_ID, USER_2_ID, NON_EXISTING_USER_ID));
+        StepVerifier
+                .create(deviceAndNodeIdMapByUserId)
+                .assertNext(map -> {
+                    assertThat(map).containsOnlyKeys(USER_1_ID, USER_2_ID);
+                    assertThat(map.get(USER_1_ID))
+                            .containsOnly(entry(USER_1_DEVICE, LOCAL_NODE_ID), entry(USER_1_DIFF_DEVICE, LOCAL_NODE_ID));
+                    assertThat(map.get(USER_2_ID))
+                            .containsOnly(entry(USER_2_DEVICE, LOCAL_NODE_ID));
+                })
+                .expectComplete()
+                .verify();
+    }
+
     @Order(ORDER_GET_NODE_ID_AND_DEVICE_MAP_BY_USER_ID)
     @Test
     void getNodeIdAndDeviceMapByUserId_shouldReturnNodeIdAndDeviceMap_forExistingUser() {
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.access.tcp.codec;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.common.model.dto.request.TurmsRequest;
+import im.turms.common.model.dto.request.message.CreateMessageRequest;
+import im.turms.server.common.access.tcp.codec.CodecFactory;
+import im.turms.server.common.access.tcp.codec.DeflateFrameCompressor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author James Chen
+ */
+class DeflateFrameCompressorTests {
+
+    private static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private final DeflateFrameCompressor compressor = new DeflateFrameCompressor(6);
+
+    @Test
+    void compress_shouldBeDecompressedToOriginalFrame() throws InvalidProtocolBufferException {
+        TurmsNotification notification = newNotification("Hello, how are you? ".repeat(20));
+        ByteBuf frame = Unpooled.wrappedBuffer(notification.toByteArray());
+
+        ByteBuf compressedFrame = compressor.compress(ByteBufAllocator.DEFAULT, frame);
+
+        assertThat(compressedFrame).isNotNull();
+        assertThat(DeflateFrameCompressor.isCompressed(compressedFrame)).isTrue();
+        assertThat(compressedFrame.readableBytes()).isLessThan(frame.readableBytes());
+        assertThat(frame.readerIndex()).isZero();
+
+        ByteBuf decompressedFrame = DeflateFrameCompressor
+                .decompress(ByteBufAllocator.DEFAULT, compressedFrame, MAX_FRAME_LENGTH);
+        assertThat(TurmsNotification.parseFrom(decompressedFrame.nioBuffer())).isEqualTo(notification);
+
+        frame.release();
+        compressedFrame.release();
+        decompressedFrame.release();
+    }
+
+    /**
+     * The dictionary is a part of the protocol shared with clients,
+     * so a new dictionary must be added as a new version instead of changing the existing one
+     */
+    @Test
+    void dictionary_shouldBeUnchanged() throws IOException, NoSuchAlgorithmException {
+        byte[] dictionary;
+        try (InputStream input = DeflateFrameCompressor.class.getResourceAsStream(
+                "/compression/deflate_dictionary_v" + DeflateFrameCompressor.DICTIONARY_VERSION + ".bin")) {
+            assertThat(input).isNotNull();
+            dictionary = input.readAllBytes();
+        }
+
+        assertThat(DeflateFrameCompressor.DICTIONARY_VERSION).isEqualTo(1);
+        assertThat(dictionary).hasSize(293);
+        assertThat(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(dictionary)))
+                .isEqualTo("4b5e7bce79fbff58ad716feeb22ec0d4868463e55d58765cc6b08d3011cb0c9f");
+    }
+
+    @Test
+    void compress_shouldBeDecompressedByInflaterWithDictionary() throws DataFormatException, IOException {
+        byte[] frame = newNotification("Hello, how are you? ".repeat(20)).toByteArray();
+        byte[] dictionary;
+        try (InputStream input = DeflateFrameCompressor.class.getResourceAsStream("/compression/deflate_dictionary_v1.bin")) {
+            dictionary = input.readAllBytes();
+        }
+        ByteBuf compressedFrame = compressor.compress(ByteBufAllocator.DEFAULT, Unpooled.wrappedBuffer(frame));
+        assertThat(compressedFrame).isNotNull();
+        byte[] compressedBytes = ByteBufUtil.getBytes(compressedFrame, 1, compressedFrame.readableBytes() - 1);
+        compressedFrame.release();
+
+        // Decompress in the way a client implements the protocol
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(dictionary);
+        inflater.setInput(compressedBytes);
+        byte[] decompressedFrame = new byte[frame.length];
+        int length = inflater.inflate(decompressedFrame);
+        assertThat(inflater.finished()).isTrue();
+        inflater.end();
+
+        assertThat(length).isEqualTo(frame.length);
+        assertThat(decompressedFrame).isEqualTo(frame);
+    }
+
+    @Test
+    void isCompressed_shouldReturnFalse_forUncompressedFrame() {
+        ByteBuf frame = Unpooled.wrappedBuffer(newNotification("hello").toByteArray());
+        assertThat(DeflateFrameCompressor.isCompressed(frame)).isFalse();
+        frame.release();
+    }
+
+    @Test
+    void decompress_shouldThrow_ifDecompressedFrameIsTooLarge() {
+        ByteBuf frame = Unpooled.wrappedBuffer(newNotification("a".repeat(4096)).toByteArray());
+        ByteBuf compressedFrame = compressor.compress(ByteBufAllocator.DEFAULT, frame);
+
+        assertThatThrownBy(() -> DeflateFrameCompressor.decompress(ByteBufAllocator.DEFAULT, compressedFrame, 1024))
+                .isInstanceOf(CorruptedFrameException.class);
+
+        frame.release();
+        compressedFrame.release();
+    }
+
+    @Test
+    void encoderAndDecoder_shouldOnlyCompressLargeFrames() {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                CodecFactory.getDecompressingFrameDecoder(MAX_FRAME_LENGTH),
+                CodecFactory.getCompressingFrameEncoder(compressor, 256));
+        byte[] smallFrame = newNotification("hello").toByteArray();
+        byte[] largeFrame = newNotification("hello".repeat(100)).toByteArray();
+
+        channel.writeOutbound(Unpooled.wrappedBuffer(smallFrame), Unpooled.wrappedBuffer(largeFrame));
+        ByteBuf outboundSmallFrame = channel.readOutbound();
+        ByteBuf outboundLargeFrame = channel.readOutbound();
+
+        assertThat(DeflateFrameCompressor.isCompressed(outboundSmallFrame)).isFalse();
+        assertThat(DeflateFrameCompressor.isCompressed(outboundLargeFrame)).isTrue();
+
+        channel.writeInbound(outboundSmallFrame, outboundLargeFrame);
+        ByteBuf inboundSmallFrame = channel.readInbound();
+        ByteBuf inboundLargeFrame = channel.readInbound();
+
+        assertThat(ByteBufUtil.getBytes(inboundSmallFrame)).isEqualTo(smallFrame);
+        assertThat(ByteBufUtil.getBytes(inboundLargeFrame)).isEqualTo(largeFrame);
+
+        inboundSmallFrame.release();
+        inboundLargeFrame.release();
+        channel.finishAndReleaseAll();
+    }
+
+    private TurmsNotification newNotification(String text) {
+        return TurmsNotification.newBuilder()
+                .setRequesterId(1L)
+                .setRelayedRequest(TurmsRequest.newBuilder()
+                        .setRequestId(2L)
+                        .setCreateMessageRequest(CreateMessageRequest.newBuilder()
+                                .setGroupId(3L)
+                                .setDeliveryDate(System.currentTimeMillis())
+                                .setText(text)))
+                .build();
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.cluster.service.rpc;
+
+import im.turms.server.common.cluster.service.codec.codec.CodecPool;
+import im.turms.server.common.cluster.service.connection.TurmsConnection;
+import im.turms.server.common.cluster.service.rpc.RpcChannel;
+import im.turms.server.common.cluster.service.rpc.dto.RpcResponse;
+import im.turms.server.common.rpc.request.CountOnlineUsersRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.NettyOutbound;
+import reactor.netty.channel.ChannelOperations;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class RpcChannelTests {
+
+    @BeforeAll
+    static void setup() {
+        CodecPool.init();
+    }
+
+    @Test
+    void bind_shouldReturnSameChannel_forConcurrentBinds() throws Exception {
+        TurmsConnection connection = newConnection(new AtomicBoolean(), Mono.empty());
+        int threadCount = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<RpcChannel>> futures = new ArrayList<>(threadCount);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    startLatch.await();
+                    return RpcChannel.bind(connection);
+                }));
+            }
+            startLatch.countDown();
+            RpcChannel channel = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<RpcChannel> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS)).isSameAs(channel);
+            }
+            assertThat(RpcChannel.get(connection)).isSameAs(channel);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sendRequest_shouldResolveResponse_matchedByRequestId() {
+        RpcChannel channel = RpcChannel.bind(newConnection(new AtomicBoolean(), Mono.empty()));
+        CountOnlineUsersRequest request = new CountOnlineUsersRequest();
+
+        ByteBuf body = Unpooled.buffer();
+        Mono<Integer> response = channel.sendRequest(request, body);
+        assertThat(body.refCnt()).isZero();
+        assertThat(channel.getPendingRequestCount()).isOne();
+        channel.handleResponse(new RpcResponse(request.getRequestId(), 10, null));
+
+        StepVerifier.create(response)
+                .expectNext(10)
+                .verifyComplete();
+        assertThat(channel.getPendingRequestCount()).isZero();
+    }
+
+    @Test
+    void sendRequest_shouldFailAndReleaseBody_ifConnectionIsClosed() {
+        TurmsConnection connection = newConnection(new AtomicBoolean(true), Mono.empty());
+        RpcChannel channel = RpcChannel.bind(connection);
+        ByteBuf body = Unpooled.buffer();
+
+        StepVerifier.create(channel.sendRequest(new CountOnlineUsersRequest(), body))
+                .expectError(ClosedChannelException.class)
+                .verify();
+        assertThat(body.refCnt()).isZero();
+        assertThat(channel.getPendingRequestCount()).isZero();
+        verify(connection.getConnection(), never()).sendObject((Object) any());
+    }
+
+    @Test
+    void sendRequest_shouldFail_ifWriteFails() {
+        RpcChannel channel = RpcChannel.bind(newConnection(new AtomicBoolean(), Mono.error(new IOException("Broken pipe"))));
+
+        StepVerifier.create(channel.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer()))
+                .expectError(IOException.class)
+                .verify();
+        assertThat(channel.getPendingRequestCount()).isZero();
+    }
+
+    @Test
+    void failPendingRequests_shouldFailAllPendingRequests_whenConnectionIsClosed() {
+        AtomicBoolean isDisposed = new AtomicBoolean();
+        RpcChannel channel = RpcChannel.bind(newConnection(isDisposed, Mono.empty()));
+        Mono<Integer> response1 = channel.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer());
+        Mono<Integer> response2 = channel.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer());
+
+        isDisposed.set(true);
+        channel.failPendingRequests();
+
+        StepVerifier.create(response1)
+                .expectError(ClosedChannelException.class)
+                .verify();
+        StepVerifier.create(response2)
+                .expectError(ClosedChannelException.class)
+                .verify();
+        assertThat(channel.getPendingRequestCount()).isZero();
+        assertThat(channel.isActive()).isFalse();
+    }
+
+    @Test
+    void handleResponse_shouldReleaseLateResponse_ifRequestIsCancelled() {
+        RpcChannel channel = RpcChannel.bind(newConnection(new AtomicBoolean(), Mono.empty()));
+        CountOnlineUsersRequest request = new CountOnlineUsersRequest();
+
+        StepVerifier.create(channel.sendRequest(request, Unpooled.buffer()))
+                .thenCancel()
+                .verify();
+        assertThat(channel.getPendingRequestCount()).isZero();
+
+        ByteBuf lateResponse = Unpooled.buffer();
+        channel.handleResponse(new RpcResponse(request.getRequestId(), lateResponse, null));
+        assertThat(lateResponse.refCnt()).isZero();
+    }
+
+    @Test
+    void handleResponseAndFailPendingRequests_shouldResolveEachRequestOnce_whenRacing() throws Exception {
+        int requestCount = 1000;
+        RpcChannel channel = RpcChannel.bind(newConnection(new AtomicBoolean(), Mono.empty()));
+        List<Mono<Integer>> responses = new ArrayList<>(requestCount);
+        List<CountOnlineUsersRequest> requests = new ArrayList<>(requestCount);
+        List<ByteBuf> bodies = new ArrayList<>(requestCount);
+        for (int i = 0; i < requestCount; i++) {
+            CountOnlineUsersRequest request = new CountOnlineUsersRequest();
+            ByteBuf body = Unpooled.buffer();
+            requests.add(request);
+            bodies.add(body);
+            responses.add(channel.sendRequest(request, body));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        try {
+            Future<?> responder = executor.submit(() -> {
+                startLatch.await();
+                for (CountOnlineUsersRequest request : requests) {
+                    channel.handleResponse(new RpcResponse(request.getRequestId(), 1, null));
+                }
+                return null;
+            });
+            Future<?> closer = executor.submit(() -> {
+                startLatch.await();
+                channel.failPendingRequests();
+                return null;
+            });
+            startLatch.countDown();
+            responder.get(5, TimeUnit.SECONDS);
+            closer.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Every request should be resolved by either its response or the closed connection
+        for (Mono<Integer> response : responses) {
+            Integer count = response
+                    .onErrorResume(ClosedChannelException.class, t -> Mono.just(0))
+                    .block(Duration.ofSeconds(1));
+            assertThat(count).isIn(0, 1);
+        }
+        assertThat(channel.getPendingRequestCount()).isZero();
+        assertThat(bodies).allMatch(body -> body.refCnt() == 0);
+    }
+
+    private static TurmsConnection newConnection(AtomicBoolean isDisposed, Mono<Void> writeResult) {
+        ChannelOperations<?, ?> operations = mock(ChannelOperations.class);
+        NettyOutbound outbound = mock(NettyOutbound.class);
+        when(outbound.then()).thenReturn(writeResult);
+        when(operations.channel()).thenReturn(new EmbeddedChannel());
+        when(operations.isDisposed()).thenAnswer(invocation -> isDisposed.get());
+        when(operations.sendObject((Object) any())).thenAnswer(invocation -> {
+            // Release the frame as reactor-netty does after writing it
+            ReferenceCountUtil.release(invocation.getArgument(0));
+            return outbound;
+        });
+        return new TurmsConnection("node", operations, true, null);
+    }
+
+}
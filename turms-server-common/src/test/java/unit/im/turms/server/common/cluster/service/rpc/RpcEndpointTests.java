@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.cluster.service.rpc;
+
+import im.turms.server.common.cluster.service.codec.codec.CodecPool;
+import im.turms.server.common.cluster.service.connection.TurmsConnection;
+import im.turms.server.common.cluster.service.rpc.RpcChannel;
+import im.turms.server.common.cluster.service.rpc.RpcEndpoint;
+import im.turms.server.common.property.constant.RpcConnectionSelectionStrategy;
+import im.turms.server.common.rpc.request.CountOnlineUsersRequest;
+import im.turms.server.common.rpc.request.SendNotificationRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.NettyOutbound;
+import reactor.netty.channel.ChannelOperations;
+import reactor.test.StepVerifier;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class RpcEndpointTests {
+
+    @BeforeAll
+    static void setup() {
+        CodecPool.init();
+    }
+
+    @Test
+    void sendRequest_shouldSendRequestsInTurn_andSkipInactiveChannels() {
+        RpcEndpoint endpoint = new RpcEndpoint("node", RpcConnectionSelectionStrategy.ROUND_ROBIN);
+        RpcChannel channel1 = newChannel(new AtomicBoolean());
+        RpcChannel channel2 = newChannel(new AtomicBoolean(true));
+        RpcChannel channel3 = newChannel(new AtomicBoolean());
+        endpoint.addChannel(channel1);
+        endpoint.addChannel(channel2);
+        endpoint.addChannel(channel3);
+
+        for (int i = 0; i < 10; i++) {
+            endpoint.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer()).subscribe();
+        }
+
+        assertThat(getSentCount(channel1)).isBetween(4, 6);
+        assertThat(getSentCount(channel2)).isZero();
+        assertThat(getSentCount(channel1) + getSentCount(channel3)).isEqualTo(10);
+    }
+
+    @Test
+    void sendRequest_shouldSelectChannelWithLeastPendingRequests() {
+        RpcEndpoint endpoint = new RpcEndpoint("node", RpcConnectionSelectionStrategy.LEAST_PENDING_REQUESTS);
+        RpcChannel busyChannel = newChannel(new AtomicBoolean());
+        RpcChannel idleChannel = newChannel(new AtomicBoolean());
+        RpcChannel inactiveChannel = newChannel(new AtomicBoolean(true));
+        endpoint.addChannel(busyChannel);
+        endpoint.addChannel(idleChannel);
+        endpoint.addChannel(inactiveChannel);
+        ByteBuf[] bodies = {Unpooled.buffer(), Unpooled.buffer(), Unpooled.buffer(), Unpooled.buffer()};
+        busyChannel.sendRequest(new CountOnlineUsersRequest(), bodies[0]).subscribe();
+        busyChannel.sendRequest(new CountOnlineUsersRequest(), bodies[1]).subscribe();
+
+        endpoint.sendRequest(new CountOnlineUsersRequest(), bodies[2]).subscribe();
+        endpoint.sendRequest(new CountOnlineUsersRequest(), bodies[3]).subscribe();
+
+        assertThat(bodies).allMatch(body -> body.refCnt() == 0);
+        assertThat(idleChannel.getPendingRequestCount()).isEqualTo(2);
+        assertThat(inactiveChannel.getPendingRequestCount()).isZero();
+        assertThat(endpoint.getPendingRequestCount()).isEqualTo(4);
+    }
+
+    @Test
+    void sendRequest_shouldSendRequestsWithSameAffinityKeyOverSameChannel_untilChannelIsInactive() {
+        RpcEndpoint endpoint = new RpcEndpoint("node", RpcConnectionSelectionStrategy.AFFINITY);
+        AtomicBoolean[] disposedFlags = new AtomicBoolean[4];
+        RpcChannel[] channels = new RpcChannel[4];
+        for (int i = 0; i < channels.length; i++) {
+            disposedFlags[i] = new AtomicBoolean();
+            channels[i] = newChannel(disposedFlags[i]);
+            endpoint.addChannel(channels[i]);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            endpoint.sendRequest(newNotificationRequest(1L), Unpooled.buffer()).subscribe();
+        }
+        int affinityChannelIndex = -1;
+        for (int i = 0; i < channels.length; i++) {
+            int sentCount = getSentCount(channels[i]);
+            if (sentCount > 0) {
+                assertThat(sentCount).isEqualTo(10);
+                affinityChannelIndex = i;
+            }
+        }
+        assertThat(affinityChannelIndex).isNotNegative();
+
+        disposedFlags[affinityChannelIndex].set(true);
+        endpoint.sendRequest(newNotificationRequest(1L), Unpooled.buffer()).subscribe();
+
+        assertThat(getSentCount(channels[affinityChannelIndex])).isEqualTo(10);
+        assertThat(endpoint.getPendingRequestCount()).isEqualTo(11);
+    }
+
+    @Test
+    void sendRequest_shouldFailAndReleaseBody_ifAllChannelsAreRemoved() {
+        RpcChannel channel = newChannel(new AtomicBoolean());
+        RpcEndpoint endpoint = new RpcEndpoint("node", channel);
+        ByteBuf body = Unpooled.buffer();
+
+        assertThat(endpoint.removeChannel(channel)).isTrue();
+        StepVerifier.create(endpoint.sendRequest(new CountOnlineUsersRequest(), body))
+                .expectError(ClosedChannelException.class)
+                .verify();
+        assertThat(body.refCnt()).isZero();
+    }
+
+    @Test
+    void sendRequest_shouldUseNewChannel_afterReconnecting() {
+        RpcChannel oldChannel = newChannel(new AtomicBoolean(true));
+        RpcEndpoint endpoint = new RpcEndpoint("node", oldChannel);
+        RpcChannel newChannel = newChannel(new AtomicBoolean());
+
+        endpoint.addChannel(newChannel);
+        endpoint.addChannel(newChannel);
+        assertThat(endpoint.getConnectionCount()).isEqualTo(2);
+        assertThat(endpoint.removeChannel(oldChannel)).isFalse();
+        assertThat(endpoint.removeChannel(oldChannel)).isFalse();
+        endpoint.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer()).subscribe();
+
+        assertThat(endpoint.getConnectionCount()).isOne();
+        assertThat(getSentCount(oldChannel)).isZero();
+        assertThat(getSentCount(newChannel)).isOne();
+    }
+
+    @Test
+    void sendRequest_shouldNotFail_whileChannelsAreAddedAndRemovedConcurrently() throws Exception {
+        RpcChannel stableChannel = newChannel(new AtomicBoolean());
+        RpcChannel flappingChannel = newChannel(new AtomicBoolean());
+        RpcEndpoint endpoint = new RpcEndpoint("node", RpcConnectionSelectionStrategy.ROUND_ROBIN);
+        endpoint.addChannel(stableChannel);
+        int requestCount = 10_000;
+        AtomicInteger errorCount = new AtomicInteger();
+        AtomicBoolean isSending = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        try {
+            Future<?> reconnector = executor.submit(() -> {
+                startLatch.await();
+                while (isSending.get()) {
+                    endpoint.addChannel(flappingChannel);
+                    endpoint.removeChannel(flappingChannel);
+                }
+                return null;
+            });
+            Future<?> sender = executor.submit(() -> {
+                startLatch.await();
+                for (int i = 0; i < requestCount; i++) {
+                    endpoint.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer())
+                            .subscribe(null, t -> errorCount.incrementAndGet());
+                }
+                isSending.set(false);
+                return null;
+            });
+            startLatch.countDown();
+            sender.get(10, TimeUnit.SECONDS);
+            reconnector.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(errorCount).hasValue(0);
+        assertThat(endpoint.getConnectionCount()).isOne();
+        assertThat(getSentCount(stableChannel) + getSentCount(flappingChannel)).isEqualTo(requestCount);
+    }
+
+    private static SendNotificationRequest newNotificationRequest(long recipientId) {
+        // The notification buffer is never sent because only the request body is encoded into the frame
+        return new SendNotificationRequest(Unpooled.EMPTY_BUFFER, Set.of(recipientId));
+    }
+
+    private static int getSentCount(RpcChannel channel) {
+        return (int) mockingDetails(channel.getConnection().getConnection())
+                .getInvocations()
+                .stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("sendObject"))
+                .count();
+    }
+
+    private static RpcChannel newChannel(AtomicBoolean isDisposed) {
+        ChannelOperations<?, ?> operations = mock(ChannelOperations.class);
+        NettyOutbound outbound = mock(NettyOutbound.class);
+        when(outbound.then()).thenReturn(Mono.empty());
+        when(operations.channel()).thenReturn(new EmbeddedChannel());
+        when(operations.isDisposed()).thenAnswer(invocation -> isDisposed.get());
+        when(operations.sendObject((Object) any())).thenAnswer(invocation -> {
+            ReferenceCountUtil.release(invocation.getArgument(0));
+            return outbound;
+        });
+        return RpcChannel.bind(new TurmsConnection("node", operations, true, null));
+    }
+
+}
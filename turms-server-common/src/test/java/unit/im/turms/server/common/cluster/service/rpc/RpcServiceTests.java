@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.cluster.service.rpc;
+
+import im.turms.server.common.cluster.node.NodeType;
+import im.turms.server.common.cluster.service.codec.codec.CodecPool;
+import im.turms.server.common.cluster.service.config.domain.discovery.Member;
+import im.turms.server.common.cluster.service.connection.ConnectionService;
+import im.turms.server.common.cluster.service.connection.TurmsConnection;
+import im.turms.server.common.cluster.service.discovery.DiscoveryService;
+import im.turms.server.common.cluster.service.discovery.MemberConnectionListener;
+import im.turms.server.common.cluster.service.rpc.RpcChannel;
+import im.turms.server.common.cluster.service.rpc.RpcService;
+import im.turms.server.common.cluster.service.rpc.dto.RpcRequest;
+import im.turms.server.common.cluster.service.rpc.dto.RpcResponse;
+import im.turms.server.common.property.constant.RpcMemberSelectionStrategy;
+import im.turms.server.common.property.env.common.cluster.RpcProperties;
+import im.turms.server.common.rpc.request.CountOnlineUsersRequest;
+import im.turms.server.common.rpc.request.SendNotificationRequest;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.NettyOutbound;
+import reactor.netty.channel.ChannelOperations;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class RpcServiceTests {
+
+    private static final int SELECTION_COUNT = 1000;
+
+    private final Map<String, TurmsConnection> nodeIdToConnection = new HashMap<>();
+
+    @BeforeAll
+    static void setup() {
+        CodecPool.init();
+    }
+
+    @Test
+    void selectMember_shouldReturnNull_forEmptyMembers() {
+        for (RpcMemberSelectionStrategy strategy : RpcMemberSelectionStrategy.values()) {
+            RpcService rpcService = newRpcService(strategy, List.of());
+
+            assertThat(rpcService.selectMember(List.of(), new CountOnlineUsersRequest())).isNull();
+            assertThat(rpcService.selectMember(List.of(), newRequestWithAffinityKey(1L))).isNull();
+        }
+    }
+
+    @Test
+    void selectMember_shouldSelectSingleMember_onlyIfHealthy() {
+        Member healthyMember = newMember("node-1", true);
+        Member unhealthyMember = newMember("node-2", false);
+        for (RpcMemberSelectionStrategy strategy : RpcMemberSelectionStrategy.values()) {
+            RpcService rpcService = newRpcService(strategy, List.of(healthyMember, unhealthyMember));
+
+            assertThat(rpcService.selectMember(List.of(healthyMember), newRequestWithAffinityKey(1L)))
+                    .isSameAs(healthyMember);
+            assertThat(rpcService.selectMember(List.of(unhealthyMember), newRequestWithAffinityKey(1L)))
+                    .isNull();
+        }
+    }
+
+    @Test
+    void selectMember_shouldNeverSelectUnhealthyMembers() {
+        Member unhealthyMember = newMember("node-1", false);
+        List<Member> members = List.of(unhealthyMember, newMember("node-2", true), newMember("node-3", true));
+        List<Member> unhealthyMembers = List.of(unhealthyMember, newMember("node-4", false));
+        for (RpcMemberSelectionStrategy strategy : RpcMemberSelectionStrategy.values()) {
+            RpcService rpcService = newRpcService(strategy, members);
+
+            for (int i = 0; i < SELECTION_COUNT; i++) {
+                RpcRequest<?> request = newRequestWithAffinityKey(i);
+                assertThat(rpcService.selectMember(members, request))
+                        .isNotNull()
+                        .isNotSameAs(unhealthyMember);
+                assertThat(rpcService.selectMember(unhealthyMembers, request)).isNull();
+            }
+        }
+    }
+
+    @Test
+    void selectMember_shouldSelectMemberWithLessPendingRequests_forPowerOfTwoChoices() {
+        Member busyMember = newMember("node-1", true);
+        Member idleMember = newMember("node-2", true);
+        List<Member> members = List.of(busyMember, idleMember);
+        RpcService rpcService = newRpcService(RpcMemberSelectionStrategy.POWER_OF_TWO_CHOICES, members);
+        addPendingRequests(busyMember, 1);
+
+        for (int i = 0; i < SELECTION_COUNT; i++) {
+            assertThat(rpcService.selectMember(members, new CountOnlineUsersRequest())).isSameAs(idleMember);
+        }
+    }
+
+    @Test
+    void selectMember_shouldNeverSelectMostLoadedMember_forPowerOfTwoChoices() {
+        Member busiestMember = newMember("node-1", true);
+        List<Member> members = List.of(busiestMember,
+                newMember("node-2", true),
+                newMember("node-3", true),
+                newMember("node-4", true));
+        RpcService rpcService = newRpcService(RpcMemberSelectionStrategy.POWER_OF_TWO_CHOICES, members);
+        addPendingRequests(busiestMember, 3);
+        addPendingRequests(members.get(1), 1);
+
+        // The most loaded member loses every comparison,
+        // so it won't be selected even if it is one of the two random choices
+        for (int i = 0; i < SELECTION_COUNT; i++) {
+            assertThat(rpcService.selectMember(members, new CountOnlineUsersRequest())).isNotSameAs(busiestMember);
+        }
+    }
+
+    @Test
+    void selectMember_shouldSelectMemberWithLowerLatency_forLeastLatency() throws InterruptedException {
+        Member slowMember = newMember("node-1", true);
+        Member fastMember = newMember("node-2", true);
+        List<Member> members = List.of(slowMember, fastMember);
+        RpcService rpcService = newRpcService(RpcMemberSelectionStrategy.LEAST_LATENCY, members);
+        respond(rpcService, slowMember, 50);
+        respond(rpcService, fastMember, 0);
+
+        assertThat(rpcService.getEndpoint(slowMember.getNodeId()).getLatencyEwmaNanos())
+                .isGreaterThan(rpcService.getEndpoint(fastMember.getNodeId()).getLatencyEwmaNanos());
+        for (int i = 0; i < SELECTION_COUNT; i++) {
+            assertThat(rpcService.selectMember(members, new CountOnlineUsersRequest())).isSameAs(fastMember);
+        }
+    }
+
+    @Test
+    void selectMember_shouldSelectSameMemberForSameKey_andOnlyRemapKeysOfRemovedMember_forConsistentHash() {
+        List<Member> members = List.of(newMember("node-1", true),
+                newMember("node-2", true),
+                newMember("node-3", true),
+                newMember("node-4", true));
+        RpcService rpcService = newRpcService(RpcMemberSelectionStrategy.CONSISTENT_HASH, members);
+        Map<Long, Member> keyToMember = new HashMap<>();
+        Map<Member, Integer> memberToKeyCount = new HashMap<>();
+        int keyCount = 10_000;
+        for (long key = 0; key < keyCount; key++) {
+            Member member = rpcService.selectMember(members, newRequestWithAffinityKey(key));
+            assertThat(rpcService.selectMember(members, newRequestWithAffinityKey(key))).isSameAs(member);
+            keyToMember.put(key, member);
+            memberToKeyCount.merge(member, 1, Integer::sum);
+        }
+
+        // Sequential keys should be spread evenly
+        assertThat(memberToKeyCount).hasSize(members.size());
+        for (int count : memberToKeyCount.values()) {
+            assertThat(count).isBetween(keyCount / members.size() * 8 / 10, keyCount / members.size() * 12 / 10);
+        }
+
+        Member removedMember = members.get(0);
+        List<Member> remainingMembers = members.subList(1, members.size());
+        for (long key = 0; key < keyCount; key++) {
+            Member member = rpcService.selectMember(remainingMembers, newRequestWithAffinityKey(key));
+            Member previousMember = keyToMember.get(key);
+            if (previousMember == removedMember) {
+                assertThat(member).isIn(remainingMembers);
+            } else {
+                assertThat(member).isSameAs(previousMember);
+            }
+        }
+    }
+
+    @Test
+    void selectMember_shouldFallBackToPowerOfTwoChoices_forConsistentHashWithoutAffinityKey() {
+        Member busyMember = newMember("node-1", true);
+        Member idleMember = newMember("node-2", true);
+        List<Member> members = List.of(busyMember, idleMember);
+        RpcService rpcService = newRpcService(RpcMemberSelectionStrategy.CONSISTENT_HASH, members);
+        addPendingRequests(busyMember, 1);
+
+        for (int i = 0; i < SELECTION_COUNT; i++) {
+            assertThat(rpcService.selectMember(members, new CountOnlineUsersRequest())).isSameAs(idleMember);
+        }
+    }
+
+    private RpcService newRpcService(RpcMemberSelectionStrategy strategy, List<Member> members) {
+        RpcProperties properties = new RpcProperties().toBuilder()
+                .memberSelectionStrategy(strategy)
+                .build();
+        RpcService rpcService = new RpcService(mock(ApplicationContext.class), NodeType.SERVICE, properties);
+        ConnectionService connectionService = mock(ConnectionService.class);
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+        Member localMember = newMember("local", true);
+        when(discoveryService.getLocalMember()).thenReturn(localMember);
+        rpcService.lazyInit(null, connectionService, discoveryService, null, rpcService, null);
+        ArgumentCaptor<Supplier<MemberConnectionListener>> listenerSupplierCaptor = ArgumentCaptor.forClass(Supplier.class);
+        verify(connectionService).addMemberConnectionListenerSupplier(listenerSupplierCaptor.capture());
+
+        for (Member member : members) {
+            MemberConnectionListener listener = listenerSupplierCaptor.getValue().get();
+            TurmsConnection connection = newConnection(member.getNodeId());
+            listener.onConnectionOpen(connection);
+            listener.onOpeningHandshakeCompleted(member);
+            nodeIdToConnection.put(member.getNodeId(), connection);
+        }
+        return rpcService;
+    }
+
+    private void addPendingRequests(Member member, int count) {
+        RpcChannel channel = RpcChannel.get(nodeIdToConnection.get(member.getNodeId()));
+        for (int i = 0; i < count; i++) {
+            channel.sendRequest(new CountOnlineUsersRequest(), Unpooled.buffer()).subscribe();
+        }
+    }
+
+    private void respond(RpcService rpcService, Member member, long latencyMillis) throws InterruptedException {
+        RpcChannel channel = RpcChannel.get(nodeIdToConnection.get(member.getNodeId()));
+        List<CountOnlineUsersRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CountOnlineUsersRequest request = new CountOnlineUsersRequest();
+            rpcService.getEndpoint(member.getNodeId())
+                    .sendRequest(request, Unpooled.buffer())
+                    .subscribe();
+            requests.add(request);
+        }
+        Thread.sleep(latencyMillis);
+        for (CountOnlineUsersRequest request : requests) {
+            channel.handleResponse(new RpcResponse(request.getRequestId(), 1, null));
+        }
+    }
+
+    private static RpcRequest<?> newRequestWithAffinityKey(long key) {
+        return new SendNotificationRequest(Unpooled.EMPTY_BUFFER, Set.of(key));
+    }
+
+    private static Member newMember(String nodeId, boolean isHealthy) {
+        Member member = mock(Member.class);
+        when(member.getNodeId()).thenReturn(nodeId);
+        when(member.getStatus()).thenReturn(new Member.MemberStatus(true, isHealthy, true, new Date()));
+        return member;
+    }
+
+    private static TurmsConnection newConnection(String nodeId) {
+        ChannelOperations<?, ?> operations = mock(ChannelOperations.class);
+        NettyOutbound outbound = mock(NettyOutbound.class);
+        when(outbound.then()).thenReturn(Mono.empty());
+        when(operations.channel()).thenReturn(new EmbeddedChannel());
+        when(operations.sendObject((Object) any())).thenAnswer(invocation -> {
+            ReferenceCountUtil.release(invocation.getArgument(0));
+            return outbound;
+        });
+        return new TurmsConnection(nodeId, operations, true, null);
+    }
+
+}
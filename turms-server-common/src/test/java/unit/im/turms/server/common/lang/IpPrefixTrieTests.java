@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.lang;
+
+import im.turms.server.common.lang.IpPrefixTrie;
+import org.junit.jupiter.api.Test;
+
+import static im.turms.server.common.util.InetAddressUtil.ipOrCidrStringToBytes;
+import static im.turms.server.common.util.InetAddressUtil.ipStringToBytes;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class IpPrefixTrieTests {
+
+    private static final long NOW = 1000;
+    private static final long NOT_EXPIRED = 2000;
+
+    @Test
+    void matches_shouldMatchIpsInCidr() {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        trie.put(ipOrCidrStringToBytes("10.1.0.0/16"), NOT_EXPIRED);
+        trie.put(ipOrCidrStringToBytes("2001:db8::/32"), NOT_EXPIRED);
+
+        assertThat(trie.matches(ipStringToBytes("10.1.0.0"), NOW)).isTrue();
+        assertThat(trie.matches(ipStringToBytes("10.1.255.255"), NOW)).isTrue();
+        assertThat(trie.matches(ipStringToBytes("10.2.0.1"), NOW)).isFalse();
+        assertThat(trie.matches(ipStringToBytes("2001:db8:1::1"), NOW)).isTrue();
+        assertThat(trie.matches(ipStringToBytes("2001:db9::1"), NOW)).isFalse();
+    }
+
+    @Test
+    void matches_shouldMatchIpsAndNestedCidrs() {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        trie.put(ipOrCidrStringToBytes("192.168.1.1"), NOT_EXPIRED);
+        trie.put(ipOrCidrStringToBytes("192.168.1.128/25"), NOT_EXPIRED);
+        trie.put(ipOrCidrStringToBytes("192.168.0.0/23"), NOW - 1);
+
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(trie.matches(ipStringToBytes("192.168.1.1"), NOW)).isTrue();
+        assertThat(trie.matches(ipStringToBytes("192.168.1.200"), NOW)).isTrue();
+        // The /23 rule has expired
+        assertThat(trie.matches(ipStringToBytes("192.168.1.2"), NOW)).isFalse();
+
+        trie.put(ipOrCidrStringToBytes("192.168.0.0/23"), NOT_EXPIRED);
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(trie.matches(ipStringToBytes("192.168.1.2"), NOW)).isTrue();
+        assertThat(trie.matches(ipStringToBytes("192.168.2.1"), NOW)).isFalse();
+    }
+
+    @Test
+    void remove_shouldOnlyUnblockRemovedRule() {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        byte[] cidr = ipOrCidrStringToBytes("172.16.0.0/12");
+        byte[] ip = ipOrCidrStringToBytes("172.16.0.1");
+        byte[] siblingIp = ipOrCidrStringToBytes("172.16.0.2");
+        trie.put(cidr, NOT_EXPIRED);
+        trie.put(ip, NOT_EXPIRED);
+        trie.put(siblingIp, NOT_EXPIRED);
+
+        assertThat(trie.remove(cidr, NOT_EXPIRED + 1)).isFalse();
+        assertThat(trie.remove(cidr, NOT_EXPIRED)).isTrue();
+        assertThat(trie.remove(cidr)).isFalse();
+        assertThat(trie.matches(ipStringToBytes("172.20.0.1"), NOW)).isFalse();
+        assertThat(trie.matches(ipStringToBytes("172.16.0.1"), NOW)).isTrue();
+
+        assertThat(trie.remove(ip)).isTrue();
+        assertThat(trie.matches(ipStringToBytes("172.16.0.1"), NOW)).isFalse();
+        assertThat(trie.matches(ipStringToBytes("172.16.0.2"), NOW)).isTrue();
+
+        assertThat(trie.remove(siblingIp)).isTrue();
+        assertThat(trie.size()).isZero();
+        assertThat(trie.matches(ipStringToBytes("172.16.0.2"), NOW)).isFalse();
+    }
+
+}
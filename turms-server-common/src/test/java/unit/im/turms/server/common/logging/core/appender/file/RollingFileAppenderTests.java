@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.logging.core.appender.file;
+
+import im.turms.server.common.logging.core.appender.file.RollingFileAppender;
+import im.turms.server.common.logging.core.model.LogLevel;
+import im.turms.server.common.logging.core.model.LogRecord;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class RollingFileAppenderTests {
+
+    private static final long ONE_DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void append_shouldRollFile_ifFileExceedsMaxSize() throws IOException {
+        RollingFileAppender appender = newAppender(10, false);
+        byte[] data = new byte[600 * 1024];
+
+        appender.append(newRecord(data, System.currentTimeMillis()));
+        appender.append(newRecord(data, System.currentTimeMillis()));
+        assertThat(listFiles()).hasSize(1);
+
+        appender.append(newRecord(data, System.currentTimeMillis()));
+        appender.close();
+
+        List<Path> files = listFiles();
+        assertThat(files).hasSize(2);
+        assertThat(Files.size(files.get(0))).isEqualTo(2L * data.length);
+        assertThat(Files.size(files.get(1))).isEqualTo(data.length);
+    }
+
+    @Test
+    void append_shouldRollFile_ifDayChanges() throws IOException {
+        RollingFileAppender appender = newAppender(10, false);
+        long now = System.currentTimeMillis();
+
+        appender.append(newRecord("today", now));
+        appender.append(newRecord("tomorrow", now + ONE_DAY_MILLIS));
+        appender.close();
+
+        List<Path> files = listFiles();
+        assertThat(files).hasSize(2);
+        assertThat(Files.readString(files.get(0))).isEqualTo("today");
+        assertThat(Files.readString(files.get(1))).isEqualTo("tomorrow");
+    }
+
+    @Test
+    void append_shouldDeleteOldestFiles_ifFilesExceedMaxFiles() throws IOException {
+        RollingFileAppender appender = newAppender(2, false);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 4; i++) {
+            appender.append(newRecord(String.valueOf(i), now + i * ONE_DAY_MILLIS));
+        }
+        appender.close();
+
+        List<Path> files = listFiles();
+        assertThat(files).hasSize(2);
+        assertThat(Files.readString(files.get(0))).isEqualTo("2");
+        assertThat(Files.readString(files.get(1))).isEqualTo("3");
+    }
+
+    @Test
+    void append_shouldCompressRolledFile_ifCompressionIsEnabled() throws Exception {
+        RollingFileAppender appender = newAppender(10, true);
+        long now = System.currentTimeMillis();
+
+        appender.append(newRecord("rolled", now));
+        appender.append(newRecord("current", now + ONE_DAY_MILLIS));
+        appender.close();
+
+        List<Path> files = awaitCompressedFiles(1);
+        assertThat(files).hasSize(2);
+        Path compressedFile = files.get(0);
+        assertThat(compressedFile.getFileName().toString()).endsWith(RollingFileAppender.COMPRESSED_FILE_SUFFIX);
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(compressedFile))) {
+            assertThat(new String(input.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("rolled");
+        }
+        assertThat(Files.readString(files.get(1))).isEqualTo("current");
+    }
+
+    @Test
+    void constructor_shouldCompressFilesRolledBeforeRestart_andAppendToCurrentFile() throws Exception {
+        RollingFileAppender appender = newAppender(10, false);
+        long now = System.currentTimeMillis();
+        appender.append(newRecord("rolled", now));
+        appender.append(newRecord("current", now + ONE_DAY_MILLIS));
+        appender.close();
+
+        RollingFileAppender restartedAppender = newAppender(10, true);
+        restartedAppender.append(newRecord(" after restart", now));
+        restartedAppender.close();
+
+        List<Path> files = awaitCompressedFiles(1);
+        assertThat(files).hasSize(2);
+        assertThat(Files.readString(files.get(1))).isEqualTo("current after restart");
+    }
+
+    private RollingFileAppender newAppender(int maxFiles, boolean compressRolledFiles) {
+        return new RollingFileAppender(LogLevel.INFO,
+                directory.resolve("test.log").toString(),
+                maxFiles,
+                1,
+                compressRolledFiles,
+                RollingFileAppender.DEFAULT_WRITE_BUFFER_SIZE);
+    }
+
+    private LogRecord newRecord(String data, long timestamp) {
+        return newRecord(data.getBytes(StandardCharsets.UTF_8), timestamp);
+    }
+
+    private LogRecord newRecord(byte[] data, long timestamp) {
+        return new LogRecord(null, LogLevel.INFO, timestamp, Unpooled.wrappedBuffer(data));
+    }
+
+    /**
+     * @return the files sorted by their indexes
+     */
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> !file.getFileName().toString().endsWith(".tmp"))
+                    .sorted((file1, file2) -> Long.compare(getIndex(file1), getIndex(file2)))
+                    .toList();
+        }
+    }
+
+    private List<Path> awaitCompressedFiles(int expectedCount) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            List<Path> files = listFiles();
+            long compressedCount = files.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(RollingFileAppender.COMPRESSED_FILE_SUFFIX))
+                    .count();
+            if (compressedCount >= expectedCount && files.size() == expectedCount + 1
+                    || System.currentTimeMillis() > deadline) {
+                return files;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private long getIndex(Path file) {
+        String name = file.getFileName().toString();
+        int end = name.indexOf('.');
+        int start = name.lastIndexOf(RollingFileAppender.FIELD_DELIMITER, end);
+        return Long.parseLong(name.substring(start + 1, end));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.logging.core.processor;
+
+import im.turms.server.common.logging.core.model.LogLevel;
+import im.turms.server.common.logging.core.model.LogRecord;
+import im.turms.server.common.logging.core.processor.LogRecordQueue;
+import im.turms.server.common.logging.core.processor.QueueFullPolicy;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class LogRecordQueueTests {
+
+    @Test
+    void offer_shouldNotDropRecords_ifQueueIsUnbounded() {
+        LogRecordQueue queue = new LogRecordQueue();
+        queue.configure(0, QueueFullPolicy.DROP);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(queue.offer(newRecord())).isTrue();
+        }
+        assertThat(queue.getDroppedRecordCount()).isZero();
+    }
+
+    @Test
+    void offer_shouldDropAndCountRecords_ifQueueIsFullWithDropPolicy() {
+        LogRecordQueue queue = new LogRecordQueue();
+        queue.configure(2, QueueFullPolicy.DROP);
+
+        assertThat(queue.offer(newRecord())).isTrue();
+        assertThat(queue.offer(newRecord())).isTrue();
+        assertThat(queue.offer(newRecord())).isFalse();
+        assertThat(queue.getDroppedRecordCount()).isOne();
+
+        assertThat(queue.poll()).isNotNull();
+        assertThat(queue.offer(newRecord())).isTrue();
+        assertThat(queue.getDroppedRecordCount()).isOne();
+    }
+
+    @Test
+    void offer_shouldBlockUntilRecordIsPolled_ifQueueIsFullWithBlockPolicy() throws Exception {
+        LogRecordQueue queue = new LogRecordQueue();
+        queue.configure(1, QueueFullPolicy.BLOCK);
+        queue.offer(newRecord());
+
+        CompletableFuture<Boolean> offer = CompletableFuture.supplyAsync(() -> queue.offer(newRecord()));
+        Thread.sleep(100);
+        assertThat(offer).isNotDone();
+
+        assertThat(queue.poll()).isNotNull();
+        assertThat(offer.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queue.getDroppedRecordCount()).isZero();
+    }
+
+    @Test
+    void offer_shouldDropRecord_ifQueueIsClosedWhileBlocking() throws Exception {
+        LogRecordQueue queue = new LogRecordQueue();
+        queue.configure(1, QueueFullPolicy.BLOCK);
+        queue.offer(newRecord());
+
+        CompletableFuture<Boolean> offer = CompletableFuture.supplyAsync(() -> queue.offer(newRecord()));
+        Thread.sleep(100);
+        queue.close();
+
+        assertThat(offer.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(queue.getDroppedRecordCount()).isOne();
+    }
+
+    private LogRecord newRecord() {
+        return new LogRecord(null, LogLevel.INFO, System.currentTimeMillis(), Unpooled.EMPTY_BUFFER);
+    }
+
+}
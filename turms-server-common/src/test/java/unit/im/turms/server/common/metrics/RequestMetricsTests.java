@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.metrics;
+
+import im.turms.server.common.metrics.RequestMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+import static im.turms.server.common.metrics.RequestMetrics.METER_NAME_SUFFIX_FLOW_DURATION;
+import static im.turms.server.common.metrics.RequestMetrics.METER_NAME_SUFFIX_SUBSCRIBED;
+import static im.turms.server.common.metrics.RequestMetrics.TAG_STATUS;
+import static im.turms.server.common.metrics.RequestMetrics.TAG_STATUS_CANCELLED;
+import static im.turms.server.common.metrics.RequestMetrics.TAG_STATUS_COMPLETED;
+import static im.turms.server.common.metrics.RequestMetrics.TAG_STATUS_COMPLETED_EMPTY;
+import static im.turms.server.common.metrics.RequestMetrics.TAG_STATUS_ERROR;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class RequestMetricsTests {
+
+    private static final String NAME = "my.request";
+
+    @Test
+    void measure_shouldRecordOutcomes() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RequestMetrics metrics = new RequestMetrics(registry, NAME, Tags.of("type", "my-type"));
+
+        StepVerifier.create(metrics.measure(Mono.just(1)))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(metrics.measure(Mono.empty()))
+                .verifyComplete();
+        StepVerifier.create(metrics.measure(Mono.error(new IllegalStateException())))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(metrics.measure(Sinks.one().asMono()))
+                .expectSubscription()
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(registry.get(NAME + METER_NAME_SUFFIX_SUBSCRIBED).counter().count()).isEqualTo(4);
+        for (String status : new String[]{TAG_STATUS_COMPLETED, TAG_STATUS_COMPLETED_EMPTY, TAG_STATUS_ERROR, TAG_STATUS_CANCELLED}) {
+            Timer timer = registry.get(NAME + METER_NAME_SUFFIX_FLOW_DURATION)
+                    .tag("type", "my-type")
+                    .tag(TAG_STATUS, status)
+                    .timer();
+            assertThat(timer.count()).as(status).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void measure_shouldRecordLatency() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RequestMetrics metrics = new RequestMetrics(registry, NAME, Tags.empty());
+
+        StepVerifier.create(metrics.measure(Mono.delay(Duration.ofMillis(50))))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        Timer timer = registry.get(NAME + METER_NAME_SUFFIX_FLOW_DURATION)
+                .tag(TAG_STATUS, TAG_STATUS_COMPLETED)
+                .timer();
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+    }
+
+    @Test
+    void createEnumMap_shouldRegisterMetersForAllConstants() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        EnumMap<TimeUnit, RequestMetrics> map = RequestMetrics.createEnumMap(registry, NAME, TimeUnit.class, "unit");
+
+        assertThat(map).hasSize(TimeUnit.values().length);
+        assertThat(registry.get(NAME + METER_NAME_SUFFIX_SUBSCRIBED).counters())
+                .hasSize(TimeUnit.values().length);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.mongo.codec;
+
+import im.turms.server.common.mongo.codec.CompiledEntityCodec;
+import im.turms.server.common.mongo.codec.EntityCodec;
+import im.turms.server.common.mongo.codec.MongoCodecProvider;
+import im.turms.server.common.mongo.entity.annotation.Document;
+import im.turms.server.common.mongo.entity.annotation.Field;
+import im.turms.server.common.mongo.entity.annotation.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.codecs.BsonValueCodecProvider;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.IterableCodecProvider;
+import org.bson.codecs.MapCodecProvider;
+import org.bson.codecs.ValueCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class CompiledEntityCodecTests {
+
+    private static final CodecRegistry REGISTRY = newRegistry();
+
+    @Test
+    void encodeAndDecode_shouldBeEquivalentToEntityCodec_forConstructorEntity() {
+        ImmutableEntity entity = new ImmutableEntity(1L, "name", true, new Date(1000),
+                List.of(1L, 2L), Map.of("key", "value"), 3);
+
+        assertEquivalent(ImmutableEntity.class, entity);
+    }
+
+    @Test
+    void encodeAndDecode_shouldBeEquivalentToEntityCodec_forMutableEntity() {
+        MutableEntity entity = new MutableEntity();
+        entity.setId(1L);
+        entity.setName("name");
+        entity.setCount(3);
+        entity.setTags(List.of("a", "b"));
+
+        assertEquivalent(MutableEntity.class, entity);
+    }
+
+    @Test
+    void decode_shouldMatchFields_inAnyOrder() {
+        BsonDocument document = new BsonDocument()
+                .append("n", new BsonString("name"))
+                .append("t", BsonNull.VALUE)
+                .append("_id", new BsonInt64(1));
+        CompiledEntityCodec<MutableEntity> codec = new CompiledEntityCodec<>(REGISTRY, MutableEntity.class);
+
+        MutableEntity entity = decode(codec, document);
+
+        assertThat(entity.getId()).isEqualTo(1L);
+        assertThat(entity.getName()).isEqualTo("name");
+        assertThat(entity.getTags()).isNull();
+    }
+
+    private <T> void assertEquivalent(Class<T> clazz, T value) {
+        EntityCodec<T> reflectiveCodec = new EntityCodec<>(REGISTRY, clazz);
+        CompiledEntityCodec<T> compiledCodec = new CompiledEntityCodec<>(REGISTRY, clazz);
+
+        BsonDocument expectedDocument = encode(reflectiveCodec, value);
+        BsonDocument actualDocument = encode(compiledCodec, value);
+        assertThat(actualDocument).isEqualTo(expectedDocument);
+        assertThat(List.copyOf(actualDocument.keySet())).isEqualTo(List.copyOf(expectedDocument.keySet()));
+
+        T expectedValue = decode(reflectiveCodec, expectedDocument);
+        T actualValue = decode(compiledCodec, expectedDocument);
+        assertThat(actualValue).isEqualTo(expectedValue).isEqualTo(value);
+    }
+
+    private static <T> BsonDocument encode(Codec<T> codec, T value) {
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        return document;
+    }
+
+    private static <T> T decode(Codec<T> codec, BsonDocument document) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    private static CodecRegistry newRegistry() {
+        CodecRegistry commonCodecRegistry = CodecRegistries.fromProviders(
+                new ValueCodecProvider(),
+                new BsonValueCodecProvider(),
+                new DocumentCodecProvider(),
+                new MapCodecProvider(),
+                new IterableCodecProvider());
+        MongoCodecProvider mongoCodecProvider = new MongoCodecProvider();
+        CodecRegistry registry = CodecRegistries.fromRegistries(commonCodecRegistry,
+                CodecRegistries.fromProviders(mongoCodecProvider));
+        mongoCodecProvider.setRegistry(registry);
+        return registry;
+    }
+
+    @AllArgsConstructor
+    @Data
+    @Document("immutable")
+    public static final class ImmutableEntity {
+        @Id
+        private final Long id;
+        @Field("n")
+        private final String name;
+        @Field("a")
+        private final Boolean isActive;
+        @Field("d")
+        private final Date date;
+        @Field("ids")
+        private final List<Long> ids;
+        @Field("m")
+        private final Map<String, String> map;
+        @Field("c")
+        private final int count;
+    }
+
+    @Data
+    @Document("mutable")
+    @NoArgsConstructor
+    public static final class MutableEntity {
+        @Id
+        private Long id;
+        @Field("n")
+        private String name;
+        @Field("c")
+        private int count;
+        @Field("t")
+        private List<String> tags;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.mongo.operation;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import im.turms.server.common.mongo.exception.DuplicateKeyException;
+import im.turms.server.common.mongo.operation.GroupCommitInserter;
+import im.turms.server.common.mongo.operation.MongoOperationsSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class GroupCommitInserterTests {
+
+    @Test
+    void insert_shouldInsertInOneBatch_ifBatchIsFull() {
+        List<List<?>> batches = new ArrayList<>();
+        MongoOperationsSupport mongoClient = mockMongoClient(batches);
+        GroupCommitInserter<String> inserter = new GroupCommitInserter<>(mongoClient, 3,
+                10_000_000, new SimpleMeterRegistry(), "test");
+
+        Mono<Void> inserts = Mono.when(inserter.insert("1"), inserter.insert("2"), inserter.insert("3"));
+        StepVerifier.create(inserts)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertThat(batches).containsExactly(List.of("1", "2", "3"));
+        inserter.destroy();
+    }
+
+    @Test
+    void insert_shouldFlushBatch_afterMaxDelay() {
+        List<List<?>> batches = new ArrayList<>();
+        MongoOperationsSupport mongoClient = mockMongoClient(batches);
+        GroupCommitInserter<String> inserter = new GroupCommitInserter<>(mongoClient, 100,
+                1000, new SimpleMeterRegistry(), "test");
+
+        Mono<Void> inserts = Mono.when(inserter.insert("1"), inserter.insert("2"));
+        StepVerifier.create(inserts)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertThat(batches).containsExactly(List.of("1", "2"));
+        inserter.destroy();
+    }
+
+    @Test
+    void insert_shouldFailOnlyFailedInserts_ifBatchPartiallyFails() throws Exception {
+        int duplicateKeyErrorCode = 11000;
+        int documentValidationErrorCode = 121;
+        MongoBulkWriteException exception = new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+                List.of(new BulkWriteError(documentValidationErrorCode, "Document failed validation", new BsonDocument(), 3),
+                        new BulkWriteError(duplicateKeyErrorCode, "E11000 duplicate key error", new BsonDocument(), 1)),
+                null,
+                new ServerAddress());
+        MongoOperationsSupport mongoClient = mock(MongoOperationsSupport.class);
+        when(mongoClient.insertAllOfSameType(anyList(), anyBoolean()))
+                .thenReturn(Mono.error(exception));
+        GroupCommitInserter<String> inserter = new GroupCommitInserter<>(mongoClient, 5,
+                10_000_000, new SimpleMeterRegistry(), "test");
+
+        // Subscribe in order so that the index of each insert in the batch is known
+        List<CompletableFuture<Signal<Void>>> results = new ArrayList<>(5);
+        for (int i = 0; i < 5; i++) {
+            results.add(inserter.insert(String.valueOf(i)).materialize().toFuture());
+        }
+        List<Signal<Void>> signals = new ArrayList<>(5);
+        for (CompletableFuture<Signal<Void>> result : results) {
+            signals.add(result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertThat(signals.get(0).isOnComplete()).isTrue();
+        assertThat(signals.get(1).getThrowable()).isInstanceOf(DuplicateKeyException.class);
+        assertThat(signals.get(2).isOnComplete()).isTrue();
+        assertThat(signals.get(3).getThrowable()).isSameAs(exception);
+        assertThat(signals.get(4).isOnComplete()).isTrue();
+        inserter.destroy();
+    }
+
+    private MongoOperationsSupport mockMongoClient(List<List<?>> batches) {
+        MongoOperationsSupport mongoClient = mock(MongoOperationsSupport.class);
+        when(mongoClient.insertAllOfSameType(anyList(), anyBoolean()))
+                .thenAnswer(invocation -> {
+                    synchronized (batches) {
+                        batches.add(new ArrayList<>((List<?>) invocation.getArgument(0)));
+                    }
+                    return Mono.empty();
+                });
+        return mongoClient;
+    }
+
+}
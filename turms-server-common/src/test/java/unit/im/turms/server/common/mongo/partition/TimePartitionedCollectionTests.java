@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.mongo.partition;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.InsertOneOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.reactivestreams.client.ChangeStreamPublisher;
+import com.mongodb.reactivestreams.client.ListIndexesPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import im.turms.server.common.bo.common.DateRange;
+import im.turms.server.common.mongo.DomainFieldName;
+import im.turms.server.common.mongo.MongoContext;
+import im.turms.server.common.mongo.entity.MongoEntity;
+import im.turms.server.common.mongo.entity.annotation.Document;
+import im.turms.server.common.mongo.entity.annotation.Field;
+import im.turms.server.common.mongo.entity.annotation.Id;
+import im.turms.server.common.mongo.operation.TurmsMongoOperations;
+import im.turms.server.common.mongo.operation.option.Filter;
+import im.turms.server.common.mongo.operation.option.QueryOptions;
+import im.turms.server.common.mongo.partition.TimePartitionedCollection;
+import im.turms.server.common.mongo.partition.TimePartitioner;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class TimePartitionedCollectionTests {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final MongoEntity<Record> ENTITY = MongoContext.ENTITY_FACTORY.parse(Record.class);
+
+    private final TimePartitioner partitioner = new TimePartitioner("record", Record.Fields.DATE, 7);
+    private final TimePartitioner.Partition oldPartition = partitioner.getPartition(toMillis(2022, 3, 1));
+    private final TimePartitioner.Partition newPartition = partitioner.getPartition(oldPartition.end());
+
+    private final Map<String, MongoCollection<Record>> collections = new HashMap<>(4);
+    private final MongoCollection<Record> baseCollection = mockCollection("record");
+
+    @Test
+    void getPartitions_shouldOnlyReturnPartitionsInDateRange() {
+        TimePartitionedCollection<Record> collection = newCollection(false);
+        Filter filter = Filter.newBuilder(1)
+                .addBetweenIfNotNull(Record.Fields.DATE,
+                        DateRange.of(new Date(newPartition.start()), new Date(newPartition.start() + DAY)));
+
+        assertThat(collection.hasLegacyRecords()).isFalse();
+        assertThat(collection.getPartitions(filter, true))
+                .containsExactly(collections.get(newPartition.name()));
+    }
+
+    @Test
+    void getPartitions_shouldIncludeBaseCollectionAsOldestPartition_ifItHasLegacyRecords() {
+        TimePartitionedCollection<Record> collection = newCollection(true);
+        Filter filter = Filter.newBuilder(1)
+                .addBetweenIfNotNull(Record.Fields.DATE,
+                        DateRange.of(new Date(newPartition.start()), new Date(newPartition.start() + DAY)));
+
+        assertThat(collection.hasLegacyRecords()).isTrue();
+        assertThat(collection.getPartitions(filter, true))
+                .containsExactly(baseCollection, collections.get(newPartition.name()));
+        assertThat(collection.getPartitions(null, false))
+                .containsExactly(collections.get(newPartition.name()), collections.get(oldPartition.name()), baseCollection);
+    }
+
+    @Test
+    void find_shouldMergeSortedResultsOfOverlappingPartitions() {
+        TimePartitionedCollection<Record> collection = newCollection(true);
+        long oldStart = oldPartition.start();
+        long newStart = newPartition.start();
+        Map<MongoCollection<Record>, List<Record>> records = Map.of(
+                baseCollection, List.of(new Record(1L, new Date(oldStart + HOUR)), new Record(5L, new Date(newStart + 2 * HOUR))),
+                collections.get(oldPartition.name()), List.of(new Record(2L, new Date(oldStart + 2 * HOUR)), new Record(3L, new Date(oldStart + 3 * HOUR))),
+                collections.get(newPartition.name()), List.of(new Record(4L, new Date(newStart + HOUR)), new Record(6L, new Date(newStart + 3 * HOUR))));
+        List<QueryOptions> partitionOptions = new ArrayList<>(3);
+        QueryOptions options = QueryOptions.newBuilder(3)
+                .sort(true, Record.Fields.DATE, DomainFieldName.ID)
+                .skip(1)
+                .limit(4);
+
+        Flux<Long> ids = collection.find(null, options, (partition, queryOptions) -> {
+                    partitionOptions.add(queryOptions);
+                    return Flux.fromIterable(records.get(partition))
+                            .take(queryOptions.getLimit());
+                })
+                .map(Record::getId);
+
+        StepVerifier.create(ids)
+                .expectNext(2L, 3L, 4L, 5L)
+                .verifyComplete();
+        assertThat(partitionOptions)
+                .hasSize(3)
+                .allSatisfy(queryOptions -> {
+                    assertThat(queryOptions.getSkip()).isZero();
+                    assertThat(queryOptions.getLimit()).isEqualTo(5);
+                });
+    }
+
+    @Test
+    void find_shouldMergeResultsInDescendingOrder() {
+        TimePartitionedCollection<Record> collection = newCollection(true);
+        long oldStart = oldPartition.start();
+        long newStart = newPartition.start();
+        Map<MongoCollection<Record>, List<Record>> records = Map.of(
+                baseCollection, List.of(new Record(5L, new Date(newStart + 2 * HOUR)), new Record(1L, new Date(oldStart + HOUR))),
+                collections.get(oldPartition.name()), List.of(new Record(3L, new Date(oldStart + 3 * HOUR)), new Record(2L, new Date(oldStart + 2 * HOUR))),
+                collections.get(newPartition.name()), List.of(new Record(6L, new Date(newStart + 3 * HOUR)), new Record(4L, new Date(newStart + HOUR))));
+        QueryOptions options = QueryOptions.newBuilder(2)
+                .sort(false, Record.Fields.DATE)
+                .limit(3);
+
+        Flux<Long> ids = collection.find(null, options, (partition, queryOptions) -> Flux.fromIterable(records.get(partition)))
+                .map(Record::getId);
+
+        StepVerifier.create(ids)
+                .expectNext(6L, 5L, 4L)
+                .verifyComplete();
+    }
+
+    @Test
+    void find_shouldReject_ifSortFieldIsUnknown() {
+        TimePartitionedCollection<Record> collection = newCollection(false);
+        QueryOptions options = QueryOptions.newBuilder(1)
+                .sort(true, "unknown");
+
+        StepVerifier.create(collection.find(null, options, (partition, queryOptions) -> Flux.empty()))
+                .expectError(UnsupportedOperationException.class)
+                .verify();
+    }
+
+    @Test
+    void partitions_shouldBeSyncedBetweenNodes_ifCreatedOrDroppedByAnotherNode() {
+        Set<String> collectionNames = ConcurrentHashMap.newKeySet();
+        Map<String, List<Record>> records = new ConcurrentHashMap<>();
+        Sinks.Many<ChangeStreamDocument<org.bson.Document>> changeStream = Sinks.many().multicast().directBestEffort();
+        List<String> indexedPartitions = new ArrayList<>();
+        MongoDatabase database = mockDatabase(collectionNames, records, changeStream, indexedPartitions);
+        TurmsMongoOperations node1 = newMongoOperations(database);
+        TurmsMongoOperations node2 = newMongoOperations(database);
+        long now = System.currentTimeMillis();
+        TimePartitioner.Partition currentPartition = partitioner.getPartition(now);
+
+        // Created by node 1 and found by node 2 because the query reaches past the newest known partition
+        node1.insert(new Record(1L, new Date(now))).block();
+        assertThat(collectionNames).containsExactlyInAnyOrder("record", currentPartition.name());
+        StepVerifier.create(node2.countAll(Record.class))
+                .expectNext(1L)
+                .verifyComplete();
+
+        // Dropped by node 1 and forgotten by node 2,
+        // so a late insert of node 2 recreates the partition with indexes
+        StepVerifier.create(node1.dropPartitionsBefore(Record.class, new Date(currentPartition.end())))
+                .expectNext(List.of(currentPartition.name()))
+                .verifyComplete();
+        node2.insert(new Record(2L, new Date(now))).block();
+        assertThat(indexedPartitions).containsExactly(currentPartition.name(), currentPartition.name());
+        StepVerifier.create(node1.countAll(Record.class))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    private TurmsMongoOperations newMongoOperations(MongoDatabase database) {
+        MongoContext context = mock(MongoContext.class);
+        MongoCollection<Record> baseCollection = database.getCollection("record", Record.class);
+        when(context.getDatabase()).thenReturn(database);
+        when(context.getEntity(Record.class)).thenReturn(ENTITY);
+        when(context.getCollection(Record.class)).thenReturn(baseCollection);
+        TurmsMongoOperations operations = new TurmsMongoOperations(context);
+        operations.enableTimePartitioning(Record.class, Record.Fields.DATE, 7, Record::getDate).block();
+        return operations;
+    }
+
+    /**
+     * @return a database whose collections store the records in memory
+     */
+    private MongoDatabase mockDatabase(Set<String> collectionNames,
+                                       Map<String, List<Record>> records,
+                                       Sinks.Many<ChangeStreamDocument<org.bson.Document>> changeStream,
+                                       List<String> indexedPartitions) {
+        MongoDatabase database = mock(MongoDatabase.class);
+        collectionNames.add("record");
+        when(database.getName()).thenReturn("turms");
+        when(database.listCollectionNames())
+                .thenAnswer(invocation -> Flux.defer(() -> Flux.fromIterable(List.copyOf(collectionNames))));
+        when(database.createCollection(anyString()))
+                .thenAnswer(invocation -> Mono.fromRunnable(() -> collectionNames.add(invocation.getArgument(0))));
+        ChangeStreamPublisher<org.bson.Document> changeStreamPublisher = mock(ChangeStreamPublisher.class);
+        doAnswer(invocation -> {
+            changeStream.asFlux().subscribe((Subscriber<ChangeStreamDocument<org.bson.Document>>) invocation.getArgument(0));
+            return null;
+        }).when(changeStreamPublisher).subscribe(any());
+        when(database.watch(anyList())).thenReturn(changeStreamPublisher);
+        Map<String, MongoCollection<Record>> mockedCollections = new ConcurrentHashMap<>();
+        when(database.getCollection(anyString(), eq(Record.class))).thenAnswer(invocation -> {
+            String name = invocation.getArgument(0);
+            return mockedCollections.computeIfAbsent(name, key -> {
+                MongoCollection<Record> collection = mockCollection(name);
+                List<Record> recordsOfCollection = records.computeIfAbsent(name, k -> new CopyOnWriteArrayList<>());
+                ListIndexesPublisher<BsonDocument> indexes = mock(ListIndexesPublisher.class);
+                doAnswer(listInvocation -> {
+                    Flux.just(new BsonDocument("name", new BsonString("d_1"))
+                                    .append("key", new BsonDocument(Record.Fields.DATE, new BsonInt32(1))))
+                            .subscribe((Subscriber<BsonDocument>) listInvocation.getArgument(0));
+                    return null;
+                }).when(indexes).subscribe(any());
+                when(collection.listIndexes(BsonDocument.class)).thenReturn(indexes);
+                when(collection.createIndexes(anyList())).thenAnswer(indexInvocation -> Mono.fromRunnable(() -> {
+                    assertThat(collectionNames).contains(name);
+                    indexedPartitions.add(name);
+                }));
+                when(collection.insertOne(any(Record.class), any(InsertOneOptions.class)))
+                        .thenAnswer(insertInvocation -> Mono.fromRunnable(() -> {
+                            // Inserting into a dropped collection recreates it without indexes
+                            collectionNames.add(name);
+                            recordsOfCollection.add(insertInvocation.getArgument(0));
+                        }));
+                when(collection.countDocuments(any(Bson.class), any(CountOptions.class)))
+                        .thenAnswer(countInvocation -> Mono.fromCallable(() -> (long) recordsOfCollection.size()));
+                when(collection.drop()).thenAnswer(dropInvocation -> Mono.fromRunnable(() -> {
+                    collectionNames.remove(name);
+                    recordsOfCollection.clear();
+                    ChangeStreamDocument<org.bson.Document> event = mock(ChangeStreamDocument.class);
+                    when(event.getOperationType()).thenReturn(OperationType.DROP);
+                    when(event.getNamespace()).thenReturn(new MongoNamespace("turms", name));
+                    changeStream.tryEmitNext(event);
+                }));
+                return collection;
+            });
+        });
+        return database;
+    }
+
+    private TimePartitionedCollection<Record> newCollection(boolean hasLegacyRecords) {
+        when(baseCollection.countDocuments(any(Bson.class), any(CountOptions.class)))
+                .thenReturn(Mono.just(hasLegacyRecords ? 1L : 0L));
+        MongoDatabase database = mock(MongoDatabase.class);
+        List<String> names = List.of("record", oldPartition.name(), newPartition.name(), "user");
+        when(database.listCollectionNames()).thenReturn(Flux.fromIterable(names));
+        for (String name : names) {
+            MongoCollection<Record> collection = name.equals("record")
+                    ? baseCollection
+                    : mockCollection(name);
+            when(database.getCollection(eq(name), eq(Record.class))).thenReturn(collection);
+        }
+        TimePartitionedCollection<Record> collection = new TimePartitionedCollection<>(partitioner, ENTITY,
+                Record::getDate, database, baseCollection);
+        collection.loadPartitions().block();
+        return collection;
+    }
+
+    private MongoCollection<Record> mockCollection(String name) {
+        MongoCollection<Record> collection = mock(MongoCollection.class);
+        when(collection.getDocumentClass()).thenReturn(Record.class);
+        when(collection.getWriteConcern()).thenReturn(WriteConcern.ACKNOWLEDGED);
+        when(collection.withWriteConcern(any())).thenReturn(collection);
+        collections.put(name, collection);
+        return collection;
+    }
+
+    private static long toMillis(int year, int month, int day) {
+        return LocalDate.of(year, month, day)
+                .atStartOfDay(ZoneOffset.UTC)
+                .toInstant()
+                .toEpochMilli();
+    }
+
+    @Document("record")
+    public static final class Record {
+        @Id
+        private final Long id;
+        @Field(Fields.DATE)
+        private final Date date;
+
+        public Record(Long id, Date date) {
+            this.id = id;
+            this.date = date;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public static final class Fields {
+            public static final String DATE = "d";
+
+            private Fields() {
+            }
+        }
+    }
+
+}
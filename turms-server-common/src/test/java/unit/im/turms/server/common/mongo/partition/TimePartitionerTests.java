@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.mongo.partition;
+
+import im.turms.server.common.bo.common.DateRange;
+import im.turms.server.common.mongo.operation.option.Filter;
+import im.turms.server.common.mongo.partition.TimePartitioner;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class TimePartitionerTests {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final TimePartitioner partitioner = new TimePartitioner("message", "dd", 7);
+
+    @Test
+    void getPartition_shouldAlignToEpoch() {
+        long date = toMillis(2022, 3, 15) + 12345;
+        TimePartitioner.Partition partition = partitioner.getPartition(date);
+
+        assertThat(partition.start()).isEqualTo(partition.start() / (7 * DAY) * (7 * DAY));
+        assertThat(partition.start()).isLessThanOrEqualTo(date);
+        assertThat(partition.end()).isGreaterThan(date);
+        assertThat(partition.end() - partition.start()).isEqualTo(7 * DAY);
+        assertThat(partition.name()).startsWith("message_").endsWith("_7d");
+    }
+
+    @Test
+    void parsePartition_shouldReturnSamePartition_forGeneratedName() {
+        TimePartitioner.Partition partition = partitioner.getPartition(toMillis(2022, 3, 15));
+
+        assertThat(partitioner.parsePartition(partition.name())).isEqualTo(partition);
+    }
+
+    @Test
+    void parsePartition_shouldUseDaysInName_ifPartitionDaysChanged() {
+        TimePartitioner.Partition partition = partitioner.parsePartition("message_20220101_30d");
+
+        assertThat(partition).isNotNull();
+        assertThat(partition.start()).isEqualTo(toMillis(2022, 1, 1));
+        assertThat(partition.end()).isEqualTo(toMillis(2022, 1, 31));
+    }
+
+    @Test
+    void parsePartition_shouldReturnNull_forIrrelevantCollections() {
+        assertThat(partitioner.parsePartition("message")).isNull();
+        assertThat(partitioner.parsePartition("user_20220101_7d")).isNull();
+        assertThat(partitioner.parsePartition("message_2022_7d")).isNull();
+        assertThat(partitioner.parsePartition("message_20220101_0d")).isNull();
+    }
+
+    @Test
+    void getDateRange_shouldBeUnbounded_ifNoDateCondition() {
+        Filter filter = Filter.newBuilder(1)
+                .eq("tid", 1L);
+
+        assertThat(partitioner.getDateRange(filter)).containsExactly(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(partitioner.getDateRange(null)).containsExactly(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void getDateRange_shouldParseRangeConditions() {
+        long start = toMillis(2022, 1, 1);
+        long end = toMillis(2022, 2, 1);
+        Filter filter = Filter.newBuilder(1)
+                .addBetweenIfNotNull("dd", DateRange.of(new Date(start), new Date(end)));
+
+        assertThat(partitioner.getDateRange(filter)).containsExactly(start, end);
+    }
+
+    @Test
+    void getDateRange_shouldParseEqualityAndInConditions() {
+        long date = toMillis(2022, 1, 1);
+        BsonDocument eq = new BsonDocument("dd", new BsonDateTime(date));
+        BsonDocument in = new BsonDocument("dd", new BsonDocument("$in",
+                new BsonArray(List.of(new BsonDateTime(date + DAY), new BsonDateTime(date)))));
+        BsonDocument inWithNonDates = new BsonDocument("dd", new BsonDocument("$in",
+                new BsonArray(List.of(new BsonDateTime(date), new BsonInt64(date)))));
+
+        assertThat(partitioner.getDateRange(eq)).containsExactly(date, date + 1);
+        assertThat(partitioner.getDateRange(in)).containsExactly(date, date + DAY + 1);
+        assertThat(partitioner.getDateRange(inWithNonDates)).containsExactly(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void overlaps_shouldTreatEndAsExclusive() {
+        TimePartitioner.Partition partition = new TimePartitioner.Partition("p", 10, 20);
+
+        assertThat(partition.overlaps(0, 10)).isFalse();
+        assertThat(partition.overlaps(0, 11)).isTrue();
+        assertThat(partition.overlaps(19, 30)).isTrue();
+        assertThat(partition.overlaps(20, 30)).isFalse();
+        assertThat(partition.overlaps(Long.MIN_VALUE, Long.MAX_VALUE)).isTrue();
+    }
+
+    private static long toMillis(int year, int month, int day) {
+        return LocalDate.of(year, month, day)
+                .atStartOfDay(ZoneOffset.UTC)
+                .toInstant()
+                .toEpochMilli();
+    }
+
+}
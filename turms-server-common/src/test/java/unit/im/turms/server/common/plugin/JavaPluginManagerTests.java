@@ -27,12 +27,14 @@ import im.turms.server.common.property.TurmsProperties;
 import im.turms.server.common.property.TurmsPropertiesManager;
 import im.turms.server.common.property.env.common.PluginProperties;
 import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
 import util.JarUtil;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -54,6 +56,15 @@ class JavaPluginManagerTests {
                 List.of("plugin.properties"));
     }
 
+    private final List<PluginManager> managers = new ArrayList<>();
+
+    @AfterEach
+    void closePluginManagers() {
+        for (PluginManager manager : managers) {
+            manager.destroy();
+        }
+    }
+
     @Test
     void shouldLoadPluginWithPluginLoader() {
         MyExtensionPoint myExtensionPoint = getMyExtensionPoint();
@@ -135,6 +146,7 @@ class JavaPluginManagerTests {
                                 .build())
                         .build());
         PluginManager manager = new PluginManager(context, applicationContext, propertiesManager, Collections.emptySet());
+        managers.add(manager);
         return manager.getExtensionPoints(MyExtensionPoint.class).get(0);
     }
 
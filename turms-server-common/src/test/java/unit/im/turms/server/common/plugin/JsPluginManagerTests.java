@@ -25,16 +25,26 @@ import im.turms.server.common.plugin.PluginManager;
 import im.turms.server.common.plugin.script.ScriptExecutionException;
 import im.turms.server.common.property.TurmsProperties;
 import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.env.common.JsPluginProperties;
 import im.turms.server.common.property.env.common.PluginProperties;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
 import org.springframework.context.ApplicationContext;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -51,6 +61,15 @@ import static org.mockito.Mockito.when;
  */
 class JsPluginManagerTests {
 
+    private final List<PluginManager> managers = new ArrayList<>();
+
+    @AfterEach
+    void closePluginManagers() {
+        for (PluginManager manager : managers) {
+            manager.destroy();
+        }
+    }
+
     @Test
     void testBool_forPlainValue() {
         MyExtensionPointForJs extensionPoint = createExtensionPoint();
@@ -84,14 +103,16 @@ class JsPluginManagerTests {
 
     @Test
     void testLog() {
-        mockStatic(LoggerFactory.class);
-        Logger logger = mock(Logger.class);
-        when(logger.isEnabled(any())).thenReturn(true);
-        when(LoggerFactory.getLogger(anyString())).thenReturn(logger);
-        MyExtensionPointForJs extensionPoint = createExtensionPoint();
-        extensionPoint.testLog();
+        // Close the static mock so that the classes loaded by later tests get real loggers
+        try (MockedStatic<LoggerFactory> ignored = mockStatic(LoggerFactory.class)) {
+            Logger logger = mock(Logger.class);
+            when(logger.isEnabled(any())).thenReturn(true);
+            when(LoggerFactory.getLogger(anyString())).thenReturn(logger);
+            MyExtensionPointForJs extensionPoint = createExtensionPoint();
+            extensionPoint.testLog();
 
-        verify(logger, times(0)).info("A log from plugin.js");
+            verify(logger, times(0)).info("A log from plugin.js");
+        }
     }
 
     @Test
@@ -109,7 +130,73 @@ class JsPluginManagerTests {
         extensionPoint.testNotImplemented();
     }
 
+    @Test
+    void testTimeout_shouldInterruptInvocation() {
+        MyExtensionPointForJs extensionPoint = createExtensionPoint(new JsPluginProperties().toBuilder()
+                .invocationTimeoutMillis(100)
+                .build());
+        assertThatThrownBy(extensionPoint::testTimeout)
+                .isInstanceOf(ScriptExecutionException.class)
+                .hasMessageContaining("timed out");
+        assertThat(extensionPoint.testBool()).isTrue();
+    }
+
+    @Test
+    void testConcurrentInvocations_shouldUseMultipleContexts() throws InterruptedException {
+        MyExtensionPointForJs extensionPoint = createExtensionPoint(new JsPluginProperties().toBuilder()
+                .contextPoolSize(2)
+                .build());
+        int threadCount = 4;
+        int invocationCount = 1000;
+        AtomicInteger successCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            executor.execute(() -> {
+                for (int j = 0; j < invocationCount; j++) {
+                    if (extensionPoint.testBool()) {
+                        successCount.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+        assertThat(successCount).hasValue(threadCount * invocationCount);
+    }
+
+    @Test
+    void testBusyContexts_shouldQueueAsyncInvocationsAndRejectSyncInvocations_onNonBlockingThread() throws Exception {
+        MyExtensionPointForJs extensionPoint = createExtensionPoint(new JsPluginProperties().toBuilder()
+                .contextPoolSize(1)
+                .invocationTimeoutMillis(1000)
+                .build());
+        CompletableFuture<Void> busyInvocation = CompletableFuture.runAsync(() ->
+                assertThatThrownBy(extensionPoint::testTimeout).isInstanceOf(ScriptExecutionException.class));
+        // Wait for the invocation to hold the only context
+        Thread.sleep(200);
+
+        Mono<List<TurmsNotification>> queuedInvocation = Mono
+                .fromCallable(() -> extensionPoint.testNotification(List.of(TurmsNotification.newBuilder())))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofMillis(500));
+        StepVerifier.create(Mono.fromCallable(extensionPoint::testBool).subscribeOn(Schedulers.parallel()))
+                .expectErrorMatches(t -> t instanceof ScriptExecutionException
+                        && t.getMessage().contains("busy"))
+                .verify(Duration.ofMillis(500));
+
+        StepVerifier.create(queuedInvocation)
+                .expectNextMatches(notifications -> notifications.size() == 1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        busyInvocation.get(5, TimeUnit.SECONDS);
+        assertThat(extensionPoint.testBool()).isTrue();
+    }
+
     private MyExtensionPointForJs createExtensionPoint() {
+        return createExtensionPoint(new JsPluginProperties());
+    }
+
+    private MyExtensionPointForJs createExtensionPoint(JsPluginProperties jsPluginProperties) {
         ApplicationContext context = mock(ApplicationContext.class);
         TurmsApplicationContext applicationContext = mock(TurmsApplicationContext.class);
         when(applicationContext.getHome())
@@ -120,9 +207,11 @@ class JsPluginManagerTests {
                         .plugin(new PluginProperties().toBuilder()
                                 .enabled(true)
                                 .dir(".")
+                                .js(jsPluginProperties)
                                 .build())
                         .build());
         PluginManager manager = new PluginManager(context, applicationContext, propertiesManager, Collections.emptySet());
+        managers.add(manager);
         List<MyExtensionPointForJs> list = manager.getExtensionPoints(MyExtensionPointForJs.class);
         assertThat(list).hasSize(1);
         return list.get(0);
@@ -40,4 +40,6 @@ public interface MyExtensionPointForJs extends ExtensionPoint {
 
     void testNotImplemented();
 
+    void testTimeout();
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.proto;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import im.turms.common.model.bo.common.Int64Values;
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.server.common.constant.TurmsStatusCode;
+import im.turms.server.common.dto.ServiceResponse;
+import im.turms.server.common.proto.NotificationFactory;
+import im.turms.server.common.util.ProtoUtil;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class NotificationFactoryTests {
+
+    @Test
+    void createBuffer_shouldBeParsedToNotification_forResponseWithDataBuffer() throws InvalidProtocolBufferException {
+        long requestId = 123456789L;
+        String reason = "A reason with non-ASCII characters: 测试";
+        TurmsNotification.Data data = TurmsNotification.Data.newBuilder()
+                .setIds(Int64Values.newBuilder().addValues(100).addValues(200))
+                .build();
+        ByteBuf dataBuffer = ProtoUtil.getDirectByteBuffer(data);
+        ServiceResponse response = new ServiceResponse(null, TurmsStatusCode.OK, reason, dataBuffer);
+
+        ByteBuf buffer = NotificationFactory.createBuffer(response, requestId);
+        TurmsNotification expected = TurmsNotification.newBuilder()
+                .setRequestId(requestId)
+                .setCode(TurmsStatusCode.OK.getBusinessCode())
+                .setReason(reason)
+                .setData(data)
+                .build();
+        TurmsNotification notification = TurmsNotification.parseFrom(buffer.nioBuffer());
+
+        assertThat(notification).isEqualTo(expected);
+        assertThat(buffer.readableBytes()).isEqualTo(expected.getSerializedSize());
+        buffer.release();
+        assertThat(dataBuffer.refCnt()).isZero();
+    }
+
+    @Test
+    void createBuffer_shouldBeParsedToNotification_forResponseWithoutData() throws InvalidProtocolBufferException {
+        ServiceResponse response = new ServiceResponse(null, TurmsStatusCode.NO_CONTENT, null);
+
+        ByteBuf buffer = NotificationFactory.createBuffer(response, 1L);
+        TurmsNotification notification = TurmsNotification.parseFrom(buffer.nioBuffer());
+
+        assertThat(notification).isEqualTo(TurmsNotification.newBuilder()
+                .setRequestId(1L)
+                .setCode(TurmsStatusCode.NO_CONTENT.getBusinessCode())
+                .build());
+        buffer.release();
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.redis.command;
+
+import im.turms.server.common.redis.codec.TurmsRedisCodecAdapter;
+import im.turms.server.common.redis.command.TurmsCommandEncoder;
+import im.turms.server.common.util.ByteBufUtil;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.protocol.Command;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandArgsUtil;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.protocol.CustomKeyBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class TurmsCommandEncoderTests {
+
+    @Test
+    void encode_shouldCountScriptArgs_encodedAfterKeys() {
+        ByteBuf keysAndArgs = Unpooled.directBuffer();
+        CommandArgsUtil.writeRawLongArg(keysAndArgs, 1L);
+        CommandArgsUtil.writeRawLongArg(keysAndArgs, 2L);
+        CommandArgsUtil.writeRawBytesArg(keysAndArgs, "arg".getBytes(StandardCharsets.US_ASCII));
+        CommandArgs<ByteBuf, ByteBuf> args = new CommandArgs<>(TurmsRedisCodecAdapter.DEFAULT)
+                .addKey(Unpooled.copiedBuffer("sha", StandardCharsets.US_ASCII))
+                .add(2)
+                .addKey(ByteBufUtil.ensureByteBufRefCnfCorrect(new CustomKeyBuffer(keysAndArgs, 1)));
+        Command<ByteBuf, ByteBuf, Long> command =
+                new Command<>(CommandType.EVALSHA, new IntegerOutput<>(TurmsRedisCodecAdapter.DEFAULT), args);
+        EmbeddedChannel channel = new EmbeddedChannel(new TurmsCommandEncoder());
+
+        channel.writeOutbound(command);
+        ByteBuf encoded = channel.readOutbound();
+
+        String expected = "*6\r\n$7\r\nEVALSHA\r\n$3\r\nsha\r\n$1\r\n2\r\n"
+                + "$8\r\n\0\0\0\0\0\0\0\1\r\n"
+                + "$8\r\n\0\0\0\0\0\0\0\2\r\n"
+                + "$3\r\narg\r\n";
+        assertThat(encoded.toString(StandardCharsets.ISO_8859_1)).isEqualTo(expected);
+
+        encoded.release();
+        channel.finishAndReleaseAll();
+    }
+
+}
@@ -17,6 +17,7 @@
 
 package unit.im.turms.server.common.rpc.codec.response;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import im.turms.common.model.bo.common.Int64Values;
 import im.turms.common.model.dto.notification.TurmsNotification;
 import im.turms.server.common.constant.TurmsStatusCode;
@@ -30,7 +31,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 class ServiceResponseSerializerTests extends BaseCodecTest {
 
     @Test
-    void shouldGetTheSameRequest_afterWriteAndRead_forLegalRequest() {
+    void shouldGetTheSameRequest_afterWriteAndRead_forLegalRequest() throws InvalidProtocolBufferException {
         TurmsNotification.Data dataForRequester = TurmsNotification.Data.newBuilder()
                 .setIds(Int64Values.newBuilder().addValues(100).build())
                 .build();
@@ -41,7 +42,10 @@ class ServiceResponseSerializerTests extends BaseCodecTest {
 
         assertThat(actualRequest.code()).isEqualTo(expectedResponse.code());
         assertThat(actualRequest.reason()).isEqualTo(expectedResponse.reason());
-        assertThat(actualRequest.dataForRequester()).isEqualTo(expectedResponse.dataForRequester());
+        assertThat(actualRequest.dataForRequesterBuffer()).isNotNull();
+        TurmsNotification.Data actualData = TurmsNotification.Data
+                .parseFrom(actualRequest.dataForRequesterBuffer().nioBuffer());
+        assertThat(actualData).isEqualTo(expectedResponse.dataForRequester());
     }
 
 }
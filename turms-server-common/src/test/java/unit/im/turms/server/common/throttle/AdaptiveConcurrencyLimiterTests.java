@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.throttle;
+
+import im.turms.server.common.throttle.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author James Chen
+ */
+class AdaptiveConcurrencyLimiterTests {
+
+    private static final long WINDOW_MILLIS = 100;
+    private static final long WINDOW_NANOS = WINDOW_MILLIS * 1_000_000;
+
+    @Test
+    void shouldNotAcquire_ifLimitIsReached() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, WINDOW_MILLIS, 1.5);
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire(1)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(1)).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(10);
+
+        limiter.release();
+        assertThat(limiter.tryAcquire(1)).isTrue();
+    }
+
+    @Test
+    void shouldRejectLowPriorityRequestsFirst() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, WINDOW_MILLIS, 1.5);
+        for (int i = 0; i < 8; i++) {
+            assertThat(limiter.tryAcquire(0.8F)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(0.8F)).isFalse();
+        assertThat(limiter.tryAcquire(1)).isTrue();
+        limiter.acquire();
+        assertThat(limiter.getInFlight()).isEqualTo(10);
+        assertThat(limiter.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    void shouldDecreaseLimit_ifLatencyIncreases() {
+        int initialLimit = 100;
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, 1, 1000, WINDOW_MILLIS, 1.5);
+        long time = System.nanoTime();
+        // Establish the long-term latency
+        for (int i = 0; i < 3; i++) {
+            time = runWindow(limiter, time, initialLimit, 1_000_000);
+        }
+        int limit = limiter.getLimit();
+        assertThat(limit).isGreaterThanOrEqualTo(initialLimit);
+        // Requests start queueing
+        time = runWindow(limiter, time, initialLimit, 10_000_000);
+        runWindow(limiter, time, 1, 10_000_000);
+        assertThat(limiter.getLimit()).isLessThan(limit);
+    }
+
+    @Test
+    void shouldIncreaseLimit_ifLatencyIsStableAndLimitIsUsed() {
+        int initialLimit = 100;
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, 1, 1000, WINDOW_MILLIS, 1.5);
+        long time = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            time = runWindow(limiter, time, limiter.getLimit(), 1_000_000);
+        }
+        runWindow(limiter, time, 1, 1_000_000);
+        assertThat(limiter.getLimit()).isGreaterThan(initialLimit);
+    }
+
+    @Test
+    void shouldNotIncreaseLimit_ifLimitIsNotUsed() {
+        int initialLimit = 100;
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, 1, 1000, WINDOW_MILLIS, 1.5);
+        long time = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            time = runWindow(limiter, time, 10, 1_000_000);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(initialLimit);
+    }
+
+    /**
+     * Run the concurrent requests in a window, and
+     * the limit is updated with the window once the next window starts
+     *
+     * @return the end time of the window
+     */
+    private long runWindow(AdaptiveConcurrencyLimiter limiter, long startTime, int concurrency, long latencyNanos) {
+        for (int i = 0; i < concurrency; i++) {
+            assertThat(limiter.tryAcquire(1)).isTrue();
+        }
+        long endTime = startTime + WINDOW_NANOS;
+        // Release at the end of the window so that the requests fall into the same window
+        // and trigger the update of the last window
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(endTime - latencyNanos, endTime);
+        }
+        return endTime;
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.server.common.throttle;
+
+import im.turms.server.common.throttle.IpTokenBucketTable;
+import im.turms.server.common.throttle.TokenBucketContext;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * @author James Chen
+ */
+class IpTokenBucketTableTests {
+
+    private static final byte[] IPV4 = {127, 0, 0, 1};
+    private static final byte[] IPV6 = {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+
+    @Test
+    void constructor_shouldRoundUpSlotCountToPowerOfTwo() {
+        IpTokenBucketTable table = new IpTokenBucketTable(new TokenBucketContext(), 1000);
+        assertThat(table.getSlotCount()).isEqualTo(1024);
+    }
+
+    @Test
+    void shouldNotAcquire_ifNoTokensAndNoRefill() {
+        TokenBucketContext context = new TokenBucketContext();
+        context.setInitialTokens(0);
+        IpTokenBucketTable table = new IpTokenBucketTable(context, 16);
+        boolean acquired = table.tryAcquire(IPV4, System.currentTimeMillis());
+        assertThat(acquired).isFalse();
+    }
+
+    @Test
+    void shouldAcquire_ifTokensAreEnough() {
+        TokenBucketContext context = new TokenBucketContext();
+        context.setCapacity(1);
+        context.setInitialTokens(1);
+        IpTokenBucketTable table = new IpTokenBucketTable(context, 16);
+        long time = System.currentTimeMillis();
+        assertThat(table.tryAcquire(IPV4, time)).isTrue();
+        assertThat(table.tryAcquire(IPV4, time)).isFalse();
+        assertThat(table.tryAcquire(IPV6, time)).isTrue();
+    }
+
+    @Test
+    void shouldAcquire_afterRefill() {
+        int tokensPerPeriod = 10;
+        int refillIntervalMillis = 1;
+
+        TokenBucketContext context = new TokenBucketContext();
+        context.setTokensPerPeriod(tokensPerPeriod);
+        context.setCapacity(tokensPerPeriod);
+        context.setInitialTokens(tokensPerPeriod);
+        context.setRefillIntervalMillis(refillIntervalMillis);
+        IpTokenBucketTable table = new IpTokenBucketTable(context, 16);
+        long time = System.currentTimeMillis();
+        drain(table, IPV6, time);
+        time += refillIntervalMillis;
+        boolean acquired;
+        for (int i = 0; i < tokensPerPeriod; i++) {
+            acquired = table.tryAcquire(IPV6, time);
+            assertThat(acquired).isTrue();
+        }
+        acquired = table.tryAcquire(IPV6, time);
+        assertThat(acquired).isFalse();
+    }
+
+    @Test
+    void shouldReclaimSlots_ifTableIsFull() {
+        TokenBucketContext context = new TokenBucketContext();
+        context.setCapacity(1);
+        context.setInitialTokens(1);
+        IpTokenBucketTable table = new IpTokenBucketTable(context, 8);
+        long time = System.currentTimeMillis();
+        // Far more IPs than slots
+        for (int i = 0; i < 1000; i++) {
+            byte[] ip = {10, 0, (byte) (i >> 8), (byte) i};
+            assertThat(table.tryAcquire(ip, time)).isTrue();
+        }
+    }
+
+    @Test
+    void shouldReclaimIdleSlotsFirst_ifTableIsFull() {
+        TokenBucketContext context = new TokenBucketContext();
+        context.setCapacity(1);
+        context.setInitialTokens(1);
+        context.setTokensPerPeriod(1);
+        context.setRefillIntervalMillis(1);
+        IpTokenBucketTable table = new IpTokenBucketTable(context, 8);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < table.getSlotCount(); i++) {
+            table.tryAcquire(new byte[]{10, 0, 0, (byte) i}, time);
+        }
+        // The buckets of the IPs above have been refilled, so they are idle
+        time += 10;
+        drain(table, IPV4, time);
+        for (int i = 0; i < table.getSlotCount() - 1; i++) {
+            assertThat(table.tryAcquire(new byte[]{10, 0, 1, (byte) i}, time)).isTrue();
+            // The frequent client keeps being rate limited
+            // because its slot isn't reclaimed
+            assertThat(table.tryAcquire(IPV4, time)).isFalse();
+        }
+    }
+
+    @Test
+    void tryReclaim_shouldNotResetBucket() {
+        TokenBucketContext context = new TokenBucketContext();
+        context.setCapacity(1);
+        context.setInitialTokens(1);
+        IpTokenBucketTable table = new IpTokenBucketTable(context, 16);
+        long time = System.currentTimeMillis();
+        drain(table, IPV4, time);
+        table.tryReclaim(IPV4, time);
+        assertThat(table.tryAcquire(IPV4, time)).isFalse();
+    }
+
+    @Test
+    void tryAcquire_shouldThrow_forInvalidIp() {
+        IpTokenBucketTable table = new IpTokenBucketTable(new TokenBucketContext(), 16);
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> table.tryAcquire(new byte[]{1, 2, 3}, System.currentTimeMillis()));
+    }
+
+    private void drain(IpTokenBucketTable table, byte[] ip, long time) {
+        boolean acquired;
+        do {
+            acquired = table.tryAcquire(ip, time);
+        } while (acquired);
+    }
+
+}
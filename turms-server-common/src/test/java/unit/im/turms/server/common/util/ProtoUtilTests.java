@@ -18,12 +18,20 @@
 package unit.im.turms.server.common.util;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import im.turms.common.model.dto.notification.TurmsNotification;
+import im.turms.common.model.dto.request.TurmsRequest;
 import im.turms.common.model.dto.request.message.CreateMessageRequest;
 import im.turms.server.common.util.ProtoUtil;
 import io.netty.buffer.ByteBuf;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -48,4 +56,82 @@ class ProtoUtilTests {
         assertThat(parsedRequest).isEqualTo(request);
     }
 
-}
\ No newline at end of file
+    @Test
+    void getRelayedRequestNotificationBuffer_shouldBeParsedToNotificationWithOriginalRequest()
+            throws InvalidProtocolBufferException {
+        long requesterId = Long.MAX_VALUE - 1;
+        TurmsRequest request = TurmsRequest
+                .newBuilder()
+                .setRequestId(123)
+                .setCreateMessageRequest(CreateMessageRequest
+                        .newBuilder()
+                        .setRecipientId(456)
+                        .setText("Test Text"))
+                .build();
+        ByteBuf requestBuffer = ProtoUtil.getDirectByteBuffer(request);
+        ByteBuf notificationBuffer = ProtoUtil.getRelayedRequestNotificationBuffer(requesterId, requestBuffer);
+        TurmsNotification expected = TurmsNotification
+                .newBuilder()
+                .setRequesterId(requesterId)
+                .setRelayedRequest(request)
+                .build();
+        TurmsNotification notification = TurmsNotification.parseFrom(notificationBuffer.nioBuffer());
+
+        assertThat(notification).isEqualTo(expected);
+        assertThat(notificationBuffer.readableBytes()).isEqualTo(expected.getSerializedSize());
+
+        notificationBuffer.release();
+        assertThat(requestBuffer.refCnt()).isEqualTo(1);
+        requestBuffer.release();
+    }
+
+    @Test
+    void getRelayedRequestNotificationBuffer_shouldBeDecodedToOriginalRequest_byDecoderReplacingEmbeddedMessages()
+            throws IOException {
+        TurmsRequest request = TurmsRequest
+                .newBuilder()
+                .setRequestId(123)
+                .setCreateMessageRequest(CreateMessageRequest
+                        .newBuilder()
+                        .setMessageId(789)
+                        .setRecipientId(456)
+                        .setDeliveryDate(100)
+                        .setText("Test Text")
+                        .addRecords(ByteString.copyFrom(new byte[]{1, 2, 3})))
+                .build();
+        ByteBuf requestBuffer = ProtoUtil.getDirectByteBuffer(request);
+        ByteBuf notificationBuffer = ProtoUtil.getRelayedRequestNotificationBuffer(1, requestBuffer);
+        byte[] notificationBytes = new byte[notificationBuffer.readableBytes()];
+        notificationBuffer.getBytes(notificationBuffer.readerIndex(), notificationBytes);
+
+        // Decode like ts-proto, which assigns the last occurrence of an embedded message
+        // instead of merging all occurrences as the Java runtime does
+        List<byte[]> relayedRequests =
+                getLengthDelimitedFields(notificationBytes, TurmsNotification.RELAYED_REQUEST_FIELD_NUMBER);
+        assertThat(relayedRequests).hasSize(1);
+        List<byte[]> createMessageRequests =
+                getLengthDelimitedFields(relayedRequests.get(0), TurmsRequest.CREATE_MESSAGE_REQUEST_FIELD_NUMBER);
+        assertThat(createMessageRequests).hasSize(1);
+        assertThat(CreateMessageRequest.parseFrom(createMessageRequests.get(createMessageRequests.size() - 1)))
+                .isEqualTo(request.getCreateMessageRequest());
+
+        notificationBuffer.release();
+        requestBuffer.release();
+    }
+
+    private List<byte[]> getLengthDelimitedFields(byte[] message, int fieldNumber) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(message);
+        List<byte[]> fields = new ArrayList<>();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == fieldNumber
+                    && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                fields.add(input.readByteArray());
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return fields;
+    }
+
+}
@@ -40,4 +40,9 @@ class MyPlugin extends TurmsExtension {
     }
 
     // testNotImplemented()
+
+    testTimeout() {
+        while (true) {
+        }
+    }
 }
\ No newline at end of file
@@ -25,6 +25,13 @@ public final class MetricsConstant {
     private MetricsConstant() {
     }
 
+    // Client Request
+
+    public static final String CLIENT_REQUEST_CONCURRENCY_LIMIT_NAME = "turms.client.request.concurrency.limit";
+    public static final String CLIENT_REQUEST_CONCURRENCY_IN_FLIGHT_NAME = "turms.client.request.concurrency.in_flight";
+    public static final String CLIENT_REQUEST_SHED_NAME = "turms.client.request.shed";
+    public static final String CLIENT_REQUEST_SHED_TAG_PRIORITY = "priority";
+
     // User
 
     public static final String REGISTERED_USERS_COUNTER_NAME = "user.registered";
@@ -38,5 +45,8 @@ public final class MetricsConstant {
     // Message
 
     public static final String SENT_MESSAGES_COUNTER_NAME = "message.sent";
+    public static final String MESSAGE_PERSISTENCE_METRICS_NAME = "message.persistence";
+    public static final String EXPIRED_MESSAGES_DELETED_COUNTER_NAME = "message.expired.deleted";
+    public static final String EXPIRED_MESSAGES_CLEANUP_LAG_NAME = "message.expired.cleanup.lag";
 
 }
@@ -19,6 +19,7 @@ package im.turms.service.plugin.extension;
 
 import im.turms.server.common.plugin.ExtensionPoint;
 import im.turms.service.workflow.access.servicerequest.dto.ClientRequest;
+import io.netty.buffer.ByteBuf;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
@@ -28,6 +29,20 @@ import javax.validation.constraints.NotNull;
  */
 public interface ClientRequestTransformer extends ExtensionPoint {
 
+    /**
+     * Called with the encoded TurmsRequest before {@link #transform(ClientRequest)}
+     * so that the extension can inspect the raw bytes and tell whether it needs to transform the request.
+     * If no extension needs to, {@link #transform(ClientRequest)} won't be called, and the original request buffer
+     * can be relayed to recipients without encoding the request again.
+     *
+     * @param requestBuffer the encoded TurmsRequest, which should only be read with absolute indexes
+     *                      and must not be retained because it will be released after the request is handled
+     * @return true if {@link #transform(ClientRequest)} needs to be called for the request
+     */
+    default boolean shouldTransform(@NotNull ByteBuf requestBuffer) {
+        return true;
+    }
+
     /**
      * @return the returned {@link ClientRequest} will be passed to downstream.
      */
@@ -19,6 +19,7 @@ import java.util.List;
 public class RedisConfig extends CommonRedisConfig {
 
     private final TurmsRedisClientManager sequenceIdRedisClientManager;
+    private final TurmsRedisClientManager unreadMessageCountRedisClientManager;
 
     protected RedisConfig(TurmsPropertiesManager turmsPropertiesManager) {
         super(turmsPropertiesManager.getLocalProperties().getService().getRedis(),
@@ -32,15 +33,30 @@ public class RedisConfig extends CommonRedisConfig {
         if (sequenceIdRedisClientManager != null) {
             registerClientManagers(List.of(sequenceIdRedisClientManager));
         }
+        unreadMessageCountRedisClientManager = serviceProperties.getConversation().getUnreadMessageCount().isEnabled()
+                ? newUnreadMessageCountRedisClientManager(serviceProperties.getRedis().getUnreadMessageCount())
+                : null;
+        if (unreadMessageCountRedisClientManager != null) {
+            registerClientManagers(List.of(unreadMessageCountRedisClientManager));
+        }
     }
 
     public static TurmsRedisClientManager newSequenceIdRedisClientManager(RedisProperties properties) {
         return new TurmsRedisClientManager(properties, RedisCodecContext.builder().build());
     }
 
+    public static TurmsRedisClientManager newUnreadMessageCountRedisClientManager(RedisProperties properties) {
+        return new TurmsRedisClientManager(properties, RedisCodecContext.builder().build());
+    }
+
     @Bean
     public TurmsRedisClientManager sequenceIdRedisClientManager() {
         return sequenceIdRedisClientManager;
     }
 
+    @Bean
+    public TurmsRedisClientManager unreadMessageCountRedisClientManager() {
+        return unreadMessageCountRedisClientManager;
+    }
+
 }
\ No newline at end of file
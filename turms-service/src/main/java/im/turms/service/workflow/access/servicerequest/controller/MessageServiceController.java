@@ -46,6 +46,7 @@ import im.turms.service.workflow.access.servicerequest.dto.RequestHandlerResult;
 import im.turms.service.workflow.access.servicerequest.dto.RequestHandlerResultFactory;
 import im.turms.service.workflow.dao.domain.message.Message;
 import im.turms.service.workflow.service.impl.conversation.ConversationService;
+import im.turms.service.workflow.service.impl.conversation.UnreadMessageCountService;
 import im.turms.service.workflow.service.impl.message.MessageService;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Controller;
@@ -76,16 +77,19 @@ public class MessageServiceController {
     private final PageUtil pageUtil;
     private final MessageService messageService;
     private final ConversationService conversationService;
+    private final UnreadMessageCountService unreadMessageCountService;
 
     public MessageServiceController(
             Node node,
             PageUtil pageUtil,
             MessageService messageService,
-            ConversationService conversationService) {
+            ConversationService conversationService,
+            UnreadMessageCountService unreadMessageCountService) {
         this.messageService = messageService;
         this.node = node;
         this.pageUtil = pageUtil;
         this.conversationService = conversationService;
+        this.unreadMessageCountService = unreadMessageCountService;
     }
 
     @ServiceRequestMapping(CREATE_MESSAGE_REQUEST)
@@ -231,28 +235,11 @@ public class MessageServiceController {
                                 MessageFromKey senderKey = new MessageFromKey(message.getIsGroupMessage(), targetId);
                                 conversationWithMessagesMap.put(senderKey, message);
                             }
-                            List<Mono<MessagesWithTotal>> messagesWithTotalMonos = new ArrayList<>(conversationWithMessagesMap.size());
-                            for (Map.Entry<MessageFromKey, Collection<Message>> entry : conversationWithMessagesMap.asMap().entrySet()) {
-                                MessageFromKey senderKey = entry.getKey();
-                                Mono<MessagesWithTotal> messagesWithTotalMono = messageService.countMessages(
-                                                null,
-                                                senderKey.isGroupMessage(),
-                                                null,
-                                                Set.of(senderKey.fromId()),
-                                                Set.of(clientRequest.userId()),
-                                                dateRange,
-                                                null)
-                                        .map(total -> MessagesWithTotal.newBuilder()
-                                                .setTotal(total.intValue())
-                                                .setIsGroupMessage(senderKey.isGroupMessage())
-                                                .setFromId(senderKey.fromId())
-                                                .addAllMessages(
-                                                        Collections2.transform(messages, m -> ProtoModelConvertor.message2proto(m).build()))
-                                                .build());
-                                messagesWithTotalMonos.add(messagesWithTotalMono);
-                            }
-                            dataMono = Flux.merge(messagesWithTotalMonos)
-                                    .collect(CollectorUtil.toList(messagesWithTotalMonos.size()))
+                            Map<MessageFromKey, Collection<Message>> conversationWithMessages = conversationWithMessagesMap.asMap();
+                            Mono<List<MessagesWithTotal>> messagesWithTotalsMono = unreadMessageCountService.isEnabled()
+                                    ? queryMessagesWithUnreadCount(userId, conversationWithMessages)
+                                    : countMessagesWithTotal(userId, dateRange, conversationWithMessages);
+                            dataMono = messagesWithTotalsMono
                                     .map(messagesWithTotals -> {
                                         MessagesWithTotalList.Builder messagesWithTotalList = MessagesWithTotalList.newBuilder();
                                         messagesWithTotalList.addAllMessagesWithTotalList(messagesWithTotals);
@@ -289,6 +276,55 @@ public class MessageServiceController {
         };
     }
 
+    /**
+     * Looks up the unread message counts of all conversations in one round trip
+     */
+    private Mono<List<MessagesWithTotal>> queryMessagesWithUnreadCount(
+            Long userId,
+            Map<MessageFromKey, Collection<Message>> conversationWithMessages) {
+        return unreadMessageCountService.queryUnreadMessageCounts(userId, conversationWithMessages.keySet())
+                .map(counts -> {
+                    List<MessagesWithTotal> messagesWithTotals = new ArrayList<>(conversationWithMessages.size());
+                    for (Map.Entry<MessageFromKey, Collection<Message>> entry : conversationWithMessages.entrySet()) {
+                        MessageFromKey senderKey = entry.getKey();
+                        Long total = counts.get(senderKey);
+                        messagesWithTotals.add(toMessagesWithTotal(senderKey, total == null ? 0 : total, entry.getValue()));
+                    }
+                    return messagesWithTotals;
+                });
+    }
+
+    private Mono<List<MessagesWithTotal>> countMessagesWithTotal(
+            Long userId,
+            DateRange dateRange,
+            Map<MessageFromKey, Collection<Message>> conversationWithMessages) {
+        List<Mono<MessagesWithTotal>> messagesWithTotalMonos = new ArrayList<>(conversationWithMessages.size());
+        for (Map.Entry<MessageFromKey, Collection<Message>> entry : conversationWithMessages.entrySet()) {
+            MessageFromKey senderKey = entry.getKey();
+            Mono<MessagesWithTotal> messagesWithTotalMono = messageService.countMessages(
+                            null,
+                            senderKey.isGroupMessage(),
+                            null,
+                            Set.of(senderKey.fromId()),
+                            Set.of(userId),
+                            dateRange,
+                            null)
+                    .map(total -> toMessagesWithTotal(senderKey, total, entry.getValue()));
+            messagesWithTotalMonos.add(messagesWithTotalMono);
+        }
+        return Flux.merge(messagesWithTotalMonos)
+                .collect(CollectorUtil.toList(messagesWithTotalMonos.size()));
+    }
+
+    private MessagesWithTotal toMessagesWithTotal(MessageFromKey senderKey, long total, Collection<Message> messages) {
+        return MessagesWithTotal.newBuilder()
+                .setTotal((int) total)
+                .setIsGroupMessage(senderKey.isGroupMessage())
+                .setFromId(senderKey.fromId())
+                .addAllMessages(Collections2.transform(messages, m -> ProtoModelConvertor.message2proto(m).build()))
+                .build();
+    }
+
     @ServiceRequestMapping(UPDATE_MESSAGE_REQUEST)
     public ClientRequestHandler handleUpdateMessageRequest() {
         return clientRequest -> {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.service.workflow.access.servicerequest.dispatcher;
+
+import im.turms.common.model.dto.request.TurmsRequest;
+
+import javax.annotation.Nullable;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.CREATE_MESSAGE_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.CREATE_SESSION_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.DELETE_SESSION_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.QUERY_CONVERSATIONS_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.QUERY_MESSAGES_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.QUERY_NEARBY_USERS_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.QUERY_USER_PROFILE_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.UPDATE_TYPING_STATUS_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.UPDATE_USER_LOCATION_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.UPDATE_USER_ONLINE_STATUS_REQUEST;
+import static im.turms.common.model.dto.request.TurmsRequest.KindCase.UPDATE_USER_REQUEST;
+
+/**
+ * The priority of client requests used to decide which requests to reject first when overloaded
+ *
+ * @author James Chen
+ */
+public enum RequestPriority {
+    /**
+     * Never rejected because of the concurrency limit
+     */
+    CRITICAL,
+    /**
+     * Rejected once the concurrency limit is reached
+     */
+    NORMAL,
+    /**
+     * Rejected first because clients can retry them later
+     * without affecting the core functions
+     */
+    LOW;
+
+    private static final Map<TurmsRequest.KindCase, RequestPriority> TYPE_TO_PRIORITY;
+
+    static {
+        Map<TurmsRequest.KindCase, RequestPriority> map = new EnumMap<>(TurmsRequest.KindCase.class);
+        for (TurmsRequest.KindCase type : TurmsRequest.KindCase.values()) {
+            map.put(type, NORMAL);
+        }
+        map.put(CREATE_SESSION_REQUEST, CRITICAL);
+        map.put(DELETE_SESSION_REQUEST, CRITICAL);
+        map.put(CREATE_MESSAGE_REQUEST, CRITICAL);
+        map.put(UPDATE_USER_ONLINE_STATUS_REQUEST, CRITICAL);
+
+        map.put(QUERY_CONVERSATIONS_REQUEST, LOW);
+        map.put(QUERY_MESSAGES_REQUEST, LOW);
+        map.put(QUERY_NEARBY_USERS_REQUEST, LOW);
+        map.put(QUERY_USER_PROFILE_REQUEST, LOW);
+        map.put(UPDATE_TYPING_STATUS_REQUEST, LOW);
+        map.put(UPDATE_USER_LOCATION_REQUEST, LOW);
+        map.put(UPDATE_USER_REQUEST, LOW);
+        TYPE_TO_PRIORITY = map;
+    }
+
+    public static RequestPriority get(@Nullable TurmsRequest.KindCase type) {
+        return type == null ? NORMAL : TYPE_TO_PRIORITY.get(type);
+    }
+
+}
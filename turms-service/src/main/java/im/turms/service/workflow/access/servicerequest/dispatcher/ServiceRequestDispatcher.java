@@ -30,10 +30,14 @@ import im.turms.server.common.healthcheck.ServerStatusManager;
 import im.turms.server.common.lang.ByteArrayWrapper;
 import im.turms.server.common.logging.core.logger.Logger;
 import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.metrics.RequestMetrics;
 import im.turms.server.common.plugin.PluginManager;
 import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.env.service.env.clientapi.ClientApiProperties;
+import im.turms.server.common.property.env.service.env.clientapi.ConcurrencyLimitProperties;
 import im.turms.server.common.rpc.service.IServiceRequestDispatcher;
 import im.turms.server.common.service.blocklist.BlocklistService;
+import im.turms.server.common.throttle.AdaptiveConcurrencyLimiter;
 import im.turms.server.common.tracing.TracingCloseableContext;
 import im.turms.server.common.tracing.TracingContext;
 import im.turms.server.common.util.ProtoUtil;
@@ -45,6 +49,11 @@ import im.turms.service.workflow.access.servicerequest.dto.RequestHandlerResult;
 import im.turms.service.workflow.access.servicerequest.dto.RequestHandlerResultFactory;
 import im.turms.service.workflow.access.servicerequest.dto.ServiceResponseFactory;
 import im.turms.service.workflow.service.impl.message.OutboundMessageService;
+import im.turms.service.workflow.service.impl.statistics.MetricsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import io.netty.buffer.ByteBuf;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
@@ -52,7 +61,9 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
 import java.util.EnumMap;
@@ -64,6 +75,10 @@ import static im.turms.common.model.dto.request.TurmsRequest.KindCase.DELETE_SES
 import static im.turms.common.model.dto.request.TurmsRequest.KindCase.KIND_NOT_SET;
 import static im.turms.server.common.constant.CommonMetricsConstant.CLIENT_REQUEST_NAME;
 import static im.turms.server.common.constant.CommonMetricsConstant.CLIENT_REQUEST_TAG_TYPE;
+import static im.turms.service.constant.MetricsConstant.CLIENT_REQUEST_CONCURRENCY_IN_FLIGHT_NAME;
+import static im.turms.service.constant.MetricsConstant.CLIENT_REQUEST_CONCURRENCY_LIMIT_NAME;
+import static im.turms.service.constant.MetricsConstant.CLIENT_REQUEST_SHED_NAME;
+import static im.turms.service.constant.MetricsConstant.CLIENT_REQUEST_SHED_TAG_PRIORITY;
 
 /**
  * @author James Chen
@@ -73,6 +88,9 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ServiceRequestDispatcher.class);
 
+    private static final ServiceResponse RESPONSE_OVERLOADED =
+            ServiceResponseFactory.get(TurmsStatusCode.SERVER_UNAVAILABLE, "The server is overloaded");
+
     private final ApiLoggingContext apiLoggingContext;
     private final BlocklistService blocklistService;
     private final ServerStatusManager serverStatusManager;
@@ -80,10 +98,24 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
     private final PluginManager pluginManager;
 
     private final Map<TurmsRequest.KindCase, ClientRequestHandler> router;
+    private final EnumMap<TurmsRequest.KindCase, RequestMetrics> requestTypeToMetrics =
+            RequestMetrics.createEnumMap(Metrics.globalRegistry,
+                    CLIENT_REQUEST_NAME,
+                    TurmsRequest.KindCase.class,
+                    CLIENT_REQUEST_TAG_TYPE);
+
+    /**
+     * Null if the concurrency limit is disabled
+     */
+    @Nullable
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final float lowPriorityLimitRatio;
+    private final EnumMap<RequestPriority, Counter> priorityToShedCounter;
 
     public ServiceRequestDispatcher(ApiLoggingContext apiLoggingContext,
                                     ApplicationContext context,
                                     BlocklistService blocklistService,
+                                    MetricsService metricsService,
                                     ServerStatusManager serverStatusManager,
                                     OutboundMessageService outboundMessageService,
                                     PluginManager pluginManager,
@@ -93,14 +125,38 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
         this.serverStatusManager = serverStatusManager;
         this.outboundMessageService = outboundMessageService;
         this.pluginManager = pluginManager;
-        Set<TurmsRequest.KindCase> disabledEndpoints =
-                turmsPropertiesManager.getLocalProperties().getService().getClientApi().getDisabledEndpoints();
+        ClientApiProperties clientApiProperties = turmsPropertiesManager.getLocalProperties().getService().getClientApi();
+        Set<TurmsRequest.KindCase> disabledEndpoints = clientApiProperties.getDisabledEndpoints();
         router = getMappings((ConfigurableApplicationContext) context, disabledEndpoints);
         for (TurmsRequest.KindCase kindCase : TurmsRequest.KindCase.values()) {
             if (!router.containsKey(kindCase) && kindCase != KIND_NOT_SET && !isRequestForGateway(kindCase)) {
                 throw new IllegalStateException("No client request handler for the request type: " + kindCase.name());
             }
         }
+        ConcurrencyLimitProperties concurrencyLimitProperties = clientApiProperties.getConcurrencyLimit();
+        lowPriorityLimitRatio = concurrencyLimitProperties.getLowPriorityLimitRatio();
+        MeterRegistry registry = metricsService.getRegistry();
+        priorityToShedCounter = new EnumMap<>(RequestPriority.class);
+        for (RequestPriority priority : RequestPriority.values()) {
+            priorityToShedCounter.put(priority, Counter.builder(CLIENT_REQUEST_SHED_NAME)
+                    .tag(CLIENT_REQUEST_SHED_TAG_PRIORITY, priority.name())
+                    .register(registry));
+        }
+        if (concurrencyLimitProperties.isEnabled()) {
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                    concurrencyLimitProperties.getInitialLimit(),
+                    concurrencyLimitProperties.getMinLimit(),
+                    concurrencyLimitProperties.getMaxLimit(),
+                    concurrencyLimitProperties.getSampleWindowMillis(),
+                    concurrencyLimitProperties.getLatencyTolerance());
+            Gauge.builder(CLIENT_REQUEST_CONCURRENCY_LIMIT_NAME, limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .register(registry);
+            Gauge.builder(CLIENT_REQUEST_CONCURRENCY_IN_FLIGHT_NAME, limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .register(registry);
+            concurrencyLimiter = limiter;
+        } else {
+            concurrencyLimiter = null;
+        }
     }
 
     private Map<TurmsRequest.KindCase, ClientRequestHandler> getMappings(ConfigurableApplicationContext context,
@@ -133,6 +189,8 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
      * turms-gateway is responsible for the rate limiting of client requests
      * and {@link HealthCheckManager} ensures that when dispatch() is called
      * the status of the local node is healthy, so we don't need to check the request rate here.
+     * But we still limit the number of concurrent requests adaptively according to the latency
+     * to degrade gracefully by rejecting the requests of low priority first when overloaded.
      * <p>
      * 2. The method should never return MonoError, and it should be considered as a bug if it occurs
      * because the method itself should map all kinds of Throwable to a ServiceResponse instance.
@@ -143,7 +201,10 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
         ByteBuf requestBuffer = serviceRequest.getTurmsRequestBuffer();
         try {
             requestBuffer.touch(serviceRequest);
-            return dispatch0(context, serviceRequest);
+            if (concurrencyLimiter == null) {
+                return dispatch0(context, serviceRequest);
+            }
+            return dispatchWithConcurrencyLimit(concurrencyLimiter, context, serviceRequest);
         } catch (Exception e) {
             LOGGER.error("Failed to handle the request: {}", serviceRequest, e);
             return Mono.just(ServiceResponseFactory.get(TurmsStatusCode.SERVER_INTERNAL_ERROR, e.toString()));
@@ -152,6 +213,42 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
         }
     }
 
+    private Mono<ServiceResponse> dispatchWithConcurrencyLimit(AdaptiveConcurrencyLimiter limiter,
+                                                              TracingContext context,
+                                                              ServiceRequest serviceRequest) {
+        RequestPriority priority = RequestPriority.get(serviceRequest.getType());
+        switch (priority) {
+            case CRITICAL -> limiter.acquire();
+            case NORMAL -> {
+                if (!limiter.tryAcquire(1)) {
+                    priorityToShedCounter.get(priority).increment();
+                    return Mono.just(RESPONSE_OVERLOADED);
+                }
+            }
+            case LOW -> {
+                if (!limiter.tryAcquire(lowPriorityLimitRatio)) {
+                    priorityToShedCounter.get(priority).increment();
+                    return Mono.just(RESPONSE_OVERLOADED);
+                }
+            }
+        }
+        long startTime = System.nanoTime();
+        Mono<ServiceResponse> responseMono;
+        try {
+            responseMono = dispatch0(context, serviceRequest);
+        } catch (Exception e) {
+            limiter.release();
+            throw e;
+        }
+        return responseMono.doFinally(signal -> {
+            if (signal == SignalType.CANCEL) {
+                limiter.release();
+            } else {
+                limiter.release(startTime, System.nanoTime());
+            }
+        });
+    }
+
     private Mono<ServiceResponse> dispatch0(TracingContext context, ServiceRequest serviceRequest) {
         long requestTime = System.currentTimeMillis();
         // 1. Validate ServiceResponse
@@ -183,19 +280,28 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
         turmsRequestBuffer.touch(requestBuilder);
 
         // 2. Transform and handle the request
+        // If no transformer needs to change the request, and the handler relays the request as it is,
+        // we can relay the original request buffer to recipients without encoding it again
+        boolean shouldTransform = pluginManager.anyExtensionPointMatches(
+                ClientRequestTransformer.class,
+                "shouldTransform",
+                transformer -> transformer.shouldTransform(turmsRequestBuffer));
+        boolean canRelayRequestBuffer = !shouldTransform;
         ClientRequest clientRequest = new ClientRequest(
                 serviceRequest.getUserId(),
                 serviceRequest.getDeviceType(),
                 requestBuilder.getRequestId(),
                 requestBuilder,
                 null);
-        Mono<ClientRequest> clientRequestMono = pluginManager.invokeExtensionPointsSequentially(
+        Mono<ClientRequest> clientRequestMono = shouldTransform
+                ? pluginManager.invokeExtensionPointsSequentially(
                         ClientRequestTransformer.class,
                         "transform",
                         clientRequest,
                         (transformer, request) -> request.flatMap(transformer::transform))
-                .defaultIfEmpty(clientRequest);
-        return clientRequestMono.flatMap(lastClientRequest -> {
+                .defaultIfEmpty(clientRequest)
+                : Mono.just(clientRequest);
+        Mono<ServiceResponse> responseMono = clientRequestMono.flatMap(lastClientRequest -> {
             // 3. Validate ClientRequest
             TurmsRequest lastRequest = lastClientRequest.turmsRequest();
             if (lastRequest == null) {
@@ -217,10 +323,8 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
                             (requestHandler, pre) -> pre.switchIfEmpty(Mono.defer(() -> requestHandler.handle(lastClientRequest))));
             result = result.switchIfEmpty(Mono.defer(() -> handler.handle(lastClientRequest)));
             // 5. Metrics and transform to ServiceResponse
-            return result
-                    .name(CLIENT_REQUEST_NAME)
-                    .tag(CLIENT_REQUEST_TAG_TYPE, requestType.name())
-                    .metrics()
+            return requestTypeToMetrics.get(requestType)
+                    .measure(result)
                     .defaultIfEmpty(RequestHandlerResultFactory.NO_CONTENT)
                     .doOnEach(signal -> {
                         if (!signal.isOnNext()) {
@@ -230,7 +334,15 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
                         if (requestResult == null || requestResult.code() != TurmsStatusCode.OK) {
                             return;
                         }
-                        notifyRelatedUsersOfAction(requestResult, userId, deviceType)
+                        // Only relay the original buffer if the handler doesn't change the request
+                        // because some client decoders (e.g. ts-proto) replace instead of merging
+                        // the repeated occurrences of an embedded message, so we cannot append a patch
+                        ByteBuf relayedRequestBuffer = canRelayRequestBuffer
+                                && lastClientRequest == clientRequest
+                                && requestResult.dataForRecipients() == lastRequest
+                                ? turmsRequestBuffer
+                                : null;
+                        notifyRelatedUsersOfAction(requestResult, relayedRequestBuffer, userId, deviceType)
                                 .contextWrite(signal.getContextView())
                                 .subscribe(null, t -> {
                                     try (TracingCloseableContext ignored = context.asCloseable()) {
@@ -270,10 +382,23 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
                         return response;
                     });
         });
+        if (!canRelayRequestBuffer) {
+            return responseMono;
+        }
+        // The buffer will be released by dispatch() once the method returns,
+        // so we need to retain it until the notification has been built
+        turmsRequestBuffer.retain();
+        return responseMono.doFinally(signal -> turmsRequestBuffer.release());
     }
 
+    /**
+     * @param relayedRequestBuffer the original request buffer, which has the same content as
+     *                             {@link RequestHandlerResult#dataForRecipients()}, or null if
+     *                             the data for recipients needs to be encoded
+     */
     private Mono<Void> notifyRelatedUsersOfAction(
             @NotNull RequestHandlerResult result,
+            @Nullable ByteBuf relayedRequestBuffer,
             @NotNull Long requesterId,
             @NotNull DeviceType requesterDevice) {
         TurmsRequest dataForRecipients = result.dataForRecipients();
@@ -281,12 +406,15 @@ public class ServiceRequestDispatcher implements IServiceRequestDispatcher {
         if (dataForRecipients == null || recipients.isEmpty()) {
             return Mono.empty();
         }
+        // The notification is built without being serialized for logging
         TurmsNotification notificationForRecipients = TurmsNotification
                 .newBuilder()
                 .setRelayedRequest(dataForRecipients)
                 .setRequesterId(requesterId)
                 .build();
-        ByteBuf notificationByteBuf = ProtoUtil.getDirectByteBuffer(notificationForRecipients);
+        ByteBuf notificationByteBuf = relayedRequestBuffer == null
+                ? ProtoUtil.getDirectByteBuffer(notificationForRecipients)
+                : ProtoUtil.getRelayedRequestNotificationBuffer(requesterId, relayedRequestBuffer);
         if (result.forwardDataForRecipientsToOtherSenderOnlineDevices()) {
             notificationByteBuf.retain(2);
             Mono<Boolean> notifyRequesterMono = outboundMessageService
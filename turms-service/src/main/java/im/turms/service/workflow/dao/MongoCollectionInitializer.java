@@ -50,6 +50,7 @@ import im.turms.service.workflow.dao.domain.group.GroupJoinRequest;
 import im.turms.service.workflow.dao.domain.group.GroupMember;
 import im.turms.service.workflow.dao.domain.group.GroupType;
 import im.turms.service.workflow.dao.domain.group.GroupVersion;
+import im.turms.service.workflow.dao.domain.message.ExpiredMessagesCleanupCheckpoint;
 import im.turms.service.workflow.dao.domain.message.Message;
 import im.turms.service.workflow.dao.domain.user.UserFriendRequest;
 import im.turms.service.workflow.dao.domain.user.UserPermissionGroup;
@@ -219,6 +220,7 @@ public class MongoCollectionInitializer implements IMongoCollectionInitializer {
                 createCollectionIfNotExist(GroupConversation.class),
 
                 createCollectionIfNotExist(Message.class),
+                createCollectionIfNotExist(ExpiredMessagesCleanupCheckpoint.class),
 
                 createCollectionIfNotExist(User.class),
                 createCollectionIfNotExist(UserFriendRequest.class),
@@ -246,7 +248,7 @@ public class MongoCollectionInitializer implements IMongoCollectionInitializer {
             mongoClient = groupMongoClient;
         } else if (clazz == PrivateConversation.class || clazz == GroupConversation.class) {
             mongoClient = conversationMongoClient;
-        } else if (clazz == Message.class) {
+        } else if (clazz == Message.class || clazz == ExpiredMessagesCleanupCheckpoint.class) {
             mongoClient = messageMongoClient;
         } else {
             return Mono.error(new IllegalArgumentException("Unknown collection " + clazz.getName()));
@@ -28,6 +28,7 @@ import im.turms.server.common.property.env.service.env.database.AdminMongoProper
 import im.turms.server.common.property.env.service.env.database.ConversationMongoProperties;
 import im.turms.server.common.property.env.service.env.database.GroupMongoProperties;
 import im.turms.server.common.property.env.service.env.database.MessageMongoProperties;
+import im.turms.server.common.property.env.service.env.database.TimePartitioningProperties;
 import im.turms.server.common.property.env.service.env.database.UserMongoProperties;
 import im.turms.service.workflow.dao.domain.conversation.GroupConversation;
 import im.turms.service.workflow.dao.domain.conversation.PrivateConversation;
@@ -39,6 +40,7 @@ import im.turms.service.workflow.dao.domain.group.GroupJoinRequest;
 import im.turms.service.workflow.dao.domain.group.GroupMember;
 import im.turms.service.workflow.dao.domain.group.GroupType;
 import im.turms.service.workflow.dao.domain.group.GroupVersion;
+import im.turms.service.workflow.dao.domain.message.ExpiredMessagesCleanupCheckpoint;
 import im.turms.service.workflow.dao.domain.message.Message;
 import im.turms.service.workflow.dao.domain.user.UserFriendRequest;
 import im.turms.service.workflow.dao.domain.user.UserPermissionGroup;
@@ -49,6 +51,8 @@ import im.turms.service.workflow.dao.domain.user.UserVersion;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * @author James Chen
  * @see org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration
@@ -117,7 +121,16 @@ public class MongoConfig extends BaseMongoConfig {
         MessageMongoProperties.WriteConcernProperties writeConcern = properties.getWriteConcern();
         TurmsMongoClient mongoClient = getMongoClient(properties);
         mongoClient.registerEntitiesByOptions(
-                MongoCollectionOptions.of(Message.class, writeConcern.getMessage()));
+                MongoCollectionOptions.of(Message.class, writeConcern.getMessage()),
+                MongoCollectionOptions.of(ExpiredMessagesCleanupCheckpoint.class, writeConcern.getMessage()));
+        TimePartitioningProperties timePartitioning = properties.getTimePartitioning();
+        if (timePartitioning.isEnabled()) {
+            mongoClient.enableTimePartitioning(Message.class,
+                            Message.Fields.DELIVERY_DATE,
+                            timePartitioning.getPartitionDays(),
+                            Message::getDeliveryDate)
+                    .block(Duration.ofMinutes(1));
+        }
         return mongoClient;
     }
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.service.workflow.dao.domain.message;
+
+import im.turms.server.common.mongo.entity.annotation.Document;
+import im.turms.server.common.mongo.entity.annotation.Field;
+import im.turms.server.common.mongo.entity.annotation.Id;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * The position of the last expired message deleted by the running cleanup,
+ * so that the cleanup can resume after the leader changes or restarts.
+ * There is at most one record in the collection.
+ *
+ * @author James Chen
+ */
+@Data
+@Document(ExpiredMessagesCleanupCheckpoint.COLLECTION_NAME)
+public final class ExpiredMessagesCleanupCheckpoint {
+
+    public static final String COLLECTION_NAME = "expiredMessagesCleanupCheckpoint";
+
+    @Id
+    private final String id;
+
+    @Field(Fields.EXPIRATION_DATE)
+    private final Date expirationDate;
+
+    @Field(Fields.DELIVERY_DATE)
+    private final Date deliveryDate;
+
+    @Field(Fields.MESSAGE_ID)
+    private final Long messageId;
+
+    @Field(Fields.UPDATE_DATE)
+    private final Date updateDate;
+
+    public static final class Fields {
+        public static final String EXPIRATION_DATE = "ed";
+        public static final String DELIVERY_DATE = "dd";
+        public static final String MESSAGE_ID = "mid";
+        public static final String UPDATE_DATE = "ud";
+
+        private Fields() {
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package im.turms.service.workflow.dao.domain.message;
 
+import im.turms.server.common.mongo.DomainFieldName;
 import im.turms.server.common.mongo.entity.annotation.CompoundIndex;
 import im.turms.server.common.mongo.entity.annotation.Document;
 import im.turms.server.common.mongo.entity.annotation.Field;
@@ -46,6 +47,8 @@ import static im.turms.server.common.mongo.entity.annotation.IndexedReason.EXTEN
         ifNotExist = Message.Fields.CONVERSATION_ID)
 @CompoundIndex(value = {Message.Fields.DELIVERY_DATE, Message.Fields.CONVERSATION_ID},
         ifExist = Message.Fields.CONVERSATION_ID)
+// Used by ExpiredMessagesCleaner to page through the expired messages in the order of (DELIVERY_DATE, ID)
+@CompoundIndex({Message.Fields.DELIVERY_DATE, DomainFieldName.ID})
 @Sharded(shardKey = Message.Fields.DELIVERY_DATE)
 @TieredStorage(creationDateFieldName = Message.Fields.DELIVERY_DATE)
 public final class Message {
@@ -60,12 +60,15 @@ public class ConversationService {
 
     private final Node node;
     private final TurmsMongoClient mongoClient;
+    private final UnreadMessageCountService unreadMessageCountService;
 
     public ConversationService(
             Node node,
-            @Qualifier("conversationMongoClient") TurmsMongoClient mongoClient) {
+            @Qualifier("conversationMongoClient") TurmsMongoClient mongoClient,
+            UnreadMessageCountService unreadMessageCountService) {
         this.node = node;
         this.mongoClient = mongoClient;
+        this.unreadMessageCountService = unreadMessageCountService;
     }
 
     // TODO: authenticate
@@ -122,7 +125,8 @@ public class ConversationService {
                 .onErrorResume(DuplicateKeyException.class,
                         e -> readDate == null
                                 ? Mono.empty()
-                                : Mono.error(TurmsBusinessException.get(TurmsStatusCode.MOVING_READ_DATE_FORWARD_IS_DISABLED)));
+                                : Mono.error(TurmsBusinessException.get(TurmsStatusCode.MOVING_READ_DATE_FORWARD_IS_DISABLED)))
+                .then(unreadMessageCountService.resetUnreadMessageCount(true, memberId, groupId));
     }
 
     public Mono<Void> upsertGroupConversationsReadDate(@NotNull Set<GroupConversation.GroupConversionMemberKey> keys,
@@ -140,8 +144,10 @@ public class ConversationService {
             readDate = new Date();
         }
         Multimap<Long, Long> multimap = ArrayListMultimap.create(1, keys.size());
+        Multimap<Long, Long> memberIdToGroupIds = ArrayListMultimap.create(keys.size(), 1);
         for (GroupConversation.GroupConversionMemberKey key : keys) {
             multimap.put(key.getGroupId(), key.getMemberId());
+            memberIdToGroupIds.put(key.getMemberId(), key.getGroupId());
         }
         Set<Map.Entry<Long, Collection<Long>>> entries = multimap.asMap().entrySet();
         List<Mono<Void>> upsertMonos = new ArrayList<>(entries.size());
@@ -158,7 +164,8 @@ public class ConversationService {
             }
             upsertMonos.add(mongoClient.upsert(GroupConversation.class, filter, update));
         }
-        return Mono.whenDelayError(upsertMonos);
+        return Mono.whenDelayError(upsertMonos)
+                .then(unreadMessageCountService.resetUnreadMessageCounts(true, memberIdToGroupIds.asMap()));
     }
 
     public Mono<Void> upsertPrivateConversationReadDate(@NotNull Long ownerId,
@@ -196,11 +203,20 @@ public class ConversationService {
         }
         Update update = Update.newBuilder(1)
                 .set(PrivateConversation.Fields.READ_DATE, finalReadDate);
+        Mono<Void> resetUnreadMessageCounts = Mono.empty();
+        if (unreadMessageCountService.isEnabled()) {
+            Multimap<Long, Long> ownerIdToTargetIds = ArrayListMultimap.create(keys.size(), 1);
+            for (PrivateConversation.Key key : keys) {
+                ownerIdToTargetIds.put(key.getOwnerId(), key.getTargetId());
+            }
+            resetUnreadMessageCounts = unreadMessageCountService.resetUnreadMessageCounts(false, ownerIdToTargetIds.asMap());
+        }
         return mongoClient.upsert(PrivateConversation.class, filter, update)
                 .onErrorResume(DuplicateKeyException.class,
                         e -> readDate == null
                                 ? Mono.empty()
-                                : Mono.error(TurmsBusinessException.get(TurmsStatusCode.MOVING_READ_DATE_FORWARD_IS_DISABLED)));
+                                : Mono.error(TurmsBusinessException.get(TurmsStatusCode.MOVING_READ_DATE_FORWARD_IS_DISABLED)))
+                .then(resetUnreadMessageCounts);
     }
 
     public Flux<GroupConversation> queryGroupConversations(@NotNull Collection<Long> groupIds) {
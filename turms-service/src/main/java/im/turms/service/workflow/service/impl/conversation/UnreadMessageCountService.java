@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.service.workflow.service.impl.conversation;
+
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.redis.TurmsRedisClientManager;
+import im.turms.server.common.redis.script.RedisScript;
+import im.turms.service.bo.MessageFromKey;
+import io.lettuce.core.ScriptOutputType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.NotNull;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains the number of messages received in every conversation of a user since the user read the conversation,
+ * so that the number can be looked up for all conversations of a user in one round trip
+ * instead of counting messages in MongoDB for every conversation.
+ * <pre>
+ * +-------------+------------------------------------------------+----------------------+
+ * |   User ID   |                     Field                      |        Value         |
+ * +-------------+------------------------------------------------+----------------------+
+ * |             | p + Sender ID (Private Conversation)           | Unread Message Count |
+ * |             +------------------------------------------------+----------------------+
+ * |             | g + Group ID (Group Conversation)              | Unread Message Count |
+ * +-------------+------------------------------------------------+----------------------+
+ * </pre>
+ *
+ * @author James Chen
+ */
+@Service
+public class UnreadMessageCountService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UnreadMessageCountService.class);
+
+    private static final byte GROUP_CONVERSATION_FIELD_PREFIX = 'g';
+    private static final byte PRIVATE_CONVERSATION_FIELD_PREFIX = 'p';
+    private static final int FIELD_LENGTH = 1 + Long.BYTES;
+
+    private final RedisScript increaseUnreadMessageCountsScript =
+            RedisScript.get(new ClassPathResource("redis/conversation/increase_unread_message_counts.lua"), ScriptOutputType.INTEGER);
+
+    @Nullable
+    private final TurmsRedisClientManager redisClientManager;
+
+    @Autowired
+    public UnreadMessageCountService(
+            @Nullable @Autowired(required = false) @Qualifier("unreadMessageCountRedisClientManager")
+                    TurmsRedisClientManager unreadMessageCountRedisClientManager) {
+        redisClientManager = unreadMessageCountRedisClientManager;
+    }
+
+    public boolean isEnabled() {
+        return redisClientManager != null;
+    }
+
+    /**
+     * @param fromId the group ID for group conversations, or the sender ID for private conversations
+     */
+    public Mono<Void> increaseUnreadMessageCounts(boolean isGroupConversation,
+                                                  @NotNull Long fromId,
+                                                  @NotNull Collection<Long> ownerIds) {
+        if (redisClientManager == null || ownerIds.isEmpty()) {
+            return Mono.empty();
+        }
+        byte[] field = new byte[FIELD_LENGTH];
+        field[0] = isGroupConversation ? GROUP_CONVERSATION_FIELD_PREFIX : PRIVATE_CONVERSATION_FIELD_PREFIX;
+        long id = fromId;
+        for (int i = FIELD_LENGTH - 1; i > 0; i--) {
+            field[i] = (byte) id;
+            id >>>= 8;
+        }
+        return Flux.defer(() -> redisClientManager.eval(increaseUnreadMessageCountsScript, ownerIds, field))
+                .then();
+    }
+
+    public Mono<Void> resetUnreadMessageCount(boolean isGroupConversation, @NotNull Long ownerId, @NotNull Long fromId) {
+        if (redisClientManager == null) {
+            return Mono.empty();
+        }
+        // Encode the field when subscribed so that the buffer won't leak if the returned Mono is never subscribed
+        return Mono.defer(() -> redisClientManager
+                        .hdel(ownerId, ownerId, new Object[]{encodeField(isGroupConversation, fromId)}))
+                .then();
+    }
+
+    public Mono<Void> resetUnreadMessageCounts(boolean isGroupConversation,
+                                               @NotNull Map<Long, ? extends Collection<Long>> ownerIdToFromIds) {
+        if (redisClientManager == null || ownerIdToFromIds.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Mono<Long>> monos = new ArrayList<>(ownerIdToFromIds.size());
+        for (Map.Entry<Long, ? extends Collection<Long>> entry : ownerIdToFromIds.entrySet()) {
+            Long ownerId = entry.getKey();
+            Collection<Long> fromIds = entry.getValue();
+            monos.add(Mono.defer(() -> {
+                Object[] fields = new Object[fromIds.size()];
+                int i = 0;
+                for (Long fromId : fromIds) {
+                    fields[i++] = encodeField(isGroupConversation, fromId);
+                }
+                return redisClientManager.hdel(ownerId, ownerId, fields);
+            }));
+        }
+        return Mono.whenDelayError(monos);
+    }
+
+    /**
+     * @return the unread message counts of the conversations in {@code conversations}.
+     * The count of a conversation is 0 if the user has read all messages in it
+     */
+    public Mono<Map<MessageFromKey, Long>> queryUnreadMessageCounts(@NotNull Long ownerId,
+                                                                    @NotNull Set<MessageFromKey> conversations) {
+        if (redisClientManager == null || conversations.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return redisClientManager.<ByteBuf, ByteBuf>hgetall(ownerId, ownerId)
+                .collect(() -> new HashMap<MessageFromKey, Long>(conversations.size()), (counts, entry) -> {
+                    ByteBuf field = entry.getKey();
+                    ByteBuf value = entry.getValue();
+                    try {
+                        if (field.readableBytes() != FIELD_LENGTH) {
+                            return;
+                        }
+                        MessageFromKey key = new MessageFromKey(
+                                field.readByte() == GROUP_CONVERSATION_FIELD_PREFIX,
+                                field.readLong());
+                        if (conversations.contains(key)) {
+                            counts.put(key, Long.parseLong(value.toString(StandardCharsets.US_ASCII)));
+                        }
+                    } catch (Exception e) {
+                        LOGGER.error("Failed to parse the unread message count of the user: " + ownerId, e);
+                    } finally {
+                        field.release();
+                        value.release();
+                    }
+                });
+    }
+
+    private ByteBuf encodeField(boolean isGroupConversation, long fromId) {
+        return PooledByteBufAllocator.DEFAULT.directBuffer(FIELD_LENGTH)
+                .writeByte(isGroupConversation ? GROUP_CONVERSATION_FIELD_PREFIX : PRIVATE_CONVERSATION_FIELD_PREFIX)
+                .writeLong(fromId);
+    }
+
+}
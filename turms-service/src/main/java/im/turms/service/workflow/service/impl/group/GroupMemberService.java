@@ -17,6 +17,10 @@
 
 package im.turms.service.workflow.service.impl.group;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.mongodb.reactivestreams.client.ClientSession;
@@ -27,6 +31,7 @@ import im.turms.common.util.Validator;
 import im.turms.server.common.bo.common.DateRange;
 import im.turms.server.common.bo.session.UserSessionsStatus;
 import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.cluster.service.config.ChangeStreamUtil;
 import im.turms.server.common.constant.TurmsStatusCode;
 import im.turms.server.common.exception.TurmsBusinessException;
 import im.turms.server.common.logging.core.logger.Logger;
@@ -37,6 +42,7 @@ import im.turms.server.common.mongo.TurmsMongoClient;
 import im.turms.server.common.mongo.operation.option.Filter;
 import im.turms.server.common.mongo.operation.option.QueryOptions;
 import im.turms.server.common.mongo.operation.option.Update;
+import im.turms.server.common.property.env.service.business.GroupProperties;
 import im.turms.server.common.service.session.UserStatusService;
 import im.turms.server.common.util.AssertUtil;
 import im.turms.server.common.util.CollectionUtil;
@@ -45,10 +51,12 @@ import im.turms.service.bo.ServicePermission;
 import im.turms.service.constant.OperationResultConstant;
 import im.turms.service.constraint.ValidGroupMemberRole;
 import im.turms.service.proto.ProtoModelConvertor;
+import im.turms.service.workflow.dao.domain.group.Group;
 import im.turms.service.workflow.dao.domain.group.GroupBlockedUser;
 import im.turms.service.workflow.dao.domain.group.GroupMember;
 import im.turms.service.workflow.service.util.DomainConstraintUtil;
 import org.apache.commons.lang3.tuple.Pair;
+import org.bson.BsonDocument;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Lazy;
@@ -60,10 +68,13 @@ import javax.annotation.Nullable;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.PastOrPresent;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -76,12 +87,28 @@ public class GroupMemberService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GroupMemberService.class);
 
+    private static final long NO_VERSION = Long.MIN_VALUE;
+
     private final Node node;
     private final TurmsMongoClient mongoClient;
     private final GroupService groupService;
     private final GroupVersionService groupVersionService;
     private final UserStatusService userStatusService;
 
+    /**
+     * The members of a group are cached as a whole so that the checks of
+     * membership, roles, and mute end dates and the recipient expansion
+     * can be served from memory for hot groups.
+     * The mute end date and the status of the group are cached with the members
+     * so that the checks before sending a group message don't need to query the database.
+     * The cache is kept coherent by the change streams of GroupMember and Group,
+     * and by comparing the members and information versions of groups periodically as a fallback.
+     */
+    @Nullable
+    private final Cache<Long, CachedGroupMembers> groupMembersCache;
+    private final int memberCacheMaxSize;
+    private final long memberCacheVersionCheckIntervalMillis;
+
     /**
      * @param groupService is lazy because: GroupService -> GroupMemberService -> GroupService
      */
@@ -96,6 +123,56 @@ public class GroupMemberService {
         this.groupVersionService = groupVersionService;
         this.userStatusService = userStatusService;
         this.node = node;
+
+        GroupProperties groupProperties = node.getSharedProperties().getService().getGroup();
+        memberCacheMaxSize = groupProperties.getMemberCacheMaxSize();
+        memberCacheVersionCheckIntervalMillis = groupProperties.getMemberCacheVersionCheckIntervalSeconds() * 1000L;
+        if (memberCacheMaxSize > 0) {
+            groupMembersCache = Caffeine
+                    .newBuilder()
+                    .maximumWeight(memberCacheMaxSize)
+                    .weigher((Long groupId, CachedGroupMembers members) -> members.members == null
+                            ? 1
+                            : members.members.size() + 1)
+                    .expireAfterAccess(Duration.ofSeconds(groupProperties.getMemberCacheExpireAfterAccessSeconds()))
+                    .build();
+            watchGroupMemberChanges();
+        } else {
+            groupMembersCache = null;
+        }
+    }
+
+    private void watchGroupMemberChanges() {
+        mongoClient.watch(GroupMember.class, FullDocument.DEFAULT)
+                .doOnNext(event -> {
+                    BsonDocument documentKey = event.getDocumentKey();
+                    if (documentKey == null) {
+                        invalidateAllCachedGroupMembers();
+                        return;
+                    }
+                    long groupId = documentKey
+                            .getDocument(DomainFieldName.ID)
+                            .getInt64(GroupMember.Key.Fields.GROUP_ID)
+                            .getValue();
+                    invalidateCachedGroupMembers(groupId);
+                })
+                .onErrorContinue((throwable, o) -> LOGGER
+                        .error("Caught an error while processing the change stream event of GroupMember: {}", o, throwable))
+                .subscribe(null, t -> LOGGER.error("The change stream of GroupMember is unavailable, " +
+                        "and the cached group members will be verified by the members version only", t));
+        mongoClient.watch(Group.class, FullDocument.DEFAULT)
+                .doOnNext(event -> {
+                    OperationType operationType = event.getOperationType();
+                    switch (operationType) {
+                        case UPDATE, REPLACE, DELETE -> invalidateCachedGroupMembers(ChangeStreamUtil.getIdAsLong(event.getDocumentKey()));
+                        case DROP, DROP_DATABASE, INVALIDATE -> invalidateAllCachedGroupMembers();
+                        default -> {
+                        }
+                    }
+                })
+                .onErrorContinue((throwable, o) -> LOGGER
+                        .error("Caught an error while processing the change stream event of Group: {}", o, throwable))
+                .subscribe(null, t -> LOGGER.error("The change stream of Group is unavailable", t));
     }
 
     public Mono<GroupMember> addGroupMember(
@@ -126,6 +203,7 @@ public class GroupMemberService {
                 joinDate,
                 muteEndDate);
         return mongoClient.insert(session, groupMember)
+                .doOnSuccess(unused -> invalidateCachedGroupMembers(groupId))
                 .then(groupVersionService.updateMembersVersion(groupId)
                         .onErrorResume(t -> {
                             LOGGER.error("Caught an error while updating the members version of the group {} after adding a group member",
@@ -230,6 +308,7 @@ public class GroupMemberService {
         Filter filter = Filter.newBuilder(1)
                 .in(DomainFieldName.ID, keys);
         return mongoClient.deleteMany(session, GroupMember.class, filter)
+                .doOnSuccess(result -> invalidateCachedGroupMembers(groupIds))
                 .flatMap(result -> {
                     if (!updateGroupMembersVersion || result.getDeletedCount() == 0) {
                         return Mono.just(result);
@@ -294,14 +373,15 @@ public class GroupMemberService {
         }
         return mongoClient.updateMany(session, GroupMember.class, filter, update)
                 .flatMap(result -> {
-                    if (!updateGroupMembersVersion || result.getModifiedCount() == 0) {
-                        return Mono.just(result);
-                    }
                     int size = keys.size();
                     Set<Long> groupIds = CollectionUtil.newSetWithExpectedSize(size);
                     for (GroupMember.Key key : keys) {
                         groupIds.add(key.getGroupId());
                     }
+                    invalidateCachedGroupMembers(groupIds);
+                    if (!updateGroupMembersVersion || result.getModifiedCount() == 0) {
+                        return Mono.just(result);
+                    }
                     Mono<?> updateMono = size == 1
                             ? groupVersionService.updateMembersVersion(groupIds.iterator().next())
                             : groupVersionService.updateMembersVersion(groupIds);
@@ -343,12 +423,13 @@ public class GroupMemberService {
         } catch (TurmsBusinessException e) {
             return Flux.error(e);
         }
-        Filter filter = Filter.newBuilder(1)
-                .eq(GroupMember.Fields.ID_GROUP_ID, groupId);
-        QueryOptions options = QueryOptions.newBuilder(1)
-                .include(GroupMember.Fields.ID_USER_ID);
-        return mongoClient.findMany(GroupMember.class, filter, options)
-                .map(groupMember -> groupMember.getKey().getUserId());
+        if (groupMembersCache != null) {
+            return getCachedGroupMembers(groupId)
+                    .flatMapMany(members -> members.members == null
+                            ? queryGroupMemberIdsFromDatabase(groupId)
+                            : Flux.fromIterable(members.members.keySet()));
+        }
+        return queryGroupMemberIdsFromDatabase(groupId);
     }
 
     public Mono<Boolean> isGroupMember(@NotNull Long groupId, @NotNull Long userId) {
@@ -358,6 +439,20 @@ public class GroupMemberService {
         } catch (TurmsBusinessException e) {
             return Mono.error(e);
         }
+        if (groupMembersCache != null) {
+            return getCachedGroupMembers(groupId)
+                    .flatMap(members -> isGroupMember(members, groupId, userId));
+        }
+        return isGroupMemberFromDatabase(groupId, userId);
+    }
+
+    private Mono<Boolean> isGroupMember(@NotNull CachedGroupMembers members, @NotNull Long groupId, @NotNull Long userId) {
+        return members.members == null
+                ? isGroupMemberFromDatabase(groupId, userId)
+                : Mono.just(members.members.containsKey(userId));
+    }
+
+    private Mono<Boolean> isGroupMemberFromDatabase(@NotNull Long groupId, @NotNull Long userId) {
         GroupMember.Key key = new GroupMember.Key(groupId, userId);
         Filter filter = Filter.newBuilder(1)
                 .eq(DomainFieldName.ID, key);
@@ -423,17 +518,27 @@ public class GroupMemberService {
      * Note that a blocked user is never a group member
      */
     public Mono<TurmsStatusCode> isAllowedToSendMessage(@NotNull Long groupId, @NotNull Long senderId) {
+        if (groupMembersCache != null) {
+            return getCachedGroupMembers(groupId)
+                    .flatMap(members -> isGroupMember(members, groupId, senderId)
+                            .flatMap(isGroupMember -> isGroupMember
+                                    ? isGroupMemberAllowedToSendMessage(groupId, senderId, members)
+                                    : isGuestAllowedToSendMessage(groupId, senderId, members)));
+        }
         return isGroupMember(groupId, senderId)
                 .flatMap(isGroupMember -> isGroupMember != null && isGroupMember
-                        ? isGroupMemberAllowedToSendMessage(groupId, senderId)
-                        : isGuestAllowedToSendMessage(groupId, senderId));
+                        ? isGroupMemberAllowedToSendMessage(groupId, senderId, null)
+                        : isGuestAllowedToSendMessage(groupId, senderId, null));
     }
 
     /**
+     * @param cachedMembers the cached members and status of the group, or null if the cache is disabled
      * @return Possible codes: OK, GROUP_HAS_BEEN_MUTED, GROUP_NOT_ACTIVE, MEMBER_HAS_BEEN_MUTED
      */
-    private Mono<TurmsStatusCode> isGroupMemberAllowedToSendMessage(@NotNull Long groupId, @NotNull Long senderId) {
-        return groupService.isGroupMuted(groupId)
+    private Mono<TurmsStatusCode> isGroupMemberAllowedToSendMessage(@NotNull Long groupId,
+                                                                    @NotNull Long senderId,
+                                                                    @Nullable CachedGroupMembers cachedMembers) {
+        return isGroupMuted(groupId, cachedMembers)
                 .flatMap(isGroupMuted -> {
                     if (isGroupMuted) {
                         return Mono.just(TurmsStatusCode.SEND_MESSAGE_TO_MUTED_GROUP);
@@ -441,7 +546,7 @@ public class GroupMemberService {
                     if (!node.getSharedProperties().getService().getMessage().isCheckIfTargetActiveAndNotDeleted()) {
                         return Mono.just(TurmsStatusCode.OK);
                     }
-                    return groupService.isGroupActiveAndNotDeleted(groupId)
+                    return isGroupActiveAndNotDeleted(groupId, cachedMembers)
                             .flatMap(isActive -> isActive
                                     ? isMemberMuted(groupId, senderId)
                                     .map(muted -> muted ? TurmsStatusCode.MUTED_MEMBER_SEND_MESSAGE : TurmsStatusCode.OK)
@@ -449,19 +554,21 @@ public class GroupMemberService {
                 });
     }
 
-    private Mono<TurmsStatusCode> isGuestAllowedToSendMessage(@NotNull Long groupId, @NotNull Long senderId) {
+    private Mono<TurmsStatusCode> isGuestAllowedToSendMessage(@NotNull Long groupId,
+                                                              @NotNull Long senderId,
+                                                              @Nullable CachedGroupMembers cachedMembers) {
         return groupService.queryGroupType(groupId)
                 .flatMap(type -> {
                     Boolean speakable = type.getGuestSpeakable();
                     if (speakable == null || !speakable) {
                         return Mono.just(TurmsStatusCode.GUESTS_HAVE_BEEN_MUTED);
                     }
-                    return groupService.isGroupMuted(groupId)
+                    return isGroupMuted(groupId, cachedMembers)
                             .flatMap(isGroupMuted -> {
                                 if (isGroupMuted) {
                                     return Mono.just(TurmsStatusCode.SEND_MESSAGE_TO_MUTED_GROUP);
                                 }
-                                return groupService.isGroupActiveAndNotDeleted(groupId)
+                                return isGroupActiveAndNotDeleted(groupId, cachedMembers)
                                         .flatMap(isGroupActiveAndNotDeleted -> {
                                             if (isGroupActiveAndNotDeleted) {
                                                 return isBlocked(groupId, senderId)
@@ -476,6 +583,20 @@ public class GroupMemberService {
                 .defaultIfEmpty(TurmsStatusCode.SEND_MESSAGE_TO_INACTIVE_GROUP);
     }
 
+    private Mono<Boolean> isGroupMuted(@NotNull Long groupId, @Nullable CachedGroupMembers cachedMembers) {
+        if (cachedMembers == null) {
+            return groupService.isGroupMuted(groupId);
+        }
+        Date muteEndDate = cachedMembers.groupMuteEndDate;
+        return Mono.just(muteEndDate != null && muteEndDate.getTime() > System.currentTimeMillis());
+    }
+
+    private Mono<Boolean> isGroupActiveAndNotDeleted(@NotNull Long groupId, @Nullable CachedGroupMembers cachedMembers) {
+        return cachedMembers == null
+                ? groupService.isGroupActiveAndNotDeleted(groupId)
+                : Mono.just(cachedMembers.isGroupActiveAndNotDeleted);
+    }
+
     public Mono<Boolean> isMemberMuted(@NotNull Long groupId, @NotNull Long userId) {
         try {
             AssertUtil.notNull(groupId, "groupId");
@@ -483,6 +604,24 @@ public class GroupMemberService {
         } catch (TurmsBusinessException e) {
             return Mono.error(e);
         }
+        if (groupMembersCache != null) {
+            return getCachedGroupMembers(groupId)
+                    .flatMap(members -> {
+                        if (members.members == null) {
+                            return isMemberMutedFromDatabase(groupId, userId);
+                        }
+                        GroupMember member = members.members.get(userId);
+                        if (member == null) {
+                            return Mono.just(false);
+                        }
+                        Date muteEndDate = member.getMuteEndDate();
+                        return Mono.just(muteEndDate != null && muteEndDate.getTime() > System.currentTimeMillis());
+                    });
+        }
+        return isMemberMutedFromDatabase(groupId, userId);
+    }
+
+    private Mono<Boolean> isMemberMutedFromDatabase(@NotNull Long groupId, @NotNull Long userId) {
         Filter filter = Filter.newBuilder(3)
                 .eq(GroupMember.Fields.ID_GROUP_ID, groupId)
                 .eq(GroupMember.Fields.ID_USER_ID, userId)
@@ -497,6 +636,20 @@ public class GroupMemberService {
         } catch (TurmsBusinessException e) {
             return Mono.error(e);
         }
+        if (groupMembersCache != null) {
+            return getCachedGroupMembers(groupId)
+                    .flatMap(members -> {
+                        if (members.members == null) {
+                            return queryGroupMemberRoleFromDatabase(userId, groupId);
+                        }
+                        GroupMember member = members.members.get(userId);
+                        return member == null ? Mono.empty() : Mono.justOrEmpty(member.getRole());
+                    });
+        }
+        return queryGroupMemberRoleFromDatabase(userId, groupId);
+    }
+
+    private Mono<GroupMemberRole> queryGroupMemberRoleFromDatabase(@NotNull Long userId, @NotNull Long groupId) {
         Filter filter = Filter.newBuilder(2)
                 .eq(GroupMember.Fields.ID_USER_ID, userId)
                 .eq(GroupMember.Fields.ID_GROUP_ID, groupId);
@@ -579,6 +732,16 @@ public class GroupMemberService {
         } catch (TurmsBusinessException e) {
             return Flux.error(e);
         }
+        if (groupMembersCache != null) {
+            return getCachedGroupMembers(groupId)
+                    .flatMapMany(members -> members.members == null
+                            ? queryGroupMemberIdsFromDatabase(groupId)
+                            : Flux.fromIterable(members.members.keySet()));
+        }
+        return queryGroupMemberIdsFromDatabase(groupId);
+    }
+
+    private Flux<Long> queryGroupMemberIdsFromDatabase(@NotNull Long groupId) {
         Filter filter = Filter.newBuilder(1)
                 .eq(GroupMember.Fields.ID_GROUP_ID, groupId);
         QueryOptions options = QueryOptions.newBuilder(1)
@@ -655,6 +818,7 @@ public class GroupMemberService {
 
     public Mono<DeleteResult> deleteGroupMembers(boolean updateGroupMembersVersion) {
         return mongoClient.deleteAll(GroupMember.class)
+                .doOnSuccess(result -> invalidateAllCachedGroupMembers())
                 .flatMap(result -> updateGroupMembersVersion && result.getDeletedCount() > 0
                         ? groupVersionService.updateMembersVersion().thenReturn(result)
                         : Mono.just(OperationResultConstant.ACKNOWLEDGED_DELETE_RESULT));
@@ -773,6 +937,13 @@ public class GroupMemberService {
         Filter filter = Filter.newBuilder(1)
                 .inIfNotNull(GroupMember.Fields.ID_GROUP_ID, groupIds);
         return mongoClient.deleteMany(session, GroupMember.class, filter)
+                .doOnSuccess(result -> {
+                    if (groupIds == null) {
+                        invalidateAllCachedGroupMembers();
+                    } else {
+                        invalidateCachedGroupMembers(groupIds);
+                    }
+                })
                 .flatMap(result -> updateMembersVersion && result.getDeletedCount() > 0
                         ? groupVersionService.updateMembersVersion(groupIds).thenReturn(result)
                         : Mono.just(OperationResultConstant.ACKNOWLEDGED_DELETE_RESULT));
@@ -822,6 +993,122 @@ public class GroupMemberService {
                 });
     }
 
+    // Cache
+
+    private Mono<CachedGroupMembers> getCachedGroupMembers(@NotNull Long groupId) {
+        CachedGroupMembers members = groupMembersCache.getIfPresent(groupId);
+        if (members == null) {
+            return loadGroupMembers(groupId, null);
+        }
+        if (members.pendingLoad != null) {
+            return members.pendingLoad;
+        }
+        long now = System.currentTimeMillis();
+        if (now - members.lastVerifiedTime < memberCacheVersionCheckIntervalMillis) {
+            return Mono.just(members);
+        }
+        // Compare the versions with the ones read before the members were loaded
+        // instead of comparing them with the local clock because the versions are generated
+        // by the clock of the node that updated the group
+        return queryVersion(groupId)
+                .flatMap(version -> {
+                    if (version.info != members.infoVersion || version.members != members.membersVersion) {
+                        return loadGroupMembers(groupId, members);
+                    }
+                    members.lastVerifiedTime = now;
+                    return Mono.just(members);
+                });
+    }
+
+    /**
+     * @param outdatedMembers the cached members to replace, or null if the group isn't cached
+     * @implNote A placeholder carrying the pending load is cached before loading so that
+     * concurrent requests for the group share the same load,
+     * and the loaded members are cached only if the placeholder hasn't been invalidated (removed),
+     * which means the members haven't been changed while loading.
+     * The versions are read before loading the members so that any change of the group
+     * during or after loading will change the versions.
+     * The members are loaded with the limit of the cache size so that the members of
+     * a group exceeding the cache are never loaded as a whole, and such a group is cached
+     * without members so that its members are queried one by one.
+     */
+    private Mono<CachedGroupMembers> loadGroupMembers(@NotNull Long groupId, @Nullable CachedGroupMembers outdatedMembers) {
+        CachedGroupMembers placeholder = new CachedGroupMembers();
+        placeholder.pendingLoad = queryVersion(groupId)
+                .flatMap(version -> {
+                    Filter memberFilter = Filter.newBuilder(1)
+                            .eq(GroupMember.Fields.ID_GROUP_ID, groupId);
+                    QueryOptions memberOptions = QueryOptions.newBuilder(3)
+                            .include(GroupMember.Fields.ROLE, GroupMember.Fields.MUTE_END_DATE)
+                            .limit(memberCacheMaxSize);
+                    Mono<Map<Long, GroupMember>> loadMembers = mongoClient
+                            .findMany(GroupMember.class, memberFilter, memberOptions)
+                            .collectMap(member -> member.getKey().getUserId());
+                    Filter groupFilter = Filter.newBuilder(1)
+                            .eq(DomainFieldName.ID, groupId);
+                    QueryOptions groupOptions = QueryOptions.newBuilder(2)
+                            .include(Group.Fields.MUTE_END_DATE, Group.Fields.IS_ACTIVE, Group.Fields.DELETION_DATE);
+                    Mono<Optional<Group>> loadGroup = mongoClient.findOne(Group.class, groupFilter, groupOptions)
+                            .map(Optional::of)
+                            .defaultIfEmpty(Optional.empty());
+                    return Mono.zip(loadMembers, loadGroup)
+                            .map(tuple -> {
+                                Map<Long, GroupMember> memberMap = tuple.getT1();
+                                Group group = tuple.getT2().orElse(null);
+                                CachedGroupMembers members = new CachedGroupMembers(
+                                        memberMap.size() < memberCacheMaxSize ? memberMap : null,
+                                        group == null ? null : group.getMuteEndDate(),
+                                        group != null && Boolean.TRUE.equals(group.getIsActive()) && group.getDeletionDate() == null,
+                                        version.info,
+                                        version.members);
+                                groupMembersCache.asMap().replace(groupId, placeholder, members);
+                                return members;
+                            });
+                })
+                .doOnError(t -> groupMembersCache.asMap().remove(groupId, placeholder))
+                .cache();
+        CachedGroupMembers currentMembers = groupMembersCache.asMap().compute(groupId, (key, members) ->
+                members == null || members == outdatedMembers ? placeholder : members);
+        if (currentMembers == placeholder) {
+            return placeholder.pendingLoad;
+        }
+        return currentMembers.pendingLoad == null
+                ? Mono.just(currentMembers)
+                : currentMembers.pendingLoad;
+    }
+
+    /**
+     * @return the information and members versions of the group,
+     * or {@link #NO_VERSION} if the group has no such version
+     */
+    private Mono<CachedGroupVersion> queryVersion(@NotNull Long groupId) {
+        return groupVersionService.queryInfoAndMembersVersion(groupId)
+                .map(version -> new CachedGroupVersion(getTime(version.getInfo()), getTime(version.getMembers())))
+                .defaultIfEmpty(new CachedGroupVersion(NO_VERSION, NO_VERSION));
+    }
+
+    private static long getTime(@Nullable Date date) {
+        return date == null ? NO_VERSION : date.getTime();
+    }
+
+    private void invalidateCachedGroupMembers(@NotNull Long groupId) {
+        if (groupMembersCache != null) {
+            groupMembersCache.invalidate(groupId);
+        }
+    }
+
+    private void invalidateCachedGroupMembers(@NotNull Set<Long> groupIds) {
+        if (groupMembersCache != null) {
+            groupMembersCache.invalidateAll(groupIds);
+        }
+    }
+
+    private void invalidateAllCachedGroupMembers() {
+        if (groupMembersCache != null) {
+            groupMembersCache.invalidateAll();
+        }
+    }
+
     private TurmsStatusCode isAllowedToInviteUserWithSpecifiedRole(@NotNull GroupMemberRole requesterRole,
                                                                    @Nullable GroupMemberRole newMemberRole,
                                                                    @NotNull GroupInvitationStrategy groupInvitationStrategy) {
@@ -851,4 +1138,53 @@ public class GroupMemberService {
         return isAllowToAddRole;
     }
 
+    private static final class CachedGroupMembers {
+        /**
+         * Null if the entry is the placeholder of the members being loaded,
+         * or the group has more members than the cache can hold
+         */
+        @Nullable
+        private final Map<Long, GroupMember> members;
+        /**
+         * Non-null if the entry is the placeholder of the members being loaded
+         */
+        @Nullable
+        private Mono<CachedGroupMembers> pendingLoad;
+        @Nullable
+        private final Date groupMuteEndDate;
+        private final boolean isGroupActiveAndNotDeleted;
+        /**
+         * The versions read before the members were loaded
+         */
+        private final long infoVersion;
+        private final long membersVersion;
+        private volatile long lastVerifiedTime;
+
+        /**
+         * Create a placeholder
+         */
+        private CachedGroupMembers() {
+            this(null, null, false, NO_VERSION, NO_VERSION);
+        }
+
+        private CachedGroupMembers(@Nullable Map<Long, GroupMember> members,
+                                   @Nullable Date groupMuteEndDate,
+                                   boolean isGroupActiveAndNotDeleted,
+                                   long infoVersion,
+                                   long membersVersion) {
+            this.members = members;
+            this.groupMuteEndDate = groupMuteEndDate;
+            this.isGroupActiveAndNotDeleted = isGroupActiveAndNotDeleted;
+            this.infoVersion = infoVersion;
+            this.membersVersion = membersVersion;
+            lastVerifiedTime = System.currentTimeMillis();
+        }
+    }
+
+    private record CachedGroupVersion(
+            long info,
+            long members
+    ) {
+    }
+
 }
\ No newline at end of file
@@ -80,6 +80,22 @@ public class GroupVersionService {
                 .map(GroupVersion::getMembers);
     }
 
+    /**
+     * @return the group version that only has the information and members versions
+     */
+    public Mono<GroupVersion> queryInfoAndMembersVersion(@NotNull Long groupId) {
+        try {
+            AssertUtil.notNull(groupId, "groupId");
+        } catch (TurmsBusinessException e) {
+            return Mono.error(e);
+        }
+        Filter filter = Filter.newBuilder(1)
+                .eq(DomainFieldName.ID, groupId);
+        QueryOptions options = QueryOptions.newBuilder(2)
+                .include(GroupVersion.Fields.INFO, GroupVersion.Fields.MEMBERS);
+        return mongoClient.findOne(GroupVersion.class, filter, options);
+    }
+
     public Mono<Date> queryBlocklistVersion(@NotNull Long groupId) {
         try {
             AssertUtil.notNull(groupId, "groupId");
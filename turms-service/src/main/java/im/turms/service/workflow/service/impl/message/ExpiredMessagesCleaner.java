@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package im.turms.service.workflow.service.impl.message;
+
+import com.mongodb.client.result.DeleteResult;
+import im.turms.server.common.bo.common.DateRange;
+import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.logging.core.logger.Logger;
+import im.turms.server.common.logging.core.logger.LoggerFactory;
+import im.turms.server.common.mongo.DomainFieldName;
+import im.turms.server.common.mongo.TurmsMongoClient;
+import im.turms.server.common.mongo.operation.option.Filter;
+import im.turms.server.common.mongo.operation.option.QueryOptions;
+import im.turms.server.common.plugin.PluginManager;
+import im.turms.server.common.property.env.service.business.message.ExpiredMessagesCleanupProperties;
+import im.turms.server.common.util.CollectorUtil;
+import im.turms.service.plugin.extension.ExpiredMessageDeletionNotifier;
+import im.turms.service.workflow.dao.domain.message.ExpiredMessagesCleanupCheckpoint;
+import im.turms.service.workflow.dao.domain.message.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static im.turms.service.constant.MetricsConstant.EXPIRED_MESSAGES_CLEANUP_LAG_NAME;
+import static im.turms.service.constant.MetricsConstant.EXPIRED_MESSAGES_DELETED_COUNTER_NAME;
+
+/**
+ * Deletes expired messages in batches ordered by (deliveryDate, _id) instead of
+ * loading all expired messages and deleting them with one request, so that:
+ * 1. The memory usage doesn't depend on the number of expired messages;
+ * 2. The deletion rate is limited to avoid replication lag spikes;
+ * 3. The cleanup resumes from the last deleted message recorded in
+ * {@link ExpiredMessagesCleanupCheckpoint} after the leader changes or restarts.
+ *
+ * @author James Chen
+ */
+public class ExpiredMessagesCleaner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpiredMessagesCleaner.class);
+
+    private static final String CHECKPOINT_ID = Message.COLLECTION_NAME;
+    private static final ExpiredMessagesCleanupCheckpoint EMPTY_CHECKPOINT =
+            new ExpiredMessagesCleanupCheckpoint(CHECKPOINT_ID, null, null, null, null);
+
+    private final TurmsMongoClient mongoClient;
+    private final Node node;
+    private final PluginManager pluginManager;
+
+    private final AtomicBoolean isRunning = new AtomicBoolean();
+
+    private final Counter deletedMessagesCounter;
+    /**
+     * The difference between the expiration date and the delivery date of
+     * the last processed message of the running cleanup
+     */
+    private volatile long lagMillis;
+
+    public ExpiredMessagesCleaner(TurmsMongoClient mongoClient,
+                                  Node node,
+                                  PluginManager pluginManager,
+                                  MeterRegistry registry) {
+        this.mongoClient = mongoClient;
+        this.node = node;
+        this.pluginManager = pluginManager;
+        deletedMessagesCounter = registry.counter(EXPIRED_MESSAGES_DELETED_COUNTER_NAME);
+        Gauge.builder(EXPIRED_MESSAGES_CLEANUP_LAG_NAME, this, cleaner -> cleaner.lagMillis)
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    /**
+     * @param expirationDate the messages delivered before the date will be deleted
+     */
+    public Mono<Void> deleteExpiredMessages(Date expirationDate) {
+        return Mono.defer(() -> {
+            if (!isRunning.compareAndSet(false, true)) {
+                LOGGER.warn("Skipped deleting expired messages because the previous cleanup is still running");
+                return Mono.empty();
+            }
+            return dropExpiredPartitions(expirationDate)
+                    .then(mongoClient.findOne(ExpiredMessagesCleanupCheckpoint.class))
+                    .defaultIfEmpty(EMPTY_CHECKPOINT)
+                    .flatMapMany(checkpoint -> {
+                        if (checkpoint.getDeliveryDate() != null) {
+                            LOGGER.info("Resume deleting expired messages after the message {} delivered at {}",
+                                    checkpoint.getMessageId(),
+                                    checkpoint.getDeliveryDate());
+                        }
+                        // Iterate over the batches instead of recursing
+                        // so that the memory usage and the stack depth don't grow with the number of batches
+                        return Mono.just(checkpoint)
+                                .expand(lastCheckpoint -> deleteNextBatch(expirationDate, lastCheckpoint));
+                    })
+                    .then()
+                    .doFinally(signal -> {
+                        lagMillis = 0;
+                        isRunning.set(false);
+                    });
+        });
+    }
+
+    /**
+     * Drop the partitions of which all messages have expired if messages are time-partitioned,
+     * so that only the messages in the partition containing the expiration date
+     * need to be deleted one by one.
+     * The partitions are not dropped if any plugin needs to be notified of the deleted messages
+     * because plugins may decide to keep some messages.
+     */
+    private Mono<Void> dropExpiredPartitions(Date expirationDate) {
+        if (!mongoClient.isTimePartitioned(Message.class)
+                || pluginManager.hasRunningExtensions(ExpiredMessageDeletionNotifier.class)) {
+            return Mono.empty();
+        }
+        return mongoClient.dropPartitionsBefore(Message.class, expirationDate)
+                .doOnNext(partitions -> {
+                    if (!partitions.isEmpty()) {
+                        LOGGER.info("Dropped the expired message partitions: {}", partitions);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * @return the checkpoint of the deleted batch, or empty if there are no more expired messages
+     */
+    private Mono<ExpiredMessagesCleanupCheckpoint> deleteNextBatch(Date expirationDate,
+                                                                   ExpiredMessagesCleanupCheckpoint lastCheckpoint) {
+        ExpiredMessagesCleanupProperties properties = node.getSharedProperties()
+                .getService()
+                .getMessage()
+                .getExpiredMessagesCleanup();
+        int batchSize = properties.getBatchSize();
+        int maxDeletedMessagesPerSecond = properties.getMaxDeletedMessagesPerSecond();
+        boolean notifyPlugins = pluginManager.hasRunningExtensions(ExpiredMessageDeletionNotifier.class);
+        Filter filter = Filter.newBuilder(2)
+                .lt(Message.Fields.DELIVERY_DATE, expirationDate);
+        Date lastDeliveryDate = lastCheckpoint.getDeliveryDate();
+        if (lastDeliveryDate != null) {
+            filter.or(Filter.newBuilder(1)
+                            .gt(Message.Fields.DELIVERY_DATE, lastDeliveryDate),
+                    Filter.newBuilder(2)
+                            .eq(Message.Fields.DELIVERY_DATE, lastDeliveryDate)
+                            .gt(DomainFieldName.ID, lastCheckpoint.getMessageId()));
+        }
+        QueryOptions options = QueryOptions.newBuilder(3)
+                .sort(true, Message.Fields.DELIVERY_DATE, DomainFieldName.ID)
+                .limit(batchSize);
+        if (!notifyPlugins) {
+            options.include(DomainFieldName.ID, Message.Fields.DELIVERY_DATE);
+        }
+        long startTime = System.currentTimeMillis();
+        return mongoClient.findMany(Message.class, filter, options)
+                .collect(CollectorUtil.toList(batchSize))
+                .flatMap(messages -> {
+                    if (messages.isEmpty()) {
+                        Filter checkpointFilter = Filter.newBuilder(1)
+                                .eq(DomainFieldName.ID, CHECKPOINT_ID);
+                        return mongoClient.deleteOne(ExpiredMessagesCleanupCheckpoint.class, checkpointFilter)
+                                .then(Mono.empty());
+                    }
+                    Message lastMessage = messages.get(messages.size() - 1);
+                    Mono<List<Message>> messagesToDelete = notifyPlugins
+                            ? pluginManager.invokeExtensionPointsSequentially(
+                            ExpiredMessageDeletionNotifier.class,
+                            "getMessagesToDelete",
+                            messages,
+                            (notifier, pre) -> pre.flatMap(notifier::getMessagesToDelete))
+                            : Mono.just(messages);
+                    return messagesToDelete
+                            .flatMap(this::deleteMessages)
+                            .defaultIfEmpty(0L)
+                            .flatMap(deletedCount -> {
+                                deletedMessagesCounter.increment(deletedCount);
+                                Date deliveryDate = lastMessage.getDeliveryDate();
+                                lagMillis = expirationDate.getTime() - deliveryDate.getTime();
+                                ExpiredMessagesCleanupCheckpoint checkpoint = new ExpiredMessagesCleanupCheckpoint(
+                                        CHECKPOINT_ID, expirationDate, deliveryDate, lastMessage.getId(), new Date());
+                                long delayMillis = 0;
+                                if (maxDeletedMessagesPerSecond > 0) {
+                                    long elapsedMillis = System.currentTimeMillis() - startTime;
+                                    delayMillis = Math.max(0, deletedCount * 1000 / maxDeletedMessagesPerSecond - elapsedMillis);
+                                }
+                                Mono<Void> upsert = mongoClient.upsert(checkpoint);
+                                return delayMillis > 0
+                                        ? upsert.then(Mono.delay(Duration.ofMillis(delayMillis))).thenReturn(checkpoint)
+                                        : upsert.thenReturn(checkpoint);
+                            });
+                });
+    }
+
+    private Mono<Long> deleteMessages(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Long> messageIds = new ArrayList<>(messages.size());
+        long minDeliveryDate = Long.MAX_VALUE;
+        long maxDeliveryDate = Long.MIN_VALUE;
+        for (Message message : messages) {
+            messageIds.add(message.getId());
+            long deliveryDate = message.getDeliveryDate().getTime();
+            minDeliveryDate = Math.min(minDeliveryDate, deliveryDate);
+            maxDeliveryDate = Math.max(maxDeliveryDate, deliveryDate);
+        }
+        // Specify the range of the shard key so that the deletion only targets the related shards
+        Filter filter = Filter.newBuilder(2)
+                .in(DomainFieldName.ID, messageIds)
+                .addBetweenIfNotNull(Message.Fields.DELIVERY_DATE,
+                        DateRange.of(new Date(minDeliveryDate), new Date(maxDeliveryDate + 1)));
+        return mongoClient.deleteMany(Message.class, filter)
+                .map(DeleteResult::getDeletedCount);
+    }
+
+}
@@ -37,12 +37,14 @@ import im.turms.server.common.logging.core.logger.LoggerFactory;
 import im.turms.server.common.mongo.DomainFieldName;
 import im.turms.server.common.mongo.IMongoCollectionInitializer;
 import im.turms.server.common.mongo.TurmsMongoClient;
+import im.turms.server.common.mongo.operation.GroupCommitInserter;
 import im.turms.server.common.mongo.operation.option.Filter;
 import im.turms.server.common.mongo.operation.option.QueryOptions;
 import im.turms.server.common.mongo.operation.option.Update;
 import im.turms.server.common.plugin.PluginManager;
 import im.turms.server.common.property.TurmsPropertiesManager;
 import im.turms.server.common.property.constant.TimeType;
+import im.turms.server.common.property.env.service.business.message.GroupCommitProperties;
 import im.turms.server.common.property.env.service.business.message.MessageProperties;
 import im.turms.server.common.property.env.service.business.message.SequenceIdProperties;
 import im.turms.server.common.redis.TurmsRedisClientManager;
@@ -54,10 +56,10 @@ import im.turms.server.common.util.CollectorUtil;
 import im.turms.server.common.util.DateUtil;
 import im.turms.service.bo.ServicePermission;
 import im.turms.service.constant.OperationResultConstant;
-import im.turms.service.plugin.extension.ExpiredMessageDeletionNotifier;
 import im.turms.service.proto.ProtoModelConvertor;
 import im.turms.service.workflow.dao.domain.message.Message;
 import im.turms.service.workflow.service.impl.conversation.ConversationService;
+import im.turms.service.workflow.service.impl.conversation.UnreadMessageCountService;
 import im.turms.service.workflow.service.impl.group.GroupMemberService;
 import im.turms.service.workflow.service.impl.statistics.MetricsService;
 import im.turms.service.workflow.service.impl.user.UserService;
@@ -73,8 +75,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
@@ -84,7 +88,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static im.turms.server.common.constant.BusinessConstant.ADMIN_REQUESTER_ID;
@@ -96,6 +102,7 @@ import static im.turms.server.common.constant.TurmsStatusCode.OK;
 import static im.turms.server.common.constant.TurmsStatusCode.RECALLING_MESSAGE_IS_DISABLED;
 import static im.turms.server.common.constant.TurmsStatusCode.RECALL_NON_EXISTING_MESSAGE;
 import static im.turms.server.common.constant.TurmsStatusCode.UPDATING_MESSAGE_BY_SENDER_IS_DISABLED;
+import static im.turms.service.constant.MetricsConstant.MESSAGE_PERSISTENCE_METRICS_NAME;
 import static im.turms.service.constant.MetricsConstant.SENT_MESSAGES_COUNTER_NAME;
 
 /**
@@ -115,6 +122,7 @@ public class MessageService {
     private final TurmsRedisClientManager redisClientManager;
     private final Node node;
     private final ConversationService conversationService;
+    private final UnreadMessageCountService unreadMessageCountService;
     private final OutboundMessageService outboundMessageService;
     private final GroupMemberService groupMemberService;
     private final UserService userService;
@@ -129,6 +137,20 @@ public class MessageService {
     private TimeType timeType;
     private final Cache<Long, Message> sentMessageCache;
 
+    /**
+     * Not null if group commit is enabled
+     */
+    @Nullable
+    private final GroupCommitInserter<Message> messageInserter;
+    /**
+     * Used to coalesce the sequence ID requests of the same conversation into one INCRBY
+     * when group commit is enabled
+     */
+    @Nullable
+    private final Map<SequenceIdKey, List<MonoSink<Long>>> pendingSequenceIdRequests;
+
+    private final ExpiredMessagesCleaner expiredMessagesCleaner;
+
     private final Counter sentMessageCounter;
 
     @Autowired
@@ -141,6 +163,7 @@ public class MessageService {
 
             TurmsPropertiesManager turmsPropertiesManager,
             ConversationService conversationService,
+            UnreadMessageCountService unreadMessageCountService,
             GroupMemberService groupMemberService,
             UserService userService,
             OutboundMessageService outboundMessageService,
@@ -152,6 +175,7 @@ public class MessageService {
         this.redisClientManager = sequenceIdRedisClientManager;
         this.node = node;
         this.conversationService = conversationService;
+        this.unreadMessageCountService = unreadMessageCountService;
         this.groupMemberService = groupMemberService;
         this.userService = userService;
         this.outboundMessageService = outboundMessageService;
@@ -174,7 +198,23 @@ public class MessageService {
         } else {
             sentMessageCache = null;
         }
+        GroupCommitProperties groupCommitProperties = turmsPropertiesManager.getLocalProperties()
+                .getService()
+                .getMessage()
+                .getGroupCommit();
+        if (groupCommitProperties.isEnabled()) {
+            messageInserter = new GroupCommitInserter<>(messageMongoClient,
+                    groupCommitProperties.getMaxBatchSize(),
+                    groupCommitProperties.getMaxDelayMicros(),
+                    metricsService.getRegistry(),
+                    MESSAGE_PERSISTENCE_METRICS_NAME);
+            pendingSequenceIdRequests = new ConcurrentHashMap<>(256);
+        } else {
+            messageInserter = null;
+            pendingSequenceIdRequests = null;
+        }
         sentMessageCounter = metricsService.getRegistry().counter(SENT_MESSAGES_COUNTER_NAME);
+        expiredMessagesCleaner = new ExpiredMessagesCleaner(messageMongoClient, node, pluginManager, metricsService.getRegistry());
         node.addPropertiesChangeListener(properties -> timeType = properties.getService().getMessage().getTimeType());
         // Set up the checker for expired messages join requests
         taskManager.reschedule(
@@ -424,7 +464,7 @@ public class MessageService {
                     referenceId,
                     null,
                     preMessageId);
-            saveMessage = mongoClient.insert(message)
+            saveMessage = insertMessage(message)
                     .thenReturn(message);
         } else {
             Long finalMessageId = messageId;
@@ -450,7 +490,7 @@ public class MessageService {
                                 referenceId,
                                 seqId.intValue(),
                                 finalPreMessageId);
-                        return mongoClient.insert(message)
+                        return insertMessage(message)
                                 .thenReturn(message);
                     });
         }
@@ -484,38 +524,13 @@ public class MessageService {
     }
 
     public Mono<Void> deleteExpiredMessages(@NotNull Integer timeToLiveHours) {
-        return queryExpiredMessageIds(timeToLiveHours)
-                .collectList()
-                .flatMap(expiredMessageIds -> {
-                    if (expiredMessageIds.isEmpty()) {
-                        return Mono.empty();
-                    }
-                    Mono<List<Long>> messageIdsToDeleteMono = Mono.just(expiredMessageIds);
-                    if (pluginManager.hasRunningExtensions(ExpiredMessageDeletionNotifier.class)) {
-                        Filter messagesFilter = Filter.newBuilder(1)
-                                .in(DomainFieldName.ID, expiredMessageIds);
-                        messageIdsToDeleteMono = mongoClient.findMany(Message.class, messagesFilter)
-                                .collectList()
-                                .flatMap(messages -> pluginManager.invokeExtensionPointsSequentially(
-                                        ExpiredMessageDeletionNotifier.class,
-                                        "getMessagesToDelete",
-                                        messages,
-                                        (notifier, pre) -> pre.flatMap(notifier::getMessagesToDelete)))
-                                .map(messages -> {
-                                    List<Long> messageIds = new ArrayList<>(messages.size());
-                                    for (Message message : messages) {
-                                        messageIds.add(message.getId());
-                                    }
-                                    return messageIds;
-                                });
-                    }
-                    return messageIdsToDeleteMono
-                            .flatMap(messageIds -> {
-                                Filter messagesFilter = Filter.newBuilder(1)
-                                        .in(DomainFieldName.ID, messageIds);
-                                return mongoClient.deleteMany(Message.class, messagesFilter).then();
-                            });
-                });
+        try {
+            AssertUtil.notNull(timeToLiveHours, "timeToLiveHours");
+        } catch (TurmsBusinessException e) {
+            return Mono.error(e);
+        }
+        Date expirationDate = DateUtil.addHours(System.currentTimeMillis(), -timeToLiveHours);
+        return expiredMessagesCleaner.deleteExpiredMessages(expirationDate);
     }
 
     public Mono<DeleteResult> deleteMessages(
@@ -823,6 +838,7 @@ public class MessageService {
                             if (message.getId() != null && sentMessageCache != null) {
                                 cacheSentMessage(message);
                             }
+                            increaseUnreadMessageCounts(message, recipientIds);
                             return Pair.of(message, recipientIds);
                         });
                     });
@@ -922,6 +938,30 @@ public class MessageService {
                 recipientIds);
     }
 
+    private void increaseUnreadMessageCounts(@NotNull Message message, @NotNull Set<Long> recipientIds) {
+        if (!unreadMessageCountService.isEnabled()) {
+            return;
+        }
+        boolean isGroupMessage = message.getIsGroupMessage();
+        Long fromId = isGroupMessage ? message.getTargetId() : message.getSenderId();
+        Collection<Long> ownerIds = recipientIds;
+        Long senderId = message.getSenderId();
+        if (isGroupMessage && recipientIds.contains(senderId)) {
+            ownerIds = new ArrayList<>(recipientIds.size() - 1);
+            for (Long recipientId : recipientIds) {
+                if (!recipientId.equals(senderId)) {
+                    ownerIds.add(recipientId);
+                }
+            }
+        }
+        // No need to let the client wait for the counts
+        unreadMessageCountService.increaseUnreadMessageCounts(isGroupMessage, fromId, ownerIds)
+                .subscribe(null, t -> LOGGER.error("Caught an error while increasing the unread message counts of the {} conversation: {}",
+                        isGroupMessage ? "group" : "private",
+                        fromId,
+                        t));
+    }
+
     private void cacheSentMessage(@NotNull Message message) {
         sentMessageCache.put(message.getId(), new Message(
                 message.getId(),
@@ -975,6 +1015,19 @@ public class MessageService {
         }
     }
 
+    @PreDestroy
+    public void destroy() {
+        if (messageInserter != null) {
+            messageInserter.destroy();
+        }
+    }
+
+    private Mono<Void> insertMessage(Message message) {
+        return messageInserter == null
+                ? mongoClient.insert(message)
+                : messageInserter.insert(message);
+    }
+
     // Sequence ID
 
     public Mono<Void> deleteSequenceIds(boolean isGroupConversation, Set<Long> targetIds) {
@@ -1000,6 +1053,9 @@ public class MessageService {
         if (redisClientManager == null) {
             return Mono.empty();
         }
+        if (pendingSequenceIdRequests != null) {
+            return reserveSequenceId(new SequenceIdKey(isGroupConversation, targetId));
+        }
         byte[] prefix = isGroupConversation
                 ? GROUP_CONVERSATION_SEQUENCE_ID_PREFIX
                 : PRIVATE_CONVERSATION_SEQUENCE_ID_PREFIX;
@@ -1009,6 +1065,80 @@ public class MessageService {
         return redisClientManager.incr(targetId, buffer);
     }
 
+    /**
+     * Only one INCRBY is in flight for a conversation at any time,
+     * and the requests that arrive while it is in flight are served by the next INCRBY
+     * with a range of sequence IDs so that bursts of messages in the same conversation
+     * don't cost one round trip per message.
+     */
+    private Mono<Long> reserveSequenceId(SequenceIdKey key) {
+        return Mono.create(sink -> {
+            boolean[] shouldFetch = {false};
+            pendingSequenceIdRequests.compute(key, (k, sinks) -> {
+                if (sinks == null) {
+                    sinks = new ArrayList<>(4);
+                    shouldFetch[0] = true;
+                }
+                sinks.add(sink);
+                return sinks;
+            });
+            if (shouldFetch[0]) {
+                reserveSequenceIds(key);
+            }
+        });
+    }
+
+    private void reserveSequenceIds(SequenceIdKey key) {
+        List<List<MonoSink<Long>>> pendingSinks = new ArrayList<>(1);
+        pendingSequenceIdRequests.computeIfPresent(key, (k, sinks) -> {
+            pendingSinks.add(sinks);
+            // Keep the entry as the marker of the in-flight request
+            return new ArrayList<>(4);
+        });
+        List<MonoSink<Long>> sinks = pendingSinks.get(0);
+        int count = sinks.size();
+        byte[] prefix = key.isGroupConversation
+                ? GROUP_CONVERSATION_SEQUENCE_ID_PREFIX
+                : PRIVATE_CONVERSATION_SEQUENCE_ID_PREFIX;
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(prefix.length + Long.BYTES)
+                .writeBytes(prefix)
+                .writeLong(key.targetId);
+        Mono<Long> incr = count == 1
+                ? redisClientManager.incr(key.targetId, buffer)
+                : redisClientManager.incrby(key.targetId, buffer, count);
+        incr.subscribe(lastSequenceId -> {
+            long sequenceId = lastSequenceId - count + 1;
+            for (MonoSink<Long> sink : sinks) {
+                sink.success(sequenceId++);
+            }
+        }, t -> {
+            for (MonoSink<Long> sink : sinks) {
+                sink.error(t);
+            }
+            onSequenceIdsReserved(key);
+        }, () -> onSequenceIdsReserved(key));
+    }
+
+    private void onSequenceIdsReserved(SequenceIdKey key) {
+        boolean[] hasPendingRequests = {false};
+        pendingSequenceIdRequests.computeIfPresent(key, (k, sinks) -> {
+            if (sinks.isEmpty()) {
+                return null;
+            }
+            hasPendingRequests[0] = true;
+            return sinks;
+        });
+        if (hasPendingRequests[0]) {
+            reserveSequenceIds(key);
+        }
+    }
+
+    private record SequenceIdKey(
+            boolean isGroupConversation,
+            long targetId
+    ) {
+    }
+
     // conversation ID
 
     public static byte[] getConversationId(long id1, long id2, boolean isGroupMessage) {
@@ -29,7 +29,6 @@ import im.turms.server.common.service.session.UserStatusService;
 import im.turms.server.common.tracing.TracingCloseableContext;
 import im.turms.server.common.tracing.TracingContext;
 import im.turms.server.common.util.CollectionUtil;
-import im.turms.server.common.util.CollectorUtil;
 import im.turms.server.common.util.ProtoUtil;
 import im.turms.server.common.util.ReactorUtil;
 import im.turms.service.logging.ApiLoggingContext;
@@ -37,12 +36,10 @@ import im.turms.service.logging.NotificationLogging;
 import io.netty.buffer.ByteBuf;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -141,16 +138,10 @@ public class OutboundMessageService {
         if (recipientIdCount == 1) {
             return forwardClientMessageByRecipientId(messageData, recipientIds.iterator().next());
         }
-        List<Mono<RecipientAndNodeIds>> monos = new ArrayList<>(recipientIdCount);
-        for (Long recipientId : recipientIds) {
-            monos.add(userStatusService.getDeviceAndNodeIdMapByUserId(recipientId)
-                    .map(map -> new RecipientAndNodeIds(recipientId, map.values())));
-        }
-        return Flux.merge(monos)
+        return userStatusService.getDeviceAndNodeIdMapByUserIds(recipientIds)
                 .doOnError(t -> messageData.release())
-                .collect(CollectorUtil.toList(recipientIdCount))
-                .flatMap(pairs -> {
-                    if (pairs.isEmpty()) {
+                .flatMap(deviceTypeAndNodeIdMapByUserId -> {
+                    if (deviceTypeAndNodeIdMapByUserId.isEmpty()) {
                         messageData.release();
                         return Mono.just(false);
                     }
@@ -163,9 +154,10 @@ public class OutboundMessageService {
                     int expectedRecipientCountPerMember = Math.max(1, recipientIdCount / expectedMembersCount);
                     SetMultimap<String, Long> userIdsByNodeId =
                             HashMultimap.create(expectedMembersCount, expectedRecipientCountPerMember);
-                    for (RecipientAndNodeIds pair : pairs) {
-                        for (String nodeId : pair.nodeIds) {
-                            userIdsByNodeId.put(nodeId, pair.recipientId);
+                    for (Map.Entry<Long, Map<DeviceType, String>> entry : deviceTypeAndNodeIdMapByUserId.entrySet()) {
+                        Long recipientId = entry.getKey();
+                        for (String nodeId : entry.getValue().values()) {
+                            userIdsByNodeId.put(nodeId, recipientId);
                         }
                     }
                     return forwardClientMessageToNodes(messageData, userIdsByNodeId);
@@ -276,7 +268,4 @@ public class OutboundMessageService {
                 });
     }
 
-    private record RecipientAndNodeIds(Long recipientId, Collection<String> nodeIds) {
-    }
-
 }
\ No newline at end of file
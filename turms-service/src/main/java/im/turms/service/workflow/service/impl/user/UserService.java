@@ -349,8 +349,12 @@ public class UserService {
                     .retryWhen(TRANSACTION_RETRY);
         }
         return deleteOrUpdateMono
-                .doOnNext(ignored -> sessionService.disconnect(userIds, SessionCloseStatus.USER_IS_DELETED_OR_INACTIVATED)
-                        .subscribe(null, t -> LOGGER.error("Caught an error while closing the session of the user IDs: " + userIds, t)));
+                .doOnNext(ignored -> {
+                    sessionService.invalidateUserCredentials(userIds)
+                            .subscribe(null, t -> LOGGER.error("Caught an error while invalidating the cached credentials of the user IDs: " + userIds, t));
+                    sessionService.disconnect(userIds, SessionCloseStatus.USER_IS_DELETED_OR_INACTIVATED)
+                            .subscribe(null, t -> LOGGER.error("Caught an error while closing the session of the user IDs: " + userIds, t));
+                });
     }
 
     public Mono<Boolean> userExists(@NotNull Long userId, boolean queryDeletedRecords) {
@@ -481,14 +485,30 @@ public class UserService {
                 .setIfNotNull(User.Fields.REGISTRATION_DATE, registrationDate)
                 .setIfNotNull(User.Fields.IS_ACTIVE, isActive)
                 .setIfNotNull(User.Fields.LAST_UPDATED_DATE, new Date());
+        boolean isInactivated = Boolean.FALSE.equals(isActive);
+        boolean shouldInvalidateCredentials = password != null || isInactivated;
         return mongoClient.updateMany(User.class, filter, update)
-                .flatMap(result -> Boolean.FALSE.equals(isActive) && result.getModifiedCount() > 0
-                        ? sessionService.disconnect(userIds, SessionCloseStatus.USER_IS_DELETED_OR_INACTIVATED)
-                        .onErrorResume(t -> {
-                            LOGGER.error("Caught an error while disconnecting the session of the users {} after inactivating the users", userIds, t);
-                            return Mono.empty();
-                        }).thenReturn(result)
-                        : Mono.just(result));
+                .flatMap(result -> {
+                    if (result.getModifiedCount() == 0) {
+                        return Mono.just(result);
+                    }
+                    Mono<Void> invalidateCredentials = shouldInvalidateCredentials
+                            ? sessionService.invalidateUserCredentials(userIds)
+                            .onErrorResume(t -> {
+                                LOGGER.error("Caught an error while invalidating the cached credentials of the users {} after updating the users", userIds, t);
+                                return Mono.empty();
+                            })
+                            : Mono.empty();
+                    return isInactivated
+                            ? invalidateCredentials
+                            .then(sessionService.disconnect(userIds, SessionCloseStatus.USER_IS_DELETED_OR_INACTIVATED)
+                                    .onErrorResume(t -> {
+                                        LOGGER.error("Caught an error while disconnecting the session of the users {} after inactivating the users", userIds, t);
+                                        return Mono.empty();
+                                    }))
+                            .thenReturn(result)
+                            : invalidateCredentials.thenReturn(result);
+                });
     }
 
     private Mono<Boolean> isActiveAndNotDeleted(@NotNull Long userId) {
@@ -20,8 +20,11 @@ package im.turms.service.workflow.service.impl.user.onlineuser;
 import im.turms.common.constant.DeviceType;
 import im.turms.common.constant.statuscode.SessionCloseStatus;
 import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.cluster.service.rpc.RpcErrorCode;
+import im.turms.server.common.cluster.service.rpc.exception.RpcException;
 import im.turms.server.common.constraint.ValidDeviceType;
 import im.turms.server.common.exception.TurmsBusinessException;
+import im.turms.server.common.rpc.request.InvalidateUserCredentialsRequest;
 import im.turms.server.common.rpc.request.SetUserOfflineRequest;
 import im.turms.server.common.service.session.UserStatusService;
 import im.turms.server.common.util.AssertUtil;
@@ -181,4 +184,24 @@ public class SessionService {
         };
     }
 
+    /**
+     * Invalidate the credentials cached by turms-gateway servers
+     * so that the users must log in with their latest passwords
+     */
+    public Mono<Void> invalidateUserCredentials(@NotNull Set<Long> userIds) {
+        try {
+            AssertUtil.notNull(userIds, "userIds");
+        } catch (TurmsBusinessException e) {
+            return Mono.error(e);
+        }
+        if (userIds.isEmpty()) {
+            return Mono.empty();
+        }
+        InvalidateUserCredentialsRequest request = new InvalidateUserCredentialsRequest(userIds);
+        return node.getRpcService().requestResponsesFromOtherMembers(request, false)
+                .onErrorResume(throwable -> RpcException.isErrorCode(throwable, RpcErrorCode.MEMBER_NOT_FOUND),
+                        throwable -> Mono.empty())
+                .then();
+    }
+
 }
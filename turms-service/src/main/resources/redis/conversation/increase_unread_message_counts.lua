@@ -0,0 +1,5 @@
+local conversation = ARGV[1]
+for i = 1, #KEYS do
+    redis.call('hincrby', KEYS[i], conversation, 1)
+end
+return #KEYS
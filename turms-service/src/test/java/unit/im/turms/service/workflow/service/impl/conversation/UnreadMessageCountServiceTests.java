@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.service.workflow.service.impl.conversation;
+
+import im.turms.server.common.redis.TurmsRedisClientManager;
+import im.turms.server.common.redis.script.RedisScript;
+import im.turms.service.bo.MessageFromKey;
+import im.turms.service.workflow.service.impl.conversation.UnreadMessageCountService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class UnreadMessageCountServiceTests {
+
+    private static final byte[] GROUP_FIELD = {'g', 0, 0, 0, 0, 0, 0, 0, 2};
+
+    @Test
+    void increaseUnreadMessageCounts_shouldPassConversationAsScriptArg() {
+        TurmsRedisClientManager redisClientManager = mock(TurmsRedisClientManager.class);
+        when(redisClientManager.eval(any(RedisScript.class), any(), any(byte[].class)))
+                .thenReturn(Flux.just(2L));
+        UnreadMessageCountService service = new UnreadMessageCountService(redisClientManager);
+        List<Long> ownerIds = List.of(10L, 11L);
+
+        Mono<Void> result = service.increaseUnreadMessageCounts(true, 2L, ownerIds);
+        verify(redisClientManager, never()).eval(any(RedisScript.class), any(), any(byte[].class));
+
+        StepVerifier.create(result)
+                .verifyComplete();
+        verify(redisClientManager).eval(any(RedisScript.class), eq(ownerIds), aryEq(GROUP_FIELD));
+    }
+
+    @Test
+    void resetUnreadMessageCount_shouldEncodeFieldOnlyWhenSubscribed() {
+        TurmsRedisClientManager redisClientManager = mock(TurmsRedisClientManager.class);
+        ArgumentCaptor<Object[]> fieldsCaptor = ArgumentCaptor.forClass(Object[].class);
+        when(redisClientManager.hdel(anyLong(), any(), fieldsCaptor.capture()))
+                .thenReturn(Mono.just(1L));
+        UnreadMessageCountService service = new UnreadMessageCountService(redisClientManager);
+
+        Mono<Void> result = service.resetUnreadMessageCount(true, 10L, 2L);
+        verify(redisClientManager, never()).hdel(anyLong(), any(), any());
+
+        StepVerifier.create(result)
+                .verifyComplete();
+        Object[] fields = fieldsCaptor.getValue();
+        assertThat(fields).hasSize(1);
+        ByteBuf field = (ByteBuf) fields[0];
+        assertThat(ByteBufUtil.getBytes(field)).isEqualTo(GROUP_FIELD);
+        field.release();
+    }
+
+    @Test
+    void resetUnreadMessageCounts_shouldEncodeFieldsOnlyWhenSubscribed() {
+        TurmsRedisClientManager redisClientManager = mock(TurmsRedisClientManager.class);
+        ArgumentCaptor<Object[]> fieldsCaptor = ArgumentCaptor.forClass(Object[].class);
+        when(redisClientManager.hdel(anyLong(), any(), fieldsCaptor.capture()))
+                .thenReturn(Mono.just(1L));
+        UnreadMessageCountService service = new UnreadMessageCountService(redisClientManager);
+
+        Mono<Void> result = service.resetUnreadMessageCounts(false, Map.of(10L, List.of(2L, 3L)));
+        verify(redisClientManager, never()).hdel(anyLong(), any(), any());
+
+        StepVerifier.create(result)
+                .verifyComplete();
+        Object[] fields = fieldsCaptor.getValue();
+        assertThat(fields).hasSize(2);
+        for (Object field : fields) {
+            ((ByteBuf) field).release();
+        }
+    }
+
+    @Test
+    void queryUnreadMessageCounts_shouldReturnCountsOfRequestedConversations() {
+        TurmsRedisClientManager redisClientManager = mock(TurmsRedisClientManager.class);
+        Map.Entry<ByteBuf, ByteBuf> groupCount = Map.entry(Unpooled.wrappedBuffer(GROUP_FIELD),
+                Unpooled.copiedBuffer("5", StandardCharsets.US_ASCII));
+        Map.Entry<ByteBuf, ByteBuf> privateCount = Map.entry(
+                Unpooled.wrappedBuffer(new byte[]{'p', 0, 0, 0, 0, 0, 0, 0, 3}),
+                Unpooled.copiedBuffer("7", StandardCharsets.US_ASCII));
+        when(redisClientManager.<ByteBuf, ByteBuf>hgetall(10L, 10L))
+                .thenReturn(Flux.just(groupCount, privateCount));
+        UnreadMessageCountService service = new UnreadMessageCountService(redisClientManager);
+        MessageFromKey groupConversation = new MessageFromKey(true, 2L);
+
+        StepVerifier.create(service.queryUnreadMessageCounts(10L, Set.of(groupConversation)))
+                .expectNext(Map.of(groupConversation, 5L))
+                .verifyComplete();
+        assertThat(groupCount.getKey().refCnt()).isZero();
+        assertThat(privateCount.getValue().refCnt()).isZero();
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.service.workflow.service.impl.group;
+
+import im.turms.common.constant.GroupMemberRole;
+import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.constant.TurmsStatusCode;
+import im.turms.server.common.mongo.TurmsMongoClient;
+import im.turms.server.common.mongo.operation.option.Filter;
+import im.turms.server.common.mongo.operation.option.QueryOptions;
+import im.turms.server.common.property.TurmsProperties;
+import im.turms.server.common.property.env.service.business.GroupProperties;
+import im.turms.server.common.service.session.UserStatusService;
+import im.turms.service.workflow.dao.domain.group.Group;
+import im.turms.service.workflow.dao.domain.group.GroupMember;
+import im.turms.service.workflow.dao.domain.group.GroupVersion;
+import im.turms.service.workflow.service.impl.group.GroupMemberService;
+import im.turms.service.workflow.service.impl.group.GroupService;
+import im.turms.service.workflow.service.impl.group.GroupVersionService;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.Date;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class GroupMemberServiceTests {
+
+    private static final Long GROUP_ID = 1L;
+    private static final Long OTHER_GROUP_ID = 2L;
+    private static final Long USER_ID = 10L;
+    private static final GroupMember MEMBER = new GroupMember(GROUP_ID, USER_ID, null, GroupMemberRole.MEMBER, new Date(), null);
+
+    private final TurmsMongoClient mongoClient = mock(TurmsMongoClient.class);
+    private final GroupService groupService = mock(GroupService.class);
+    private final GroupVersionService groupVersionService = mock(GroupVersionService.class);
+
+    @Test
+    void isGroupMember_shouldServeCachedMembers() {
+        GroupMemberService groupMemberService = newGroupMemberService(60);
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Flux.just(MEMBER));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(groupMemberService.isGroupMember(GROUP_ID, USER_ID))
+                    .expectNext(true)
+                    .verifyComplete();
+        }
+
+        verify(mongoClient, times(1)).findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+    }
+
+    @Test
+    void isGroupMember_shouldNotCacheMembers_ifGroupIsInvalidatedWhileLoading() {
+        GroupMemberService groupMemberService = newGroupMemberService(60);
+        Sinks.Many<GroupMember> loadingMembers = Sinks.many().unicast().onBackpressureBuffer();
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(loadingMembers.asFlux(), Flux.empty());
+
+        StepVerifier.create(groupMemberService.isGroupMember(GROUP_ID, USER_ID))
+                .then(() -> {
+                    groupMemberService.addGroupMember(GROUP_ID, 11L, GroupMemberRole.MEMBER, null, null, null, null)
+                            .block();
+                    loadingMembers.tryEmitNext(MEMBER);
+                    loadingMembers.tryEmitComplete();
+                })
+                .expectNext(true)
+                .verifyComplete();
+
+        StepVerifier.create(groupMemberService.isGroupMember(GROUP_ID, USER_ID))
+                .expectNext(false)
+                .verifyComplete();
+        verify(mongoClient, times(2)).findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+    }
+
+    @Test
+    void isGroupMember_shouldCacheMembers_ifAnotherGroupIsInvalidatedWhileLoading() {
+        GroupMemberService groupMemberService = newGroupMemberService(60);
+        Sinks.Many<GroupMember> loadingMembers = Sinks.many().unicast().onBackpressureBuffer();
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(loadingMembers.asFlux(), Flux.empty());
+
+        StepVerifier.create(groupMemberService.isGroupMember(GROUP_ID, USER_ID))
+                .then(() -> {
+                    groupMemberService.addGroupMember(OTHER_GROUP_ID, 11L, GroupMemberRole.MEMBER, null, null, null, null)
+                            .block();
+                    loadingMembers.tryEmitNext(MEMBER);
+                    loadingMembers.tryEmitComplete();
+                })
+                .expectNext(true)
+                .verifyComplete();
+
+        StepVerifier.create(groupMemberService.isGroupMember(GROUP_ID, USER_ID))
+                .expectNext(true)
+                .verifyComplete();
+        verify(mongoClient, times(1)).findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+    }
+
+    @Test
+    void isGroupMember_shouldReloadMembers_onlyIfMembersVersionChanged() {
+        GroupMemberService groupMemberService = newGroupMemberService(0);
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Flux.just(MEMBER));
+        // The new version is older than the previous one because the clocks of nodes are not synchronized
+        when(groupVersionService.queryInfoAndMembersVersion(GROUP_ID))
+                .thenReturn(Mono.just(newVersion(200)), Mono.just(newVersion(200)), Mono.just(newVersion(100)));
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(groupMemberService.isGroupMember(GROUP_ID, USER_ID))
+                    .expectNext(true)
+                    .verifyComplete();
+        }
+
+        verify(mongoClient, times(2)).findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+    }
+
+    @Test
+    void isGroupMember_shouldShareLoad_ifMembersAreRequestedConcurrently() {
+        GroupMemberService groupMemberService = newGroupMemberService(60);
+        Sinks.Many<GroupMember> loadingMembers = Sinks.many().unicast().onBackpressureBuffer();
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(loadingMembers.asFlux());
+
+        Mono<Boolean> isGroupMember1 = groupMemberService.isGroupMember(GROUP_ID, USER_ID);
+        Mono<Boolean> isGroupMember2 = groupMemberService.isGroupMember(GROUP_ID, USER_ID);
+        StepVerifier.create(Mono.zip(isGroupMember1, isGroupMember2))
+                .then(() -> {
+                    loadingMembers.tryEmitNext(MEMBER);
+                    loadingMembers.tryEmitComplete();
+                })
+                .expectNextMatches(results -> results.getT1() && results.getT2())
+                .verifyComplete();
+
+        verify(mongoClient, times(1)).findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+    }
+
+    @Test
+    void queryGroupMemberRole_shouldQueryMember_ifGroupExceedsCache() {
+        GroupMemberService groupMemberService = newGroupMemberService(60, 2);
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Flux.just(MEMBER, new GroupMember(GROUP_ID, 11L, null, GroupMemberRole.MEMBER, new Date(), null)));
+        when(mongoClient.findOne(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Mono.just(MEMBER));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(groupMemberService.queryGroupMemberRole(USER_ID, GROUP_ID))
+                    .expectNext(GroupMemberRole.MEMBER)
+                    .verifyComplete();
+        }
+
+        verify(mongoClient, times(1)).findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+        verify(mongoClient, times(2)).findOne(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class));
+    }
+
+    @Test
+    void isAllowedToSendMessage_shouldServeCachedGroupStatus() {
+        GroupMemberService groupMemberService = newGroupMemberService(60);
+        when(mongoClient.findMany(eq(GroupMember.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Flux.just(MEMBER));
+        Group group = new Group(GROUP_ID, null, null, null, null, null, null, null, null, null,
+                new Date(System.currentTimeMillis() + 60_000), true);
+        when(mongoClient.findOne(eq(Group.class), any(Filter.class), any(QueryOptions.class)))
+                .thenReturn(Mono.just(group));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(groupMemberService.isAllowedToSendMessage(GROUP_ID, USER_ID))
+                    .expectNext(TurmsStatusCode.SEND_MESSAGE_TO_MUTED_GROUP)
+                    .verifyComplete();
+        }
+
+        verify(mongoClient, times(1)).findOne(eq(Group.class), any(Filter.class), any(QueryOptions.class));
+        verify(groupService, never()).isGroupMuted(any());
+        verify(groupService, never()).isGroupActiveAndNotDeleted(any());
+    }
+
+    private GroupMemberService newGroupMemberService(int memberCacheVersionCheckIntervalSeconds) {
+        return newGroupMemberService(memberCacheVersionCheckIntervalSeconds, new GroupProperties().getMemberCacheMaxSize());
+    }
+
+    private GroupMemberService newGroupMemberService(int memberCacheVersionCheckIntervalSeconds, int memberCacheMaxSize) {
+        TurmsProperties properties = new TurmsProperties();
+        GroupProperties groupProperties = properties.getService().getGroup();
+        groupProperties.setMemberCacheVersionCheckIntervalSeconds(memberCacheVersionCheckIntervalSeconds);
+        groupProperties.setMemberCacheMaxSize(memberCacheMaxSize);
+        Node node = mock(Node.class);
+        when(node.getSharedProperties()).thenReturn(properties);
+        when(mongoClient.watch(any(), any())).thenReturn(Flux.never());
+        when(mongoClient.insert(any(), any())).thenReturn(Mono.empty());
+        when(mongoClient.findOne(eq(Group.class), any(Filter.class), any(QueryOptions.class))).thenReturn(Mono.empty());
+        when(groupVersionService.queryInfoAndMembersVersion(any())).thenReturn(Mono.empty());
+        when(groupVersionService.updateMembersVersion(any(Long.class))).thenReturn(Mono.just(true));
+        return new GroupMemberService(node,
+                mongoClient,
+                groupService,
+                groupVersionService,
+                mock(UserStatusService.class));
+    }
+
+    private static GroupVersion newVersion(long membersVersion) {
+        return new GroupVersion(GROUP_ID, null, new Date(membersVersion), null, null, null, null);
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.service.workflow.service.impl.message;
+
+import com.mongodb.client.result.DeleteResult;
+import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.mongo.DomainFieldName;
+import im.turms.server.common.mongo.TurmsMongoClient;
+import im.turms.server.common.mongo.operation.option.Filter;
+import im.turms.server.common.mongo.operation.option.QueryOptions;
+import im.turms.server.common.plugin.PluginManager;
+import im.turms.server.common.property.TurmsProperties;
+import im.turms.server.common.property.env.service.business.message.ExpiredMessagesCleanupProperties;
+import im.turms.service.plugin.extension.ExpiredMessageDeletionNotifier;
+import im.turms.service.workflow.dao.domain.message.ExpiredMessagesCleanupCheckpoint;
+import im.turms.service.workflow.dao.domain.message.Message;
+import im.turms.service.workflow.service.impl.message.ExpiredMessagesCleaner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class ExpiredMessagesCleanerTests {
+
+    private static final Date EXPIRATION_DATE = new Date(100_000);
+
+    private final TurmsMongoClient mongoClient = mock(TurmsMongoClient.class);
+    private final ArgumentCaptor<Filter> filterCaptor = ArgumentCaptor.forClass(Filter.class);
+    private final ArgumentCaptor<ExpiredMessagesCleanupCheckpoint> checkpointCaptor =
+            ArgumentCaptor.forClass(ExpiredMessagesCleanupCheckpoint.class);
+
+    @Test
+    void deleteExpiredMessages_shouldStartFromOldestMessage_ifNoCheckpoint() {
+        ExpiredMessagesCleaner cleaner = newCleaner(null, 2, List.of(
+                List.of(newMessage(1L, 10), newMessage(2L, 20)),
+                Collections.emptyList()));
+
+        StepVerifier.create(cleaner.deleteExpiredMessages(EXPIRATION_DATE))
+                .verifyComplete();
+
+        List<Filter> filters = filterCaptor.getAllValues();
+        assertThat(filters).hasSize(2);
+        assertThat(toDocument(filters.get(0))).doesNotContainKey("$or");
+        assertResumedAfter(filters.get(1), 20, 2L);
+        verify(mongoClient, times(1)).deleteMany(eq(Message.class), any(Filter.class));
+        verify(mongoClient, times(1)).deleteOne(eq(ExpiredMessagesCleanupCheckpoint.class), any(Filter.class));
+    }
+
+    @Test
+    void deleteExpiredMessages_shouldResumeFromCheckpoint() {
+        ExpiredMessagesCleanupCheckpoint checkpoint = new ExpiredMessagesCleanupCheckpoint(Message.COLLECTION_NAME,
+                EXPIRATION_DATE, new Date(10), 5L, new Date());
+        ExpiredMessagesCleaner cleaner = newCleaner(checkpoint, 2, List.of(
+                List.of(newMessage(6L, 10), newMessage(7L, 30)),
+                List.of(newMessage(8L, 40)),
+                Collections.emptyList()));
+
+        StepVerifier.create(cleaner.deleteExpiredMessages(EXPIRATION_DATE))
+                .verifyComplete();
+
+        List<Filter> filters = filterCaptor.getAllValues();
+        assertThat(filters).hasSize(3);
+        assertResumedAfter(filters.get(0), 10, 5L);
+        assertResumedAfter(filters.get(1), 30, 7L);
+        assertResumedAfter(filters.get(2), 40, 8L);
+        verify(mongoClient, times(2)).upsert(checkpointCaptor.capture());
+        List<ExpiredMessagesCleanupCheckpoint> checkpoints = checkpointCaptor.getAllValues();
+        assertThat(checkpoints).extracting(ExpiredMessagesCleanupCheckpoint::getMessageId)
+                .containsExactly(7L, 8L);
+        assertThat(checkpoints).extracting(ExpiredMessagesCleanupCheckpoint::getDeliveryDate)
+                .containsExactly(new Date(30), new Date(40));
+        verify(mongoClient, times(1)).deleteOne(eq(ExpiredMessagesCleanupCheckpoint.class), any(Filter.class));
+    }
+
+    @Test
+    void deleteExpiredMessages_shouldNotGrowStack_forManyBatches() {
+        int batchCount = 10_000;
+        List<List<Message>> batches = new ArrayList<>(batchCount + 1);
+        for (int i = 0; i < batchCount; i++) {
+            batches.add(List.of(newMessage((long) i, i)));
+        }
+        batches.add(Collections.emptyList());
+        ExpiredMessagesCleaner cleaner = newCleaner(null, 1, batches);
+
+        StepVerifier.create(cleaner.deleteExpiredMessages(EXPIRATION_DATE))
+                .verifyComplete();
+
+        verify(mongoClient, times(batchCount)).upsert(any(ExpiredMessagesCleanupCheckpoint.class));
+    }
+
+    private ExpiredMessagesCleaner newCleaner(ExpiredMessagesCleanupCheckpoint checkpoint,
+                                              int batchSize,
+                                              List<List<Message>> batches) {
+        TurmsProperties properties = new TurmsProperties();
+        ExpiredMessagesCleanupProperties cleanupProperties = properties.getService()
+                .getMessage()
+                .getExpiredMessagesCleanup();
+        cleanupProperties.setBatchSize(batchSize);
+        cleanupProperties.setMaxDeletedMessagesPerSecond(0);
+        Node node = mock(Node.class);
+        when(node.getSharedProperties()).thenReturn(properties);
+        PluginManager pluginManager = mock(PluginManager.class);
+        when(pluginManager.hasRunningExtensions(ExpiredMessageDeletionNotifier.class)).thenReturn(false);
+
+        Queue<List<Message>> pendingBatches = new ArrayDeque<>(batches);
+        when(mongoClient.isTimePartitioned(Message.class)).thenReturn(false);
+        when(mongoClient.findOne(ExpiredMessagesCleanupCheckpoint.class)).thenReturn(Mono.justOrEmpty(checkpoint));
+        when(mongoClient.findMany(eq(Message.class), filterCaptor.capture(), any(QueryOptions.class)))
+                .thenAnswer(invocation -> Flux.fromIterable(pendingBatches.remove()));
+        when(mongoClient.deleteMany(eq(Message.class), any(Filter.class)))
+                .thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+        when(mongoClient.upsert(any(ExpiredMessagesCleanupCheckpoint.class)))
+                .thenReturn(Mono.empty());
+        when(mongoClient.deleteOne(eq(ExpiredMessagesCleanupCheckpoint.class), any(Filter.class)))
+                .thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+        return new ExpiredMessagesCleaner(mongoClient, node, pluginManager, new SimpleMeterRegistry());
+    }
+
+    private static void assertResumedAfter(Filter filter, long deliveryDate, long messageId) {
+        BsonDocument lastMessageCondition = toDocument(filter)
+                .getArray("$or")
+                .get(1)
+                .asDocument();
+        assertThat(lastMessageCondition.getDateTime(Message.Fields.DELIVERY_DATE).getValue())
+                .isEqualTo(deliveryDate);
+        assertThat(lastMessageCondition.getDocument(DomainFieldName.ID).getNumber("$gt").longValue())
+                .isEqualTo(messageId);
+    }
+
+    private static BsonDocument toDocument(Filter filter) {
+        return filter.toBsonDocument(BsonDocument.class, null);
+    }
+
+    private static Message newMessage(Long id, long deliveryDate) {
+        return new Message(id, null, false, false, new Date(deliveryDate), null, null, null, null,
+                null, null, null, null, null, null, null);
+    }
+
+}
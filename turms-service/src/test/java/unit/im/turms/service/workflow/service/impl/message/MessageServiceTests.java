@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019 The Turms Project
+ * https://github.com/turms-im/turms
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unit.im.turms.service.workflow.service.impl.message;
+
+import im.turms.server.common.cluster.node.Node;
+import im.turms.server.common.mongo.TurmsMongoClient;
+import im.turms.server.common.plugin.PluginManager;
+import im.turms.server.common.property.TurmsProperties;
+import im.turms.server.common.property.TurmsPropertiesManager;
+import im.turms.server.common.property.env.service.business.message.MessageProperties;
+import im.turms.server.common.redis.TurmsRedisClientManager;
+import im.turms.server.common.task.TrivialTaskManager;
+import im.turms.service.workflow.dao.domain.message.Message;
+import im.turms.service.workflow.service.impl.conversation.ConversationService;
+import im.turms.service.workflow.service.impl.conversation.UnreadMessageCountService;
+import im.turms.service.workflow.service.impl.group.GroupMemberService;
+import im.turms.service.workflow.service.impl.message.MessageService;
+import im.turms.service.workflow.service.impl.message.OutboundMessageService;
+import im.turms.service.workflow.service.impl.statistics.MetricsService;
+import im.turms.service.workflow.service.impl.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author James Chen
+ */
+class MessageServiceTests {
+
+    private static final long GROUP_ID = 1L;
+
+    private final TurmsMongoClient mongoClient = mock(TurmsMongoClient.class);
+    private final TurmsRedisClientManager redisClientManager = mock(TurmsRedisClientManager.class);
+
+    @Test
+    void saveMessage_shouldReserveSequenceIdRange_forMessagesQueuedBehindInFlightRequest() throws Exception {
+        Sinks.One<Long> firstIncr = Sinks.one();
+        when(redisClientManager.incr(eq(GROUP_ID), any(ByteBuf.class)))
+                .thenAnswer(invocation -> {
+                    ReferenceCountUtil.release(invocation.getArgument(1));
+                    return firstIncr.asMono();
+                });
+        when(redisClientManager.incrby(eq(GROUP_ID), any(ByteBuf.class), anyLong()))
+                .thenAnswer(invocation -> {
+                    ReferenceCountUtil.release(invocation.getArgument(1));
+                    return Mono.just(1L + invocation.<Long>getArgument(2));
+                });
+        when(mongoClient.insertAllOfSameType(anyList(), anyBoolean()))
+                .thenReturn(Mono.empty());
+        MessageService messageService = newMessageService();
+
+        // The first message fetches its sequence ID with INCR,
+        // and the messages sent while INCR is in flight share one INCRBY
+        List<CompletableFuture<Message>> messages = new ArrayList<>(4);
+        for (int i = 0; i < 4; i++) {
+            messages.add(messageService.saveMessage(null, 10L, GROUP_ID, true, false, "text",
+                            null, null, null, null, null, null)
+                    .toFuture());
+        }
+        verify(redisClientManager, never()).incrby(anyLong(), any(ByteBuf.class), anyLong());
+        firstIncr.tryEmitValue(1L);
+
+        List<Integer> sequenceIds = new ArrayList<>(4);
+        for (CompletableFuture<Message> message : messages) {
+            sequenceIds.add(message.get(5, TimeUnit.SECONDS).getSequenceId());
+        }
+        assertThat(sequenceIds).containsExactly(1, 2, 3, 4);
+        verify(redisClientManager, times(1)).incr(eq(GROUP_ID), any(ByteBuf.class));
+        verify(redisClientManager, times(1)).incrby(eq(GROUP_ID), any(ByteBuf.class), eq(3L));
+    }
+
+    private MessageService newMessageService() {
+        TurmsProperties properties = new TurmsProperties();
+        MessageProperties messageProperties = properties.getService().getMessage();
+        messageProperties.getSequenceId().setUseSequenceIdForGroupConversation(true);
+        messageProperties.getGroupCommit().setEnabled(true);
+        messageProperties.getGroupCommit().setMaxDelayMicros(1000);
+        properties.getService().getConversation().getReadReceipt().setUpdateReadDateAfterMessageSent(false);
+        Node node = mock(Node.class);
+        when(node.getSharedProperties()).thenReturn(properties);
+        AtomicLong messageId = new AtomicLong();
+        when(node.nextLargeGapId(any())).thenAnswer(invocation -> messageId.incrementAndGet());
+        TurmsPropertiesManager propertiesManager = mock(TurmsPropertiesManager.class);
+        when(propertiesManager.getLocalProperties()).thenReturn(properties);
+        MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.getRegistry()).thenReturn(new SimpleMeterRegistry());
+        return new MessageService(mongoClient,
+                redisClientManager,
+                node,
+                propertiesManager,
+                mock(ConversationService.class),
+                mock(UnreadMessageCountService.class),
+                mock(GroupMemberService.class),
+                mock(UserService.class),
+                mock(OutboundMessageService.class),
+                metricsService,
+                mock(PluginManager.class),
+                mock(TrivialTaskManager.class));
+    }
+
+}